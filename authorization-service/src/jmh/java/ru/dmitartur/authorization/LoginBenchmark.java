@@ -0,0 +1,105 @@
+package ru.dmitartur.authorization;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import ru.dmitartur.authorization.config.CostAwareBCryptPasswordEncoder;
+import ru.dmitartur.authorization.config.PasswordHashingProperties;
+import ru.dmitartur.authorization.service.PasswordVerificationService;
+import ru.dmitartur.authorization.service.PasswordVerificationService.LoginOverloadedException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH-замер входа по паролю: сколько стоит одна проверка при заданном BCrypt cost
+ * и что дает ограниченный пул PasswordVerificationService при конкурентных входах.
+ *
+ * <ul>
+ *     <li>{@code direct} — DaoAuthenticationProvider на потоке вызывающего (как до пула);</li>
+ *     <li>{@code pooled} — через PasswordVerificationService; отказы пула считаются вызовами без результата,
+ *     их доля видна по разнице пропускной способности с direct.</li>
+ * </ul>
+ *
+ * Запуск (профиль jmh добавляет src/jmh/java и зависимости JMH):
+ * <pre>
+ * mvn -pl authorization-service -Pjmh test-compile exec:exec -Dexec.executable=java \
+ *     -Dexec.classpathScope=test -Dexec.args="-cp %classpath org.openjdk.jmh.Main LoginBenchmark -p cost=10,12"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class LoginBenchmark {
+
+    private static final String USERNAME = "bench-user";
+    private static final String PASSWORD = "bench-password";
+
+    @Param({"10", "12"})
+    public int cost;
+
+    @Param({"4"})
+    public int verifyThreads;
+
+    private AuthenticationManager authenticationManager;
+    private PasswordVerificationService verificationService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CostAwareBCryptPasswordEncoder encoder = new CostAwareBCryptPasswordEncoder(cost);
+        InMemoryUserDetailsManager users = new InMemoryUserDetailsManager(
+                User.withUsername(USERNAME).password(encoder.encode(PASSWORD)).roles("USER").build());
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setUserDetailsService(users);
+        provider.setPasswordEncoder(encoder);
+        authenticationManager = new ProviderManager(provider);
+
+        PasswordHashingProperties properties = new PasswordHashingProperties();
+        properties.setBcryptStrength(cost);
+        properties.setVerifyThreads(verifyThreads);
+        verificationService = new PasswordVerificationService(authenticationManager, encoder, properties,
+                new SimpleMeterRegistry());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        verificationService.shutdown();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Authentication direct() {
+        return authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(USERNAME, PASSWORD));
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Authentication pooled() {
+        try {
+            return verificationService.authenticate(USERNAME, PASSWORD);
+        } catch (LoginOverloadedException e) {
+            return null;
+        }
+    }
+}
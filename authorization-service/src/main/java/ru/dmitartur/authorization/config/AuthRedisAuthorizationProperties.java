@@ -13,12 +13,15 @@ import org.springframework.context.annotation.Configuration;
  * Настройки Redis-кэша авторизаций:
  * - enabled: включение кэширования поверх JDBC
  * - accessTtlSeconds / refreshTtlSeconds / idTtlSeconds: TTL ключей индексов и самих авторизаций
+ * - nearCacheTtlSeconds / nearCacheMaxSize: локальный кэш инстанса перед Redis; 0 — выключен
  */
 public class AuthRedisAuthorizationProperties {
     private boolean enabled = false;
     private long accessTtlSeconds = 3600;
     private long refreshTtlSeconds = 2592000; // 30d
     private long idTtlSeconds = 3600;
+    private long nearCacheTtlSeconds = 30;
+    private int nearCacheMaxSize = 10000;
 }
 
 
@@ -16,7 +16,6 @@ import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
@@ -34,6 +33,7 @@ import org.springframework.security.oauth2.server.authorization.settings.ClientS
 import org.springframework.security.oauth2.server.authorization.settings.TokenSettings;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.LoginUrlAuthenticationEntryPoint;
+import ru.dmitartur.authorization.passwordgrant.LoginOverloadAwareErrorResponseHandler;
 
 import java.security.KeyFactory;
 import java.security.interfaces.RSAPrivateKey;
@@ -55,12 +55,17 @@ import java.util.UUID;
 @ConditionalOnProperty(name = "spring.profiles.active", havingValue = "oauth2", matchIfMissing = false)
 public class AuthorizationServerConfig {
 
+    private final PasswordHashingProperties passwordHashingProperties;
+
     @Value("${rsa.private-key}")
     private String privateKeyPem;
 
     @Value("${rsa.public-key}")
     private String publicKeyPem;
 
+    @Value("${oauth2.issuer:http://localhost:9099}")
+    private String issuer;
+
     @Value("${oauth2.client.id}")
     private String clientId;
 
@@ -78,6 +83,9 @@ public class AuthorizationServerConfig {
     public SecurityFilterChain authorizationServerSecurityFilterChain(HttpSecurity http) throws Exception {
         OAuth2AuthorizationServerConfiguration.applyDefaultSecurity(http);
         http.getConfigurer(OAuth2AuthorizationServerConfigurer.class)
+                .tokenEndpoint(tokenEndpoint -> tokenEndpoint
+                        // Перегрузка проверки паролей в password grant — 503 с Retry-After
+                        .errorResponseHandler(new LoginOverloadAwareErrorResponseHandler()))
                 .oidc(Customizer.withDefaults());
         http
                 .exceptionHandling(exceptions ->
@@ -117,7 +125,7 @@ public class AuthorizationServerConfig {
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new CostAwareBCryptPasswordEncoder(passwordHashingProperties.getBcryptStrength());
     }
 
     @Bean
@@ -201,7 +209,7 @@ public class AuthorizationServerConfig {
 
     @Bean
     public AuthorizationServerSettings authorizationServerSettings() {
-        return AuthorizationServerSettings.builder().build();
+        return AuthorizationServerSettings.builder().issuer(issuer).build();
     }
 
     @Bean
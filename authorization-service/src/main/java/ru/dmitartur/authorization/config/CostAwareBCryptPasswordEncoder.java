@@ -0,0 +1,41 @@
+package ru.dmitartur.authorization.config;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt, который просит перехешировать пароль при любом расхождении cost с настроенным.
+ *
+ * Стандартный BCryptPasswordEncoder.upgradeEncoding срабатывает только при повышении cost;
+ * здесь и при понижении, чтобы снижение стоимости входа доходило до существующих пользователей.
+ * Перехеширование при входе делает DaoAuthenticationProvider через UserDetailsPasswordService.
+ */
+public class CostAwareBCryptPasswordEncoder extends BCryptPasswordEncoder {
+
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2[aby]?\\$(\\d\\d)\\$[./0-9A-Za-z]{53}");
+
+    private final int strength;
+
+    public CostAwareBCryptPasswordEncoder(int strength) {
+        super(strength);
+        this.strength = strength;
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null || encodedPassword.isEmpty()) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_PATTERN.matcher(encodedPassword);
+        if (!matcher.find()) {
+            return false;
+        }
+        return Integer.parseInt(matcher.group(1)) != strength;
+    }
+}
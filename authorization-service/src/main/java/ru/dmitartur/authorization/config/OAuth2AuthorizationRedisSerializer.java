@@ -0,0 +1,97 @@
+package ru.dmitartur.authorization.config;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Компактная бинарная форма OAuth2Authorization для Redis: Java-сериализация (OAuth2Authorization и токены
+ * Spring Security Serializable) со сжатием Deflate.
+ *
+ * В отличие от JSON с default typing не пишет имена типов в каждое поле и не разбирает дерево —
+ * значение в разы меньше и читается быстрее. Классы при чтении ограничены явным списком: авторизация,
+ * токены, principal и коллекции/значения, из которых они состоят; любой другой класс в потоке — ошибка чтения.
+ * Форма привязана к версии Spring Security: после обновления старые значения не читаются,
+ * и сервис считает их промахом кэша.
+ */
+public class OAuth2AuthorizationRedisSerializer implements RedisSerializer<OAuth2Authorization> {
+
+    private static final List<String> ALLOWED = List.of(
+            // Авторизация и токены
+            "org.springframework.security.oauth2.server.authorization.OAuth2Authorization",
+            "org.springframework.security.oauth2.server.authorization.OAuth2Authorization$Token",
+            "org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationCode",
+            "org.springframework.security.oauth2.core.AbstractOAuth2Token",
+            "org.springframework.security.oauth2.core.OAuth2AccessToken",
+            "org.springframework.security.oauth2.core.OAuth2AccessToken$TokenType",
+            "org.springframework.security.oauth2.core.OAuth2RefreshToken",
+            "org.springframework.security.oauth2.core.oidc.OidcIdToken",
+            "org.springframework.security.oauth2.core.AuthorizationGrantType",
+            "org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest",
+            "org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationResponseType",
+            // Principal (атрибут java.security.Principal) в потоках authorization_code и password
+            "org.springframework.security.authentication.AbstractAuthenticationToken",
+            "org.springframework.security.authentication.UsernamePasswordAuthenticationToken",
+            "org.springframework.security.core.authority.SimpleGrantedAuthority",
+            "org.springframework.security.core.userdetails.User",
+            "org.springframework.security.core.userdetails.User$AuthorityComparator",
+            "org.springframework.security.web.authentication.WebAuthenticationDetails",
+            "ru.dmitartur.authorization.domain.User",
+            // Значения claims/metadata и коллекции
+            "java.lang.Object", "java.lang.Enum", "java.lang.Number", "java.lang.String", "java.lang.Boolean",
+            "java.lang.Integer", "java.lang.Long", "java.lang.Double",
+            "java.time.Ser", "java.time.Instant", "java.time.Duration",
+            "java.net.URL", "java.util.UUID",
+            "java.util.ArrayList", "java.util.HashMap", "java.util.LinkedHashMap", "java.util.HashSet",
+            "java.util.LinkedHashSet", "java.util.TreeSet", "java.util.CollSer",
+            "java.util.Collections$UnmodifiableCollection", "java.util.Collections$UnmodifiableSet",
+            "java.util.Collections$UnmodifiableSortedSet", "java.util.Collections$UnmodifiableList",
+            "java.util.Collections$UnmodifiableRandomAccessList", "java.util.Collections$UnmodifiableMap",
+            "java.util.Collections$EmptyList", "java.util.Collections$EmptySet", "java.util.Collections$EmptyMap",
+            "java.util.Collections$SingletonList", "java.util.Collections$SingletonSet",
+            "java.util.Collections$SingletonMap");
+
+    private static final ObjectInputFilter ALLOWED_CLASSES = ObjectInputFilter.Config.createFilter(
+            String.join(";", ALLOWED) + ";maxdepth=50;!*");
+
+    @Override
+    public byte[] serialize(OAuth2Authorization authorization) throws SerializationException {
+        if (authorization == null) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (ObjectOutputStream out = new ObjectOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeObject(authorization);
+        } catch (IOException e) {
+            throw new SerializationException("Cannot serialize OAuth2 authorization " + authorization.getId(), e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public OAuth2Authorization deserialize(byte[] value) throws SerializationException {
+        if (value == null || value.length == 0) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new InflaterInputStream(new ByteArrayInputStream(value)))) {
+            in.setObjectInputFilter(ALLOWED_CLASSES);
+            return (OAuth2Authorization) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            throw new SerializationException("Cannot deserialize OAuth2 authorization", e);
+        }
+    }
+}
@@ -17,7 +17,6 @@ import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
@@ -35,6 +34,7 @@ import org.springframework.security.oauth2.server.authorization.settings.ClientS
 import org.springframework.security.oauth2.server.authorization.settings.TokenSettings;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.LoginUrlAuthenticationEntryPoint;
+import ru.dmitartur.authorization.passwordgrant.LoginOverloadAwareErrorResponseHandler;
 
 import java.security.KeyFactory;
 import java.security.interfaces.RSAPrivateKey;
@@ -63,12 +63,17 @@ import java.util.UUID;
 @Primary
 public class OAuth2ServerConfig {
 
+    private final PasswordHashingProperties passwordHashingProperties;
+
     @Value("${rsa.private-key}")
     private String privateKeyPem;
 
     @Value("${rsa.public-key}")
     private String publicKeyPem;
 
+    @Value("${oauth2.issuer:http://localhost:9099}")
+    private String issuer;
+
     @Value("${oauth2.client.id}")
     private String clientId;
 
@@ -81,6 +86,9 @@ public class OAuth2ServerConfig {
         OAuth2AuthorizationServerConfiguration.applyDefaultSecurity(http);
 
         http.getConfigurer(OAuth2AuthorizationServerConfigurer.class)
+                .tokenEndpoint(tokenEndpoint -> tokenEndpoint
+                        // Перегрузка проверки паролей в password grant — 503 с Retry-After
+                        .errorResponseHandler(new LoginOverloadAwareErrorResponseHandler()))
                 .oidc(Customizer.withDefaults()); // Enable OpenID Connect 1.0
 
         http
@@ -135,9 +143,10 @@ public class OAuth2ServerConfig {
     @Bean
     /**
      * Алгоритм хеширования паролей пользователей и клиентских секретов.
+     * Cost задается auth.password.bcrypt-strength; хеши с другим cost пересчитываются при входе.
      */
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new CostAwareBCryptPasswordEncoder(passwordHashingProperties.getBcryptStrength());
     }
 
     @Bean
@@ -259,10 +268,10 @@ public class OAuth2ServerConfig {
     @Bean
     /**
      * Настройки Authorization Server (issuer, endpoints).
-     * Оставлены по умолчанию; при необходимости можно задать issuer.
+     * Issuer задан явно (oauth2.issuer): иначе iss берется из адреса запроса и различается у localhost и docker.
      */
     public AuthorizationServerSettings authorizationServerSettings() {
-        return AuthorizationServerSettings.builder().build();
+        return AuthorizationServerSettings.builder().issuer(issuer).build();
     }
 
     @Bean
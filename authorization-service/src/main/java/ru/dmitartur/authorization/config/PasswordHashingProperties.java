@@ -0,0 +1,26 @@
+package ru.dmitartur.authorization.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Хеширование и проверка паролей:
+ * - bcryptStrength: cost BCrypt (log2 раундов); при смене хеши пользователей пересчитываются при следующем входе
+ * - verifyThreads / verifyQueueCapacity: отдельный пул проверки паролей и очередь к нему;
+ *   при переполнении вход сразу отвечает 503, остальные запросы не ждут CPU
+ * - verifyTimeout: сколько запрос входа ждет результата проверки
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "auth.password")
+public class PasswordHashingProperties {
+    private int bcryptStrength = 10;
+    private int verifyThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int verifyQueueCapacity = 100;
+    private Duration verifyTimeout = Duration.ofSeconds(5);
+}
@@ -0,0 +1,45 @@
+package ru.dmitartur.authorization.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Лимиты запросов по эндпоинтам (auth.rate-limit.policies.<имя>):
+ * - limit / window: сколько запросов на ключ за окно (GCRA, всплеск до limit)
+ * - localBatch: сколько разрешений брать из Redis за раз и расходовать в памяти; 0 — каждый запрос в Redis
+ * - failOpen: пропускать запросы, если Redis недоступен
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "auth.rate-limit")
+public class RateLimitProperties {
+    private String keyPrefix = "rate_limit:";
+    private boolean failOpen = true;
+    private Map<String, Policy> policies = new HashMap<>(Map.of(
+            "login", new Policy(100, Duration.ofMinutes(1), 0),
+            "update-password", new Policy(10, Duration.ofMinutes(1), 0)
+    ));
+
+    @Getter
+    @Setter
+    public static class Policy {
+        private int limit = 100;
+        private Duration window = Duration.ofMinutes(1);
+        private int localBatch = 0;
+
+        public Policy() { }
+
+        public Policy(int limit, Duration window, int localBatch) {
+            this.limit = limit;
+            this.window = window;
+            this.localBatch = localBatch;
+        }
+    }
+}
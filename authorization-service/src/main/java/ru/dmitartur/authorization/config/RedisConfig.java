@@ -10,10 +10,12 @@ import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -55,17 +57,15 @@ public class RedisConfig {
         return template;
     }
 
+    /**
+     * Подписки на каналы Redis; нужен кэшу авторизаций для сброса локальных копий на всех инстансах
+     */
     @Bean
-    public RedisTemplate<String, org.springframework.security.oauth2.server.authorization.OAuth2Authorization> oauth2AuthorizationRedisTemplate(RedisConnectionFactory connectionFactory) {
-        RedisTemplate<String, org.springframework.security.oauth2.server.authorization.OAuth2Authorization> template = new RedisTemplate<>();
-        template.setConnectionFactory(connectionFactory);
-        GenericJackson2JsonRedisSerializer jsonSerializer = buildJsonSerializer();
-        template.setValueSerializer(jsonSerializer);
-        template.setHashValueSerializer(jsonSerializer);
-        template.setKeySerializer(new StringRedisSerializer());
-        template.setHashKeySerializer(new StringRedisSerializer());
-        template.afterPropertiesSet();
-        return template;
+    @ConditionalOnProperty(prefix = "auth.redis-authorization", name = "enabled", havingValue = "true")
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
     }
 
     public static class SimpleGrantedAuthorityDeserializer extends StdDeserializer<SimpleGrantedAuthority> {
@@ -3,8 +3,6 @@ package ru.dmitartur.authorization.controller;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.jwt.JwtClaimsSet;
@@ -12,6 +10,8 @@ import org.springframework.security.oauth2.jwt.JwtEncoder;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
 import org.springframework.web.bind.annotation.*;
+import ru.dmitartur.authorization.service.PasswordVerificationService;
+import ru.dmitartur.authorization.service.PasswordVerificationService.LoginOverloadedException;
 import ru.dmitartur.authorization.service.RateLimitService;
 import ru.dmitartur.authorization.service.UserService;
 
@@ -25,7 +25,7 @@ import java.util.Map;
 @Slf4j
 public class SimpleTokenController {
 
-    private final AuthenticationManager authenticationManager;
+    private final PasswordVerificationService passwordVerificationService;
     private final JwtEncoder jwtEncoder;
     private final RegisteredClientRepository clientRepository;
     private final UserService userService;
@@ -53,6 +53,12 @@ public class SimpleTokenController {
 
     @PostMapping("/update-password")
     public ResponseEntity<Map<String, Object>> updatePassword(@RequestParam String username, @RequestParam String newPassword) {
+        if (!rateLimitService.tryAcquire("update-password", username)) {
+            return ResponseEntity.status(429).body(Map.of(
+                "error", "rate_limit_exceeded",
+                "message", "Too many requests. Please try again later."
+            ));
+        }
         try {
             var user = userService.findByUsername(username);
             user.setPassword(passwordEncoder.encode(newPassword));
@@ -92,9 +98,8 @@ public class SimpleTokenController {
                 ));
             }
             
-            // Аутентификация пользователя
-            UsernamePasswordAuthenticationToken userAuth = new UsernamePasswordAuthenticationToken(username, password);
-            Authentication userAuthentication = authenticationManager.authenticate(userAuth);
+            // Аутентификация пользователя (проверка пароля в отдельном ограниченном пуле)
+            Authentication userAuthentication = passwordVerificationService.authenticate(username, password);
 
             if (!userAuthentication.isAuthenticated()) {
                 log.error("Authentication failed for user: {}", username);
@@ -164,6 +169,11 @@ public class SimpleTokenController {
             
             return ResponseEntity.ok(response);
 
+        } catch (LoginOverloadedException e) {
+            return ResponseEntity.status(503).header("Retry-After", "1").body(Map.of(
+                "error", "temporarily_unavailable",
+                "message", "Too many concurrent logins. Please try again later."
+            ));
         } catch (Exception e) {
             log.error("=== LOGIN REQUEST FAILED ===");
             log.error("Error during authentication for user: {}", username);
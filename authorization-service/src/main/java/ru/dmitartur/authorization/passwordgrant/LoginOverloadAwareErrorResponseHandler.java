@@ -0,0 +1,57 @@
+package ru.dmitartur.authorization.passwordgrant;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.http.converter.OAuth2ErrorHttpMessageConverter;
+import org.springframework.security.oauth2.server.authorization.web.authentication.OAuth2ErrorAuthenticationFailureHandler;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
+import ru.dmitartur.authorization.service.PasswordVerificationService.LoginOverloadedException;
+
+import java.io.IOException;
+
+/**
+ * Обработчик ошибок /oauth2/token.
+ *
+ * Перегрузка пула проверки паролей в password grant ({@link LoginOverloadedException}) отдается как
+ * 503 temporarily_unavailable с Retry-After — так же, как /api/auth/login, а не как 400 invalid_grant,
+ * после которого клиент не повторяет запрос. Остальные ошибки — стандартный ответ OAuth2.
+ */
+public class LoginOverloadAwareErrorResponseHandler implements AuthenticationFailureHandler {
+
+    public static final String TEMPORARILY_UNAVAILABLE = "temporarily_unavailable";
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final AuthenticationFailureHandler delegate = new OAuth2ErrorAuthenticationFailureHandler();
+    private final HttpMessageConverter<OAuth2Error> errorConverter = new OAuth2ErrorHttpMessageConverter();
+
+    @Override
+    public void onAuthenticationFailure(HttpServletRequest request, HttpServletResponse response,
+                                        AuthenticationException exception) throws IOException, ServletException {
+        if (!(exception.getCause() instanceof LoginOverloadedException)) {
+            delegate.onAuthenticationFailure(request, response, exception);
+            return;
+        }
+        OAuth2Error error = ((OAuth2AuthenticationException) exception).getError();
+        ServletServerHttpResponse httpResponse = new ServletServerHttpResponse(response);
+        httpResponse.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        httpResponse.getHeaders().set(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+        errorConverter.write(error, null, httpResponse);
+    }
+
+    /**
+     * Ошибка password grant для перегрузки пула проверки паролей
+     */
+    public static OAuth2AuthenticationException overloaded(LoginOverloadedException cause) {
+        return new OAuth2AuthenticationException(
+                new OAuth2Error(TEMPORARILY_UNAVAILABLE, "Too many concurrent logins. Please try again later.", null),
+                cause);
+    }
+}
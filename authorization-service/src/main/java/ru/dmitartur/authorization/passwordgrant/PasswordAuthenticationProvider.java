@@ -1,8 +1,6 @@
 package ru.dmitartur.authorization.passwordgrant;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
@@ -19,12 +17,14 @@ import org.springframework.security.oauth2.server.authorization.context.Authoriz
 import org.springframework.security.oauth2.server.authorization.token.DefaultOAuth2TokenContext;
 import org.springframework.security.oauth2.server.authorization.token.OAuth2TokenContext;
 import org.springframework.security.oauth2.server.authorization.token.OAuth2TokenGenerator;
+import ru.dmitartur.authorization.service.PasswordVerificationService;
+import ru.dmitartur.authorization.service.PasswordVerificationService.LoginOverloadedException;
 
 import java.util.Set;
 
 @RequiredArgsConstructor
 public class PasswordAuthenticationProvider implements org.springframework.security.authentication.AuthenticationProvider {
-    private final AuthenticationManager authenticationManager;
+    private final PasswordVerificationService passwordVerificationService;
     private final RegisteredClientRepository registeredClientRepository;
     private final OAuth2AuthorizationService authorizationService;
     private final OAuth2TokenGenerator<? extends OAuth2RefreshToken> tokenGenerator;
@@ -32,9 +32,13 @@ public class PasswordAuthenticationProvider implements org.springframework.secur
     @Override
     public Authentication authenticate(Authentication authentication) throws AuthenticationException {
         PasswordGrantAuthenticationToken passwordToken = (PasswordGrantAuthenticationToken) authentication;
-        Authentication userAuth = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(passwordToken.getUsername(), passwordToken.getPassword())
-        );
+        Authentication userAuth;
+        try {
+            userAuth = passwordVerificationService.authenticate(passwordToken.getUsername(), passwordToken.getPassword());
+        } catch (LoginOverloadedException e) {
+            // Фильтр /oauth2/token передает обработчику ошибок только OAuth2AuthenticationException
+            throw LoginOverloadAwareErrorResponseHandler.overloaded(e);
+        }
 
         RegisteredClient registeredClient = passwordToken.getClientPrincipal().getRegisteredClient();
         Set<String> authorizedScopes = registeredClient.getScopes();
@@ -0,0 +1,145 @@
+package ru.dmitartur.authorization.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import ru.dmitartur.authorization.config.PasswordHashingProperties;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Проверка паролей пользователей в отдельном ограниченном пуле.
+ *
+ * BCrypt — десятки миллисекунд CPU на проверку. На потоках запросов всплеск входов занимает все ядра,
+ * и обновление токенов, JWKS и прочие дешевые запросы ждут в той же очереди. Здесь проверки идут
+ * не больше чем в verifyThreads потоков; когда очередь заполнена, вход отклоняется сразу
+ * ({@link LoginOverloadedException}), а не висит до таймаута.
+ *
+ * Время проверки пишется в метрику auth_password_verify с тегом cost, при старте логируется
+ * замер одной проверки при текущем cost — видно, во сколько CPU обходится вход.
+ */
+@Service
+@Slf4j
+public class PasswordVerificationService {
+
+    private final AuthenticationManager authenticationManager;
+    private final PasswordHashingProperties properties;
+    private final ThreadPoolExecutor executor;
+    private final Timer successTimer;
+    private final Timer failureTimer;
+    private final MeterRegistry meterRegistry;
+
+    public PasswordVerificationService(AuthenticationManager authenticationManager,
+                                       PasswordEncoder passwordEncoder,
+                                       PasswordHashingProperties properties,
+                                       MeterRegistry meterRegistry) {
+        this.authenticationManager = authenticationManager;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(properties.getVerifyThreads(), properties.getVerifyThreads(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getVerifyQueueCapacity()), r -> {
+            Thread t = new Thread(r, "password-verify-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.successTimer = verifyTimer("success");
+        this.failureTimer = verifyTimer("failure");
+        Gauge.builder("auth_password_verify_queue", executor, e -> e.getQueue().size())
+                .description("Password verifications waiting for a worker")
+                .register(meterRegistry);
+        calibrate(passwordEncoder);
+    }
+
+    /**
+     * Аутентифицирует пользователя по логину и паролю в пуле проверки паролей
+     * @throws LoginOverloadedException если пул и очередь заняты или результат не пришел за verifyTimeout
+     */
+    public Authentication authenticate(String username, String password) {
+        UsernamePasswordAuthenticationToken request = new UsernamePasswordAuthenticationToken(username, password);
+        Future<Authentication> result;
+        try {
+            result = executor.submit(() -> timed(request));
+        } catch (RejectedExecutionException e) {
+            meterRegistry.counter("auth_password_verify_rejected_total").increment();
+            log.warn("⚠️ Password verification queue is full, rejecting login for {}", username);
+            throw new LoginOverloadedException("Password verification queue is full");
+        }
+
+        try {
+            return result.get(properties.getVerifyTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            log.warn("⚠️ Password verification for {} timed out after {}", username, properties.getVerifyTimeout());
+            throw new LoginOverloadedException("Password verification timed out");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.cancel(true);
+            throw new AuthenticationServiceException("Interrupted while verifying password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AuthenticationException authenticationException) {
+                throw authenticationException;
+            }
+            throw new AuthenticationServiceException("Password verification failed", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Authentication timed(UsernamePasswordAuthenticationToken request) {
+        long startedAt = System.nanoTime();
+        try {
+            Authentication authentication = authenticationManager.authenticate(request);
+            successTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            return authentication;
+        } catch (RuntimeException e) {
+            failureTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private Timer verifyTimer(String result) {
+        return Timer.builder("auth_password_verify")
+                .description("User authentication including password hash verification")
+                .tag("result", result)
+                .tag("cost", Integer.toString(properties.getBcryptStrength()))
+                .register(meterRegistry);
+    }
+
+    private void calibrate(PasswordEncoder passwordEncoder) {
+        String hash = passwordEncoder.encode("calibration");
+        long startedAt = System.nanoTime();
+        passwordEncoder.matches("calibration", hash);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        log.info("🔐 Password hashing cost {}: ~{} ms CPU per verification, {} verify threads, queue {}",
+                properties.getBcryptStrength(), millis, properties.getVerifyThreads(), properties.getVerifyQueueCapacity());
+    }
+
+    /**
+     * Проверка пароля не принята: пул перегружен. Клиенту — 503 с повтором позже
+     */
+    public static class LoginOverloadedException extends AuthenticationServiceException {
+        public LoginOverloadedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -1,31 +1,101 @@
 package ru.dmitartur.authorization.service;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
+import ru.dmitartur.authorization.config.RateLimitProperties;
+import ru.dmitartur.authorization.config.RateLimitProperties.Policy;
 
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Ограничение частоты запросов по алгоритму GCRA в Redis.
+ *
+ * Проверка — один вызов Lua-скрипта: чтение, решение и запись TAT (theoretical arrival time) выполняются
+ * атомарно, поэтому параллельные запросы не проскакивают лимит. Время берется из Redis (TIME),
+ * расхождение часов между инстансами не влияет.
+ *
+ * При localBatch > 0 скрипт выдает сразу до localBatch разрешений, и они расходуются в памяти инстанса
+ * до истечения их интервала: частые запросы одного ключа проверяются без обращения к Redis.
+ * Неизрасходованные разрешения пропадают, то есть режим только строже, но ключ, запросы которого
+ * идут на разные инстансы, может получить отказ раньше лимита.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class RateLimitService {
 
-    private final RedisTemplate<String, String> redisTemplate;
-    
-    private static final String RATE_LIMIT_KEY_PREFIX = "rate_limit:";
-    private static final int DEFAULT_MAX_REQUESTS = 100; // Максимум запросов
-    private static final Duration DEFAULT_WINDOW = Duration.ofMinutes(1); // Окно времени
+    public static final String LOGIN_POLICY = "login";
+
+    // KEYS[1] — ключ; ARGV: интервал между запросами (мкс), допуск всплеска (мкс), сколько разрешений запросить.
+    // Ответ: {выдано разрешений, через сколько мкс придет следующее}
+    private static final String GCRA_SCRIPT = """
+            redis.replicate_commands()
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000000 + tonumber(t[2])
+            local interval = tonumber(ARGV[1])
+            local burst = tonumber(ARGV[2])
+            local want = tonumber(ARGV[3])
+            local tat = tonumber(redis.call('GET', KEYS[1]) or now)
+            if tat < now then tat = now end
+            local ahead = tat - now
+            if ahead > burst then
+              return {0, ahead - burst}
+            end
+            local granted = math.min(want, math.floor((burst - ahead) / interval) + 1)
+            tat = tat + granted * interval
+            redis.call('SET', KEYS[1], string.format('%.0f', tat), 'PX', math.ceil((tat - now) / 1000))
+            return {granted, 0}
+            """;
+
+    // KEYS[1] — ключ; ответ: насколько TAT опережает текущее время Redis (мкс), 0 — ключа нет или он в прошлом
+    private static final String AHEAD_SCRIPT = """
+            local tat = redis.call('GET', KEYS[1])
+            if not tat then return 0 end
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000000 + tonumber(t[2])
+            return math.max(0, tonumber(tat) - now)
+            """;
+
+    private static final String[] RESULTS = {"allowed:local", "allowed:redis", "rejected:redis", "error:redis"};
+
+    private final StringRedisTemplate redisTemplate;
+    private final RateLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final RedisScript<List> script = new DefaultRedisScript<>(GCRA_SCRIPT, List.class);
+    private final RedisScript<Long> aheadScript = new DefaultRedisScript<>(AHEAD_SCRIPT, Long.class);
+    // Счетчики решений по политике и "result:source"; регистрируются заранее, а не на каждый запрос
+    private final ConcurrentHashMap<String, Map<String, Counter>> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LocalGrant> localGrants = new ConcurrentHashMap<>();
+    private final Timer redisTimer;
+
+    public RateLimitService(StringRedisTemplate redisTemplate, RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.redisTimer = Timer.builder("auth_rate_limit_redis")
+                .description("Rate limit script round-trip to Redis")
+                .register(meterRegistry);
+        properties.getPolicies().keySet().forEach(policyName -> counters.computeIfAbsent(policyName, this::registerCounters));
+    }
 
     /**
-     * Проверяет rate limit для пользователя
+     * Проверяет rate limit логина для пользователя
      * @param username имя пользователя
      * @return true если запрос разрешен, false если превышен лимит
      */
     public boolean checkRateLimit(String username) {
-        return checkRateLimit(username, DEFAULT_MAX_REQUESTS, DEFAULT_WINDOW);
+        return tryAcquire(LOGIN_POLICY, username);
     }
 
     /**
@@ -36,46 +106,130 @@ public class RateLimitService {
      * @return true если запрос разрешен, false если превышен лимит
      */
     public boolean checkRateLimit(String username, int maxRequests, Duration window) {
-        String key = RATE_LIMIT_KEY_PREFIX + username;
-        
-        String currentCount = redisTemplate.opsForValue().get(key);
-        int count = currentCount != null ? Integer.parseInt(currentCount) : 0;
-        
-        if (count >= maxRequests) {
-            log.warn("Rate limit exceeded for user: {}", username);
+        return tryAcquire("custom:" + maxRequests + ":" + window.toSeconds(), new Policy(maxRequests, window, 0), username);
+    }
+
+    /**
+     * Проверяет лимит эндпоинта по политике auth.rate-limit.policies.<policyName>
+     * @param identifier ключ ограничения (имя пользователя, IP)
+     */
+    public boolean tryAcquire(String policyName, String identifier) {
+        Policy policy = properties.getPolicies().get(policyName);
+        if (policy == null) {
+            throw new IllegalArgumentException("Unknown rate limit policy: " + policyName);
+        }
+        return tryAcquire(policyName, policy, identifier);
+    }
+
+    private boolean tryAcquire(String policyName, Policy policy, String identifier) {
+        String key = key(policyName, identifier);
+        long nowMillis = System.currentTimeMillis();
+
+        if (policy.getLocalBatch() > 0) {
+            LocalGrant grant = localGrants.get(key);
+            if (grant != null && grant.expiresAtMillis > nowMillis && grant.remaining.getAndDecrement() > 0) {
+                count(policyName, "allowed", "local");
+                return true;
+            }
+        }
+
+        long intervalMicros = Math.max(1, policy.getWindow().toNanos() / 1000 / policy.getLimit());
+        long burstMicros = intervalMicros * (policy.getLimit() - 1);
+        int want = Math.max(1, policy.getLocalBatch());
+
+        List<?> result;
+        long startedAt = System.nanoTime();
+        try {
+            result = redisTemplate.execute(script, List.of(key),
+                    Long.toString(intervalMicros), Long.toString(burstMicros), Integer.toString(want));
+        } catch (Exception e) {
+            count(policyName, "error", "redis");
+            log.warn("⚠️ Rate limit check failed for {} ({}), failOpen={}: {}", identifier, policyName,
+                    properties.isFailOpen(), e.getMessage());
+            return properties.isFailOpen();
+        } finally {
+            redisTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+
+        long granted = result != null && !result.isEmpty() ? ((Number) result.get(0)).longValue() : 0;
+        if (granted <= 0) {
+            count(policyName, "rejected", "redis");
+            log.warn("Rate limit exceeded for {} ({}), retry in {} ms", identifier, policyName,
+                    result != null && result.size() > 1 ? ((Number) result.get(1)).longValue() / 1000 : 0);
             return false;
         }
-        
-        // Увеличиваем счетчик
-        redisTemplate.opsForValue().increment(key);
-        
-        // Устанавливаем TTL если ключ новый
-        if (currentCount == null) {
-            redisTemplate.expire(key, window.toSeconds(), TimeUnit.SECONDS);
+        if (granted > 1) {
+            // Оставшиеся разрешения действительны, пока не истек выданный ими интервал
+            localGrants.put(key, new LocalGrant((int) granted - 1, nowMillis + granted * intervalMicros / 1000));
+            evictExpiredGrants(nowMillis);
         }
-        
-        log.debug("Rate limit check passed for user: {}, count: {}", username, count + 1);
+        count(policyName, "allowed", "redis");
         return true;
     }
 
     /**
-     * Получает текущий счетчик запросов для пользователя
+     * Сколько разрешений логина израсходовано в текущем окне
      * @param username имя пользователя
      * @return количество запросов
      */
     public int getCurrentCount(String username) {
-        String key = RATE_LIMIT_KEY_PREFIX + username;
-        String count = redisTemplate.opsForValue().get(key);
-        return count != null ? Integer.parseInt(count) : 0;
+        Policy policy = properties.getPolicies().get(LOGIN_POLICY);
+        // TAT записан по часам Redis (TIME в GCRA-скрипте) — сравниваем с ними же, а не с часами инстанса
+        Long aheadMicros = redisTemplate.execute(aheadScript, List.of(key(LOGIN_POLICY, username)));
+        if (aheadMicros == null || aheadMicros <= 0) {
+            return 0;
+        }
+        long intervalMicros = Math.max(1, policy.getWindow().toNanos() / 1000 / policy.getLimit());
+        return (int) Math.ceil((double) aheadMicros / intervalMicros);
     }
 
     /**
-     * Сбрасывает rate limit для пользователя
+     * Сбрасывает rate limit логина для пользователя
      * @param username имя пользователя
      */
     public void resetRateLimit(String username) {
-        String key = RATE_LIMIT_KEY_PREFIX + username;
+        String key = key(LOGIN_POLICY, username);
         redisTemplate.delete(key);
+        localGrants.remove(key);
         log.info("Rate limit reset for user: {}", username);
     }
-} 
+
+    private String key(String policyName, String identifier) {
+        return properties.getKeyPrefix() + policyName + ":" + identifier;
+    }
+
+    private void evictExpiredGrants(long nowMillis) {
+        // Карта растет только с ключами, которым выдан пакет; чистим по пути, когда она заметно разрослась
+        if (localGrants.size() > 10_000) {
+            localGrants.values().removeIf(grant -> grant.expiresAtMillis <= nowMillis);
+        }
+    }
+
+    private void count(String policyName, String result, String source) {
+        counters.computeIfAbsent(policyName, this::registerCounters).get(result + ":" + source).increment();
+    }
+
+    private Map<String, Counter> registerCounters(String policyName) {
+        Map<String, Counter> byResult = new HashMap<>();
+        for (String resultAndSource : RESULTS) {
+            String[] parts = resultAndSource.split(":");
+            byResult.put(resultAndSource, Counter.builder("auth_rate_limit_total")
+                    .description("Rate limit decisions")
+                    .tag("policy", policyName)
+                    .tag("result", parts[0])
+                    .tag("source", parts[1])
+                    .register(meterRegistry));
+        }
+        return byResult;
+    }
+
+    private static final class LocalGrant {
+        private final AtomicInteger remaining;
+        private final long expiresAtMillis;
+
+        LocalGrant(int remaining, long expiresAtMillis) {
+            this.remaining = new AtomicInteger(remaining);
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package ru.dmitartur.authorization.service;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
 import org.springframework.security.oauth2.core.OAuth2AccessToken;
 import org.springframework.security.oauth2.core.OAuth2RefreshToken;
 import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
@@ -11,109 +18,240 @@ import org.springframework.security.oauth2.server.authorization.OAuth2Authorizat
 import org.springframework.security.oauth2.server.authorization.OAuth2TokenType;
 import org.springframework.stereotype.Service;
 import ru.dmitartur.authorization.config.AuthRedisAuthorizationProperties;
+import ru.dmitartur.authorization.config.OAuth2AuthorizationRedisSerializer;
 
-import java.time.Duration;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
-@Service
-@RequiredArgsConstructor
-@Slf4j
-@ConditionalOnProperty(prefix = "auth.redis-authorization", name = "enabled", havingValue = "true")
 /**
- * Опциональный кэш OAuth2Authorization в Redis.
+ * Опциональный кэш OAuth2Authorization в Redis с локальным near-кэшем.
  * Кэширует:
- * - саму авторизацию по id (oauth2:authorization:<id>)
- * - индексы access/refresh токенов -> id авторизации
+ * - саму авторизацию по id (oauth2:authorization:<id>) в компактной бинарной форме
+ * - индексы access/refresh токенов -> id авторизации; в ключе SHA-256 токена, а не сам токен
  * ТТL настраиваются через AuthRedisAuthorizationProperties.
+ *
+ * Поиск по токену — два GET (индекс, затем авторизация): ключи лежат в разных слотах Redis Cluster,
+ * поэтому одним скриптом их читать нельзя. Повторные поиски того же токена на инстансе отвечаются
+ * из памяти на nearCacheTtlSeconds. При save/remove id авторизации публикуется в канал
+ * oauth2:authorization:invalidate, и все инстансы сбрасывают свою копию; загрузка, начатая до сброса,
+ * в near-кэш уже не попадает.
  */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(prefix = "auth.redis-authorization", name = "enabled", havingValue = "true")
 public class RedisOAuth2AuthorizationService implements OAuth2AuthorizationService {
 
-    private final RedisTemplate<String, OAuth2Authorization> redisTemplate;
-    private final RedisTemplate<String, String> stringRedisTemplate;
-    private final AuthRedisAuthorizationProperties props;
-
     private static final String OAUTH2_AUTHORIZATION_KEY_PREFIX = "oauth2:authorization:";
     private static final String OAUTH2_AUTHORIZATION_ACCESS_TOKEN_KEY_PREFIX = "oauth2:authorization:access_token:";
     private static final String OAUTH2_AUTHORIZATION_REFRESH_TOKEN_KEY_PREFIX = "oauth2:authorization:refresh_token:";
+    private static final String INVALIDATION_CHANNEL = "oauth2:authorization:invalidate";
+    // Сколько помнить момент сброса id: дольше любой загрузки из Redis
+    private static final long EVICTION_MEMORY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final AuthRedisAuthorizationProperties props;
+
+    private final RedisSerializer<OAuth2Authorization> serializer = new OAuth2AuthorizationRedisSerializer();
+    // Near-кэш: id -> авторизация и хэш токена -> id. Инвалидация по id сразу отсекает и все токены авторизации
+    private final ConcurrentHashMap<String, CachedAuthorization> nearCache = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> nearTokenIndex = new ConcurrentHashMap<>();
+    // id -> System.nanoTime() последнего сброса: загрузка, начатая раньше, не кладет авторизацию в near-кэш
+    private final ConcurrentHashMap<String, Long> evictedAt = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void subscribeToInvalidations() {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> evict(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(INVALIDATION_CHANNEL));
+    }
 
     @Override
     public void save(OAuth2Authorization authorization) {
         String id = authorization.getId();
-        String key = OAUTH2_AUTHORIZATION_KEY_PREFIX + id;
-        
-        redisTemplate.opsForValue().set(key, authorization, Duration.ofSeconds(props.getIdTtlSeconds()));
-        
-        // Сохраняем индексы для быстрого поиска
-        OAuth2AccessToken accessToken = authorization.getAccessToken().getToken();
-        if (accessToken != null) {
-            String accessTokenKey = OAUTH2_AUTHORIZATION_ACCESS_TOKEN_KEY_PREFIX + 
-                    accessToken.getTokenValue();
-            stringRedisTemplate.opsForValue().set(accessTokenKey, id, Duration.ofSeconds(props.getAccessTtlSeconds()));
-        }
-
+        byte[] value = serializer.serialize(authorization);
+        OAuth2AccessToken accessToken = authorization.getAccessToken() != null ? authorization.getAccessToken().getToken() : null;
         OAuth2RefreshToken refreshToken = authorization.getRefreshToken() != null ? authorization.getRefreshToken().getToken() : null;
-        if (refreshToken != null) {
-            String refreshTokenKey = OAUTH2_AUTHORIZATION_REFRESH_TOKEN_KEY_PREFIX + 
-                    refreshToken.getTokenValue();
-            stringRedisTemplate.opsForValue().set(refreshTokenKey, id, Duration.ofSeconds(props.getRefreshTtlSeconds()));
-        }
-        
-        log.info("Saved OAuth2 authorization: {}", id);
+
+        evict(id);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().setEx(bytes(OAUTH2_AUTHORIZATION_KEY_PREFIX + id), props.getIdTtlSeconds(), value);
+            // Индексы для быстрого поиска
+            if (accessToken != null) {
+                connection.stringCommands().setEx(bytes(OAUTH2_AUTHORIZATION_ACCESS_TOKEN_KEY_PREFIX + sha256(accessToken.getTokenValue())),
+                        props.getAccessTtlSeconds(), bytes(id));
+            }
+            if (refreshToken != null) {
+                connection.stringCommands().setEx(bytes(OAUTH2_AUTHORIZATION_REFRESH_TOKEN_KEY_PREFIX + sha256(refreshToken.getTokenValue())),
+                        props.getRefreshTtlSeconds(), bytes(id));
+            }
+            publishInvalidation(connection, id);
+            return null;
+        });
+
+        log.debug("Saved OAuth2 authorization: {} ({} bytes)", id, value.length);
     }
 
     @Override
     public void remove(OAuth2Authorization authorization) {
         String id = authorization.getId();
-        String key = OAUTH2_AUTHORIZATION_KEY_PREFIX + id;
-        
-        redisTemplate.delete(key);
-        
-        // Удаляем индексы
-        OAuth2AccessToken accessToken = authorization.getAccessToken().getToken();
-        if (accessToken != null) {
-            String accessTokenKey = OAUTH2_AUTHORIZATION_ACCESS_TOKEN_KEY_PREFIX + 
-                    accessToken.getTokenValue();
-            stringRedisTemplate.delete(accessTokenKey);
-        }
-
+        OAuth2AccessToken accessToken = authorization.getAccessToken() != null ? authorization.getAccessToken().getToken() : null;
         OAuth2RefreshToken refreshToken = authorization.getRefreshToken() != null ? authorization.getRefreshToken().getToken() : null;
-        if (refreshToken != null) {
-            String refreshTokenKey = OAUTH2_AUTHORIZATION_REFRESH_TOKEN_KEY_PREFIX + 
-                    refreshToken.getTokenValue();
-            stringRedisTemplate.delete(refreshTokenKey);
-        }
-        
+
+        evict(id);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.keyCommands().del(bytes(OAUTH2_AUTHORIZATION_KEY_PREFIX + id));
+            // Удаляем индексы
+            if (accessToken != null) {
+                connection.keyCommands().del(bytes(OAUTH2_AUTHORIZATION_ACCESS_TOKEN_KEY_PREFIX + sha256(accessToken.getTokenValue())));
+            }
+            if (refreshToken != null) {
+                connection.keyCommands().del(bytes(OAUTH2_AUTHORIZATION_REFRESH_TOKEN_KEY_PREFIX + sha256(refreshToken.getTokenValue())));
+            }
+            publishInvalidation(connection, id);
+            return null;
+        });
+
         log.info("Removed OAuth2 authorization: {}", id);
     }
 
     @Override
     public OAuth2Authorization findById(String id) {
-        String key = OAUTH2_AUTHORIZATION_KEY_PREFIX + id;
-        OAuth2Authorization authorization = redisTemplate.opsForValue().get(key);
-        
+        long now = System.currentTimeMillis();
+        CachedAuthorization cached = nearCache.get(id);
+        if (cached != null && cached.expiresAt > now) {
+            return cached.authorization;
+        }
+
+        long loadStartedAt = System.nanoTime();
+        OAuth2Authorization authorization = load(id);
         if (authorization != null) {
             log.debug("Found OAuth2 authorization by id: {}", id);
+            remember(authorization, null, now, loadStartedAt);
         }
-        
         return authorization;
     }
 
     @Override
     public OAuth2Authorization findByToken(String token, OAuth2TokenType tokenType) {
-        String key;
-        
+        String prefix;
+
         if (OAuth2TokenType.ACCESS_TOKEN.equals(tokenType)) {
-            key = OAUTH2_AUTHORIZATION_ACCESS_TOKEN_KEY_PREFIX + token;
+            prefix = OAUTH2_AUTHORIZATION_ACCESS_TOKEN_KEY_PREFIX;
         } else if (OAuth2TokenType.REFRESH_TOKEN.equals(tokenType)) {
-            key = OAUTH2_AUTHORIZATION_REFRESH_TOKEN_KEY_PREFIX + token;
+            prefix = OAUTH2_AUTHORIZATION_REFRESH_TOKEN_KEY_PREFIX;
         } else {
             return null;
         }
-        
-        String authorizationId = stringRedisTemplate.opsForValue().get(key);
-        if (authorizationId != null) {
-            return findById(authorizationId);
+
+        String tokenKey = prefix + sha256(token);
+        long now = System.currentTimeMillis();
+        String cachedId = nearTokenIndex.get(tokenKey);
+        CachedAuthorization cached = cachedId != null ? nearCache.get(cachedId) : null;
+        if (cached != null && cached.expiresAt > now) {
+            return owns(cached.authorization, token) ? cached.authorization : null;
+        }
+
+        long loadStartedAt = System.nanoTime();
+        String id = stringRedisTemplate.opsForValue().get(tokenKey);
+        OAuth2Authorization authorization = id != null ? load(id) : null;
+
+        // Индекс старого токена живет до своего TTL и после ротации — такая авторизация токену уже не принадлежит
+        if (authorization == null || !owns(authorization, token)) {
+            return null;
+        }
+        remember(authorization, tokenKey, now, loadStartedAt);
+        return authorization;
+    }
+
+    private OAuth2Authorization load(String id) {
+        try {
+            return serializer.deserialize(stringRedisTemplate.execute(
+                    (RedisCallback<byte[]>) connection -> connection.stringCommands().get(bytes(OAUTH2_AUTHORIZATION_KEY_PREFIX + id))));
+        } catch (SerializationException e) {
+            log.warn("⚠️ Unreadable OAuth2 authorization {} in Redis, treating as miss: {}", id, e.getMessage());
+            return null;
         }
-        
-        return null;
     }
-} 
\ No newline at end of file
+
+    /**
+     * Положить загруженную авторизацию в near-кэш, если с начала загрузки ее не сбрасывали
+     */
+    private void remember(OAuth2Authorization authorization, String tokenKey, long now, long loadStartedAt) {
+        if (props.getNearCacheTtlSeconds() <= 0) {
+            return;
+        }
+        String id = authorization.getId();
+        if (evictedSince(id, loadStartedAt)) {
+            return;
+        }
+        if (nearCache.size() >= props.getNearCacheMaxSize() || nearTokenIndex.size() >= props.getNearCacheMaxSize()) {
+            evictExpiredOrAll(now);
+        }
+        CachedAuthorization entry = new CachedAuthorization(authorization, now + props.getNearCacheTtlSeconds() * 1000);
+        nearCache.put(id, entry);
+        // Сброс мог прийти между проверкой и put — тогда убираем только что положенную копию
+        if (evictedSince(id, loadStartedAt)) {
+            nearCache.remove(id, entry);
+            return;
+        }
+        if (tokenKey != null) {
+            nearTokenIndex.put(tokenKey, id);
+        }
+    }
+
+    private boolean evictedSince(String id, long startedAt) {
+        Long at = evictedAt.get(id);
+        return at != null && at - startedAt >= 0;
+    }
+
+    private void evictExpiredOrAll(long now) {
+        nearCache.values().removeIf(entry -> entry.expiresAt <= now);
+        nearTokenIndex.values().removeIf(id -> !nearCache.containsKey(id));
+        long nanos = System.nanoTime();
+        evictedAt.values().removeIf(at -> nanos - at > EVICTION_MEMORY_NANOS);
+        if (nearCache.size() >= props.getNearCacheMaxSize() || nearTokenIndex.size() >= props.getNearCacheMaxSize()) {
+            nearCache.clear();
+            nearTokenIndex.clear();
+        }
+    }
+
+    private void evict(String id) {
+        // Сначала отметка, потом удаление: параллельная загрузка увидит отметку и не вернет копию обратно.
+        // Записи индекса токенов без авторизации в nearCache — промах, их вычистит evictExpiredOrAll
+        evictedAt.put(id, System.nanoTime());
+        nearCache.remove(id);
+        if (evictedAt.size() > props.getNearCacheMaxSize()) {
+            long nanos = System.nanoTime();
+            evictedAt.values().removeIf(at -> nanos - at > EVICTION_MEMORY_NANOS);
+        }
+    }
+
+    private static void publishInvalidation(RedisConnection connection, String id) {
+        connection.publish(bytes(INVALIDATION_CHANNEL), bytes(id));
+    }
+
+    private static boolean owns(OAuth2Authorization authorization, String token) {
+        return authorization.getToken(token) != null;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String sha256(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private record CachedAuthorization(OAuth2Authorization authorization, long expiresAt) { }
+}
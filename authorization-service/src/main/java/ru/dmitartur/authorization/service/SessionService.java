@@ -2,21 +2,38 @@ package ru.dmitartur.authorization.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Сессии пользователей в Redis.
+ *
+ * Сессия — hash session:<id>, поэтому частичное обновление и продление не пересериализуют все данные.
+ * Для каждого пользователя ведется индекс user_sessions:<username> — sorted set id сессий со score,
+ * равным времени истечения (мс): подсчет и отзыв сессий пользователя работают по индексу, без SCAN.
+ * Истекшие id вычищаются из индекса при записи и при подсчете.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class SessionService {
 
     private final RedisTemplate<String, Object> redisTemplate;
-    
+
     private static final String SESSION_KEY_PREFIX = "session:";
+    private static final String USER_SESSIONS_KEY_PREFIX = "user_sessions:";
+    private static final String USERNAME_FIELD = "username";
     private static final Duration DEFAULT_SESSION_TIMEOUT = Duration.ofHours(24); // 24 часа
 
     /**
@@ -28,12 +45,17 @@ public class SessionService {
     public String createSession(String username, Map<String, Object> sessionData) {
         String sessionId = generateSessionId();
         String key = SESSION_KEY_PREFIX + sessionId;
-        
-        sessionData.put("username", username);
+
+        sessionData.put(USERNAME_FIELD, username);
         sessionData.put("createdAt", System.currentTimeMillis());
-        
-        redisTemplate.opsForValue().set(key, sessionData, DEFAULT_SESSION_TIMEOUT.toSeconds(), TimeUnit.SECONDS);
-        
+
+        long now = System.currentTimeMillis();
+        redisTemplate.executePipelined(transaction(ops -> {
+            ops.opsForHash().putAll(key, sessionData);
+            ops.expire(key, DEFAULT_SESSION_TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+            index(ops, username, sessionId, now);
+        }));
+
         log.info("Created session for user: {}, sessionId: {}", username, sessionId);
         return sessionId;
     }
@@ -43,28 +65,43 @@ public class SessionService {
      * @param sessionId ID сессии
      * @return данные сессии или null если сессия не найдена
      */
-    @SuppressWarnings("unchecked")
     public Map<String, Object> getSession(String sessionId) {
         String key = SESSION_KEY_PREFIX + sessionId;
-        Object sessionData = redisTemplate.opsForValue().get(key);
-        
-        if (sessionData != null) {
+        Map<Object, Object> sessionData = redisTemplate.opsForHash().entries(key);
+
+        if (!sessionData.isEmpty()) {
             log.debug("Retrieved session: {}", sessionId);
-            return (Map<String, Object>) sessionData;
+            Map<String, Object> result = new HashMap<>(sessionData.size());
+            sessionData.forEach((field, value) -> result.put((String) field, value));
+            return result;
         }
-        
+
         return null;
     }
 
     /**
-     * Обновляет данные сессии
+     * Обновляет данные сессии: переданные поля перезаписываются, остальные сохраняются; срок жизни продлевается
      * @param sessionId ID сессии
      * @param sessionData новые данные сессии
      */
     public void updateSession(String sessionId, Map<String, Object> sessionData) {
         String key = SESSION_KEY_PREFIX + sessionId;
-        redisTemplate.opsForValue().set(key, sessionData, DEFAULT_SESSION_TIMEOUT.toSeconds(), TimeUnit.SECONDS);
-        
+        Object username = redisTemplate.opsForHash().get(key, USERNAME_FIELD);
+        if (username == null) {
+            log.debug("Session not found for update: {}", sessionId);
+            return;
+        }
+        Map<String, Object> fields = new HashMap<>(sessionData);
+        // Владелец сессии не меняется: по нему ведется индекс
+        fields.remove(USERNAME_FIELD);
+
+        long now = System.currentTimeMillis();
+        redisTemplate.executePipelined(transaction(ops -> {
+            if (!fields.isEmpty()) ops.opsForHash().putAll(key, fields);
+            ops.expire(key, DEFAULT_SESSION_TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+            index(ops, (String) username, sessionId, now);
+        }));
+
         log.debug("Updated session: {}", sessionId);
     }
 
@@ -74,8 +111,12 @@ public class SessionService {
      */
     public void removeSession(String sessionId) {
         String key = SESSION_KEY_PREFIX + sessionId;
-        redisTemplate.delete(key);
-        
+        Object username = redisTemplate.opsForHash().get(key, USERNAME_FIELD);
+        redisTemplate.executePipelined(transaction(ops -> {
+            ops.delete(key);
+            if (username != null) ops.opsForZSet().remove(USER_SESSIONS_KEY_PREFIX + username, sessionId);
+        }));
+
         log.info("Removed session: {}", sessionId);
     }
 
@@ -85,10 +126,14 @@ public class SessionService {
      */
     public void extendSession(String sessionId) {
         String key = SESSION_KEY_PREFIX + sessionId;
-        Object sessionData = redisTemplate.opsForValue().get(key);
-        
-        if (sessionData != null) {
-            redisTemplate.expire(key, DEFAULT_SESSION_TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+        Object username = redisTemplate.opsForHash().get(key, USERNAME_FIELD);
+
+        if (username != null) {
+            long now = System.currentTimeMillis();
+            redisTemplate.executePipelined(transaction(ops -> {
+                ops.expire(key, DEFAULT_SESSION_TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+                index(ops, (String) username, sessionId, now);
+            }));
             log.debug("Extended session: {}", sessionId);
         }
     }
@@ -99,8 +144,19 @@ public class SessionService {
      * @return количество активных сессий
      */
     public long getActiveSessionsCount(String username) {
-        // Это упрощенная реализация. В реальном проекте нужно использовать SCAN
-        return 0; // Пока возвращаем 0, так как для полной реализации нужен SCAN
+        String userKey = USER_SESSIONS_KEY_PREFIX + username;
+        long now = System.currentTimeMillis();
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.opsForZSet().removeRangeByScore(userKey, Double.NEGATIVE_INFINITY, now);
+                operations.opsForZSet().zCard(userKey);
+                return null;
+            }
+        });
+        Object count = results.get(1);
+        return count instanceof Number n ? n.longValue() : 0;
     }
 
     /**
@@ -108,11 +164,50 @@ public class SessionService {
      * @param username имя пользователя
      */
     public void removeAllUserSessions(String username) {
-        // Это упрощенная реализация. В реальном проекте нужно использовать SCAN
-        log.info("Removing all sessions for user: {}", username);
+        String userKey = USER_SESSIONS_KEY_PREFIX + username;
+        Set<Object> sessionIds = redisTemplate.opsForZSet().range(userKey, 0, -1);
+        List<String> keys = new ArrayList<>();
+        if (sessionIds != null) {
+            sessionIds.forEach(id -> keys.add(SESSION_KEY_PREFIX + id));
+        }
+        keys.add(userKey);
+        redisTemplate.delete(keys);
+        log.info("Removed {} sessions for user: {}", keys.size() - 1, username);
+    }
+
+    /**
+     * Запись в индекс пользователя: score — новое время истечения; истекшие id удаляются,
+     * сам индекс живет не меньше самой свежей сессии
+     */
+    private void index(RedisOperations<String, Object> ops, String username, String sessionId, long now) {
+        String userKey = USER_SESSIONS_KEY_PREFIX + username;
+        ops.opsForZSet().add(userKey, sessionId, now + DEFAULT_SESSION_TIMEOUT.toMillis());
+        ops.opsForZSet().removeRangeByScore(userKey, Double.NEGATIVE_INFINITY, now);
+        ops.expire(userKey, DEFAULT_SESSION_TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Команды одним пакетом в MULTI/EXEC: ключ сессии и индекс меняются вместе
+     */
+    private SessionCallback<Object> transaction(SessionWrite write) {
+        return new SessionCallback<>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.multi();
+                write.apply((RedisOperations<String, Object>) operations);
+                operations.exec();
+                return null;
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface SessionWrite {
+        void apply(RedisOperations<String, Object> ops);
     }
 
     private String generateSessionId() {
         return java.util.UUID.randomUUID().toString();
     }
-} 
\ No newline at end of file
+}
@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Primary;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -20,7 +21,7 @@ import ru.dmitartur.authorization.repository.UserRepository;
 @Slf4j
 @Transactional
 @Primary
-public class UserService implements UserDetailsService {
+public class UserService implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
@@ -32,6 +33,18 @@ public class UserService implements UserDetailsService {
                 .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
     }
 
+    /**
+     * Перехеширование пароля при успешном входе, если cost хеша отличается от настроенного
+     * (вызывает DaoAuthenticationProvider, newPassword уже закодирован)
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        User user = findByUsername(userDetails.getUsername());
+        user.setPassword(newPassword);
+        log.debug("Rehashed password for user: {}", user.getUsername());
+        return userRepository.save(user);
+    }
+
     /**
      * Создать нового пользователя
      */
@@ -0,0 +1,144 @@
+package ru.dmitartur.authorization;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Нагрузочный прогон входа: clients параллельных клиентов в течение durationSeconds шлют POST /api/auth/login
+ * во встроенный сервер (Tomcat на случайном порту, поднимается здесь же) или на переданный baseUrl.
+ * Печатает входы/сек, p50/p99 задержки и разбивку по статусам — видно, сколько входов пул проверки паролей
+ * отклонил 503 и не страдают ли при этом остальные запросы.
+ *
+ * Лежит в test-исходниках и в сборку сервиса не попадает. Встроенный сервер использует Postgres и Redis
+ * из infra/docker-compose.yml; пользователь username/password должен существовать. Лимит входов на пользователя
+ * (auth.rate-limit.policies.login) на время прогона снят.
+ * <pre>
+ * mvn -pl authorization-service test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=ru.dmitartur.authorization.LoginLoadHarness \
+ *     -Dexec.args="64 30 admin password"
+ * </pre>
+ * Аргументы: клиенты, длительность в секундах, логин, пароль и необязательный baseUrl уже запущенного сервиса.
+ */
+public final class LoginLoadHarness {
+
+    private static final Logger log = LoggerFactory.getLogger(LoginLoadHarness.class);
+
+    private LoginLoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            log.error("Usage: LoginLoadHarness <clients> <durationSeconds> <username> <password> [baseUrl]");
+            return;
+        }
+        int clients = Integer.parseInt(args[0]);
+        long durationSeconds = Long.parseLong(args[1]);
+        String username = args[2];
+        String password = args[3];
+
+        ConfigurableApplicationContext context = null;
+        String baseUrl;
+        if (args.length > 4) {
+            baseUrl = args[4];
+        } else {
+            context = new SpringApplicationBuilder(AuthorizationServiceApplication.class)
+                    .properties("server.port=0", "auth.rate-limit.policies.login.limit=1000000000")
+                    .run();
+            baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+
+        try {
+            run(baseUrl, clients, durationSeconds, username, password);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    private static void run(String baseUrl, int clients, long durationSeconds, String username, String password)
+            throws InterruptedException {
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        String form = "username=" + URLEncoder.encode(username, StandardCharsets.UTF_8)
+                + "&password=" + URLEncoder.encode(password, StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/auth/login"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+
+        ConcurrentHashMap<Integer, AtomicInteger> statuses = new ConcurrentHashMap<>();
+        List<Samples> perClient = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        for (int c = 0; c < clients; c++) {
+            Samples samples = new Samples();
+            perClient.add(samples);
+            pool.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    long startedAt = System.nanoTime();
+                    int status;
+                    try {
+                        status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    } catch (Exception e) {
+                        status = -1;
+                    }
+                    samples.add(System.nanoTime() - startedAt);
+                    statuses.computeIfAbsent(status, k -> new AtomicInteger()).incrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(durationSeconds + 60, TimeUnit.SECONDS);
+
+        long[] all = perClient.stream()
+                .flatMapToLong(samples -> Arrays.stream(samples.values, 0, samples.size))
+                .sorted()
+                .toArray();
+        int total = statuses.values().stream().mapToInt(AtomicInteger::get).sum();
+        log.info("Login load: clients={}, durationSec={}, requests={}, rps={}, p50={}ms, p99={}ms, statuses={}",
+                clients, durationSeconds, total, total / Math.max(1, durationSeconds),
+                percentileMillis(all, 0.50), percentileMillis(all, 0.99), statuses);
+    }
+
+    private static double percentileMillis(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+
+    /**
+     * Задержки одного клиента; пишет только его поток, читается после awaitTermination
+     */
+    private static final class Samples {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+    }
+}
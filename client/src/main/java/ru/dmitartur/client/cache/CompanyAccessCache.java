@@ -0,0 +1,169 @@
+package ru.dmitartur.client.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Read-through индекс доступа (userId, companyId) -> роль пользователя в компании.
+ *
+ * Проверка доступа идет на каждый запрос к компании (включая загрузку аватара); здесь она не ходит в БД,
+ * пока запись жива. Кэшируется только наличие связи — отказ всегда перепроверяется по БД, поэтому новый
+ * участник получает доступ сразу. Записи компании сбрасываются при изменении состава участников и удалении.
+ *
+ * Внутри HTTP-запроса результат дополнительно запоминается в атрибутах запроса: повторные проверки
+ * той же компании в одном запросе не трогают даже общий кэш.
+ */
+@Slf4j
+@Component
+public class CompanyAccessCache {
+
+    private static final String REQUEST_ATTRIBUTE = CompanyAccessCache.class.getName() + ".roles";
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Counter hits;
+    private final Counter misses;
+
+    public CompanyAccessCache(MeterRegistry meterRegistry,
+                              @Value("${company.access-cache.max-size:50000}") int maxSize,
+                              @Value("${company.access-cache.ttl-minutes:10}") long ttlMinutes) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMinutes * 60_000L;
+        this.hits = Counter.builder("company_access_cache_total")
+                .description("Company access cache requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("company_access_cache_total")
+                .description("Company access cache requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("company_access_cache_size", entries, ConcurrentHashMap::size)
+                .description("Company access cache entries")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Роль пользователя в компании из кэша или через loader; пусто — доступа нет
+     */
+    public Optional<String> getRole(UUID userId, UUID companyId, Supplier<Optional<String>> loader) {
+        Key key = new Key(userId, companyId);
+        Map<Key, String> requestRoles = requestRoles();
+        if (requestRoles != null && requestRoles.containsKey(key)) {
+            return Optional.of(requestRoles.get(key));
+        }
+
+        long now = System.currentTimeMillis();
+        Entry cached = entries.get(key);
+        if (cached != null && cached.expiresAt > now) {
+            hits.increment();
+            remember(requestRoles, key, cached.role);
+            return Optional.of(cached.role);
+        }
+
+        misses.increment();
+        Optional<String> loaded = loader.get();
+        loaded.ifPresent(role -> {
+            put(key, role, now);
+            remember(requestRoles, key, role);
+        });
+        return loaded;
+    }
+
+    /**
+     * Заполнить индекс ролями, уже полученными вместе со списком компаний пользователя
+     */
+    public void putAll(UUID userId, Map<UUID, String> rolesByCompany) {
+        long now = System.currentTimeMillis();
+        Map<Key, String> requestRoles = requestRoles();
+        rolesByCompany.forEach((companyId, role) -> {
+            Key key = new Key(userId, companyId);
+            put(key, role, now);
+            remember(requestRoles, key, role);
+        });
+    }
+
+    /**
+     * Сбросить записи всех участников компании. Внутри транзакции сброс повторяется после commit,
+     * чтобы конкурентное чтение не вернуло в кэш состояние до изменения.
+     */
+    public void invalidateCompany(UUID companyId) {
+        if (companyId == null) {
+            return;
+        }
+        removeCompany(companyId);
+        Map<Key, String> requestRoles = requestRoles();
+        if (requestRoles != null) {
+            requestRoles.keySet().removeIf(key -> companyId.equals(key.companyId()));
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removeCompany(companyId);
+                }
+            });
+        }
+    }
+
+    private void put(Key key, String role, long now) {
+        if (entries.size() >= maxSize) {
+            evictExpiredOrAll(now);
+        }
+        entries.put(key, new Entry(role, now + ttlMillis));
+    }
+
+    private void removeCompany(UUID companyId) {
+        int before = entries.size();
+        entries.keySet().removeIf(key -> companyId.equals(key.companyId()));
+        log.debug("🧹 Company access cache invalidated for company {}: {} -> {} entries",
+                companyId, before, entries.size());
+    }
+
+    private void evictExpiredOrAll(long now) {
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+        if (entries.size() >= maxSize) {
+            log.debug("🧹 Company access cache is full ({}), clearing", entries.size());
+            entries.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Key, String> requestRoles() {
+        RequestAttributes attrs = RequestContextHolder.getRequestAttributes();
+        if (attrs == null) {
+            return null;
+        }
+        Object roles = attrs.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (roles == null) {
+            roles = new HashMap<Key, String>();
+            attrs.setAttribute(REQUEST_ATTRIBUTE, roles, RequestAttributes.SCOPE_REQUEST);
+        }
+        return (Map<Key, String>) roles;
+    }
+
+    private static void remember(Map<Key, String> requestRoles, Key key, String role) {
+        if (requestRoles != null) {
+            requestRoles.put(key, role);
+        }
+    }
+
+    private record Key(UUID userId, UUID companyId) {}
+
+    private record Entry(String role, long expiresAt) {}
+}
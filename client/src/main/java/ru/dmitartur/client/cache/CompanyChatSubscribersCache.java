@@ -0,0 +1,116 @@
+package ru.dmitartur.client.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Read-through индекс companyId -> Telegram-чаты участников компании для уведомлений о заказах.
+ *
+ * Событие заказа рассылается только подписчикам своей компании, а сам список подписчиков
+ * не запрашивается из БД на каждое событие. Кэшируется и пустой список: компаний без чатов большинство.
+ * Записи компании сбрасываются при изменении состава участников, весь индекс — при регистрации
+ * Telegram-клиента (email чата может относиться к любой компании); смену email в профиле покрывает TTL.
+ */
+@Slf4j
+@Component
+public class CompanyChatSubscribersCache {
+
+    private final ConcurrentHashMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Counter hits;
+    private final Counter misses;
+
+    public CompanyChatSubscribersCache(MeterRegistry meterRegistry,
+                                       @Value("${telegram.notifications.subscribers-cache.max-size:10000}") int maxSize,
+                                       @Value("${telegram.notifications.subscribers-cache.ttl-minutes:5}") long ttlMinutes) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMinutes * 60_000L;
+        this.hits = Counter.builder("company_chat_subscribers_cache_total")
+                .description("Company chat subscribers cache requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("company_chat_subscribers_cache_total")
+                .description("Company chat subscribers cache requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("company_chat_subscribers_cache_size", entries, ConcurrentHashMap::size)
+                .description("Company chat subscribers cache entries")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Подписчики компании из кэша или через loader
+     */
+    public List<ChatSubscriber> get(UUID companyId, Supplier<List<ChatSubscriber>> loader) {
+        long now = System.currentTimeMillis();
+        Entry cached = entries.get(companyId);
+        if (cached != null && cached.expiresAt > now) {
+            hits.increment();
+            return cached.subscribers;
+        }
+
+        misses.increment();
+        List<ChatSubscriber> loaded = List.copyOf(loader.get());
+        if (entries.size() >= maxSize) {
+            evictExpiredOrAll(now);
+        }
+        entries.put(companyId, new Entry(loaded, now + ttlMillis));
+        return loaded;
+    }
+
+    /**
+     * Сбросить подписчиков компании. Внутри транзакции сброс повторяется после commit,
+     * чтобы конкурентное чтение не вернуло в кэш состояние до изменения.
+     */
+    public void invalidateCompany(UUID companyId) {
+        if (companyId == null) {
+            return;
+        }
+        entries.remove(companyId);
+        afterCommit(() -> entries.remove(companyId));
+    }
+
+    /**
+     * Сбросить весь индекс
+     */
+    public void invalidateAll() {
+        entries.clear();
+        afterCommit(entries::clear);
+        log.debug("🧹 Company chat subscribers cache cleared");
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    private void evictExpiredOrAll(long now) {
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+        if (entries.size() >= maxSize) {
+            log.debug("🧹 Company chat subscribers cache is full ({}), clearing", entries.size());
+            entries.clear();
+        }
+    }
+
+    public record ChatSubscriber(long chatId, String botId) {}
+
+    private record Entry(List<ChatSubscriber> subscribers, long expiresAt) {}
+}
@@ -1,32 +1,84 @@
 package ru.dmitartur.client.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
-import ru.dmitartur.client.service.CompanyService;
+import ru.dmitartur.client.entity.CompanyAvatar;
+import ru.dmitartur.client.repository.CompanyAvatarRepository.AvatarMeta;
+import ru.dmitartur.client.service.CompanyAvatarService;
 
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.UUID;
 
+/**
+ * Аватар компании: variant=original|thumb.
+ *
+ * Ответ несет ETag (SHA-256 содержимого); при совпадении If-None-Match отдается 304 без чтения блоба.
+ * Если v в запросе равен текущему company.avatarHash, URL уникален для версии аватара и кэшируется браузером
+ * надолго как immutable. Без v или с устаревшим v (старая ссылка после смены аватара) браузер перепроверяет
+ * копию по ETag — иначе под старым URL навсегда закэшировалось бы чужое для него содержимое.
+ */
 @RestController
 @RequestMapping("/api/companies/{companyId}/avatar")
 @RequiredArgsConstructor
 public class CompanyAvatarController {
-    private final CompanyService companyService;
+    private static final CacheControl VERSIONED = CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable();
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
+    private final CompanyAvatarService companyAvatarService;
 
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<Void> upload(@PathVariable("companyId") UUID companyId, @RequestPart("file") MultipartFile file) throws Exception {
-        companyService.uploadAvatar(companyId, file.getBytes());
+        companyAvatarService.uploadAvatar(companyId, file.getBytes());
         return ResponseEntity.noContent().build();
     }
 
-    @GetMapping(produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
-    public ResponseEntity<byte[]> download(@PathVariable("companyId") UUID companyId) {
-        byte[] avatar = companyService.getAvatar(companyId);
-        return ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM).body(avatar);
-    }
-}
+    @GetMapping
+    public ResponseEntity<Resource> download(@PathVariable("companyId") UUID companyId,
+                                             @RequestParam(value = "variant", defaultValue = CompanyAvatarService.ORIGINAL) String variant,
+                                             @RequestParam(value = "v", required = false) String version,
+                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (!CompanyAvatarService.ORIGINAL.equals(variant) && !CompanyAvatarService.THUMB.equals(variant)) {
+            return ResponseEntity.badRequest().build();
+        }
+        AvatarMeta meta = companyAvatarService.getAvatarMeta(companyId, variant).orElse(null);
+        if (meta == null) {
+            return ResponseEntity.notFound().build();
+        }
 
+        String etag = "\"" + meta.getContentHash() + "\"";
+        CacheControl cacheControl = version != null && version.equals(meta.getAvatarHash()) ? VERSIONED : REVALIDATE;
+        if (matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
 
+        CompanyAvatar avatar = companyAvatarService.getAvatar(companyId, variant).orElse(null);
+        if (avatar == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .eTag("\"" + avatar.getContentHash() + "\"")
+                .cacheControl(cacheControl)
+                .contentType(MediaType.parseMediaType(avatar.getContentType()))
+                .contentLength(avatar.getSizeBytes())
+                .body(new ByteArrayResource(avatar.getData()));
+    }
 
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                .anyMatch(tag -> tag.equals(etag) || tag.equals("*"));
+    }
+}
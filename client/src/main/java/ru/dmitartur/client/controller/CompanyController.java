@@ -7,6 +7,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import ru.dmitartur.common.utils.JwtUtil;
 import ru.dmitartur.client.entity.Company;
+import ru.dmitartur.client.service.CompanyAvatarService;
 import ru.dmitartur.client.service.CompanyService;
 
 import java.net.URI;
@@ -18,6 +19,7 @@ import java.util.*;
 public class CompanyController {
 
     private final CompanyService companyService;
+    private final CompanyAvatarService companyAvatarService;
 
     @GetMapping
     public ResponseEntity<List<Company>> listMine() {
@@ -56,7 +58,7 @@ public class CompanyController {
     @PostMapping("/{id}/avatar")
     public ResponseEntity<Map<String, String>> uploadAvatar(@PathVariable("id") UUID id, @RequestParam("file") MultipartFile file) {
         try {
-            companyService.uploadAvatar(id, file.getBytes());
+            companyAvatarService.uploadAvatar(id, file.getBytes());
             Map<String, String> response = new HashMap<>();
             response.put("message", "Avatar uploaded successfully");
             return ResponseEntity.ok(response);
@@ -21,10 +21,12 @@ public class Company {
     @Column(name = "name", nullable = false, unique = true)
     private String name;
 
-    @Lob
-    @Column(columnDefinition = "BYTEA")
-    @org.hibernate.annotations.JdbcTypeCode(java.sql.Types.BINARY)
-    private byte[] avatar;
+    /**
+     * SHA-256 текущего аватара (сам аватар — в company_avatar); null — аватара нет.
+     * Клиент добавляет его к URL аватара как версию, чтобы кэшировать надолго
+     */
+    @Column(name = "avatar_hash")
+    private String avatarHash;
 
     @Column(name = "note")
     private String note;
@@ -0,0 +1,47 @@
+package ru.dmitartur.client.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Блоб аватара компании. На компанию — по строке на вариант (original, thumb);
+ * content_hash (SHA-256) служит ETag, а хэш оригинала хранится в company.avatar_hash как версия аватара.
+ */
+@Setter
+@Getter
+@Entity
+@Table(name = "company_avatar", schema = "client",
+       uniqueConstraints = @UniqueConstraint(name = "uq_company_avatar_variant", columnNames = {"company_id", "variant"}))
+public class CompanyAvatar {
+    @Id
+    @Column(name = "id")
+    private UUID id;
+
+    @Column(name = "company_id", nullable = false)
+    private UUID companyId;
+
+    @Column(name = "variant", nullable = false)
+    private String variant;
+
+    @Column(name = "content_hash", nullable = false)
+    private String contentHash;
+
+    @Column(name = "content_type", nullable = false)
+    private String contentType;
+
+    @Column(name = "size_bytes", nullable = false)
+    private int sizeBytes;
+
+    @Column(name = "data", nullable = false, columnDefinition = "BYTEA")
+    @org.hibernate.annotations.JdbcTypeCode(java.sql.Types.BINARY)
+    private byte[] data;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
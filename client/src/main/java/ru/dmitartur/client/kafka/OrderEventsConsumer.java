@@ -6,14 +6,14 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
-import ru.dmitartur.client.repository.TelegramClientRepository;
-import ru.dmitartur.client.kafka.TelegramOutgoingProducer;
+import ru.dmitartur.client.service.OrderNotificationService;
+import ru.dmitartur.client.service.OrderNotificationService.OrderNotice;
 import ru.dmitartur.common.events.EventType;
 
-import java.util.List;
+import java.util.UUID;
 
 /**
- * Consumer для обработки событий заказов и отправки уведомлений в Telegram
+ * Consumer для обработки событий заказов и отправки уведомлений в Telegram участникам компании заказа
  */
 @Slf4j
 @Component
@@ -21,8 +21,7 @@ import java.util.List;
 public class OrderEventsConsumer {
 
     private final ObjectMapper objectMapper;
-    private final TelegramClientRepository telegramClientRepository;
-    private final TelegramOutgoingProducer telegramOutgoingProducer;
+    private final OrderNotificationService orderNotificationService;
 
     @KafkaListener(topics = ru.dmitartur.common.kafka.KafkaTopics.ORDER_EVENTS_TOPIC, groupId = "telegram-notifications")
     public void onOrderEvent(String message) {
@@ -65,49 +64,36 @@ public class OrderEventsConsumer {
             log.info("📦 Processing order event: type={}, postingNumber={}, source={}, name={}, totalPrice={}", 
                     eventType, postingNumber, source, orderName, totalPrice);
 
-            // Получаем всех активных пользователей для отправки уведомлений
-            List<ru.dmitartur.client.entity.TelegramClient> clients = telegramClientRepository.findAll();
-
-            ru.dmitartur.common.events.EventType type = ru.dmitartur.common.events.EventType.from(eventType);
-            if (type == null) {
+            EventType type = EventType.from(eventType);
+            if (type != EventType.ORDER_CREATED && type != EventType.ORDER_CANCELLED) {
                 log.warn("⚠️ Unknown order event type: {}", eventType);
                 return;
             }
-            switch (type) {
-                case ORDER_CREATED:
-                    for (var client : clients) {
-                        telegramOutgoingProducer.sendOrderCreated(
-                                client.getChatId(), 
-                                client.getBotId(), 
-                                postingNumber, 
-                                source,
-                                orderName,
-                                totalPrice
-                        );
-                    }
-                    log.info("✅ Sent ORDER_CREATED notifications to {} clients", clients.size());
-                    break;
-
-                case ORDER_CANCELLED:
-                    for (var client : clients) {
-                        telegramOutgoingProducer.sendOrderCancelled(
-                                client.getChatId(), 
-                                client.getBotId(), 
-                                postingNumber, 
-                                source,
-                                orderName,
-                                totalPrice
-                        );
-                    }
-                    log.info("✅ Sent ORDER_CANCELLED notifications to {} clients", clients.size());
-                    break;
 
-                default:
-                    log.warn("⚠️ Unknown order event type: {}", eventType);
+            // Уведомляем только участников компании заказа
+            UUID companyId = parseCompanyId(event.path("companyId").asText(""));
+            if (companyId == null) {
+                log.warn("⚠️ Order event {} has no companyId, notification skipped", postingNumber);
+                return;
             }
 
+            int chats = orderNotificationService.notify(companyId, type,
+                    new OrderNotice(postingNumber, source, orderName, totalPrice));
+            log.info("✅ {} notification for company {} queued to {} chats", type, companyId, chats);
+
         } catch (Exception e) {
             log.error("❌ Failed to process order event", e);
         }
     }
+
+    private static UUID parseCompanyId(String value) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
 }
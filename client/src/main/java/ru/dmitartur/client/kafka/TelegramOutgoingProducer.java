@@ -1,12 +1,27 @@
 package ru.dmitartur.client.kafka;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRawValue;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Component;
+import ru.dmitartur.client.cache.CompanyChatSubscribersCache.ChatSubscriber;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Сообщения в telegram.outgoing: {"chat_id", "bot_id", "body": {"template", "params"}}.
+ *
+ * Сообщение сериализуется напрямую из record-ов, без промежуточного дерева ObjectNode.
+ * При рассылке одного сообщения нескольким чатам params сериализуются один раз и вставляются как есть.
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
@@ -19,135 +34,100 @@ public class TelegramOutgoingProducer {
     private String telegramOutgoingTopic;
 
     public void sendWelcomeMessage(long chatId, String botId, String firstName) {
-        try {
-            String payload = objectMapper.createObjectNode()
-                    .put("chat_id", chatId)
-                    .put("bot_id", botId)
-                    .set("body", objectMapper.createObjectNode()
-                            .put("template", "welcome")
-                            .set("params", objectMapper.createObjectNode().put("first_name", firstName)))
-                    .toString();
-            kafkaTemplate.send(telegramOutgoingTopic, String.valueOf(chatId), payload);
-        } catch (Exception e) {
-            log.error("Failed to send welcome message", e);
-        }
+        sendMessage(chatId, botId, "welcome", Collections.singletonMap("first_name", firstName));
     }
 
     public void sendWelcomeBackMessage(long chatId, String botId, String firstName) {
-        try {
-            String payload = objectMapper.createObjectNode()
-                    .put("chat_id", chatId)
-                    .put("bot_id", botId)
-                    .set("body", objectMapper.createObjectNode()
-                            .put("template", "welcome_back")
-                            .set("params", objectMapper.createObjectNode().put("first_name", firstName)))
-                    .toString();
-            kafkaTemplate.send(telegramOutgoingTopic, String.valueOf(chatId), payload);
-        } catch (Exception e) {
-            log.error("Failed to send welcome back message", e);
-        }
+        sendMessage(chatId, botId, "welcome_back", Collections.singletonMap("first_name", firstName));
     }
 
     public void sendUserRegistered(long chatId, String botId, String firstName) {
-        try {
-            String payload = objectMapper.createObjectNode()
-                    .put("chat_id", chatId)
-                    .put("bot_id", botId)
-                    .set("body", objectMapper.createObjectNode()
-                            .put("template", "user.registered")
-                            .set("params", objectMapper.createObjectNode().put("first_name", firstName)))
-                    .toString();
-            kafkaTemplate.send(telegramOutgoingTopic, String.valueOf(chatId), payload);
-        } catch (Exception e) {
-            log.error("Failed to send user.registered message", e);
-        }
+        sendMessage(chatId, botId, "user.registered", Collections.singletonMap("first_name", firstName));
     }
 
     public void sendSubscriptionActivated(long chatId, String botId) {
-        try {
-            String payload = objectMapper.createObjectNode()
-                    .put("chat_id", chatId)
-                    .put("bot_id", botId)
-                    .set("body", objectMapper.createObjectNode()
-                            .put("template", "subscription.activated")
-                            .set("params", objectMapper.createObjectNode()))
-                    .toString();
-            kafkaTemplate.send(telegramOutgoingTopic, String.valueOf(chatId), payload);
-        } catch (Exception e) {
-            log.error("Failed to send subscription.activated message", e);
-        }
+        sendMessage(chatId, botId, "subscription.activated", Map.of());
     }
 
     public void sendSubscriptionExpired(long chatId, String botId) {
-        try {
-            String payload = objectMapper.createObjectNode()
-                    .put("chat_id", chatId)
-                    .put("bot_id", botId)
-                    .set("body", objectMapper.createObjectNode()
-                            .put("template", "subscription.expired")
-                            .set("params", objectMapper.createObjectNode()))
-                    .toString();
-            kafkaTemplate.send(telegramOutgoingTopic, String.valueOf(chatId), payload);
-        } catch (Exception e) {
-            log.error("Failed to send subscription.expired message", e);
-        }
+        sendMessage(chatId, botId, "subscription.expired", Map.of());
     }
 
     public void sendOrderCreated(long chatId, String botId, String postingNumber, String source, String orderName, String totalPrice) {
+        sendMessage(chatId, botId, "order.created", orderParams(postingNumber, source, orderName, totalPrice));
+    }
+
+    public void sendOrderCancelled(long chatId, String botId, String postingNumber, String source, String orderName, String totalPrice) {
+        sendMessage(chatId, botId, "order.cancelled", orderParams(postingNumber, source, orderName, totalPrice));
+    }
+
+    /**
+     * Параметры шаблонов order.created / order.cancelled
+     */
+    public static Map<String, Object> orderParams(String postingNumber, String source, String orderName, String totalPrice) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("posting_number", postingNumber);
+        params.put("source", source);
+        params.put("order_name", orderName);
+        params.put("total_price", totalPrice);
+        return params;
+    }
+
+    /**
+     * Generic method to send any message to Telegram
+     */
+    public void sendMessage(long chatId, String botId, String template, Object params) {
         try {
-            String payload = objectMapper.createObjectNode()
-                    .put("chat_id", chatId)
-                    .put("bot_id", botId)
-                    .set("body", objectMapper.createObjectNode()
-                            .put("template", "order.created")
-                            .set("params", objectMapper.createObjectNode()
-                                    .put("posting_number", postingNumber)
-                                    .put("source", source)
-                                    .put("order_name", orderName)
-                                    .put("total_price", totalPrice)))
-                    .toString();
-            kafkaTemplate.send(telegramOutgoingTopic, String.valueOf(chatId), payload);
+            send(chatId, botId, template, objectMapper.writeValueAsString(params));
         } catch (Exception e) {
-            log.error("Failed to send order.created message", e);
+            log.error("Failed to send message with template: {}", template, e);
         }
     }
 
-    public void sendOrderCancelled(long chatId, String botId, String postingNumber, String source, String orderName, String totalPrice) {
+    /**
+     * Отправка без перехвата ошибок: future завершается подтверждением Kafka,
+     * ошибка сериализации или отправки уходит вызывающему
+     */
+    public CompletableFuture<?> sendMessageAcked(long chatId, String botId, String template, Object params) {
         try {
-            String payload = objectMapper.createObjectNode()
-                    .put("chat_id", chatId)
-                    .put("bot_id", botId)
-                    .set("body", objectMapper.createObjectNode()
-                            .put("template", "order.cancelled")
-                            .set("params", objectMapper.createObjectNode()
-                                    .put("posting_number", postingNumber)
-                                    .put("source", source)
-                                    .put("order_name", orderName)
-                                    .put("total_price", totalPrice)))
-                    .toString();
-            kafkaTemplate.send(telegramOutgoingTopic, String.valueOf(chatId), payload);
+            return send(chatId, botId, template, objectMapper.writeValueAsString(params));
         } catch (Exception e) {
-            log.error("Failed to send order.cancelled message", e);
+            return CompletableFuture.failedFuture(e);
         }
     }
 
     /**
-     * Generic method to send any message to Telegram
+     * Одно сообщение нескольким чатам: params сериализуются один раз на всю рассылку
      */
-    public void sendMessage(long chatId, String botId, String template, Object params) {
+    public void sendToAll(Collection<ChatSubscriber> subscribers, String template, Object params) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        String paramsJson;
         try {
-            String payload = objectMapper.createObjectNode()
-                    .put("chat_id", chatId)
-                    .put("bot_id", botId)
-                    .set("body", objectMapper.createObjectNode()
-                            .put("template", template)
-                            .set("params", objectMapper.valueToTree(params)))
-                    .toString();
-            kafkaTemplate.send(telegramOutgoingTopic, String.valueOf(chatId), payload);
+            paramsJson = objectMapper.writeValueAsString(params);
         } catch (Exception e) {
-            log.error("Failed to send message with template: {}", template, e);
+            log.error("Failed to serialize params for template: {}", template, e);
+            return;
+        }
+        for (ChatSubscriber subscriber : subscribers) {
+            try {
+                send(subscriber.chatId(), subscriber.botId(), template, paramsJson);
+            } catch (Exception e) {
+                log.error("Failed to send message with template: {} to chat {}", template, subscriber.chatId(), e);
+            }
         }
     }
-}
 
+    private CompletableFuture<?> send(long chatId, String botId, String template, String paramsJson) throws Exception {
+        String payload = objectMapper.writeValueAsString(new OutgoingMessage(chatId, botId, new Body(template, paramsJson)));
+        return kafkaTemplate.send(telegramOutgoingTopic, String.valueOf(chatId), payload);
+    }
 
+    record OutgoingMessage(@JsonProperty("chat_id") long chatId,
+                           @JsonProperty("bot_id") String botId,
+                           @JsonProperty("body") Body body) {}
+
+    record Body(@JsonProperty("template") String template,
+                @JsonProperty("params") @JsonRawValue String params) {}
+}
@@ -2,6 +2,7 @@ package ru.dmitartur.client.mapper;
 
 import org.mapstruct.BeanMapping;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import org.mapstruct.MappingTarget;
 import org.mapstruct.NullValuePropertyMappingStrategy;
 import ru.dmitartur.client.entity.Company;
@@ -10,6 +11,7 @@ import ru.dmitartur.client.entity.Company;
 public interface CompanyMapper {
 
     @BeanMapping(nullValuePropertyMappingStrategy = NullValuePropertyMappingStrategy.IGNORE)
+    @Mapping(target = "avatarHash", ignore = true)
     void update(@MappingTarget Company target, Company patch);
 }
 
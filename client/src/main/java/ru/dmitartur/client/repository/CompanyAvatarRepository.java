@@ -0,0 +1,51 @@
+package ru.dmitartur.client.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.dmitartur.client.entity.CompanyAvatar;
+
+import java.util.Optional;
+import java.util.UUID;
+
+public interface CompanyAvatarRepository extends JpaRepository<CompanyAvatar, UUID> {
+
+    /**
+     * Метаданные варианта без чтения самих байтов — для ответа 304; avatarHash — текущая версия аватара компании
+     */
+    @Query("select a.contentHash as contentHash, a.contentType as contentType, a.sizeBytes as sizeBytes, " +
+           "c.avatarHash as avatarHash " +
+           "from CompanyAvatar a, Company c where c.id = a.companyId and a.companyId = :companyId and a.variant = :variant")
+    Optional<AvatarMeta> findMeta(@Param("companyId") UUID companyId, @Param("variant") String variant);
+
+    Optional<CompanyAvatar> findByCompanyIdAndVariant(UUID companyId, String variant);
+
+    @Modifying
+    @Query("delete from CompanyAvatar a where a.companyId = :companyId")
+    void deleteByCompanyId(@Param("companyId") UUID companyId);
+
+    /**
+     * Вставить вариант, если его еще нет; параллельная вставка того же варианта не падает на uq_company_avatar_variant
+     * @return 1 — вставлен, 0 — вариант уже был
+     */
+    @Modifying
+    @Query(value = "INSERT INTO client.company_avatar (id, company_id, variant, content_hash, content_type, size_bytes, data) " +
+                   "VALUES (:id, :companyId, :variant, :contentHash, :contentType, :sizeBytes, :data) " +
+                   "ON CONFLICT (company_id, variant) DO NOTHING",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("id") UUID id,
+                       @Param("companyId") UUID companyId,
+                       @Param("variant") String variant,
+                       @Param("contentHash") String contentHash,
+                       @Param("contentType") String contentType,
+                       @Param("sizeBytes") int sizeBytes,
+                       @Param("data") byte[] data);
+
+    interface AvatarMeta {
+        String getContentHash();
+        String getContentType();
+        int getSizeBytes();
+        String getAvatarHash();
+    }
+}
@@ -1,13 +1,19 @@
 package ru.dmitartur.client.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import ru.dmitartur.client.entity.Company;
 
+import java.util.List;
 import java.util.UUID;
 
 public interface CompanyRepository extends JpaRepository<Company, UUID> {
-}
-
-
-
 
+    /**
+     * Компании пользователя вместе с его ролью в каждой — одним запросом
+     * @return строки [Company, String role]
+     */
+    @Query("select c, uc.role from Company c join UserCompany uc on uc.companyId = c.id where uc.userId = :userId")
+    List<Object[]> findAllWithRoleByUserId(@Param("userId") UUID userId);
+}
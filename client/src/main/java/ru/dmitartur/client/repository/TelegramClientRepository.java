@@ -1,9 +1,22 @@
 package ru.dmitartur.client.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.dmitartur.client.entity.TelegramClient;
 
+import java.util.List;
+import java.util.UUID;
+
 @Repository
 public interface TelegramClientRepository extends JpaRepository<TelegramClient, Long> {
-} 
\ No newline at end of file
+
+    /**
+     * Telegram-чаты участников компании: пользователь сервиса и чат связаны по email
+     */
+    @Query("select t from TelegramClient t where lower(t.email) in (" +
+           "select lower(u.email) from ClientUser u join UserCompany uc on uc.userId = u.id " +
+           "where uc.companyId = :companyId)")
+    List<TelegramClient> findCompanySubscribers(@Param("companyId") UUID companyId);
+}
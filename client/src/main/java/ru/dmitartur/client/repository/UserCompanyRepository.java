@@ -1,15 +1,21 @@
 package ru.dmitartur.client.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import ru.dmitartur.client.entity.UserCompany;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface UserCompanyRepository extends JpaRepository<UserCompany, Long> {
     List<UserCompany> findByUserId(java.util.UUID userId);
     boolean existsByUserIdAndCompanyId(java.util.UUID userId, java.util.UUID companyId);
     List<UserCompany> findByCompanyIdIn(Collection<java.util.UUID> companyIds);
+
+    @Query("select uc.role from UserCompany uc where uc.userId = :userId and uc.companyId = :companyId")
+    Optional<String> findRole(@Param("userId") java.util.UUID userId, @Param("companyId") java.util.UUID companyId);
 }
 
 
@@ -0,0 +1,195 @@
+package ru.dmitartur.client.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.dmitartur.client.entity.Company;
+import ru.dmitartur.client.entity.CompanyAvatar;
+import ru.dmitartur.client.repository.CompanyAvatarRepository;
+import ru.dmitartur.client.repository.CompanyAvatarRepository.AvatarMeta;
+import ru.dmitartur.client.repository.CompanyRepository;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Аватары компаний: блобы в company_avatar с SHA-256 содержимого.
+ *
+ * На загрузку сохраняются два варианта: original и thumb (вписан в THUMB_SIZE, PNG) для списков.
+ * Если изображение не удалось разобрать или оно уже маленькое, thumb — копия оригинала.
+ * Для аватаров, перенесенных миграцией без thumb, он создается при первом запросе; параллельные первые
+ * запросы вставляют его через ON CONFLICT DO NOTHING и читают тот вариант, что оказался в таблице.
+ */
+@Slf4j
+@Service
+@Transactional
+@RequiredArgsConstructor
+public class CompanyAvatarService {
+
+    public static final String ORIGINAL = "original";
+    public static final String THUMB = "thumb";
+
+    private static final int THUMB_SIZE = 128;
+    // Больше не декодируем: защита от изображений-бомб с огромными размерами при малом файле
+    private static final long MAX_DECODE_PIXELS = 40_000_000L;
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    private final CompanyService companyService;
+    private final CompanyRepository companyRepository;
+    private final CompanyAvatarRepository avatarRepository;
+
+    public void uploadAvatar(UUID companyId, byte[] bytes) {
+        companyService.ensureAccess(companyId);
+        Company company = companyRepository.findById(companyId).orElseThrow();
+        String hash = sha256(bytes);
+        if (hash.equals(company.getAvatarHash())) {
+            log.debug("Avatar of company {} is unchanged", companyId);
+            return;
+        }
+
+        avatarRepository.deleteByCompanyId(companyId);
+        avatarRepository.flush();
+        avatarRepository.save(blob(companyId, ORIGINAL, bytes, detectContentType(bytes)));
+        avatarRepository.save(thumbnailOf(companyId, bytes));
+
+        company.setAvatarHash(hash);
+        companyRepository.save(company);
+        log.info("🖼️ Avatar of company {} updated: {} bytes, hash {}", companyId, bytes.length, hash);
+    }
+
+    /**
+     * Метаданные варианта (хэш, тип, размер) без чтения байтов; пусто — аватара нет
+     */
+    public Optional<AvatarMeta> getAvatarMeta(UUID companyId, String variant) {
+        companyService.ensureAccess(companyId);
+        Optional<AvatarMeta> meta = avatarRepository.findMeta(companyId, variant);
+        if (meta.isEmpty() && THUMB.equals(variant) && createMissingThumbnail(companyId)) {
+            return avatarRepository.findMeta(companyId, THUMB);
+        }
+        return meta;
+    }
+
+    /**
+     * Сам блоб варианта; вызывается только когда у клиента нет актуальной копии
+     */
+    @Transactional(readOnly = true)
+    public Optional<CompanyAvatar> getAvatar(UUID companyId, String variant) {
+        companyService.ensureAccess(companyId);
+        return avatarRepository.findByCompanyIdAndVariant(companyId, variant);
+    }
+
+    /**
+     * @return false — у компании нет и оригинала
+     */
+    private boolean createMissingThumbnail(UUID companyId) {
+        return avatarRepository.findByCompanyIdAndVariant(companyId, ORIGINAL)
+                .map(original -> {
+                    CompanyAvatar thumb = thumbnailOf(companyId, original.getData());
+                    int inserted = avatarRepository.insertIfAbsent(thumb.getId(), companyId, THUMB, thumb.getContentHash(),
+                            thumb.getContentType(), thumb.getSizeBytes(), thumb.getData());
+                    if (inserted == 0) {
+                        log.debug("Thumbnail of company {} was created concurrently", companyId);
+                    }
+                    return true;
+                })
+                .orElse(false);
+    }
+
+    private CompanyAvatar thumbnailOf(UUID companyId, byte[] original) {
+        byte[] thumbnail = resize(original);
+        return thumbnail != null
+                ? blob(companyId, THUMB, thumbnail, "image/png")
+                : blob(companyId, THUMB, original, detectContentType(original));
+    }
+
+    private static CompanyAvatar blob(UUID companyId, String variant, byte[] data, String contentType) {
+        CompanyAvatar avatar = new CompanyAvatar();
+        avatar.setId(UUID.randomUUID());
+        avatar.setCompanyId(companyId);
+        avatar.setVariant(variant);
+        avatar.setContentHash(sha256(data));
+        avatar.setContentType(contentType);
+        avatar.setSizeBytes(data.length);
+        avatar.setData(data);
+        return avatar;
+    }
+
+    /**
+     * Уменьшенная копия, вписанная в THUMB_SIZE; null — если уменьшать не нужно или формат не поддерживается
+     */
+    private static byte[] resize(byte[] bytes) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((width <= THUMB_SIZE && height <= THUMB_SIZE) || (long) width * height > MAX_DECODE_PIXELS) {
+                    return null;
+                }
+                BufferedImage source = reader.read(0);
+                double scale = Math.min((double) THUMB_SIZE / width, (double) THUMB_SIZE / height);
+                int targetWidth = Math.max(1, (int) Math.round(width * scale));
+                int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+                BufferedImage target = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g = target.createGraphics();
+                try {
+                    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                    g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                    g.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+                } finally {
+                    g.dispose();
+                }
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ImageIO.write(target, "png", out);
+                return out.toByteArray();
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("⚠️ Cannot resize avatar, keeping original as thumbnail: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static String detectContentType(byte[] bytes) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers != null && readers.hasNext()) {
+                return "image/" + readers.next().getFormatName().toLowerCase(Locale.ROOT);
+            }
+        } catch (IOException e) {
+            log.debug("Cannot detect avatar format: {}", e.getMessage());
+        }
+        return DEFAULT_CONTENT_TYPE;
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package ru.dmitartur.client.service;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ru.dmitartur.client.cache.CompanyAccessCache;
+import ru.dmitartur.client.cache.CompanyChatSubscribersCache;
 import ru.dmitartur.client.entity.Company;
 import ru.dmitartur.client.entity.UserCompany;
 import ru.dmitartur.client.repository.CompanyRepository;
@@ -12,7 +15,10 @@ import ru.dmitartur.client.entity.ClientUser;
 import ru.dmitartur.common.utils.JwtUtil;
 import ru.dmitartur.client.mapper.CompanyMapper;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Service
@@ -23,22 +29,32 @@ public class CompanyService {
     private final UserCompanyRepository userCompanyRepository;
     private final ClientUserRepository clientUserRepository;
     private final CompanyMapper companyMapper;
+    private final CompanyAccessCache companyAccessCache;
+    private final CompanyChatSubscribersCache companyChatSubscribersCache;
 
+    /**
+     * Компании текущего пользователя одним запросом; роли сразу попадают в индекс доступа,
+     * так что последующие запросы страницы к этим компаниям проверяются без БД
+     */
+    @Transactional(readOnly = true)
     public List<Company> listMyCompanies() {
         UUID userId = JwtUtil.getRequiredOwnerId();
-        ClientUser user = clientUserRepository.findById(userId)
-                .orElseThrow(() -> new IllegalArgumentException("User not found"));
-        List<UserCompany> links = userCompanyRepository.findByUserId(user.getId());
-        return links.stream()
-                .map(UserCompany::getCompanyId)
-                .map(companyRepository::findById)
-                .filter(java.util.Optional::isPresent)
-                .map(java.util.Optional::get)
-                .toList();
+        List<Object[]> rows = companyRepository.findAllWithRoleByUserId(userId);
+        List<Company> companies = new ArrayList<>(rows.size());
+        Map<UUID, String> roles = new HashMap<>(rows.size());
+        for (Object[] row : rows) {
+            Company company = (Company) row[0];
+            companies.add(company);
+            roles.put(company.getId(), (String) row[1]);
+        }
+        companyAccessCache.putAll(userId, roles);
+        return companies;
     }
 
     public Company createCompany(Company company) {
         if (company.getId() == null) company.setId(UUID.randomUUID());
+        // Аватар загружается отдельно, версию из тела запроса не принимаем
+        company.setAvatarHash(null);
         Company saved = companyRepository.save(company);
         UUID userId = JwtUtil.getRequiredOwnerId();
         ClientUser user = clientUserRepository.findById(userId)
@@ -48,6 +64,8 @@ public class CompanyService {
         uc.setCompanyId(saved.getId());
         uc.setRole("OWNER");
         userCompanyRepository.save(uc);
+        companyAccessCache.invalidateCompany(saved.getId());
+        companyChatSubscribersCache.invalidateCompany(saved.getId());
         return saved;
     }
 
@@ -61,32 +79,26 @@ public class CompanyService {
     public void deleteCompany(UUID companyId) {
         ensureAccess(companyId);
         companyRepository.deleteById(companyId);
+        // Связи user_company удаляются каскадом
+        companyAccessCache.invalidateCompany(companyId);
+        companyChatSubscribersCache.invalidateCompany(companyId);
     }
 
-    private void ensureAccess(UUID companyId) {
+    /**
+     * Проверка доступа текущего пользователя к компании по индексу (userId, companyId) -> роль.
+     * Связь ссылается на пользователя по FK, поэтому отдельно пользователя не загружаем
+     */
+    void ensureAccess(UUID companyId) {
         UUID userId = JwtUtil.getRequiredOwnerId();
-        ClientUser user = clientUserRepository.findById(userId)
-                .orElseThrow(() -> new org.springframework.security.access.AccessDeniedException("User not found"));
-        if (!userCompanyRepository.existsByUserIdAndCompanyId(user.getId(), companyId)) {
-            throw new org.springframework.security.access.AccessDeniedException("No access to company");
-        }
-    }
-
-    public void uploadAvatar(UUID companyId, byte[] bytes) {
-        ensureAccess(companyId);
-        Company c = companyRepository.findById(companyId).orElseThrow();
-        c.setAvatar(bytes);
-        companyRepository.save(c);
+        companyAccessCache.getRole(userId, companyId, () -> userCompanyRepository.findRole(userId, companyId))
+                .orElseThrow(() -> new AccessDeniedException("No access to company"));
     }
 
+    @Transactional(readOnly = true)
     public Company getCompany(UUID companyId) {
         ensureAccess(companyId);
         return companyRepository.findById(companyId).orElseThrow();
     }
-
-    public byte[] getAvatar(UUID companyId) {
-        return getCompany(companyId).getAvatar();
-    }
 }
 
 
@@ -0,0 +1,294 @@
+package ru.dmitartur.client.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.dmitartur.client.cache.CompanyChatSubscribersCache;
+import ru.dmitartur.client.cache.CompanyChatSubscribersCache.ChatSubscriber;
+import ru.dmitartur.client.kafka.TelegramOutgoingProducer;
+import ru.dmitartur.client.repository.TelegramClientRepository;
+import ru.dmitartur.common.events.EventType;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Уведомления о заказах в Telegram-чаты участников компании заказа.
+ *
+ * Подписчики берутся из {@link CompanyChatSubscribersCache}. В режиме digest уведомления копятся по чатам
+ * в общей таблице client.order_digest_event и раз в intervalSeconds уходят одним сообщением order.digest;
+ * одиночное событие за интервал отправляется обычным шаблоном. Буфер общий для всех экземпляров: события
+ * чата, принятые разными экземплярами, попадают в одну сводку, а отправляет их тот экземпляр, который
+ * взял advisory-блокировку сброса. Строки удаляются в той же транзакции после подтверждения сводки Kafka,
+ * поэтому при падении экземпляра события не теряются, но сводка может уйти повторно (at-least-once).
+ */
+@Slf4j
+@Service
+public class OrderNotificationService {
+
+    private static final String DIGEST_TEMPLATE = "order.digest";
+    // Ключ pg_try_advisory_xact_lock: сбрасывает сводки один экземпляр за раз
+    private static final long FLUSH_LOCK_KEY = 0x4f52445f44494745L;
+    private static final int FLUSH_BATCH_SIZE = 5000;
+    private static final long SEND_ACK_TIMEOUT_SECONDS = 30;
+
+    private static final String INSERT_EVENT_SQL = """
+            INSERT INTO client.order_digest_event (chat_id, bot_id, event_type, posting_number, source, order_name, total_price)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            """;
+    private static final String SELECT_EVENTS_SQL = """
+            SELECT id, chat_id, bot_id, event_type, posting_number, source, order_name, total_price
+            FROM client.order_digest_event
+            WHERE next_attempt_at <= NOW()
+            ORDER BY id
+            LIMIT ?
+            """;
+    // Повтор через interval * (attempts + 1), но не реже чем через 10 интервалов
+    private static final String POSTPONE_EVENTS_SQL = """
+            UPDATE client.order_digest_event
+            SET attempts = attempts + 1,
+                next_attempt_at = NOW() + make_interval(secs => LEAST(attempts + 1, 10) * ?)
+            WHERE id = ANY(?)
+            """;
+
+    private final TelegramClientRepository telegramClientRepository;
+    private final TelegramOutgoingProducer telegramOutgoingProducer;
+    private final CompanyChatSubscribersCache subscribersCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean digestEnabled;
+    private final long digestIntervalSeconds;
+    private final int digestMaxOrders;
+    private ScheduledExecutorService flusher;
+
+    public OrderNotificationService(TelegramClientRepository telegramClientRepository,
+                                    TelegramOutgoingProducer telegramOutgoingProducer,
+                                    CompanyChatSubscribersCache subscribersCache,
+                                    JdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager,
+                                    @Value("${telegram.notifications.digest.enabled:false}") boolean digestEnabled,
+                                    @Value("${telegram.notifications.digest.interval-seconds:60}") long digestIntervalSeconds,
+                                    @Value("${telegram.notifications.digest.max-orders:20}") int digestMaxOrders) {
+        this.telegramClientRepository = telegramClientRepository;
+        this.telegramOutgoingProducer = telegramOutgoingProducer;
+        this.subscribersCache = subscribersCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.digestEnabled = digestEnabled;
+        this.digestIntervalSeconds = digestIntervalSeconds;
+        this.digestMaxOrders = digestMaxOrders;
+    }
+
+    @PostConstruct
+    public void startDigest() {
+        if (!digestEnabled) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "order-digest-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushDigests, digestIntervalSeconds, digestIntervalSeconds, TimeUnit.SECONDS);
+        log.info("🚀 Order notifications digest enabled: interval={}s", digestIntervalSeconds);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Неотправленное остается в таблице: его отправит другой экземпляр или этот после рестарта
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+    }
+
+    /**
+     * Уведомить участников компании о событии заказа
+     * @return сколько чатов получат уведомление
+     */
+    public int notify(UUID companyId, EventType type, OrderNotice notice) {
+        List<ChatSubscriber> subscribers = subscribersCache.get(companyId, () ->
+                telegramClientRepository.findCompanySubscribers(companyId).stream()
+                        .filter(client -> client.getChatId() != null)
+                        .map(client -> new ChatSubscriber(client.getChatId(), client.getBotId()))
+                        .toList());
+        if (subscribers.isEmpty()) {
+            return 0;
+        }
+
+        if (!digestEnabled) {
+            telegramOutgoingProducer.sendToAll(subscribers, template(type), notice.params());
+            return subscribers.size();
+        }
+        jdbcTemplate.batchUpdate(INSERT_EVENT_SQL, subscribers.stream()
+                .map(subscriber -> new Object[]{subscriber.chatId(), subscriber.botId(), type.name(),
+                        notice.postingNumber(), notice.source(), notice.orderName(), notice.totalPrice()})
+                .toList());
+        return subscribers.size();
+    }
+
+    private void flushDigests() {
+        try {
+            // Следующая пачка только если текущая полная и отправлена целиком, иначе ждем следующего интервала
+            Integer sent;
+            do {
+                sent = transactionTemplate.execute(status -> flushBatch());
+            } while (sent != null && sent >= FLUSH_BATCH_SIZE);
+        } catch (Exception e) {
+            log.error("❌ Failed to flush order digests", e);
+        }
+    }
+
+    /**
+     * Одна пачка буфера под advisory-блокировкой; строки удаляются только у чатов, чью сводку подтвердила Kafka,
+     * строки остальных откладываются с нарастающей задержкой и не мешают следующим выборкам
+     * @return сколько событий отправлено, 0 — если сводки сбрасывает другой экземпляр
+     */
+    private int flushBatch() {
+        Boolean locked = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, FLUSH_LOCK_KEY);
+        if (!Boolean.TRUE.equals(locked)) {
+            return 0;
+        }
+        Map<Long, ChatDigest> digests = new LinkedHashMap<>();
+        Map<Long, List<Long>> idsByChat = new HashMap<>();
+        jdbcTemplate.query(SELECT_EVENTS_SQL, rs -> {
+            long chatId = rs.getLong("chat_id");
+            String botId = rs.getString("bot_id");
+            digests.computeIfAbsent(chatId, id -> new ChatDigest(new ChatSubscriber(id, botId)))
+                    .add(EventType.from(rs.getString("event_type")), new OrderNotice(rs.getString("posting_number"),
+                            rs.getString("source"), rs.getString("order_name"), rs.getString("total_price")));
+            idsByChat.computeIfAbsent(chatId, id -> new ArrayList<>()).add(rs.getLong("id"));
+        }, FLUSH_BATCH_SIZE);
+
+        Map<Long, CompletableFuture<?>> sends = new LinkedHashMap<>();
+        for (ChatDigest digest : digests.values()) {
+            sends.put(digest.subscriber.chatId(), send(digest));
+        }
+        List<Long> sentIds = new ArrayList<>();
+        List<Long> failedIds = new ArrayList<>();
+        for (Map.Entry<Long, CompletableFuture<?>> entry : sends.entrySet()) {
+            long chatId = entry.getKey();
+            try {
+                entry.getValue().get(SEND_ACK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                sentIds.addAll(idsByChat.get(chatId));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                // Строки чата остаются в буфере и попадут в сводку после задержки
+                failedIds.addAll(idsByChat.get(chatId));
+                log.error("❌ Failed to send order digest to chat {}", chatId, e);
+            }
+        }
+        if (!sentIds.isEmpty()) {
+            jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement("DELETE FROM client.order_digest_event WHERE id = ANY(?)");
+                ps.setArray(1, con.createArrayOf("bigint", sentIds.toArray()));
+                return ps;
+            });
+        }
+        if (!failedIds.isEmpty()) {
+            jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement(POSTPONE_EVENTS_SQL);
+                ps.setLong(1, digestIntervalSeconds);
+                ps.setArray(2, con.createArrayOf("bigint", failedIds.toArray()));
+                return ps;
+            });
+        }
+        return sentIds.size();
+    }
+
+    private CompletableFuture<?> send(ChatDigest digest) {
+        ChatSubscriber subscriber = digest.subscriber;
+        if (digest.events.size() == 1) {
+            DigestEvent single = digest.events.get(0);
+            return telegramOutgoingProducer.sendMessageAcked(subscriber.chatId(), subscriber.botId(), template(single.type), single.notice.params());
+        }
+
+        int created = 0;
+        int cancelled = 0;
+        BigDecimal createdTotal = BigDecimal.ZERO;
+        StringBuilder lines = new StringBuilder();
+        int shown = 0;
+        for (DigestEvent event : digest.events) {
+            boolean isCreated = event.type == EventType.ORDER_CREATED;
+            if (isCreated) {
+                created++;
+                createdTotal = createdTotal.add(parsePrice(event.notice.totalPrice()));
+            } else {
+                cancelled++;
+            }
+            if (shown < digestMaxOrders) {
+                if (shown > 0) lines.append('\n');
+                lines.append(isCreated ? "🆕 " : "❌ ")
+                        .append(event.notice.postingNumber())
+                        .append(" · ").append(event.notice.source());
+                if (!event.notice.orderName().isEmpty()) lines.append(" · ").append(event.notice.orderName());
+                if (!event.notice.totalPrice().isEmpty()) lines.append(" · ").append(event.notice.totalPrice()).append(" ₽");
+                shown++;
+            }
+        }
+        if (digest.events.size() > shown) {
+            lines.append("\n… и еще ").append(digest.events.size() - shown);
+        }
+
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("created_count", created);
+        params.put("cancelled_count", cancelled);
+        params.put("total_price", createdTotal.setScale(2, RoundingMode.HALF_UP).toPlainString());
+        params.put("orders", lines.toString());
+        log.debug("📨 Order digest sent to chat {}: created={}, cancelled={}", subscriber.chatId(), created, cancelled);
+        return telegramOutgoingProducer.sendMessageAcked(subscriber.chatId(), subscriber.botId(), DIGEST_TEMPLATE, params);
+    }
+
+    private static String template(EventType type) {
+        return type == EventType.ORDER_CANCELLED ? "order.cancelled" : "order.created";
+    }
+
+    private static BigDecimal parsePrice(String price) {
+        try {
+            return price.isEmpty() ? BigDecimal.ZERO : new BigDecimal(price.replace(',', '.'));
+        } catch (NumberFormatException e) {
+            return BigDecimal.ZERO;
+        }
+    }
+
+    /**
+     * Данные заказа для уведомления
+     */
+    public record OrderNotice(String postingNumber, String source, String orderName, String totalPrice) {
+        Map<String, Object> params() {
+            return TelegramOutgoingProducer.orderParams(postingNumber, source, orderName, totalPrice);
+        }
+    }
+
+    private record DigestEvent(EventType type, OrderNotice notice) {}
+
+    private static final class ChatDigest {
+        private final ChatSubscriber subscriber;
+        private final List<DigestEvent> events = new ArrayList<>();
+
+        ChatDigest(ChatSubscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void add(EventType type, OrderNotice notice) {
+            events.add(new DigestEvent(type, notice));
+        }
+    }
+}
@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ru.dmitartur.client.cache.CompanyChatSubscribersCache;
 import ru.dmitartur.client.entity.TelegramClient;
 import ru.dmitartur.client.mapper.TelegramClientMapper;
 import ru.dmitartur.client.repository.TelegramClientRepository;
@@ -30,6 +31,7 @@ public class TelegramClientService {
     private final TelegramClientRepository telegramClientRepository;
     private final TelegramClientMapper telegramClientMapper;
     private final TelegramOutgoingProducer telegramOutgoingProducer;
+    private final CompanyChatSubscribersCache companyChatSubscribersCache;
 
     /**
      * Upsert client profile from a finalized registration event and notify user.
@@ -55,6 +57,8 @@ public class TelegramClientService {
             client.setRegisteredAt(LocalDateTime.now());
         }
         telegramClientRepository.save(client);
+        // email/чат могли смениться: подписчики компаний пересчитываются
+        companyChatSubscribersCache.invalidateAll();
 
         telegramOutgoingProducer.sendUserRegistered(chatId, event.getBotId(), mapped.getFirstName());
     }
@@ -75,6 +79,8 @@ public class TelegramClientService {
             client.setRegisteredAt(LocalDateTime.now());
         }
         telegramClientRepository.save(client);
+        // email/чат могли смениться: подписчики компаний пересчитываются
+        companyChatSubscribersCache.invalidateAll();
 
         telegramOutgoingProducer.sendUserRegistered(chatId, event.getBotId(), mapped.getFirstName());
     }
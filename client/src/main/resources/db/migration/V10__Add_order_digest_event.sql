@@ -0,0 +1,18 @@
+-- Буфер сводок уведомлений о заказах (OrderNotificationService, telegram.notifications.digest).
+-- Общий для всех экземпляров: события одного чата, принятые разными экземплярами, уходят одной сводкой
+-- и не теряются при падении экземпляра до отправки.
+CREATE TABLE IF NOT EXISTS client.order_digest_event (
+    id BIGSERIAL PRIMARY KEY,
+    chat_id BIGINT NOT NULL,
+    bot_id VARCHAR(255),
+    event_type VARCHAR(32) NOT NULL,
+    posting_number VARCHAR(255) NOT NULL,
+    source VARCHAR(64) NOT NULL,
+    order_name TEXT NOT NULL,
+    total_price VARCHAR(64) NOT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    created_at TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_order_digest_event_next_attempt ON client.order_digest_event(next_attempt_at, id);
@@ -0,0 +1,35 @@
+-- Аватары компаний выносятся из строки company в отдельную таблицу блобов:
+-- список компаний больше не тянет байты аватаров, а отдача аватара проверяет ETag по content_hash без чтения data
+CREATE TABLE IF NOT EXISTS client.company_avatar (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    company_id UUID NOT NULL,
+    variant VARCHAR(16) NOT NULL,
+    content_hash VARCHAR(64) NOT NULL,
+    content_type VARCHAR(100) NOT NULL,
+    size_bytes INTEGER NOT NULL,
+    data BYTEA NOT NULL,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    CONSTRAINT uq_company_avatar_variant UNIQUE (company_id, variant),
+    CONSTRAINT fk_company_avatar_company FOREIGN KEY (company_id) REFERENCES client.company(id) ON DELETE CASCADE
+);
+
+ALTER TABLE client.company ADD COLUMN IF NOT EXISTS avatar_hash VARCHAR(64);
+
+DO $$
+BEGIN
+    IF EXISTS (
+        SELECT 1 FROM information_schema.columns
+        WHERE table_schema='client' AND table_name='company' AND column_name='avatar'
+    ) THEN
+        -- Уменьшенный вариант для существующих аватаров создается при первом запросе
+        INSERT INTO client.company_avatar (company_id, variant, content_hash, content_type, size_bytes, data)
+        SELECT id, 'original', encode(sha256(avatar), 'hex'), 'application/octet-stream', length(avatar), avatar
+        FROM client.company
+        WHERE avatar IS NOT NULL
+        ON CONFLICT (company_id, variant) DO NOTHING;
+
+        UPDATE client.company SET avatar_hash = encode(sha256(avatar), 'hex') WHERE avatar IS NOT NULL;
+
+        ALTER TABLE client.company DROP COLUMN avatar;
+    END IF;
+END $$;
@@ -1,12 +1,19 @@
 package ru.dmitartur.common.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import ru.dmitartur.common.kafka.KafkaProducerProfile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @ConfigurationProperties(prefix = "core")
 public class CoreProperties {
     private String serviceName = "unknown";
     private String orderServiceAddress = "localhost:7068";
     private String ozonServiceAddress = "localhost:7097";
+    private Kafka kafka = new Kafka();
 
     public String getServiceName() { return serviceName; }
     public void setServiceName(String serviceName) { this.serviceName = serviceName; }
@@ -16,6 +23,136 @@ public class CoreProperties {
 
     public String getOzonServiceAddress() { return ozonServiceAddress; }
     public void setOzonServiceAddress(String ozonServiceAddress) { this.ozonServiceAddress = ozonServiceAddress; }
-}
 
+    public Kafka getKafka() { return kafka; }
+    public void setKafka(Kafka kafka) { this.kafka = kafka; }
+
+    /**
+     * Настройки Kafka клиентов common-core (core.kafka.*)
+     */
+    public static class Kafka {
+        private Producer producer = new Producer();
+        private Consumer consumer = new Consumer();
+
+        public Producer getProducer() { return producer; }
+        public void setProducer(Producer producer) { this.producer = producer; }
+
+        public Consumer getConsumer() { return consumer; }
+        public void setConsumer(Consumer consumer) { this.consumer = consumer; }
+    }
+
+    /**
+     * Выбор профиля producer для каждого шаблона (core.kafka.producer.*)
+     */
+    public static class Producer {
+        private KafkaProducerProfile jsonProfile = KafkaProducerProfile.DEFAULT;
+        private KafkaProducerProfile stringProfile = KafkaProducerProfile.DEFAULT;
+        // Точечные переопределения поверх профиля, например linger.ms: 50
+        private Map<String, String> overrides = new HashMap<>();
+
+        public KafkaProducerProfile getJsonProfile() { return jsonProfile; }
+        public void setJsonProfile(KafkaProducerProfile jsonProfile) { this.jsonProfile = jsonProfile; }
+
+        public KafkaProducerProfile getStringProfile() { return stringProfile; }
+        public void setStringProfile(KafkaProducerProfile stringProfile) { this.stringProfile = stringProfile; }
+
+        public Map<String, String> getOverrides() { return overrides; }
+        public void setOverrides(Map<String, String> overrides) { this.overrides = overrides; }
+    }
+
+    /**
+     * Профили listener-фабрик и обработка ошибок consumer (core.kafka.consumer.*)
+     */
+    public static class Consumer {
+        // Поштучная обработка: значения по умолчанию совпадают с поведением до введения профилей
+        private ListenerProfile single = new ListenerProfile(1, 500, 1, 500, 1024 * 1024);
+        // Пакетная обработка: больше записей за poll, брокер копит данные до fetch-min-bytes
+        private ListenerProfile batch = new ListenerProfile(3, 1000, 64 * 1024, 200, 2 * 1024 * 1024);
+        private DeadLetter deadLetter = new DeadLetter();
+
+        public ListenerProfile getSingle() { return single; }
+        public void setSingle(ListenerProfile single) { this.single = single; }
+
+        public ListenerProfile getBatch() { return batch; }
+        public void setBatch(ListenerProfile batch) { this.batch = batch; }
+
+        public DeadLetter getDeadLetter() { return deadLetter; }
+        public void setDeadLetter(DeadLetter deadLetter) { this.deadLetter = deadLetter; }
+    }
+
+    /**
+     * Параллелизм и размеры fetch/poll для одной listener-фабрики
+     */
+    public static class ListenerProfile {
+        private int concurrency;
+        private int maxPollRecords;
+        private int fetchMinBytes;
+        private int fetchMaxWaitMs;
+        private int maxPartitionFetchBytes;
+
+        public ListenerProfile() {
+            this(1, 500, 1, 500, 1024 * 1024);
+        }
 
+        public ListenerProfile(int concurrency, int maxPollRecords, int fetchMinBytes,
+                               int fetchMaxWaitMs, int maxPartitionFetchBytes) {
+            this.concurrency = concurrency;
+            this.maxPollRecords = maxPollRecords;
+            this.fetchMinBytes = fetchMinBytes;
+            this.fetchMaxWaitMs = fetchMaxWaitMs;
+            this.maxPartitionFetchBytes = maxPartitionFetchBytes;
+        }
+
+        public int getConcurrency() { return concurrency; }
+        public void setConcurrency(int concurrency) { this.concurrency = concurrency; }
+
+        public int getMaxPollRecords() { return maxPollRecords; }
+        public void setMaxPollRecords(int maxPollRecords) { this.maxPollRecords = maxPollRecords; }
+
+        public int getFetchMinBytes() { return fetchMinBytes; }
+        public void setFetchMinBytes(int fetchMinBytes) { this.fetchMinBytes = fetchMinBytes; }
+
+        public int getFetchMaxWaitMs() { return fetchMaxWaitMs; }
+        public void setFetchMaxWaitMs(int fetchMaxWaitMs) { this.fetchMaxWaitMs = fetchMaxWaitMs; }
+
+        public int getMaxPartitionFetchBytes() { return maxPartitionFetchBytes; }
+        public void setMaxPartitionFetchBytes(int maxPartitionFetchBytes) { this.maxPartitionFetchBytes = maxPartitionFetchBytes; }
+    }
+
+    /**
+     * Повторы и dead-letter топик для сообщений, которые не удалось обработать.
+     * Действует только на listener-ы топиков из topics; для них же создаются DLT-топики
+     */
+    public static class DeadLetter {
+        private boolean enabled = true;
+        // Исходные топики с DLT; listener-ы остальных топиков обрабатывают ошибки по умолчанию Spring Kafka
+        private List<String> topics = new ArrayList<>();
+        // Сообщение из order-events уйдет в order-events.DLT
+        private String topicSuffix = ".DLT";
+        private int partitions = 1;
+        private short replicationFactor = 1;
+        private int retryAttempts = 2;
+        private long retryIntervalMs = 1000;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public List<String> getTopics() { return topics; }
+        public void setTopics(List<String> topics) { this.topics = topics; }
+
+        public String getTopicSuffix() { return topicSuffix; }
+        public void setTopicSuffix(String topicSuffix) { this.topicSuffix = topicSuffix; }
+
+        public int getPartitions() { return partitions; }
+        public void setPartitions(int partitions) { this.partitions = partitions; }
+
+        public short getReplicationFactor() { return replicationFactor; }
+        public void setReplicationFactor(short replicationFactor) { this.replicationFactor = replicationFactor; }
+
+        public int getRetryAttempts() { return retryAttempts; }
+        public void setRetryAttempts(int retryAttempts) { this.retryAttempts = retryAttempts; }
+
+        public long getRetryIntervalMs() { return retryIntervalMs; }
+        public void setRetryIntervalMs(long retryIntervalMs) { this.retryIntervalMs = retryIntervalMs; }
+    }
+}
@@ -51,6 +51,15 @@ public class GrpcClientsConfig {
         return OrderInternalServiceGrpc.newBlockingStub(ch).withInterceptors(authInterceptor());
     }
 
+    /**
+     * Асинхронный стаб для потокового UpsertOrdersStream
+     */
+    @Bean
+    public OrderInternalServiceGrpc.OrderInternalServiceStub orderInternalStub() {
+        ManagedChannel ch = channelFor(orderServiceAddress);
+        return OrderInternalServiceGrpc.newStub(ch).withInterceptors(authInterceptor());
+    }
+
     @Bean
     public OzonInternalServiceGrpc.OzonInternalServiceBlockingStub ozonInternalBlockingStub() {
         ManagedChannel ch = channelFor(ozonServiceAddress);
@@ -3,6 +3,7 @@ package ru.dmitartur.common.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import lombok.RequiredArgsConstructor;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
@@ -13,17 +14,22 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
+import ru.dmitartur.common.kafka.KafkaProducerProfile;
 
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Общая конфигурация Kafka для всех сервисов
- * Предоставляет ObjectMapper и дополнительные настройки Kafka
+ * Предоставляет ObjectMapper и дополнительные настройки Kafka.
+ * Профиль producer (DEFAULT/THROUGHPUT/LATENCY) выбирается для каждого шаблона через core.kafka.producer.*
  */
 @Configuration
+@RequiredArgsConstructor
 public class KafkaCommonConfig {
 
+    private final CoreProperties coreProperties;
+
     @Value("${spring.kafka.bootstrap-servers:localhost:9092}")
     private String bootstrapServers;
 
@@ -52,6 +58,7 @@ public class KafkaCommonConfig {
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        applyProfile(configProps, coreProperties.getKafka().getProducer().getStringProfile());
         return new DefaultKafkaProducerFactory<>(configProps);
     }
 
@@ -75,7 +82,8 @@ public class KafkaCommonConfig {
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
-        
+        applyProfile(configProps, coreProperties.getKafka().getProducer().getJsonProfile());
+
         JsonSerializer<Object> jsonSerializer = new JsonSerializer<>(objectMapper);
         return new DefaultKafkaProducerFactory<>(configProps, new StringSerializer(), jsonSerializer);
     }
@@ -88,6 +96,14 @@ public class KafkaCommonConfig {
     public KafkaTemplate<String, Object> jsonKafkaTemplate(ObjectMapper objectMapper) { 
         return new KafkaTemplate<>(jsonProducerFactory(objectMapper)); 
     }
+
+    /**
+     * Применить профиль producer и точечные переопределения из core.kafka.producer.overrides
+     */
+    private void applyProfile(Map<String, Object> configProps, KafkaProducerProfile profile) {
+        configProps.putAll(profile.producerProps());
+        configProps.putAll(coreProperties.getKafka().getProducer().getOverrides());
+    }
 }
 
 
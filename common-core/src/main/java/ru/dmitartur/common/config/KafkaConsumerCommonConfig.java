@@ -1,42 +1,78 @@
 package ru.dmitartur.common.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.CommonErrorHandler;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.util.backoff.FixedBackOff;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 
 /**
  * Общая конфигурация Kafka Consumer для всех сервисов.
- * Предоставляет универсальный контейнер-фабрику для JSON сообщений с тип-хедерами.
+ * Предоставляет контейнер-фабрики для JSON и строковых сообщений в двух профилях:
+ * <ul>
+ *     <li>поштучный (jsonKafkaListenerContainerFactory, stringKafkaListenerContainerFactory)</li>
+ *     <li>пакетный (jsonBatchKafkaListenerContainerFactory, stringBatchKafkaListenerContainerFactory),
+ *     listener получает List записей одного poll</li>
+ * </ul>
+ * Параллелизм, размеры fetch/poll и dead-letter настраиваются через core.kafka.consumer.*
+ *
+ * Повторы с dead-letter топиком включаются только для listener-ов топиков из core.kafka.consumer.dead-letter.topics,
+ * DLT-топики для них объявляются здесь же (NewTopic), чтобы не зависеть от auto-create брокера.
+ * Остальные listener-ы обрабатывают ошибки как раньше — обработчиком Spring Kafka по умолчанию.
  */
+@Slf4j
 @EnableKafka
 @Configuration
+@RequiredArgsConstructor
 public class KafkaConsumerCommonConfig {
 
+    private final CoreProperties coreProperties;
+
     @Value("${spring.kafka.bootstrap-servers:localhost:9092}")
     private String bootstrapServers;
 
     @Value("${kafka.consumer.group-id:default-group}")
     private String defaultGroupId;
 
+    private CommonErrorHandler errorHandler;
+
     @Bean(name = "jsonConsumerFactory")
     public ConsumerFactory<String, Object> jsonConsumerFactory(ObjectMapper objectMapper) {
-        Map<String, Object> props = new HashMap<>();
-        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        props.put(ConsumerConfig.GROUP_ID_CONFIG, defaultGroupId);
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        Map<String, Object> props = baseConsumerProps();
         props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
-        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
 
         JsonDeserializer<Object> valueDeserializer = new JsonDeserializer<>(Object.class, objectMapper, true);
         // Доверяем всем пакетам; при желании можно ограничить конкретными
@@ -44,17 +80,179 @@ public class KafkaConsumerCommonConfig {
         // Не игнорируем заголовки типов, чтобы восстанавливать конкретный класс из __TypeId__
         // valueDeserializer.ignoreTypeHeaders(); // не включаем
 
-        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), valueDeserializer);
+        // Битое сообщение не должно зацикливать контейнер: ошибка десериализации уходит в error handler -> DLT
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(),
+                new ErrorHandlingDeserializer<>(valueDeserializer));
+    }
+
+    @Bean(name = "stringConsumerFactory")
+    public ConsumerFactory<String, String> stringConsumerFactory() {
+        Map<String, Object> props = baseConsumerProps();
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new StringDeserializer());
     }
 
     @Bean(name = "jsonKafkaListenerContainerFactory")
     public ConcurrentKafkaListenerContainerFactory<String, Object> jsonKafkaListenerContainerFactory(
-            ConsumerFactory<String, Object> jsonConsumerFactory) {
-        ConcurrentKafkaListenerContainerFactory<String, Object> factory =
-                new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(jsonConsumerFactory);
+            @Qualifier("jsonConsumerFactory") ConsumerFactory<String, Object> jsonConsumerFactory,
+            @Qualifier("jsonKafkaTemplate") KafkaTemplate<String, Object> jsonKafkaTemplate,
+            @Qualifier("stringKafkaTemplate") KafkaTemplate<String, String> stringKafkaTemplate) {
+        return listenerFactory(jsonConsumerFactory, deadLetterHandler(jsonKafkaTemplate, stringKafkaTemplate),
+                coreProperties.getKafka().getConsumer().getSingle(), false);
+    }
+
+    @Bean(name = "jsonBatchKafkaListenerContainerFactory")
+    public ConcurrentKafkaListenerContainerFactory<String, Object> jsonBatchKafkaListenerContainerFactory(
+            @Qualifier("jsonConsumerFactory") ConsumerFactory<String, Object> jsonConsumerFactory,
+            @Qualifier("jsonKafkaTemplate") KafkaTemplate<String, Object> jsonKafkaTemplate,
+            @Qualifier("stringKafkaTemplate") KafkaTemplate<String, String> stringKafkaTemplate) {
+        return listenerFactory(jsonConsumerFactory, deadLetterHandler(jsonKafkaTemplate, stringKafkaTemplate),
+                coreProperties.getKafka().getConsumer().getBatch(), true);
+    }
+
+    @Bean(name = "stringKafkaListenerContainerFactory")
+    public ConcurrentKafkaListenerContainerFactory<String, String> stringKafkaListenerContainerFactory(
+            @Qualifier("stringConsumerFactory") ConsumerFactory<String, String> stringConsumerFactory,
+            @Qualifier("jsonKafkaTemplate") KafkaTemplate<String, Object> jsonKafkaTemplate,
+            @Qualifier("stringKafkaTemplate") KafkaTemplate<String, String> stringKafkaTemplate) {
+        return listenerFactory(stringConsumerFactory, deadLetterHandler(jsonKafkaTemplate, stringKafkaTemplate),
+                coreProperties.getKafka().getConsumer().getSingle(), false);
+    }
+
+    @Bean(name = "stringBatchKafkaListenerContainerFactory")
+    public ConcurrentKafkaListenerContainerFactory<String, String> stringBatchKafkaListenerContainerFactory(
+            @Qualifier("stringConsumerFactory") ConsumerFactory<String, String> stringConsumerFactory,
+            @Qualifier("jsonKafkaTemplate") KafkaTemplate<String, Object> jsonKafkaTemplate,
+            @Qualifier("stringKafkaTemplate") KafkaTemplate<String, String> stringKafkaTemplate) {
+        return listenerFactory(stringConsumerFactory, deadLetterHandler(jsonKafkaTemplate, stringKafkaTemplate),
+                coreProperties.getKafka().getConsumer().getBatch(), true);
+    }
+
+    /**
+     * DLT-топики для core.kafka.consumer.dead-letter.topics; создаются KafkaAdmin при старте
+     */
+    @Bean
+    public KafkaAdmin.NewTopics deadLetterTopics() {
+        CoreProperties.DeadLetter deadLetter = coreProperties.getKafka().getConsumer().getDeadLetter();
+        if (!deadLetter.isEnabled()) {
+            return new KafkaAdmin.NewTopics();
+        }
+        return new KafkaAdmin.NewTopics(deadLetter.getTopics().stream()
+                .map(topic -> TopicBuilder.name(topic + deadLetter.getTopicSuffix())
+                        .partitions(deadLetter.getPartitions())
+                        .replicas(deadLetter.getReplicationFactor())
+                        .build())
+                .toArray(NewTopic[]::new));
+    }
+
+    /**
+     * Обработчик ошибок с DLT для listener-ов из dead-letter.topics:
+     * несколько повторов с фиксированной паузой, затем публикация в {topic}{suffix}.
+     * Для batch listener повторяется весь пакет, если listener не указал запись через BatchListenerFailedException.
+     * Не регистрируется бином, чтобы Spring Boot не навесил его на kafkaListenerContainerFactory по умолчанию.
+     *
+     * @return null, если dead-letter выключен или топики не заданы
+     */
+    private synchronized CommonErrorHandler deadLetterHandler(KafkaTemplate<String, Object> jsonKafkaTemplate,
+                                                              KafkaTemplate<String, String> stringKafkaTemplate) {
+        CoreProperties.DeadLetter deadLetter = coreProperties.getKafka().getConsumer().getDeadLetter();
+        if (!deadLetter.isEnabled() || deadLetter.getTopics().isEmpty()) {
+            return null;
+        }
+        if (errorHandler == null) {
+            errorHandler = createDeadLetterHandler(deadLetter, jsonKafkaTemplate, stringKafkaTemplate);
+        }
+        return errorHandler;
+    }
+
+    private CommonErrorHandler createDeadLetterHandler(CoreProperties.DeadLetter deadLetter,
+                                                       KafkaTemplate<String, Object> jsonKafkaTemplate,
+                                                       KafkaTemplate<String, String> stringKafkaTemplate) {
+        FixedBackOff backOff = new FixedBackOff(deadLetter.getRetryIntervalMs(), deadLetter.getRetryAttempts());
+
+        // Шаблон выбирается по типу значения: сырые байты (ошибка десериализации), строка или JSON-объект
+        Map<Class<?>, KafkaOperations<?, ?>> templates = new LinkedHashMap<>();
+        templates.put(byte[].class, bytesDeadLetterKafkaTemplate());
+        templates.put(String.class, stringKafkaTemplate);
+        templates.put(Object.class, jsonKafkaTemplate);
+
+        String suffix = deadLetter.getTopicSuffix();
+        // Партицию выбирает producer: у DLT может быть меньше партиций, чем у исходного топика
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(templates,
+                (record, ex) -> {
+                    log.error("❌ Kafka message sent to DLT: topic={}, partition={}, offset={}, error={}",
+                            record.topic(), record.partition(), record.offset(), ex.getMessage());
+                    return new TopicPartition(record.topic() + suffix, -1);
+                });
+
+        DefaultErrorHandler handler = new DefaultErrorHandler(recoverer, backOff);
+        handler.addNotRetryableExceptions(DeserializationException.class);
+        return handler;
+    }
+
+    private <V> ConcurrentKafkaListenerContainerFactory<String, V> listenerFactory(
+            ConsumerFactory<String, V> consumerFactory, CommonErrorHandler deadLetterHandler,
+            CoreProperties.ListenerProfile profile, boolean batch) {
+        ConcurrentKafkaListenerContainerFactory<String, V> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setBatchListener(batch);
+        factory.setConcurrency(Math.max(1, profile.getConcurrency()));
+        if (deadLetterHandler != null) {
+            Set<String> deadLetterTopics = Set.copyOf(coreProperties.getKafka().getConsumer().getDeadLetter().getTopics());
+            // DLT только у listener-ов, все топики которых перечислены в dead-letter.topics (для них объявлены DLT)
+            factory.setContainerCustomizer(container -> {
+                String[] topics = container.getContainerProperties().getTopics();
+                if (topics != null && topics.length > 0 && deadLetterTopics.containsAll(Arrays.asList(topics))) {
+                    container.setCommonErrorHandler(deadLetterHandler);
+                }
+            });
+        }
+        // Переопределения поверх consumer factory: одна фабрика обслуживает оба профиля
+        factory.getContainerProperties().setKafkaConsumerProperties(fetchProps(profile));
         return factory;
     }
-}
 
+    /**
+     * Свойства fetch/poll профиля. Значения строковые: контейнер берет только stringPropertyNames()
+     */
+    private Properties fetchProps(CoreProperties.ListenerProfile profile) {
+        Properties props = new Properties();
+        props.setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(profile.getMaxPollRecords()));
+        props.setProperty(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, String.valueOf(profile.getFetchMinBytes()));
+        props.setProperty(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, String.valueOf(profile.getFetchMaxWaitMs()));
+        props.setProperty(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG,
+                String.valueOf(profile.getMaxPartitionFetchBytes()));
+        return props;
+    }
+
+    private Map<String, Object> baseConsumerProps() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, defaultGroupId);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        return props;
+    }
+
+    /**
+     * Producer для пересылки в DLT исходных байтов сообщения, которое не удалось десериализовать.
+     * Бином, чтобы контейнер закрыл producer при остановке; профиль и overrides — как у stringKafkaTemplate.
+     * autowireCandidate = false: не конкурирует с шаблонами сервисов при внедрении по типу
+     */
+    @Bean(name = "bytesDeadLetterProducerFactory", autowireCandidate = false)
+    public ProducerFactory<String, byte[]> bytesDeadLetterProducerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        CoreProperties.Producer producer = coreProperties.getKafka().getProducer();
+        props.putAll(producer.getStringProfile().producerProps());
+        props.putAll(producer.getOverrides());
+        return new DefaultKafkaProducerFactory<>(props);
+    }
 
+    @Bean(name = "bytesDeadLetterKafkaTemplate", autowireCandidate = false)
+    public KafkaTemplate<String, byte[]> bytesDeadLetterKafkaTemplate() {
+        return new KafkaTemplate<>(bytesDeadLetterProducerFactory());
+    }
+}
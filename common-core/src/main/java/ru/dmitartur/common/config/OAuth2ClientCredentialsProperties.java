@@ -8,6 +8,12 @@ public class OAuth2ClientCredentialsProperties {
     private String clientId;
     private String clientSecret;
     private String scope = "internal";
+    // Фоновое обновление токена за refreshAheadSeconds (+ случайно до refreshJitterSeconds) до истечения
+    private long refreshAheadSeconds = 60;
+    private long refreshJitterSeconds = 30;
+    // Таймауты HTTP-вызовов к серверу авторизации (токен, JWKS): зависший вызов не должен стопорить обновление
+    private int connectTimeoutMs = 2_000;
+    private int readTimeoutMs = 5_000;
 
     public String getTokenUri() { return tokenUri; }
     public void setTokenUri(String tokenUri) { this.tokenUri = tokenUri; }
@@ -17,6 +23,14 @@ public class OAuth2ClientCredentialsProperties {
     public void setClientSecret(String clientSecret) { this.clientSecret = clientSecret; }
     public String getScope() { return scope; }
     public void setScope(String scope) { this.scope = scope; }
+    public long getRefreshAheadSeconds() { return refreshAheadSeconds; }
+    public void setRefreshAheadSeconds(long refreshAheadSeconds) { this.refreshAheadSeconds = refreshAheadSeconds; }
+    public long getRefreshJitterSeconds() { return refreshJitterSeconds; }
+    public void setRefreshJitterSeconds(long refreshJitterSeconds) { this.refreshJitterSeconds = refreshJitterSeconds; }
+    public int getConnectTimeoutMs() { return connectTimeoutMs; }
+    public void setConnectTimeoutMs(int connectTimeoutMs) { this.connectTimeoutMs = connectTimeoutMs; }
+    public int getReadTimeoutMs() { return readTimeoutMs; }
+    public void setReadTimeoutMs(int readTimeoutMs) { this.readTimeoutMs = readTimeoutMs; }
 }
 
 
@@ -5,6 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 
@@ -20,6 +21,10 @@ public class StockItemReqest {
     private Integer quantity;
     private String productId;
     private List<WarehouseSyncInfo> warehouses;
+    // Идентификатор для сопоставления ответа из stock-sync-response (id ProductStock)
+    private String correlationId;
+    // Момент формирования запроса, возвращается в ответе для замера end-to-end задержки
+    private Instant requestedAt;
 
 
     @Data
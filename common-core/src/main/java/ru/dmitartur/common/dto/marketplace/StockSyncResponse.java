@@ -5,6 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -22,6 +23,9 @@ public class StockSyncResponse {
     private int failedCount;
     private List<StockSyncResult> results;
     private String errorMessage;
+    // Копируются из StockItemReqest без изменений
+    private String correlationId;
+    private Instant requestedAt;
     
     @Data
     @Builder
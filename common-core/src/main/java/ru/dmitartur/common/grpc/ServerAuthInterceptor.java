@@ -2,20 +2,144 @@ package ru.dmitartur.common.grpc;
 
 import io.grpc.*;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Аутентификация входящих gRPC вызовов по Bearer JWT.
+ *
+ * Подпись, сроки и issuer проверяет JwtDecoder (ключи — из локального кэша JWKS, см. CachedJwkSource).
+ * Вызов без requiredScope в токене (машинный scope internal) отклоняется с PERMISSION_DENIED до обработчика.
+ * Проверенный principal кладется в кэш по SHA-256 токена на principalTtl, но не дольше срока жизни токена,
+ * поэтому повторные вызовы с тем же токеном стоят хэширования и поиска в карте, а не RSA-проверки.
+ * Principal вызова доступен обработчику через {@link #PRINCIPAL}.
+ */
 @Slf4j
 public class ServerAuthInterceptor implements ServerInterceptor {
 
+    public static final Context.Key<GrpcPrincipal> PRINCIPAL = Context.key("grpc-principal");
+
     private static final Metadata.Key<String> AUTHORIZATION = Metadata.Key.of("authorization", Metadata.ASCII_STRING_MARSHALLER);
+    private static final String BEARER_PREFIX = "bearer ";
+
+    private final JwtDecoder jwtDecoder;
+    private final String requiredScope;
+    private final long principalTtlMillis;
+    private final int maxCachedPrincipals;
+    private final ConcurrentHashMap<String, CachedPrincipal> principals = new ConcurrentHashMap<>();
+
+    /**
+     * @param requiredScope scope, без которого вызов не допускается; null — достаточно валидного токена
+     */
+    public ServerAuthInterceptor(JwtDecoder jwtDecoder, String requiredScope, long principalTtlSeconds, int maxCachedPrincipals) {
+        this.jwtDecoder = jwtDecoder;
+        this.requiredScope = requiredScope;
+        this.principalTtlMillis = principalTtlSeconds * 1000L;
+        this.maxCachedPrincipals = maxCachedPrincipals;
+    }
 
     @Override
     public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
         String auth = headers.get(AUTHORIZATION);
-        if (auth == null || !auth.toLowerCase().startsWith("bearer ")) {
-            call.close(Status.UNAUTHENTICATED.withDescription("Missing Bearer token"), new Metadata());
-            return new ServerCall.Listener<ReqT>() {};
+        if (auth == null || !auth.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+            return reject(call, "Missing Bearer token");
+        }
+        String token = auth.substring(BEARER_PREFIX.length()).trim();
+
+        GrpcPrincipal principal;
+        try {
+            principal = authenticate(token);
+        } catch (JwtException e) {
+            log.debug("🔒 gRPC: rejected token for {}: {}", call.getMethodDescriptor().getFullMethodName(), e.getMessage());
+            return reject(call, "Invalid token");
+        }
+        if (requiredScope != null && !principal.hasScope(requiredScope)) {
+            log.debug("🔒 gRPC: token of {} has no scope {} for {}", principal.subject(), requiredScope,
+                    call.getMethodDescriptor().getFullMethodName());
+            return close(call, Status.PERMISSION_DENIED.withDescription("Scope " + requiredScope + " is required"));
+        }
+        Context context = Context.current().withValue(PRINCIPAL, principal);
+        return Contexts.interceptCall(context, call, headers, next);
+    }
+
+    private GrpcPrincipal authenticate(String token) {
+        String key = sha256(token);
+        long now = System.currentTimeMillis();
+        CachedPrincipal cached = principals.get(key);
+        if (cached != null && cached.expiresAt > now) {
+            return cached.principal;
+        }
+
+        Jwt jwt = jwtDecoder.decode(token);
+        GrpcPrincipal principal = new GrpcPrincipal(jwt.getSubject(), scopes(jwt), jwt.getClaims(), jwt.getExpiresAt());
+        long expiresAt = now + principalTtlMillis;
+        if (jwt.getExpiresAt() != null) {
+            expiresAt = Math.min(expiresAt, jwt.getExpiresAt().toEpochMilli());
+        }
+        if (principals.size() >= maxCachedPrincipals) {
+            evictExpiredOrAll(now);
+        }
+        principals.put(key, new CachedPrincipal(principal, expiresAt));
+        return principal;
+    }
+
+    private void evictExpiredOrAll(long now) {
+        principals.values().removeIf(entry -> entry.expiresAt <= now);
+        if (principals.size() >= maxCachedPrincipals) {
+            principals.clear();
+        }
+    }
+
+    private Set<String> scopes(Jwt jwt) {
+        Object scope = jwt.getClaims().getOrDefault("scope", jwt.getClaims().get("scp"));
+        if (scope instanceof String s) {
+            return Arrays.stream(s.split(" ")).filter(v -> !v.isBlank()).collect(Collectors.toUnmodifiableSet());
+        }
+        if (scope instanceof Collection<?> values) {
+            return values.stream().map(String::valueOf).collect(Collectors.toUnmodifiableSet());
+        }
+        return Set.of();
+    }
+
+    private static String sha256(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
         }
-        // Здесь можно добавить полноценную валидацию JWT при необходимости
-        return next.startCall(call, headers);
     }
+
+    private static <ReqT, RespT> ServerCall.Listener<ReqT> reject(ServerCall<ReqT, RespT> call, String description) {
+        return close(call, Status.UNAUTHENTICATED.withDescription(description));
+    }
+
+    private static <ReqT, RespT> ServerCall.Listener<ReqT> close(ServerCall<ReqT, RespT> call, Status status) {
+        call.close(status, new Metadata());
+        return new ServerCall.Listener<ReqT>() {};
+    }
+
+    /**
+     * Аутентифицированный вызывающий
+     */
+    public record GrpcPrincipal(String subject, Set<String> scopes, Map<String, Object> claims, Instant expiresAt) {
+        public boolean hasScope(String scope) {
+            return scopes.contains(scope);
+        }
+    }
+
+    private record CachedPrincipal(GrpcPrincipal principal, long expiresAt) {}
 }
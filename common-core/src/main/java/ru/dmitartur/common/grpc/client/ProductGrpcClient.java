@@ -6,6 +6,9 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.stereotype.Component;
 import ru.dmitartur.common.grpc.*;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -51,6 +54,61 @@ public class ProductGrpcClient {
         }
     }
 
+    /**
+     * Найти продукты по списку артикулов одним вызовом
+     *
+     * @return артикул -> продукт; ненайденных артикулов в карте нет, при ошибке — пустая карта
+     */
+    public Map<String, ProductInfo> findProductsByArticles(Collection<String> articles) {
+        if (articles == null || articles.isEmpty()) {
+            return Map.of();
+        }
+        try {
+            FindByArticlesResponse response = productServiceStub.findByArticles(FindByArticlesRequest.newBuilder()
+                    .addAllArticles(articles)
+                    .build());
+            if (!response.getErrorMessage().isEmpty()) {
+                log.warn("❌ gRPC: FindByArticles failed: {}", response.getErrorMessage());
+                return Map.of();
+            }
+            Map<String, ProductInfo> result = new HashMap<>(response.getProductsCount() * 2);
+            for (ProductInfoDto dto : response.getProductsList()) {
+                result.put(dto.getArticle(), convertToProductInfo(dto));
+            }
+            log.debug("✅ gRPC: FindByArticles requested={}, found={}", articles.size(), result.size());
+            return result;
+        } catch (Exception e) {
+            log.warn("❌ gRPC: Error searching products by articles: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    /**
+     * Суммарные остатки по артикулам
+     *
+     * @return артикул -> сводка; при ошибке — пустая карта
+     */
+    public Map<String, StockSummaryDto> getStockSummary(Collection<String> articles) {
+        if (articles == null || articles.isEmpty()) {
+            return Map.of();
+        }
+        try {
+            GetStockSummaryResponse response = productServiceStub.getStockSummary(GetStockSummaryRequest.newBuilder()
+                    .addAllArticles(articles)
+                    .build());
+            if (!response.getErrorMessage().isEmpty()) {
+                log.warn("❌ gRPC: GetStockSummary failed: {}", response.getErrorMessage());
+                return Map.of();
+            }
+            Map<String, StockSummaryDto> result = new HashMap<>(response.getItemsCount() * 2);
+            response.getItemsList().forEach(item -> result.put(item.getArticle(), item));
+            return result;
+        } catch (Exception e) {
+            log.warn("❌ gRPC: Error getting stock summary: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
     /**
      * Конвертировать ProductInfoDto в ProductInfo
      */
@@ -58,6 +116,7 @@ public class ProductGrpcClient {
         ProductInfo productInfo = new ProductInfo();
         productInfo.setId(productDto.getId());
         productInfo.setName(productDto.getName());
+        productInfo.setArticle(productDto.getArticle());
         productInfo.setSku(productDto.getSku());
         productInfo.setStock(productDto.getStock());
         productInfo.setBarcode(productDto.getBarcode());
@@ -70,6 +129,7 @@ public class ProductGrpcClient {
     public static class ProductInfo {
         private Long id;
         private String name;
+        private String article;
         private String sku;
         private Integer stock;
         private String barcode;
@@ -81,6 +141,9 @@ public class ProductGrpcClient {
         public String getName() { return name; }
         public void setName(String name) { this.name = name; }
         
+        public String getArticle() { return article; }
+        public void setArticle(String article) { this.article = article; }
+
         public String getSku() { return sku; }
         public void setSku(String sku) { this.sku = sku; }
         
@@ -0,0 +1,73 @@
+package ru.dmitartur.common.kafka;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Именованные профили настроек Kafka Producer.
+ * Выбираются для каждого KafkaTemplate через {@link ru.dmitartur.common.config.CoreProperties}.
+ */
+public enum KafkaProducerProfile {
+
+    /**
+     * Настройки клиента Kafka по умолчанию (поведение до введения профилей)
+     */
+    DEFAULT,
+
+    /**
+     * Максимальная пропускная способность: накопление батчей, zstd, идемпотентность.
+     * Для массовых рассылок (stock-sync, order-sync, бэкфиллы).
+     */
+    THROUGHPUT,
+
+    /**
+     * Минимальная задержка отправки: без linger и без сжатия, идемпотентность сохраняется.
+     * Для единичных событий, где важна скорость доставки (уведомления, order-events).
+     */
+    LATENCY;
+
+    /**
+     * Свойства producer, соответствующие профилю
+     */
+    public Map<String, Object> producerProps() {
+        Map<String, Object> props = new HashMap<>();
+        switch (this) {
+            case THROUGHPUT -> {
+                props.put(ProducerConfig.ACKS_CONFIG, "all");
+                props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+                props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+                props.put(ProducerConfig.LINGER_MS_CONFIG, 20);
+                props.put(ProducerConfig.BATCH_SIZE_CONFIG, 128 * 1024);
+                props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "zstd");
+                props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, 64L * 1024 * 1024);
+            }
+            case LATENCY -> {
+                props.put(ProducerConfig.ACKS_CONFIG, "all");
+                props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+                props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+                props.put(ProducerConfig.LINGER_MS_CONFIG, 0);
+                props.put(ProducerConfig.BATCH_SIZE_CONFIG, 16 * 1024);
+                props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "none");
+            }
+            default -> {
+                // DEFAULT: ничего не переопределяем
+            }
+        }
+        return props;
+    }
+
+    /**
+     * Безопасный парсер: регистр не важен, неизвестное значение -> DEFAULT
+     */
+    public static KafkaProducerProfile from(String code) {
+        if (code == null) return DEFAULT;
+        for (KafkaProducerProfile p : values()) {
+            if (p.name().equalsIgnoreCase(code.trim())) {
+                return p;
+            }
+        }
+        return DEFAULT;
+    }
+}
@@ -0,0 +1,99 @@
+package ru.dmitartur.common.security;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Локальная копия JWKS сервера авторизации.
+ *
+ * Ключи перечитываются фоновым потоком раз в refreshInterval, поэтому проверка подписи не ходит в сеть.
+ * Неизвестный kid (ротация ключа раньше планового обновления) запускает внеочередную загрузку,
+ * но не чаще раза в minForcedRefreshInterval. Пока ключи ни разу не загрузились, они грузятся в вызывающем потоке.
+ */
+@Slf4j
+public class CachedJwkSource implements JWKSource<SecurityContext>, AutoCloseable {
+
+    private static final int CONNECT_TIMEOUT_MS = 2_000;
+    private static final int READ_TIMEOUT_MS = 3_000;
+    private static final int SIZE_LIMIT_BYTES = 512 * 1024;
+
+    private final URL jwkSetUrl;
+    private final long minForcedRefreshMillis;
+    private final AtomicReference<JWKSet> keys = new AtomicReference<>();
+    private final ScheduledExecutorService refresher;
+    private volatile long lastLoadAttemptAt;
+
+    public CachedJwkSource(URL jwkSetUrl, long refreshIntervalSeconds, long minForcedRefreshSeconds) {
+        this.jwkSetUrl = jwkSetUrl;
+        this.minForcedRefreshMillis = minForcedRefreshSeconds * 1000L;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jwks-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, 0, refreshIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector selector, SecurityContext context) throws KeySourceException {
+        JWKSet current = keys.get();
+        if (current == null) {
+            current = load();
+        }
+        List<JWK> matched = selector.select(current);
+        if (!matched.isEmpty()) {
+            return matched;
+        }
+        if (System.currentTimeMillis() - lastLoadAttemptAt < minForcedRefreshMillis) {
+            return matched;
+        }
+        log.info("🔑 JWKS: no matching key in cached set, reloading from {}", jwkSetUrl);
+        return selector.select(load());
+    }
+
+    private void refreshQuietly() {
+        try {
+            load();
+        } catch (Exception e) {
+            // Остаемся на прежнем наборе ключей до следующей попытки
+            log.warn("⚠️ JWKS refresh failed, keeping {} cached keys: {}",
+                    keys.get() != null ? keys.get().getKeys().size() : 0, e.getMessage());
+        }
+    }
+
+    private synchronized JWKSet load() throws KeySourceException {
+        lastLoadAttemptAt = System.currentTimeMillis();
+        try {
+            JWKSet loaded = JWKSet.load(jwkSetUrl, CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS, SIZE_LIMIT_BYTES);
+            JWKSet previous = keys.getAndSet(loaded);
+            if (previous == null || !previous.toString().equals(loaded.toString())) {
+                log.info("✅ JWKS loaded: url={}, keys={}", jwkSetUrl, loaded.getKeys().size());
+            }
+            return loaded;
+        } catch (Exception e) {
+            JWKSet cached = keys.get();
+            if (cached != null) {
+                log.warn("⚠️ JWKS reload failed, using cached keys: {}", e.getMessage());
+                return cached;
+            }
+            throw new KeySourceException("Failed to load JWKS from " + jwkSetUrl + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+}
@@ -1,10 +1,14 @@
 package ru.dmitartur.common.security;
 
-import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
@@ -13,25 +17,164 @@ import ru.dmitartur.common.config.OAuth2ClientCredentialsProperties;
 
 import java.time.Instant;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Машинный токен (client_credentials) для вызовов /internal/** и gRPC между сервисами.
+ *
+ * Текущий токен читается из AtomicReference без блокировок. Обновление идет в фоне заранее —
+ * за refreshAheadSeconds плюс случайный сдвиг до истечения, чтобы реплики не шли за токеном одновременно.
+ * Если действующего токена нет (холодный старт или фоновое обновление так и не удалось), запрос
+ * к серверу авторизации один на всех: остальные вызывающие ждут тот же future.
+ */
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class MachineTokenService {
 
+    // Токен, до истечения которого осталось меньше, не отдаем — запрос может не успеть дойти
+    private static final long MIN_REMAINING_SECONDS = 5;
+    private static final long RETRY_INITIAL_SECONDS = 2;
+    private static final long RETRY_MAX_SECONDS = 60;
+
     private final OAuth2ClientCredentialsProperties props;
+    private final AtomicReference<Token> current = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<Token>> inFlight = new AtomicReference<>();
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "machine-token-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+    // Единственное запланированное обновление: новое расписание отменяет прежнее, чтобы цепочки не множились
+    private ScheduledFuture<?> scheduledRefresh;
+    private final Timer refreshSuccess;
+    private final Timer refreshFailure;
+    // Свой клиент с таймаутами: общий RestTemplate их не задает, а зависший запрос занял бы единственный поток обновления
+    private final RestTemplate restTemplate;
+
+    public MachineTokenService(OAuth2ClientCredentialsProperties props, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.props = props;
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(props.getConnectTimeoutMs());
+        requestFactory.setReadTimeout(props.getReadTimeoutMs());
+        this.restTemplate = new RestTemplate(requestFactory);
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            this.refreshSuccess = refreshTimer(registry, "success");
+            this.refreshFailure = refreshTimer(registry, "failure");
+            Gauge.builder("machine_token_seconds_to_expiry", current, ref -> {
+                        Token token = ref.get();
+                        return token != null ? token.expiresAt.getEpochSecond() - Instant.now().getEpochSecond() : 0;
+                    })
+                    .description("Seconds until the cached machine token expires")
+                    .register(registry);
+        } else {
+            this.refreshSuccess = null;
+            this.refreshFailure = null;
+        }
+    }
+
+    /**
+     * Действующий токен; блокирует вызывающего только когда токена нет
+     */
+    public String getBearerToken() {
+        Token token = current.get();
+        if (token != null && token.isUsable()) {
+            return token.value;
+        }
+        try {
+            return refreshSingleFlight().join().value;
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Failed to obtain machine token", e.getCause());
+        }
+    }
 
-    @Autowired
-    @Lazy
-    private RestTemplate restTemplate;
+    /**
+     * Неблокирующий вариант для реактивных клиентов
+     */
+    public CompletableFuture<String> getBearerTokenAsync() {
+        Token token = current.get();
+        if (token != null && token.isUsable()) {
+            return CompletableFuture.completedFuture(token.value);
+        }
+        return refreshSingleFlight().thenApply(t -> t.value);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
 
-    private final AtomicReference<String> cachedToken = new AtomicReference<>();
-    private volatile Instant expiresAt = Instant.EPOCH;
+    private CompletableFuture<Token> refreshSingleFlight() {
+        while (true) {
+            CompletableFuture<Token> running = inFlight.get();
+            if (running != null) {
+                return running;
+            }
+            CompletableFuture<Token> mine = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, mine)) {
+                refresher.execute(() -> fetchInto(mine));
+                return mine;
+            }
+        }
+    }
 
-    public synchronized String getBearerToken() {
-        if (Instant.now().isBefore(expiresAt.minusSeconds(30)) && cachedToken.get() != null) {
-            return cachedToken.get();
+    private void fetchInto(CompletableFuture<Token> future) {
+        long startedAt = System.nanoTime();
+        try {
+            Token token = fetch();
+            current.set(token);
+            record(refreshSuccess, startedAt);
+            scheduleRefresh(token);
+            future.complete(token);
+        } catch (Exception e) {
+            record(refreshFailure, startedAt);
+            log.warn("⚠️ Machine token refresh failed: {}", e.getMessage());
+            future.completeExceptionally(e);
+        } finally {
+            inFlight.compareAndSet(future, null);
         }
+    }
+
+    private void scheduleRefresh(Token token) {
+        long lifetime = token.expiresAt.getEpochSecond() - Instant.now().getEpochSecond();
+        long jitter = props.getRefreshJitterSeconds() > 0
+                ? ThreadLocalRandom.current().nextLong(props.getRefreshJitterSeconds() + 1) : 0;
+        // Для короткоживущих токенов обновляемся не позже середины срока
+        long ahead = Math.min(props.getRefreshAheadSeconds() + jitter, lifetime / 2);
+        long delay = Math.max(1, lifetime - ahead);
+        reschedule(() -> backgroundRefresh(RETRY_INITIAL_SECONDS), delay);
+        log.debug("🔑 Machine token obtained: expiresIn={}s, next refresh in {}s", lifetime, delay);
+    }
+
+    private void backgroundRefresh(long retryDelaySeconds) {
+        refreshSingleFlight().whenComplete((token, error) -> {
+            if (error == null) {
+                return;
+            }
+            // Пока старый токен действует, повторяем в фоне с растущей паузой
+            Token stillValid = current.get();
+            if (stillValid != null && stillValid.isUsable()) {
+                long next = Math.min(retryDelaySeconds * 2, RETRY_MAX_SECONDS);
+                reschedule(() -> backgroundRefresh(next), retryDelaySeconds);
+            }
+        });
+    }
+
+    private synchronized void reschedule(Runnable task, long delaySeconds) {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        scheduledRefresh = refresher.schedule(task, delaySeconds, TimeUnit.SECONDS);
+    }
+
+    private Token fetch() {
         MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
         form.add("grant_type", "client_credentials");
         form.add("scope", props.getScope());
@@ -48,8 +191,25 @@ public class MachineTokenService {
         }
         String token = (String) resp.get("access_token");
         int expiresIn = ((Number) resp.getOrDefault("expires_in", 300)).intValue();
-        this.cachedToken.set(token);
-        this.expiresAt = Instant.now().plusSeconds(expiresIn);
-        return token;
+        return new Token(token, Instant.now().plusSeconds(expiresIn));
+    }
+
+    private static Timer refreshTimer(MeterRegistry registry, String result) {
+        return Timer.builder("machine_token_refresh")
+                .description("Machine token requests to the authorization server")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private static void record(Timer timer, long startedAtNanos) {
+        if (timer != null) {
+            timer.record(System.nanoTime() - startedAtNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private record Token(String value, Instant expiresAt) {
+        boolean isUsable() {
+            return Instant.now().isBefore(expiresAt.minusSeconds(MIN_REMAINING_SECONDS));
+        }
     }
 }
@@ -6,6 +6,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.function.client.ClientRequest;
 import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
 @Configuration
 @RequiredArgsConstructor
@@ -18,12 +19,13 @@ public class WebClientMachineTokenFilter {
         return (request, next) -> {
             String url = request.url().toString();
             if (url.contains("/internal/")) {
-                String token = machineTokenService.getBearerToken();
-                return next.exchange(
-                        ClientRequest.from(request)
-                                .headers(httpHeaders -> httpHeaders.setBearerAuth(token))
-                                .build()
-                );
+                // Токен без блокировки event loop: при холодном старте ждем общий запрос за токеном
+                return Mono.fromFuture(machineTokenService::getBearerTokenAsync)
+                        .flatMap(token -> next.exchange(
+                                ClientRequest.from(request)
+                                        .headers(httpHeaders -> httpHeaders.setBearerAuth(token))
+                                        .build()
+                        ));
             }
             return next.exchange(request);
         };
@@ -0,0 +1,119 @@
+package ru.dmitartur.common.kafka;
+
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Небольшой замер профилей {@link KafkaProducerProfile}: records/sec и p99 задержки send (до ack брокера).
+ *
+ * Лежит в test-исходниках и не попадает в jar common-core. Запуск против локального брокера из infra/docker-compose.yml:
+ * <pre>
+ * mvn -pl common-core test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=ru.dmitartur.common.kafka.ProducerProfileBenchmark \
+ *     -Dexec.args="localhost:9092 producer-profile-bench 100000 512 THROUGHPUT,LATENCY,DEFAULT"
+ * </pre>
+ * Аргументы: bootstrap-servers, topic, количество записей, размер payload в байтах, список профилей.
+ */
+public final class ProducerProfileBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(ProducerProfileBenchmark.class);
+
+    private ProducerProfileBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        String bootstrapServers = args.length > 0 ? args[0] : "localhost:9092";
+        String topic = args.length > 1 ? args[1] : "producer-profile-bench";
+        int records = args.length > 2 ? Integer.parseInt(args[2]) : 50_000;
+        int payloadSize = args.length > 3 ? Integer.parseInt(args[3]) : 512;
+        KafkaProducerProfile[] profiles = args.length > 4
+                ? Arrays.stream(args[4].split(",")).map(KafkaProducerProfile::from).toArray(KafkaProducerProfile[]::new)
+                : KafkaProducerProfile.values();
+
+        for (KafkaProducerProfile profile : profiles) {
+            Result result = run(bootstrapServers, topic, profile, records, payloadSize);
+            log.info("📊 {}", result);
+        }
+    }
+
+    /**
+     * Отправить records сообщений с указанным профилем и посчитать пропускную способность и перцентили задержки
+     */
+    public static Result run(String bootstrapServers, String topic, KafkaProducerProfile profile,
+                             int records, int payloadSize) throws InterruptedException {
+        Map<String, Object> props = new HashMap<>(profile.producerProps());
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.CLIENT_ID_CONFIG, "bench-" + profile.name().toLowerCase());
+
+        // JSON-подобный payload, чтобы сжатие вело себя как на реальных сообщениях
+        StringBuilder sb = new StringBuilder("{\"offerId\":\"");
+        while (sb.length() < payloadSize - 2) {
+            sb.append("article-0000000001");
+        }
+        String payload = sb.append("\"}").toString();
+
+        long[] latenciesNanos = new long[records];
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(records);
+
+        long startedAt;
+        long finishedAt;
+        try (KafkaProducer<String, String> producer = new KafkaProducer<>(props)) {
+            // Прогрев: метаданные топика и соединение не должны попадать в замер
+            producer.send(new ProducerRecord<>(topic, "warmup", payload)).get(30, TimeUnit.SECONDS);
+
+            startedAt = System.nanoTime();
+            for (int i = 0; i < records; i++) {
+                final int idx = i;
+                final long sendStart = System.nanoTime();
+                producer.send(new ProducerRecord<>(topic, "key-" + (i % 1024), payload), (metadata, ex) -> {
+                    latenciesNanos[idx] = System.nanoTime() - sendStart;
+                    if (ex != null) {
+                        failed.incrementAndGet();
+                    }
+                    done.countDown();
+                });
+            }
+            producer.flush();
+            done.await(5, TimeUnit.MINUTES);
+            finishedAt = System.nanoTime();
+        } catch (Exception e) {
+            throw new IllegalStateException("Benchmark failed for profile " + profile + ": " + e.getMessage(), e);
+        }
+
+        Arrays.sort(latenciesNanos);
+        double seconds = (finishedAt - startedAt) / 1_000_000_000.0;
+        return new Result(profile, records, failed.get(), records / seconds,
+                percentileMillis(latenciesNanos, 0.50), percentileMillis(latenciesNanos, 0.99));
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) return 0;
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(index, sortedNanos.length - 1))] / 1_000_000.0;
+    }
+
+    /**
+     * Результат замера одного профиля
+     */
+    public record Result(KafkaProducerProfile profile, int records, int failed,
+                         double recordsPerSecond, double p50Millis, double p99Millis) {
+        @Override
+        public String toString() {
+            return String.format("%-10s records=%d failed=%d throughput=%.0f rec/s p50=%.2f ms p99=%.2f ms",
+                    profile, records, failed, recordsPerSecond, p50Millis, p99Millis);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ru.dmitartur.order.config;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import net.devh.boot.grpc.server.interceptor.GrpcGlobalServerInterceptor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import ru.dmitartur.common.grpc.ServerAuthInterceptor;
+import ru.dmitartur.common.security.CachedJwkSource;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Аутентификация внутреннего gRPC API заказов.
+ *
+ * Клиенты (GrpcClientsConfig) передают машинный токен, сервер проверяет его локально
+ * по кэшированному JWKS: подпись, сроки, issuer и машинный scope (grpc.server.auth.required-scope).
+ * grpc.server.auth.issuer должен совпадать с oauth2.issuer authorization-service.
+ * Отключается grpc.server.auth.enabled=false.
+ */
+@Configuration
+@ConditionalOnProperty(name = "grpc.server.auth.enabled", havingValue = "true", matchIfMissing = true)
+public class GrpcServerSecurityConfig {
+
+    @Value("${security.oauth2.resourceserver.jwt.jwk-set-uri:http://localhost:9099/oauth2/jwks}")
+    private String jwkSetUri;
+
+    @Value("${grpc.server.auth.issuer:${security.oauth2.resourceserver.jwt.issuer-uri:http://localhost:9099}}")
+    private String issuer;
+
+    @Value("${grpc.server.auth.required-scope:internal}")
+    private String requiredScope;
+
+    @Value("${grpc.server.auth.jwks-refresh-seconds:300}")
+    private long jwksRefreshSeconds;
+
+    @Value("${grpc.server.auth.jwks-min-forced-refresh-seconds:30}")
+    private long jwksMinForcedRefreshSeconds;
+
+    @Value("${grpc.server.auth.principal-ttl-seconds:300}")
+    private long principalTtlSeconds;
+
+    @Value("${grpc.server.auth.principal-cache-size:10000}")
+    private int principalCacheSize;
+
+    @Bean(destroyMethod = "close")
+    public CachedJwkSource grpcJwkSource() throws MalformedURLException {
+        return new CachedJwkSource(new URL(jwkSetUri), jwksRefreshSeconds, jwksMinForcedRefreshSeconds);
+    }
+
+    @Bean
+    @GrpcGlobalServerInterceptor
+    public ServerAuthInterceptor serverAuthInterceptor(CachedJwkSource grpcJwkSource) {
+        DefaultJWTProcessor<SecurityContext> processor = new DefaultJWTProcessor<>();
+        processor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, grpcJwkSource));
+        NimbusJwtDecoder decoder = new NimbusJwtDecoder(processor);
+        decoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(issuer));
+        return new ServerAuthInterceptor(decoder, requiredScope, principalTtlSeconds, principalCacheSize);
+    }
+}
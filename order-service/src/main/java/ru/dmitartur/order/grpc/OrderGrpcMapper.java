@@ -0,0 +1,159 @@
+package ru.dmitartur.order.grpc;
+
+import org.springframework.stereotype.Component;
+import ru.dmitartur.common.dto.OrderDto;
+import ru.dmitartur.common.dto.OrderItemDto;
+import ru.dmitartur.common.enums.Market;
+import ru.dmitartur.common.enums.OrderStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Конвертация заказов между gRPC сообщениями (orders.proto) и общим OrderDto.
+ *
+ * В proto даты, суммы и UUID передаются строками, пустая строка — отсутствие значения.
+ * Даты принимаются как LocalDateTime.toString() и как ISO со смещением (переводятся в локальную зону).
+ */
+@Component
+public class OrderGrpcMapper {
+
+    public OrderDto fromGrpc(ru.dmitartur.common.grpc.OrderDto grpc) {
+        OrderDto dto = new OrderDto();
+        dto.setPostingNumber(blankToNull(grpc.getPostingNumber()));
+        dto.setSource(blankToNull(grpc.getSource()));
+        dto.setMarket(Market.valueOf(grpc.getMarket().name()));
+        dto.setStatus(OrderStatus.valueOf(grpc.getStatus().name()));
+        dto.setOzonCreatedAt(parseDate(grpc.getOzonCreatedAt()));
+        dto.setCustomerName(blankToNull(grpc.getCustomerName()));
+        dto.setCustomerPhone(blankToNull(grpc.getCustomerPhone()));
+        dto.setAddress(blankToNull(grpc.getAddress()));
+        dto.setTotalPrice(parseDecimal(grpc.getTotalPrice()));
+        dto.setInProcessAt(parseDate(grpc.getInProcessAt()));
+        dto.setShipmentDate(parseDate(grpc.getShipmentDate()));
+        dto.setDeliveringDate(parseDate(grpc.getDeliveringDate()));
+        dto.setCancelReason(blankToNull(grpc.getCancelReason()));
+        dto.setCancelReasonId(grpc.getCancelReasonId() != 0 ? grpc.getCancelReasonId() : null);
+        dto.setCancellationType(blankToNull(grpc.getCancellationType()));
+        dto.setTrackingNumber(blankToNull(grpc.getTrackingNumber()));
+        dto.setDeliveryMethodName(blankToNull(grpc.getDeliveryMethodName()));
+        dto.setSubstatus(blankToNull(grpc.getSubstatus()));
+        dto.setIsExpress(grpc.getIsExpress());
+        dto.setWarehouseId(blankToNull(grpc.getWarehouseId()));
+        dto.setCompanyId(parseUuid(grpc.getCompanyId(), "company_id"));
+        dto.setOwnerUserId(parseUuid(grpc.getOwnerUserId(), "owner_user_id"));
+
+        List<OrderItemDto> items = new ArrayList<>(grpc.getItemsCount());
+        for (ru.dmitartur.common.grpc.OrderItemDto item : grpc.getItemsList()) {
+            OrderItemDto itemDto = new OrderItemDto();
+            itemDto.setId(item.getId() != 0 ? item.getId() : null);
+            itemDto.setProductId(item.getProductId() != 0 ? item.getProductId() : null);
+            itemDto.setOfferId(blankToNull(item.getOfferId()));
+            itemDto.setName(blankToNull(item.getName()));
+            itemDto.setQuantity(item.getQuantity());
+            itemDto.setPrice(parseDecimal(item.getPrice()));
+            itemDto.setSku(blankToNull(item.getSku()));
+            items.add(itemDto);
+        }
+        dto.setItems(items);
+        return dto;
+    }
+
+    public ru.dmitartur.common.grpc.OrderDto toGrpc(OrderDto dto) {
+        var builder = ru.dmitartur.common.grpc.OrderDto.newBuilder()
+                .setId(dto.getId() != null ? dto.getId() : 0)
+                .setPostingNumber(nullToEmpty(dto.getPostingNumber()))
+                .setSource(nullToEmpty(dto.getSource()))
+                .setCreatedAt(format(dto.getCreatedAt()))
+                .setUpdatedAt(format(dto.getUpdatedAt()))
+                .setOzonCreatedAt(format(dto.getOzonCreatedAt()))
+                .setCustomerName(nullToEmpty(dto.getCustomerName()))
+                .setCustomerPhone(nullToEmpty(dto.getCustomerPhone()))
+                .setAddress(nullToEmpty(dto.getAddress()))
+                .setTotalPrice(dto.getTotalPrice() != null ? dto.getTotalPrice().toPlainString() : "")
+                .setInProcessAt(format(dto.getInProcessAt()))
+                .setShipmentDate(format(dto.getShipmentDate()))
+                .setDeliveringDate(format(dto.getDeliveringDate()))
+                .setCancelReason(nullToEmpty(dto.getCancelReason()))
+                .setCancelReasonId(dto.getCancelReasonId() != null ? dto.getCancelReasonId() : 0)
+                .setCancellationType(nullToEmpty(dto.getCancellationType()))
+                .setTrackingNumber(nullToEmpty(dto.getTrackingNumber()))
+                .setDeliveryMethodName(nullToEmpty(dto.getDeliveryMethodName()))
+                .setSubstatus(nullToEmpty(dto.getSubstatus()))
+                .setIsExpress(Boolean.TRUE.equals(dto.getIsExpress()))
+                .setWarehouseId(nullToEmpty(dto.getWarehouseId()))
+                .setDaysInTransit(dto.getDaysInTransit() != null ? dto.getDaysInTransit() : 0)
+                .setDaysInProcessing(dto.getDaysInProcessing() != null ? dto.getDaysInProcessing() : 0)
+                .setCompanyId(dto.getCompanyId() != null ? dto.getCompanyId().toString() : "")
+                .setOwnerUserId(dto.getOwnerUserId() != null ? dto.getOwnerUserId().toString() : "");
+        if (dto.getMarket() != null) {
+            builder.setMarket(ru.dmitartur.common.grpc.Market.valueOf(dto.getMarket().name()));
+        }
+        if (dto.getStatus() != null) {
+            builder.setStatus(ru.dmitartur.common.grpc.OrderStatus.valueOf(dto.getStatus().name()));
+        }
+        if (dto.getItems() != null) {
+            for (OrderItemDto item : dto.getItems()) {
+                builder.addItems(ru.dmitartur.common.grpc.OrderItemDto.newBuilder()
+                        .setId(item.getId() != null ? item.getId() : 0)
+                        .setProductId(item.getProductId() != null ? item.getProductId() : 0)
+                        .setOfferId(nullToEmpty(item.getOfferId()))
+                        .setName(nullToEmpty(item.getName()))
+                        .setQuantity(item.getQuantity() != null ? item.getQuantity() : 0)
+                        .setPrice(item.getPrice() != null ? item.getPrice().toPlainString() : "")
+                        .setSku(nullToEmpty(item.getSku()))
+                        .build());
+            }
+        }
+        return builder.build();
+    }
+
+    private LocalDateTime parseDate(String value) {
+        if (value == null || value.isBlank()) return null;
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            try {
+                return OffsetDateTime.parse(value).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+            } catch (DateTimeParseException ignored) {
+                throw new IllegalArgumentException("Invalid date: " + value);
+            }
+        }
+    }
+
+    private BigDecimal parseDecimal(String value) {
+        if (value == null || value.isBlank()) return null;
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid decimal: " + value);
+        }
+    }
+
+    private UUID parseUuid(String value, String field) {
+        if (value == null || value.isBlank()) return null;
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value);
+        }
+    }
+
+    private String format(LocalDateTime value) {
+        return value != null ? value.toString() : "";
+    }
+
+    private String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+
+    private String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -0,0 +1,292 @@
+package ru.dmitartur.order.grpc;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.devh.boot.grpc.server.service.GrpcService;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import ru.dmitartur.common.dto.OrderDto;
+import ru.dmitartur.common.enums.Market;
+import ru.dmitartur.common.grpc.FindOrderRequest;
+import ru.dmitartur.common.grpc.FindOrderResponse;
+import ru.dmitartur.common.grpc.GetOrdersByMarketRequest;
+import ru.dmitartur.common.grpc.GetOrdersByMarketResponse;
+import ru.dmitartur.common.grpc.JsonRequest;
+import ru.dmitartur.common.grpc.JsonResponse;
+import ru.dmitartur.common.grpc.OrderInternalServiceGrpc;
+import ru.dmitartur.common.grpc.UpsertOrdersRequest;
+import ru.dmitartur.common.grpc.UpsertOrdersResponse;
+import ru.dmitartur.order.entity.Order;
+import ru.dmitartur.order.mapper.OrderMapper;
+import ru.dmitartur.order.repository.OrderRepository;
+import ru.dmitartur.order.service.OrderBulkUpsertService;
+import ru.dmitartur.order.service.OrderBulkUpsertService.BulkUpsertResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * gRPC сервер внутреннего API заказов для сервисов маркетплейсов.
+ *
+ * Все варианты upsert идут через OrderBulkUpsertService (пачки одним набором запросов).
+ * UpsertOrdersStream читает сообщения клиента по одному: следующее запрашивается только после того,
+ * как накопленная пачка записана в БД, поэтому быстрый клиент упирается в окно HTTP/2, а не в память сервера.
+ */
+@Slf4j
+@GrpcService
+@RequiredArgsConstructor
+public class OrderInternalGrpcServer extends OrderInternalServiceGrpc.OrderInternalServiceImplBase {
+
+    private static final int MAX_ORDERS_PER_CALL = 10_000;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final OrderBulkUpsertService orderBulkUpsertService;
+    private final OrderRepository orderRepository;
+    private final OrderMapper orderMapper;
+    private final OrderGrpcMapper orderGrpcMapper;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * JSON вариант для обратной совместимости: массив OrderDto или {"companyId": ..., "orders": [...]}
+     */
+    @Override
+    public void upsertOrders(JsonRequest request, StreamObserver<JsonResponse> responseObserver) {
+        ObjectNode response = objectMapper.createObjectNode();
+        try {
+            JsonNode root = objectMapper.readTree(request.getJson());
+            JsonNode ordersNode = root.isArray() ? root : root.path("orders");
+            UUID companyId = root.hasNonNull("companyId") ? parseCompanyId(root.get("companyId").asText()) : null;
+            List<OrderDto> orders = objectMapper.convertValue(ordersNode, new TypeReference<List<OrderDto>>() {});
+            if (orders == null || orders.size() > MAX_ORDERS_PER_CALL) {
+                throw new IllegalArgumentException("Expected 1.." + MAX_ORDERS_PER_CALL + " orders");
+            }
+            BulkUpsertResult result = orderBulkUpsertService.upsert(orders, companyId);
+            response.put("success", result.getErrors().isEmpty());
+            response.put("processed", result.getProcessed());
+            response.put("created", result.getCreated());
+            response.put("updated", result.getUpdated());
+            response.set("errors", objectMapper.valueToTree(result.getErrors()));
+        } catch (Exception e) {
+            log.error("❌ gRPC: Error upserting orders from JSON: {}", e.getMessage(), e);
+            response.removeAll();
+            response.put("success", false);
+            response.putArray("errors").add("Error upserting orders: " + e.getMessage());
+        }
+        responseObserver.onNext(JsonResponse.newBuilder().setJson(response.toString()).build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void upsertOrdersDto(UpsertOrdersRequest request, StreamObserver<UpsertOrdersResponse> responseObserver) {
+        BulkUpsertResult result = new BulkUpsertResult();
+        try {
+            if (request.getOrdersCount() > MAX_ORDERS_PER_CALL) {
+                result.addError("Too many orders: " + request.getOrdersCount() + " > " + MAX_ORDERS_PER_CALL
+                        + ", use UpsertOrdersStream");
+            } else {
+                UUID companyId = parseCompanyId(request.getCompanyId());
+                result.add(orderBulkUpsertService.upsert(convert(request, result), companyId));
+            }
+        } catch (Exception e) {
+            log.error("❌ gRPC: Error upserting orders: {}", e.getMessage(), e);
+            result.addError("Error upserting orders: " + e.getMessage());
+        }
+        responseObserver.onNext(toResponse(result));
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public StreamObserver<UpsertOrdersRequest> upsertOrdersStream(StreamObserver<UpsertOrdersResponse> responseObserver) {
+        ServerCallStreamObserver<UpsertOrdersResponse> call = (ServerCallStreamObserver<UpsertOrdersResponse>) responseObserver;
+        // Ручной запрос сообщений: следующее берем только после обработки текущего
+        call.disableAutoRequest();
+        OrderStreamUpsert upsert = new OrderStreamUpsert(call);
+        call.request(1);
+        return upsert;
+    }
+
+    @Override
+    public void findOrder(FindOrderRequest request, StreamObserver<FindOrderResponse> responseObserver) {
+        try {
+            FindOrderResponse.Builder response = FindOrderResponse.newBuilder();
+            orderRepository.findByPostingNumber(request.getPostingNumber())
+                    .ifPresentOrElse(
+                            order -> response.setFound(true).setOrder(orderGrpcMapper.toGrpc(orderMapper.toDto(order))),
+                            () -> response.setFound(false));
+            log.debug("🔍 gRPC: FindOrder postingNumber={}, found={}", request.getPostingNumber(), response.getFound());
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
+        } catch (Exception e) {
+            log.error("❌ gRPC: Error finding order {}: {}", request.getPostingNumber(), e.getMessage(), e);
+            responseObserver.onError(Status.INTERNAL.withDescription("Error finding order: " + e.getMessage()).asRuntimeException());
+        }
+    }
+
+    @Override
+    public void getOrdersByMarket(GetOrdersByMarketRequest request, StreamObserver<GetOrdersByMarketResponse> responseObserver) {
+        Market market;
+        try {
+            market = Market.valueOf(request.getMarket().name());
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("Unknown market: " + request.getMarketValue()).asRuntimeException());
+            return;
+        }
+        try {
+            int size = request.getSize() > 0 ? Math.min(request.getSize(), MAX_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+            int page = Math.max(request.getPage(), 0);
+            Page<Order> orders = orderRepository.findByMarket(market, PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "id")));
+
+            GetOrdersByMarketResponse.Builder response = GetOrdersByMarketResponse.newBuilder()
+                    .setTotalElements((int) Math.min(orders.getTotalElements(), Integer.MAX_VALUE))
+                    .setTotalPages(orders.getTotalPages())
+                    .setCurrentPage(page)
+                    .setSize(size);
+            for (Order order : orders.getContent()) {
+                response.addOrders(orderGrpcMapper.toGrpc(orderMapper.toDto(order)));
+            }
+            log.debug("📋 gRPC: GetOrdersByMarket market={}, page={}, size={}, total={}",
+                    market, page, size, orders.getTotalElements());
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
+        } catch (Exception e) {
+            log.error("❌ gRPC: Error loading orders by market {}: {}", market, e.getMessage(), e);
+            responseObserver.onError(Status.INTERNAL.withDescription("Error loading orders: " + e.getMessage()).asRuntimeException());
+        }
+    }
+
+    /**
+     * Прием потока: заказы копятся до размера пачки и пишутся синхронно в потоке gRPC.
+     * Записанные пачки остаются в БД, даже если клиент потом оборвет поток.
+     * Ошибочное сообщение отклоняется целиком с ошибкой, где указан его номер и заказы;
+     * уже накопленные заказы других сообщений остаются в буфере и записываются.
+     */
+    private final class OrderStreamUpsert implements StreamObserver<UpsertOrdersRequest> {
+        private final ServerCallStreamObserver<UpsertOrdersResponse> call;
+        private final BulkUpsertResult result = new BulkUpsertResult();
+        private final List<OrderDto> buffer = new ArrayList<>(OrderBulkUpsertService.CHUNK_SIZE);
+        private UUID bufferCompanyId;
+        private long received;
+        private long messages;
+
+        OrderStreamUpsert(ServerCallStreamObserver<UpsertOrdersResponse> call) {
+            this.call = call;
+        }
+
+        @Override
+        public void onNext(UpsertOrdersRequest request) {
+            long message = ++messages;
+            received += request.getOrdersCount();
+            UUID companyId = null;
+            List<OrderDto> orders = null;
+            try {
+                companyId = parseCompanyId(request.getCompanyId());
+                orders = convert(request, result);
+            } catch (Exception e) {
+                String error = "Message #" + message + " rejected (" + describe(request.getOrdersList().stream()
+                        .map(ru.dmitartur.common.grpc.OrderDto::getPostingNumber).toList()) + "): " + e.getMessage();
+                log.error("❌ gRPC: UpsertOrdersStream {}", error, e);
+                result.addError(error);
+            }
+            if (orders != null) {
+                // Компания по умолчанию задается на пачку, поэтому заказы разных компаний не смешиваем
+                if (!buffer.isEmpty() && !Objects.equals(companyId, bufferCompanyId)) {
+                    flush();
+                }
+                bufferCompanyId = companyId;
+                buffer.addAll(orders);
+                if (buffer.size() >= OrderBulkUpsertService.CHUNK_SIZE) {
+                    flush();
+                }
+            }
+            call.request(1);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            log.warn("⚠️ gRPC: UpsertOrdersStream aborted by client after {} orders: {}", received, t.getMessage());
+            buffer.clear();
+        }
+
+        @Override
+        public void onCompleted() {
+            flush();
+            log.info("✅ gRPC: UpsertOrdersStream completed: received={}, created={}, updated={}, errors={}",
+                    received, result.getCreated(), result.getUpdated(), result.getErrors().size());
+            call.onNext(toResponse(result));
+            call.onCompleted();
+        }
+
+        /**
+         * Записать буфер; ошибка записи попадает в результат с перечнем незаписанных заказов
+         */
+        private void flush() {
+            if (buffer.isEmpty()) return;
+            try {
+                result.add(orderBulkUpsertService.upsert(new ArrayList<>(buffer), bufferCompanyId));
+            } catch (Exception e) {
+                String error = "Chunk not written (" + describe(buffer.stream().map(OrderDto::getPostingNumber).toList())
+                        + "): " + e.getMessage();
+                log.error("❌ gRPC: UpsertOrdersStream {}", error, e);
+                result.addError(error);
+            } finally {
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Заказы для текста ошибки: число и первые номера отправлений
+     */
+    private static String describe(List<String> postingNumbers) {
+        int shown = Math.min(postingNumbers.size(), 10);
+        String head = String.join(", ", postingNumbers.subList(0, shown));
+        return postingNumbers.size() + " orders: " + head + (postingNumbers.size() > shown ? ", …" : "");
+    }
+
+    /**
+     * Ошибки конвертации отдельных заказов попадают в результат, остальные заказы пишутся
+     */
+    private List<OrderDto> convert(UpsertOrdersRequest request, BulkUpsertResult result) {
+        List<OrderDto> orders = new ArrayList<>(request.getOrdersCount());
+        for (ru.dmitartur.common.grpc.OrderDto grpcOrder : request.getOrdersList()) {
+            try {
+                orders.add(orderGrpcMapper.fromGrpc(grpcOrder));
+            } catch (IllegalArgumentException e) {
+                result.addError(grpcOrder.getPostingNumber() + ": " + e.getMessage());
+            }
+        }
+        return orders;
+    }
+
+    private UpsertOrdersResponse toResponse(BulkUpsertResult result) {
+        return UpsertOrdersResponse.newBuilder()
+                .setProcessedCount(result.getProcessed())
+                .setCreatedCount(result.getCreated())
+                .setUpdatedCount(result.getUpdated())
+                .addAllErrors(result.getErrors())
+                .setSuccess(result.getErrors().isEmpty())
+                .build();
+    }
+
+    private UUID parseCompanyId(String companyId) {
+        if (companyId == null || companyId.isBlank()) {
+            return null;
+        }
+        try {
+            return UUID.fromString(companyId);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid company_id: " + companyId);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package ru.dmitartur.order.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.dmitartur.common.dto.OrderDto;
+import ru.dmitartur.common.dto.OrderItemDto;
+import ru.dmitartur.common.enums.OrderStatus;
+import ru.dmitartur.order.entity.Order;
+import ru.dmitartur.order.event.OrderCancelledEvent;
+import ru.dmitartur.order.event.OrderCreatedEvent;
+import ru.dmitartur.order.mapper.OrderMapper;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Пакетный upsert заказов (gRPC UpsertOrdersDto / UpsertOrdersStream).
+ *
+ * Пачка пишется за фиксированное число запросов независимо от размера: существующие заказы блокируются
+ * и читаются одним SELECT ... FOR UPDATE, сами заказы — одним INSERT ... SELECT FROM unnest
+ * ON CONFLICT (posting_number) DO UPDATE, товары — пакетами по разнице с текущими строками.
+ * События создания и отмены публикуются по тем же правилам, что и в OrderService, но только после
+ * коммита пачки: асинхронный слушатель не должен увидеть незакоммиченный или откатившийся заказ.
+ *
+ * Если пачка упала целиком, она повторяется по одному заказу, чтобы ошибка досталась только
+ * проблемным заказам.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OrderBulkUpsertService {
+
+    public static final int CHUNK_SIZE = 500;
+    private static final int MAX_ERRORS = 1000;
+
+    private static final String LOCK_EXISTING_SQL =
+            "SELECT id, posting_number, status FROM orders.orders WHERE posting_number = ANY(?) FOR UPDATE";
+    private static final String UPSERT_ORDERS_SQL = """
+            INSERT INTO orders.orders (posting_number, source, market, status, created_at, updated_at,
+                                       ozon_created_at, customer_name, customer_phone, address, total_price,
+                                       in_process_at, shipment_date, delivering_date, cancel_reason,
+                                       cancel_reason_id, cancellation_type, tracking_number, delivery_method_name,
+                                       substatus, is_express, warehouse_id, company_id, owner_user_id)
+            SELECT r.posting_number, r.source, r.market, r.status, ?, ?,
+                   r.ozon_created_at, r.customer_name, r.customer_phone, r.address, r.total_price,
+                   r.in_process_at, r.shipment_date, r.delivering_date, r.cancel_reason,
+                   r.cancel_reason_id, r.cancellation_type, r.tracking_number, r.delivery_method_name,
+                   r.substatus, r.is_express, r.warehouse_id, r.company_id::uuid, r.owner_user_id::uuid
+            FROM unnest(?::text[], ?::text[], ?::text[], ?::text[], ?::timestamp[], ?::text[], ?::text[],
+                        ?::text[], ?::numeric[], ?::timestamp[], ?::timestamp[], ?::timestamp[], ?::text[],
+                        ?::int8[], ?::text[], ?::text[], ?::text[], ?::text[], ?::bool[], ?::text[],
+                        ?::text[], ?::text[])
+                     AS r(posting_number, source, market, status, ozon_created_at, customer_name, customer_phone,
+                          address, total_price, in_process_at, shipment_date, delivering_date, cancel_reason,
+                          cancel_reason_id, cancellation_type, tracking_number, delivery_method_name,
+                          substatus, is_express, warehouse_id, company_id, owner_user_id)
+            ON CONFLICT (posting_number) DO UPDATE
+            SET source = EXCLUDED.source, market = EXCLUDED.market, status = EXCLUDED.status,
+                updated_at = EXCLUDED.updated_at, ozon_created_at = EXCLUDED.ozon_created_at,
+                customer_name = EXCLUDED.customer_name, customer_phone = EXCLUDED.customer_phone,
+                address = EXCLUDED.address, total_price = EXCLUDED.total_price,
+                in_process_at = EXCLUDED.in_process_at, shipment_date = EXCLUDED.shipment_date,
+                delivering_date = EXCLUDED.delivering_date, cancel_reason = EXCLUDED.cancel_reason,
+                cancel_reason_id = EXCLUDED.cancel_reason_id, cancellation_type = EXCLUDED.cancellation_type,
+                tracking_number = EXCLUDED.tracking_number, delivery_method_name = EXCLUDED.delivery_method_name,
+                substatus = EXCLUDED.substatus, is_express = EXCLUDED.is_express,
+                warehouse_id = EXCLUDED.warehouse_id
+            RETURNING id, posting_number, (xmax = 0) AS inserted
+            """;
+    private static final String FIND_ITEMS_SQL =
+            "SELECT id, order_id, product_id, sku, offer_id, name, quantity, price FROM orders.order_items WHERE order_id = ANY(?)";
+    private static final String INSERT_ITEM_SQL =
+            "INSERT INTO orders.order_items (order_id, product_id, sku, offer_id, name, quantity, price) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_ITEM_SQL =
+            "UPDATE orders.order_items SET product_id = ?, sku = ?, offer_id = ?, name = ?, quantity = ?, price = ? WHERE id = ?";
+    private static final String DELETE_ITEMS_SQL = "DELETE FROM orders.order_items WHERE id = ANY(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final OrderMapper orderMapper;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Записать заказы пачками по {@link #CHUNK_SIZE}, каждая пачка — своя транзакция
+     *
+     * @param companyId компания по умолчанию для заказов без company_id
+     */
+    public BulkUpsertResult upsert(List<OrderDto> orders, UUID companyId) {
+        long startedAt = System.currentTimeMillis();
+        BulkUpsertResult result = new BulkUpsertResult();
+        List<OrderDto> valid = new ArrayList<>(orders.size());
+        for (OrderDto order : orders) {
+            if (order == null || order.getPostingNumber() == null || order.getPostingNumber().isBlank()) {
+                result.addError("Order without posting_number skipped");
+                continue;
+            }
+            if (order.getCompanyId() == null) {
+                order.setCompanyId(companyId);
+            }
+            valid.add(order);
+        }
+
+        for (int from = 0; from < valid.size(); from += CHUNK_SIZE) {
+            writeChunkOrRows(valid.subList(from, Math.min(from + CHUNK_SIZE, valid.size())), result);
+        }
+        log.info("✅ Bulk order upsert: received={}, created={}, updated={}, errors={}, tookMs={}",
+                orders.size(), result.getCreated(), result.getUpdated(), result.getErrors().size(),
+                System.currentTimeMillis() - startedAt);
+        return result;
+    }
+
+    private void writeChunkOrRows(List<OrderDto> chunk, BulkUpsertResult result) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        try {
+            ChunkWrite written = tx.execute(status -> writeChunk(chunk));
+            result.add(written.result());
+            // Пачка закоммичена; при откате событий не было, и повтор по одному не даст дублей
+            written.events().forEach(eventPublisher::publishEvent);
+            return;
+        } catch (RuntimeException e) {
+            if (chunk.size() == 1) {
+                result.addError(chunk.get(0).getPostingNumber() + ": " + e.getMessage());
+                log.warn("⚠️ Order upsert failed: postingNumber={}, error={}", chunk.get(0).getPostingNumber(), e.getMessage());
+                return;
+            }
+            log.warn("⚠️ Order chunk upsert failed, retrying by one: size={}, error={}", chunk.size(), e.getMessage());
+        }
+        for (OrderDto order : chunk) {
+            writeChunkOrRows(List.of(order), result);
+        }
+    }
+
+    /**
+     * Одна пачка в текущей транзакции; события возвращаются для публикации после коммита
+     */
+    private ChunkWrite writeChunk(List<OrderDto> chunk) {
+        // В одном INSERT ... ON CONFLICT строка не может обновиться дважды: повторы номера — побеждает последний
+        Map<String, OrderDto> byPosting = new LinkedHashMap<>();
+        for (OrderDto order : chunk) {
+            byPosting.put(order.getPostingNumber(), order);
+        }
+        List<OrderDto> orders = new ArrayList<>(byPosting.values());
+
+        Map<String, OrderStatus> previousStatus = lockExisting(byPosting.keySet());
+
+        Map<String, Long> ids = new HashMap<>();
+        Set<String> inserted = new HashSet<>();
+        jdbcTemplate.query(con -> upsertOrders(con, orders), rs -> {
+            ids.put(rs.getString("posting_number"), rs.getLong("id"));
+            if (rs.getBoolean("inserted")) inserted.add(rs.getString("posting_number"));
+        });
+
+        writeItems(orders, ids, inserted);
+
+        BulkUpsertResult written = new BulkUpsertResult();
+        List<ApplicationEvent> events = new ArrayList<>();
+        for (OrderDto dto : orders) {
+            String postingNumber = dto.getPostingNumber();
+            if (inserted.contains(postingNumber)) {
+                written.created++;
+                events.add(new OrderCreatedEvent(this, toEntity(dto, ids.get(postingNumber))));
+                continue;
+            }
+            written.updated++;
+            // Заказ, вставленный параллельной транзакцией после блокировки, прежнего статуса не имеет — отмены здесь нет
+            OrderStatus before = previousStatus.get(postingNumber);
+            if (before != null && before != dto.getStatus() && dto.getStatus() == OrderStatus.CANCELLED) {
+                log.info("🔄 Order status changed to CANCELLED: postingNumber={}", postingNumber);
+                events.add(new OrderCancelledEvent(this, toEntity(dto, ids.get(postingNumber))));
+            }
+        }
+        return new ChunkWrite(written, events);
+    }
+
+    private Map<String, OrderStatus> lockExisting(Set<String> postingNumbers) {
+        Map<String, OrderStatus> statuses = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(LOCK_EXISTING_SQL);
+            ps.setArray(1, array(con, "text", postingNumbers.toArray()));
+            return ps;
+        }, rs -> {
+            String status = rs.getString("status");
+            statuses.put(rs.getString("posting_number"), status != null ? OrderStatus.valueOf(status) : OrderStatus.UNKNOWN);
+        });
+        return statuses;
+    }
+
+    private PreparedStatement upsertOrders(Connection con, List<OrderDto> orders) throws SQLException {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        PreparedStatement ps = con.prepareStatement(UPSERT_ORDERS_SQL);
+        ps.setTimestamp(1, now);
+        ps.setTimestamp(2, now);
+        ps.setArray(3, array(con, "text", column(orders, OrderDto::getPostingNumber)));
+        ps.setArray(4, array(con, "text", column(orders, OrderDto::getSource)));
+        ps.setArray(5, array(con, "text", column(orders, o -> o.getMarket() != null ? o.getMarket().name() : null)));
+        ps.setArray(6, array(con, "text", column(orders, o -> o.getStatus() != null ? o.getStatus().name() : null)));
+        ps.setArray(7, array(con, "timestamp", column(orders, o -> timestamp(o.getOzonCreatedAt()))));
+        ps.setArray(8, array(con, "text", column(orders, OrderDto::getCustomerName)));
+        ps.setArray(9, array(con, "text", column(orders, OrderDto::getCustomerPhone)));
+        ps.setArray(10, array(con, "text", column(orders, OrderDto::getAddress)));
+        ps.setArray(11, array(con, "numeric", column(orders, OrderDto::getTotalPrice)));
+        ps.setArray(12, array(con, "timestamp", column(orders, o -> timestamp(o.getInProcessAt()))));
+        ps.setArray(13, array(con, "timestamp", column(orders, o -> timestamp(o.getShipmentDate()))));
+        ps.setArray(14, array(con, "timestamp", column(orders, o -> timestamp(o.getDeliveringDate()))));
+        ps.setArray(15, array(con, "text", column(orders, OrderDto::getCancelReason)));
+        ps.setArray(16, array(con, "int8", column(orders, OrderDto::getCancelReasonId)));
+        ps.setArray(17, array(con, "text", column(orders, OrderDto::getCancellationType)));
+        ps.setArray(18, array(con, "text", column(orders, OrderDto::getTrackingNumber)));
+        ps.setArray(19, array(con, "text", column(orders, OrderDto::getDeliveryMethodName)));
+        ps.setArray(20, array(con, "text", column(orders, OrderDto::getSubstatus)));
+        ps.setArray(21, array(con, "bool", column(orders, OrderDto::getIsExpress)));
+        ps.setArray(22, array(con, "text", column(orders, OrderDto::getWarehouseId)));
+        ps.setArray(23, array(con, "text", column(orders, o -> o.getCompanyId() != null ? o.getCompanyId().toString() : null)));
+        ps.setArray(24, array(con, "text", column(orders, o -> o.getOwnerUserId() != null ? o.getOwnerUserId().toString() : null)));
+        return ps;
+    }
+
+    /**
+     * Товары: у новых заказов — вставка, у существующих — разница с текущими строками
+     * (сопоставление по id, затем по offerId + sku, как в OrderMapper.updateOrder)
+     */
+    private void writeItems(List<OrderDto> orders, Map<String, Long> ids, Set<String> inserted) {
+        List<Long> existingOrderIds = new ArrayList<>();
+        for (OrderDto dto : orders) {
+            if (!inserted.contains(dto.getPostingNumber())) existingOrderIds.add(ids.get(dto.getPostingNumber()));
+        }
+        Map<Long, List<ExistingItem>> currentItems = loadItems(existingOrderIds);
+
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        List<Long> deletes = new ArrayList<>();
+        for (OrderDto dto : orders) {
+            Long orderId = ids.get(dto.getPostingNumber());
+            List<OrderItemDto> incoming = dto.getItems() != null ? dto.getItems() : List.of();
+            List<ExistingItem> current = currentItems.getOrDefault(orderId, List.of());
+
+            Map<Long, ExistingItem> byId = new HashMap<>();
+            Map<String, ExistingItem> byBusinessKey = new HashMap<>();
+            for (ExistingItem item : current) {
+                byId.put(item.id(), item);
+                byBusinessKey.put(orderMapper.makeBusinessKey(item.offerId(), item.sku()), item);
+            }
+            Set<Long> matched = new HashSet<>();
+            for (OrderItemDto item : incoming) {
+                if (item == null) continue;
+                ExistingItem target = item.getId() != null ? byId.get(item.getId()) : null;
+                if (target == null) target = byBusinessKey.get(orderMapper.makeBusinessKey(item.getOfferId(), item.getSku()));
+
+                if (target == null || matched.contains(target.id())) {
+                    inserts.add(new Object[]{orderId, item.getProductId(), item.getSku(), item.getOfferId(),
+                            item.getName(), item.getQuantity(), item.getPrice()});
+                    continue;
+                }
+                matched.add(target.id());
+                if (target.differsFrom(item)) {
+                    updates.add(new Object[]{item.getProductId(), item.getSku(), item.getOfferId(),
+                            item.getName(), item.getQuantity(), item.getPrice(), target.id()});
+                }
+            }
+            for (ExistingItem item : current) {
+                if (!matched.contains(item.id())) deletes.add(item.id());
+            }
+        }
+
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement(DELETE_ITEMS_SQL);
+                ps.setArray(1, array(con, "bigint", deletes.toArray()));
+                return ps;
+            });
+        }
+        if (!updates.isEmpty()) jdbcTemplate.batchUpdate(UPDATE_ITEM_SQL, updates);
+        if (!inserts.isEmpty()) jdbcTemplate.batchUpdate(INSERT_ITEM_SQL, inserts);
+    }
+
+    private Map<Long, List<ExistingItem>> loadItems(List<Long> orderIds) {
+        Map<Long, List<ExistingItem>> items = new HashMap<>();
+        if (orderIds.isEmpty()) return items;
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(FIND_ITEMS_SQL);
+            ps.setArray(1, array(con, "bigint", orderIds.toArray()));
+            return ps;
+        }, rs -> {
+            items.computeIfAbsent(rs.getLong("order_id"), id -> new ArrayList<>()).add(new ExistingItem(
+                    rs.getLong("id"), (Long) rs.getObject("product_id"), rs.getString("sku"), rs.getString("offer_id"),
+                    rs.getString("name"), (Integer) rs.getObject("quantity"), rs.getBigDecimal("price")));
+        });
+        return items;
+    }
+
+    private Order toEntity(OrderDto dto, Long id) {
+        Order order = orderMapper.toEntity(dto);
+        order.setId(id);
+        return order;
+    }
+
+    private Object[] column(List<OrderDto> orders, Function<OrderDto, Object> getter) {
+        return orders.stream().map(getter).toArray();
+    }
+
+    private Timestamp timestamp(LocalDateTime value) {
+        return value != null ? Timestamp.valueOf(value) : null;
+    }
+
+    private Array array(Connection con, String type, Object[] values) throws SQLException {
+        return con.createArrayOf(type, values);
+    }
+
+    private record ChunkWrite(BulkUpsertResult result, List<ApplicationEvent> events) {}
+
+    private record ExistingItem(Long id, Long productId, String sku, String offerId, String name,
+                                Integer quantity, BigDecimal price) {
+        boolean differsFrom(OrderItemDto item) {
+            return !Objects.equals(productId, item.getProductId())
+                    || !Objects.equals(sku, item.getSku())
+                    || !Objects.equals(offerId, item.getOfferId())
+                    || !Objects.equals(name, item.getName())
+                    || !Objects.equals(quantity, item.getQuantity())
+                    || (price == null ? item.getPrice() != null : item.getPrice() == null || price.compareTo(item.getPrice()) != 0);
+        }
+    }
+
+    /**
+     * Итог upsert: счетчики и ошибки по заказам (не больше 1000)
+     */
+    @Getter
+    public static class BulkUpsertResult {
+        private int created;
+        private int updated;
+        private final List<String> errors = new ArrayList<>();
+
+        public int getProcessed() {
+            return created + updated;
+        }
+
+        public void add(BulkUpsertResult other) {
+            if (other == null) return;
+            created += other.created;
+            updated += other.updated;
+            other.errors.forEach(this::addError);
+        }
+
+        public void addError(String error) {
+            if (errors.size() < MAX_ERRORS) errors.add(error);
+        }
+    }
+}
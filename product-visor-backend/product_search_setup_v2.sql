@@ -8,9 +8,28 @@ CREATE TABLE IF NOT EXISTS visor.product_search_index (
     product_id BIGINT PRIMARY KEY REFERENCES visor.product(id) ON DELETE CASCADE,
     searchable_text TEXT NOT NULL,
     stock_info TEXT, -- информация о складах и остатках
-    warehouse_names TEXT -- названия складов для поиска
+    warehouse_names TEXT, -- названия складов для поиска
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT clock_timestamp() -- момент пересборки, по нему опрашивает in-memory поиск
 );
 
+ALTER TABLE visor.product_search_index
+    ADD COLUMN IF NOT EXISTS updated_at TIMESTAMPTZ NOT NULL DEFAULT clock_timestamp();
+
+CREATE INDEX IF NOT EXISTS idx_product_search_index_updated_at
+    ON visor.product_search_index(updated_at);
+
+-- updated_at ставится на каждой пересборке строки (миграция V19 делает то же для уже созданной таблицы)
+CREATE OR REPLACE FUNCTION visor.trg_product_search_index_touch() RETURNS TRIGGER AS $$
+BEGIN
+    NEW.updated_at := clock_timestamp();
+    RETURN NEW;
+END; $$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS product_search_index_touch ON visor.product_search_index;
+CREATE TRIGGER product_search_index_touch
+    BEFORE INSERT OR UPDATE ON visor.product_search_index
+    FOR EACH ROW EXECUTE FUNCTION visor.trg_product_search_index_touch();
+
 -- ФУНКЦИЯ: visor.compose_product_search_text(p_id)
 -- ЧТО ДЕЛАЕТ: собирает "карту" продукта в один текст с учетом:
 --   - name, article, barcode, category.name
@@ -59,10 +78,9 @@ DECLARE
     v_stock_info TEXT;
     v_warehouse_names TEXT;
 BEGIN
-    -- Собираем информацию о складах и остатках
-    SELECT COALESCE(STRING_AGG(
-        'stock:' || ps.stock_type || ' qty:' || ps.quantity || ' sync:' || ps.sync_status, ' '
-    ), '')
+    -- Собираем типы остатков; количество и статус синхронизации в карту не входят (миграция V21),
+    -- иначе каждое списание пересобирало бы индекс
+    SELECT COALESCE(STRING_AGG(DISTINCT 'stock:' || ps.stock_type, ' '), '')
     INTO v_stock_info
     FROM visor.product_stocks ps
     WHERE ps.product_id = p_id;
@@ -109,113 +127,9 @@ BEGIN
 END;
 $$ LANGUAGE plpgsql;
 
--- ТРИГГЕР-ФУНКЦИЯ: visor.trg_product_refresh()
--- ЧТО ДЕЛАЕТ: при INSERT/UPDATE строки в product пересобирает индекс для этого товара.
--- ЗАЧЕМ: чтобы индекс всегда был актуален при изменении полей самого товара.
-CREATE OR REPLACE FUNCTION visor.trg_product_refresh() RETURNS TRIGGER AS $$
-BEGIN
-    PERFORM visor.refresh_product_search_index(NEW.id);
-    RETURN NEW;
-END; $$ LANGUAGE plpgsql;
-
--- ТРИГГЕР-ФУНКЦИЯ: visor.trg_product_attr_refresh()
--- ЧТО ДЕЛАЕТ: при INSERT/UPDATE/DELETE значений атрибутов пересобирает индекс для связанного товара.
--- ЗАЧЕМ: чтобы изменения в атрибутах немедленно попадали в "карту" поиска.
-CREATE OR REPLACE FUNCTION visor.trg_product_attr_refresh() RETURNS TRIGGER AS $$
-BEGIN
-    PERFORM visor.refresh_product_search_index(COALESCE(NEW.product_id, OLD.product_id));
-    IF TG_OP = 'DELETE' THEN
-        RETURN OLD;
-    END IF;
-    RETURN NEW;
-END; $$ LANGUAGE plpgsql;
-
--- ТРИГГЕР-ФУНКЦИЯ: visor.trg_product_stock_refresh()
--- ЧТО ДЕЛАЕТ: при INSERT/UPDATE/DELETE остатков пересобирает индекс для связанного товара.
--- ЗАЧЕМ: чтобы изменения в остатках и складах немедленно попадали в "карту" поиска.
-CREATE OR REPLACE FUNCTION visor.trg_product_stock_refresh() RETURNS TRIGGER AS $$
-BEGIN
-    PERFORM visor.refresh_product_search_index(COALESCE(NEW.product_id, OLD.product_id));
-    IF TG_OP = 'DELETE' THEN
-        RETURN OLD;
-    END IF;
-    RETURN NEW;
-END; $$ LANGUAGE plpgsql;
-
--- ТРИГГЕР-ФУНКЦИЯ: visor.trg_warehouse_refresh()
--- ЧТО ДЕЛАЕТ: при UPDATE склада пересобирает индексы для всех связанных товаров.
--- ЗАЧЕМ: чтобы изменения в названиях складов немедленно попадали в поиск.
-CREATE OR REPLACE FUNCTION visor.trg_warehouse_refresh() RETURNS TRIGGER AS $$
-DECLARE
-    r RECORD;
-BEGIN
-    -- Если изменилось название склада, обновляем индексы всех связанных товаров
-    IF OLD.name != NEW.name OR OLD.is_active != NEW.is_active THEN
-        FOR r IN 
-            SELECT DISTINCT ps.product_id
-            FROM visor.product_stocks ps
-                     JOIN visor.product_stock_warehouses psw ON psw.product_stock_id = ps.id
-            WHERE psw.warehouse_id = NEW.id
-        LOOP
-            PERFORM visor.refresh_product_search_index(r.product_id);
-        END LOOP;
-    END IF;
-    RETURN NEW;
-END; $$ LANGUAGE plpgsql;
-
--- ТРИГГЕР-ФУНКЦИЯ: visor.trg_product_stock_warehouse_refresh()
--- ЧТО ДЕЛАЕТ: при INSERT/DELETE связей товар-склад пересобирает индекс для товара.
--- ЗАЧЕМ: чтобы изменения в привязках к складам немедленно попадали в поиск.
-CREATE OR REPLACE FUNCTION visor.trg_product_stock_warehouse_refresh() RETURNS TRIGGER AS $$
-DECLARE
-    v_product_id BIGINT;
-BEGIN
-    -- Получаем product_id из product_stocks
-    SELECT ps.product_id INTO v_product_id
-    FROM visor.product_stocks ps
-    WHERE ps.id = COALESCE(NEW.product_stock_id, OLD.product_stock_id);
-    
-    IF v_product_id IS NOT NULL THEN
-        PERFORM visor.refresh_product_search_index(v_product_id);
-    END IF;
-    
-    IF TG_OP = 'DELETE' THEN
-        RETURN OLD;
-    END IF;
-    RETURN NEW;
-END; $$ LANGUAGE plpgsql;
-
--- ТРИГГЕРЫ на таблицы — подключают функции выше
-
--- Триггер на продукт: обновляет индекс при вставке/изменении товара
-DROP TRIGGER IF EXISTS product_refresh_search ON visor.product;
-CREATE TRIGGER product_refresh_search
-    AFTER INSERT OR UPDATE ON visor.product
-    FOR EACH ROW EXECUTE FUNCTION visor.trg_product_refresh();
-
--- Триггер на значения атрибутов: обновляет индекс при любом изменении атрибутов товара
-DROP TRIGGER IF EXISTS product_attr_refresh_search ON visor.product_attribute_value;
-CREATE TRIGGER product_attr_refresh_search
-    AFTER INSERT OR UPDATE OR DELETE ON visor.product_attribute_value
-    FOR EACH ROW EXECUTE FUNCTION visor.trg_product_attr_refresh();
-
--- Триггер на остатки: обновляет индекс при изменении остатков
-DROP TRIGGER IF EXISTS product_stock_refresh_search ON visor.product_stocks;
-CREATE TRIGGER product_stock_refresh_search
-    AFTER INSERT OR UPDATE OR DELETE ON visor.product_stocks
-    FOR EACH ROW EXECUTE FUNCTION visor.trg_product_stock_refresh();
-
--- Триггер на склады: обновляет индексы при изменении названий складов
-DROP TRIGGER IF EXISTS warehouse_refresh_search ON visor.warehouses;
-CREATE TRIGGER warehouse_refresh_search
-    AFTER UPDATE ON visor.warehouses
-    FOR EACH ROW EXECUTE FUNCTION visor.trg_warehouse_refresh();
-
--- Триггер на связи товар-склад: обновляет индекс при изменении привязок
-DROP TRIGGER IF EXISTS product_stock_warehouse_refresh_search ON visor.product_stock_warehouses;
-CREATE TRIGGER product_stock_warehouse_refresh_search
-    AFTER INSERT OR DELETE ON visor.product_stock_warehouses
-    FOR EACH ROW EXECUTE FUNCTION visor.trg_product_stock_warehouse_refresh();
+-- ПОДДЕРЖАНИЕ ИНДЕКСА: триггеры на product/атрибуты/остатки/склады заведены миграцией
+-- V16__product_search_dirty_queue.sql. Они только ставят товар в visor.product_search_dirty,
+-- а ProductSearchIndexService пересобирает устаревшие карты пачками через refresh_product_search_index.
 
 -- ИНДЕКСЫ: GIN + триграммы на агрегированном тексте
 -- ЗАЧЕМ: ускоряет ILIKE и similarity-поиск по "карте" продукта
@@ -234,14 +148,8 @@ CREATE INDEX IF NOT EXISTS idx_product_search_stock_trgm
 CREATE INDEX IF NOT EXISTS idx_product_search_combined_trgm
     ON visor.product_search_index USING gin ((searchable_text || ' ' || COALESCE(stock_info,'') || ' ' || COALESCE(warehouse_names,'')) public.gin_trgm_ops);
 
--- ПЕРВИЧНАЯ ЗАГРУЗКА ИНДЕКСА: пройтись по всем текущим товарам и построить "карты"
-DO $$
-    DECLARE r RECORD;
-    BEGIN
-        FOR r IN SELECT id FROM visor.product LOOP
-                PERFORM visor.refresh_product_search_index(r.id);
-            END LOOP;
-    END$$;
+-- ПЕРВИЧНАЯ ЗАГРУЗКА ИНДЕКСА: выполняет ProductSearchIndexService.rebuildAll() при старте,
+-- если индекс пуст (или search-index.rebuild-on-startup=true), параллельно пачками по id
 
 -- ФУНКЦИЯ ДЛЯ ПОИСКА: visor.search_products(search_query, limit_count)
 -- ЧТО ДЕЛАЕТ: ищет товары по текстовому запросу с учетом всех полей
@@ -0,0 +1,181 @@
+package ru.dmitartur.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Read-through кэш (companyId, article, externalWarehouseId) -> productStockId
+ * для обработки событий заказов: горячие артикулы не ходят в join product_stocks/warehouses/product.
+ *
+ * Кэшируются только найденные остатки. Изменение самого остатка сбрасывает только его ключи
+ * (артикул x склады до и после изменения); записи всей компании сбрасываются при изменении
+ * складов, артикулов товаров и импорте.
+ * При переполнении удаляются просроченные и давно не читанные записи (приближенный LRU),
+ * горячие артикулы остаются в кэше.
+ * Кэш локален для инстанса, и сбросы на других инстансах сюда не доходят. Устаревший id безопасен:
+ * обновление по PK проверяет еще и (артикул, склад, компания), для чужого или удаленного остатка
+ * вернет 0 строк, и вызывающий код сбросит запись и найдет остаток заново.
+ */
+@Slf4j
+@Component
+public class ProductStockLookupCache {
+
+    // При переполнении освобождаем 10% места, чтобы вытеснение не запускалось на каждой вставке
+    private static final double EVICT_TO_RATIO = 0.9;
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Counter hits;
+    private final Counter misses;
+
+    public ProductStockLookupCache(MeterRegistry meterRegistry,
+                                   @Value("${product-stock.lookup-cache.max-size:50000}") int maxSize,
+                                   @Value("${product-stock.lookup-cache.ttl-minutes:30}") long ttlMinutes) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMinutes * 60_000L;
+        this.hits = Counter.builder("product_stock_lookup_cache_total")
+                .description("ProductStock lookup cache requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("product_stock_lookup_cache_total")
+                .description("ProductStock lookup cache requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("product_stock_lookup_cache_size", entries, ConcurrentHashMap::size)
+                .description("ProductStock lookup cache entries")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Получить id остатка из кэша или загрузить через loader
+     */
+    public Optional<UUID> get(UUID companyId, String article, String externalWarehouseId,
+                              Supplier<Optional<UUID>> loader) {
+        Key key = new Key(companyId, article, externalWarehouseId);
+        long now = System.currentTimeMillis();
+
+        Entry cached = entries.get(key);
+        if (cached != null && cached.expiresAt > now) {
+            hits.increment();
+            cached.lastAccessAt = now;
+            return Optional.of(cached.productStockId);
+        }
+
+        misses.increment();
+        Optional<UUID> loaded = loader.get();
+        loaded.ifPresent(id -> {
+            if (entries.size() >= maxSize) {
+                evictExpiredAndLeastRecent(now);
+            }
+            entries.put(key, new Entry(id, now + ttlMillis, now));
+        });
+        return loaded;
+    }
+
+    /**
+     * Сбросить одну запись (например, остаток удален между чтением и обновлением)
+     */
+    public void evict(UUID companyId, String article, String externalWarehouseId) {
+        entries.remove(new Key(companyId, article, externalWarehouseId));
+    }
+
+    /**
+     * Сбросить запись артикула на складе после изменения самого остатка.
+     * Внутри транзакции сброс повторяется после commit, как и для компании.
+     */
+    public void evictStock(UUID companyId, String article, String externalWarehouseId) {
+        if (companyId == null || article == null || externalWarehouseId == null) {
+            return;
+        }
+        Key key = new Key(companyId, article, externalWarehouseId);
+        entries.remove(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    entries.remove(key);
+                }
+            });
+        }
+    }
+
+    /**
+     * Сбросить все записи компании. Внутри транзакции сброс повторяется после commit,
+     * чтобы конкурентное чтение не вернуло в кэш состояние до изменения.
+     */
+    public void invalidateCompany(UUID companyId) {
+        if (companyId == null) {
+            return;
+        }
+        removeCompany(companyId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removeCompany(companyId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Сбросить записи нескольких компаний
+     */
+    public void invalidateCompanies(Collection<UUID> companyIds) {
+        companyIds.stream().filter(Objects::nonNull).distinct().forEach(this::invalidateCompany);
+    }
+
+    private void removeCompany(UUID companyId) {
+        int before = entries.size();
+        entries.keySet().removeIf(key -> companyId.equals(key.companyId()));
+        log.debug("🧹 ProductStock lookup cache invalidated for company {}: {} -> {} entries",
+                companyId, before, entries.size());
+    }
+
+    private void evictExpiredAndLeastRecent(long now) {
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+        int excess = entries.size() - (int) (maxSize * EVICT_TO_RATIO);
+        if (excess <= 0) {
+            return;
+        }
+        // Переполнение живыми записями: вытесняем давно не читанные, горячие артикулы сохраняются
+        entries.entrySet().stream()
+                .sorted(Comparator.comparingLong(e -> e.getValue().lastAccessAt))
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(entries::remove);
+        log.debug("🧹 ProductStock lookup cache is full, evicted {} least recently used entries", excess);
+    }
+
+    private record Key(UUID companyId, String article, String externalWarehouseId) {}
+
+    private static final class Entry {
+        private final UUID productStockId;
+        private final long expiresAt;
+        // Гонки записи безвредны: нужен только приблизительный порядок обращений
+        private volatile long lastAccessAt;
+
+        private Entry(UUID productStockId, long expiresAt, long lastAccessAt) {
+            this.productStockId = productStockId;
+            this.expiresAt = expiresAt;
+            this.lastAccessAt = lastAccessAt;
+        }
+    }
+}
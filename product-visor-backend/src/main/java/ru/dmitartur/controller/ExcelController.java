@@ -2,36 +2,120 @@ package ru.dmitartur.controller;
 
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ru.dmitartur.common.utils.JwtUtil;
+import ru.dmitartur.excel.ExcelExportJobService;
 import ru.dmitartur.excel.ExcelExportService;
 import ru.dmitartur.excel.ExcelTemplateScanner;
+import ru.dmitartur.excel.LensExcelImportService;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
+@Slf4j
 @RestController
 @RequestMapping("/api/v1/excel")
 @RequiredArgsConstructor
 public class ExcelController {
 
     private final ExcelExportService excelExportService;
+    private final ExcelExportJobService excelExportJobService;
+    private final LensExcelImportService lensExcelImportService;
     private final ExcelTemplateScanner excelTemplateScanner;
 
+    private static final MediaType XLSX = MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+
+    /**
+     * Синхронная выгрузка: xlsx пишется в ответ по мере формирования, без буфера всего файла в памяти
+     */
     @PostMapping(value = "/lenses/export", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<byte[]> exportLenses(@RequestBody ExportRequest request) {
-        byte[] bytes = excelExportService.exportLensExcel(request.getProductIds());
-        String filename = request.getProductIds() != null && request.getProductIds().size() == 1
-                ? "lenses_" + request.getProductIds().get(0) + ".xlsx"
+    public ResponseEntity<StreamingResponseBody> exportLenses(@RequestBody ExportRequest request) {
+        if (request.getProductIds() == null || request.getProductIds().isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<Long> productIds = request.getProductIds();
+        String filename = productIds.size() == 1
+                ? "lenses_" + productIds.get(0) + ".xlsx"
                 : "lenses_export.xlsx";
-        String encoded = URLEncoder.encode(filename, StandardCharsets.UTF_8);
+        StreamingResponseBody body = out -> excelExportService.exportLensExcel(productIds, out);
         return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename*=UTF-8''" + encoded)
-                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                .body(bytes);
+                .header(HttpHeaders.CONTENT_DISPOSITION, attachment(filename))
+                .contentType(XLSX)
+                .body(body);
+    }
+
+    /**
+     * Фоновая выгрузка для больших подборок: статус опрашивается по jobId, файл скачивается по downloadUrl
+     */
+    @PostMapping(value = "/lenses/export/jobs", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JobResponse> startLensesExportJob(@RequestBody ExportRequest request) {
+        if (request.getProductIds() == null || request.getProductIds().isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            ExcelExportJobService.Job job = excelExportJobService.submit(JwtUtil.getRequiredOwnerId(), request.getProductIds());
+            return ResponseEntity.accepted().body(JobResponse.of(job));
+        } catch (RejectedExecutionException e) {
+            log.warn("⚠️ Excel export queue is full, rejecting job: products={}", request.getProductIds().size());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    @GetMapping("/export/jobs/{jobId}")
+    public ResponseEntity<JobResponse> getExportJob(@PathVariable String jobId) {
+        return excelExportJobService.find(jobId, JwtUtil.getRequiredOwnerId())
+                .map(job -> ResponseEntity.ok(JobResponse.of(job)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/export/jobs/{jobId}/download")
+    public ResponseEntity<Resource> downloadExportJob(@PathVariable String jobId) {
+        return excelExportJobService.find(jobId, JwtUtil.getRequiredOwnerId())
+                // Файл мог записать экземпляр без общего excel.export.dir — тогда отвечаем 404, а не 500
+                .filter(job -> job.getStatus() == ExcelExportJobService.Status.DONE && job.getFile() != null
+                        && Files.isReadable(job.getFile()))
+                .map(job -> ResponseEntity.ok()
+                        .header(HttpHeaders.CONTENT_DISPOSITION, attachment("lenses_export.xlsx"))
+                        .contentType(XLSX)
+                        .<Resource>body(new FileSystemResource(job.getFile())))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    private String attachment(String filename) {
+        return "attachment; filename*=UTF-8''" + URLEncoder.encode(filename, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Импорт товаров из формы линз: новые товары создаются в categoryId, существующие обновляются по артикулу.
+     * Колонка "Остаток, шт" пишется в остаток на складе warehouseId. Ошибки — по строкам файла
+     */
+    @PostMapping(value = "/lenses/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<LensExcelImportService.ImportResult> importLenses(
+            @RequestPart("file") MultipartFile file,
+            @RequestParam("categoryId") Long categoryId,
+            @RequestParam(value = "warehouseId", required = false) UUID warehouseId) {
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(lensExcelImportService.importLenses(file, categoryId, warehouseId));
+        } catch (IllegalArgumentException e) {
+            log.warn("❌ Lens Excel import rejected: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @GetMapping("/template/scan")
@@ -43,4 +127,25 @@ public class ExcelController {
     public static class ExportRequest {
         private List<Long> productIds;
     }
+
+    @Data
+    public static class JobResponse {
+        private String jobId;
+        private ExcelExportJobService.Status status;
+        private int productCount;
+        private String error;
+        private String downloadUrl;
+
+        static JobResponse of(ExcelExportJobService.Job job) {
+            JobResponse response = new JobResponse();
+            response.setJobId(job.getId());
+            response.setStatus(job.getStatus());
+            response.setProductCount(job.getProductCount());
+            response.setError(job.getError());
+            if (job.getStatus() == ExcelExportJobService.Status.DONE) {
+                response.setDownloadUrl("/api/v1/excel/export/jobs/" + job.getId() + "/download");
+            }
+            return response;
+        }
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,178 @@
+package ru.dmitartur.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.dmitartur.service.ImageStorageService;
+import ru.dmitartur.service.ImageVariantService;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Отдача изображений товаров из content-addressed хранилища.
+ * Путь публичный (/api/public/**): ссылка содержит SHA-256 содержимого и не угадывается.
+ * Поддерживаются If-None-Match (304), одиночный диапазон Range (206) и уменьшенные копии (?variant=).
+ */
+@RestController
+@RequestMapping("/api/public/images")
+@RequiredArgsConstructor
+public class ImageController {
+    private static final Logger logger = LoggerFactory.getLogger(ImageController.class);
+
+    // Содержимое по хэшу не меняется никогда
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final String FALLBACK_CACHE_CONTROL = "public, max-age=300";
+
+    private final ImageStorageService imageStorageService;
+    private final ImageVariantService imageVariantService;
+
+    /**
+     * Оригинал или уменьшенная копия: ?variant=thumb|medium. Если вариант получить нельзя
+     * (неподдерживаемый формат, перегрузка пула), отдается оригинал.
+     */
+    @GetMapping("/{hash}")
+    public void getImage(@PathVariable String hash,
+                         @RequestParam(value = "variant", required = false) String variantCode,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<Path> pathOpt = imageStorageService.find(hash);
+        if (pathOpt.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        String etag = "\"" + hash + "\"";
+        String cacheControl = CACHE_CONTROL;
+        Optional<ImageVariantService.Variant> variant = ImageVariantService.Variant.from(variantCode);
+        if (variant.isPresent()) {
+            String variantEtag = "\"" + hash + "-" + variant.get().code() + "\"";
+            // Вариант у клиента уже есть: не трогаем диск и пул генерации
+            if (ifNoneMatch != null && ifNoneMatch.contains(variantEtag)) {
+                response.setHeader(HttpHeaders.ETAG, variantEtag);
+                response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            Optional<Path> variantPath = imageVariantService.getVariant(hash, variant.get());
+            if (variantPath.isPresent()) {
+                pathOpt = variantPath;
+                etag = variantEtag;
+            } else {
+                // Отдаем оригинал вместо варианта: ненадолго, чтобы позже клиент получил превью
+                cacheControl = FALLBACK_CACHE_CONTROL;
+            }
+        }
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        Path path = pathOpt.get();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+            long end = size - 1;
+
+            String range = request.getHeader(HttpHeaders.RANGE);
+            String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+            boolean rangeApplies = range != null && (ifRange == null || ifRange.equals(etag));
+            if (rangeApplies) {
+                long[] bounds = parseRange(range, size);
+                if (bounds == null) {
+                    response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    return;
+                }
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            } else {
+                response.setStatus(HttpServletResponse.SC_OK);
+            }
+
+            long length = end - start + 1;
+            response.setContentType(imageStorageService.detectContentType(path));
+            response.setContentLengthLong(length);
+            if ("HEAD".equalsIgnoreCase(request.getMethod())) {
+                return;
+            }
+
+            // transferTo отдает копирование ядру (sendfile), когда контейнер предоставляет канал сокета;
+            // иначе JDK копирует через собственный буфер без промежуточного byte[] в куче приложения
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long written = channel.transferTo(position, remaining, out);
+                if (written <= 0) {
+                    break;
+                }
+                position += written;
+                remaining -= written;
+            }
+            response.flushBuffer();
+        } catch (IOException e) {
+            // Клиент оборвал загрузку — это не ошибка сервера
+            logger.debug("📉 Image transfer interrupted: hash={}, error={}", hash, e.getMessage());
+        }
+    }
+
+    /**
+     * Разобрать одиночный диапазон "bytes=start-end", "bytes=start-" или "bytes=-suffix".
+     * Несколько диапазонов не поддерживаются: отдаем первый.
+     *
+     * @return [start, end] включительно или null, если диапазон неудовлетворим
+     */
+    static long[] parseRange(String header, long size) {
+        if (!header.startsWith("bytes=") || size == 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).split(",")[0].trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String from = spec.substring(0, dash).trim();
+            String to = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (from.isEmpty()) {
+                long suffix = Long.parseLong(to);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(from);
+                end = to.isEmpty() ? size - 1 : Math.min(Long.parseLong(to), size - 1);
+            }
+            if (start < 0 || start >= size || end < start) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
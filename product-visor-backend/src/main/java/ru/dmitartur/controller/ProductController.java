@@ -3,19 +3,26 @@ package ru.dmitartur.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
+import ru.dmitartur.dto.CursorPage;
 import ru.dmitartur.dto.ProductDto;
+import ru.dmitartur.dto.ProductListItemDto;
 import ru.dmitartur.dto.ProductUploadRequest;
 import ru.dmitartur.entity.Product;
 import ru.dmitartur.mapper.ProductMapper;
+import ru.dmitartur.service.ImageStorageService;
+import ru.dmitartur.service.ImageVariantService;
 import ru.dmitartur.service.ProductService;
+import ru.dmitartur.util.CursorCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.*;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -32,6 +39,8 @@ public class ProductController {
     private final ProductService service;
     private final ObjectMapper objectMapper;
     private final ProductMapper mapper;
+    private final ImageStorageService imageStorageService;
+    private final ImageVariantService imageVariantService;
 
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @SneakyThrows
@@ -41,16 +50,11 @@ public class ProductController {
         ProductDto productDto = objectMapper.readValue(productUploadRequest.getProductData(), ProductDto.class);
         logger.debug("📝 Product data parsed: name={}, barcode={}", productDto.getName(), productDto.getBarcode());
 
-        // Сохраняем изображение в базу данных
+        // Сохраняем изображение в хранилище, товар получает только ссылку
         if (productUploadRequest.getImage() != null && !productUploadRequest.getImage().isEmpty()) {
-            try {
-                byte[] imageBytes = productUploadRequest.getImage().getBytes();
-                productDto.setImage(imageBytes);
-                logger.debug("🖼️ Image stored in database: {} bytes", imageBytes.length);
-            } catch (IOException e) {
-                logger.error("❌ Failed to read image file", e);
-                throw new RuntimeException("Failed to process image", e);
-            }
+            String imageHash = storeImage(productUploadRequest.getImage());
+            productDto.setImageHash(imageHash);
+            productDto.setImageUrl(ImageStorageService.publicUrl(imageHash));
         }
 
         Product entity = mapper.toEntity(productDto);
@@ -70,16 +74,11 @@ public class ProductController {
         productDto.setId(id);
         logger.debug("📝 Product data parsed: name={}, barcode={}", productDto.getName(), productDto.getBarcode());
 
-        // Сохраняем изображение в базу данных
+        // Сохраняем изображение в хранилище, товар получает только ссылку
         if (productUploadRequest.getImage() != null && !productUploadRequest.getImage().isEmpty()) {
-            try {
-                byte[] imageBytes = productUploadRequest.getImage().getBytes();
-                productDto.setImage(imageBytes);
-                logger.debug("🖼️ Image stored in database: {} bytes", imageBytes.length);
-            } catch (IOException e) {
-                logger.error("❌ Failed to read image file", e);
-                throw new RuntimeException("Failed to process image", e);
-            }
+            String imageHash = storeImage(productUploadRequest.getImage());
+            productDto.setImageHash(imageHash);
+            productDto.setImageUrl(ImageStorageService.publicUrl(imageHash));
         } else {
             logger.debug("🖼️ No image provided");
         }
@@ -99,15 +98,10 @@ public class ProductController {
         ProductDto incomingDto = objectMapper.readValue(productUploadRequest.getProductData(), ProductDto.class);
         incomingDto.setId(id);
 
-        // Извлекаем картинку, если прислали
-        byte[] incomingImage = null;
+        // Сохраняем картинку в хранилище, если прислали
+        String incomingImageHash = null;
         if (productUploadRequest.getImage() != null && !productUploadRequest.getImage().isEmpty()) {
-            try {
-                incomingImage = productUploadRequest.getImage().getBytes();
-            } catch (IOException e) {
-                logger.error("❌ Failed to read image file in PATCH", e);
-                throw new RuntimeException("Failed to process image", e);
-            }
+            incomingImageHash = storeImage(productUploadRequest.getImage());
         }
 
         Optional<Product> existingOpt = service.findById(id);
@@ -120,9 +114,10 @@ public class ProductController {
         // Частично переносим поля
         mapper.updateEntityFromDto(incomingDto, existing);
 
-        // Обновляем картинку, если пришла
-        if (incomingImage != null) {
-            existing.setImage(incomingImage);
+        // Обновляем ссылку на картинку, если пришла
+        if (incomingImageHash != null) {
+            existing.setImageHash(incomingImageHash);
+            existing.setImageUrl(ImageStorageService.publicUrl(incomingImageHash));
         }
 
         // Поле quantity более не поддерживается на уровне Product; используются ProductStock
@@ -165,6 +160,57 @@ public class ProductController {
         return ResponseEntity.ok(dtos);
     }
 
+    /**
+     * Облегченный список для каталога: без остатков по складам, атрибутов и маркетов,
+     * только суммарные остатки. Полная карточка — GET /{id}
+     */
+    @GetMapping("/list")
+    public ResponseEntity<Page<ProductListItemDto>> findList(
+            @RequestParam(value = "page", required = false, defaultValue = "0") int page,
+            @RequestParam(value = "size", required = false, defaultValue = "50") int size
+    ) {
+        logger.debug("📋 Fetching product list: page={}, size={}", page, size);
+        Pageable pageable = PageRequest.of(page, Math.min(size, 500));
+        return ResponseEntity.ok(service.findListPage(pageable));
+    }
+
+    /**
+     * Список для каталога с keyset-пагинацией по id: без OFFSET и COUNT
+     */
+    @GetMapping("/list/cursor")
+    public ResponseEntity<CursorPage<ProductListItemDto>> findListByCursor(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false, defaultValue = "50") int size
+    ) {
+        Long afterId;
+        try {
+            afterId = CursorCodec.decodeId(cursor);
+        } catch (IllegalArgumentException e) {
+            logger.warn("❌ Invalid product cursor: {}", cursor);
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(service.findListAfter(afterId, Math.min(size, 500)));
+    }
+
+    /**
+     * Товары с keyset-пагинацией по id; следующая страница — по nextCursor из ответа
+     */
+    @GetMapping("/cursor")
+    public ResponseEntity<CursorPage<ProductDto>> findAllByCursor(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false, defaultValue = "10") int size
+    ) {
+        logger.debug("📋 Fetching products by cursor: size={}", size);
+        Long afterId;
+        try {
+            afterId = CursorCodec.decodeId(cursor);
+        } catch (IllegalArgumentException e) {
+            logger.warn("❌ Invalid product cursor: {}", cursor);
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(service.findAfter(afterId, Math.min(size, 500)).map(mapper::toDto));
+    }
+
     @GetMapping("/barcode")
     public ResponseEntity<ProductDto> findByBarcode(@RequestParam String barcode) {
         logger.info("🔍 Searching product by barcode: {}", barcode);
@@ -222,6 +268,26 @@ public class ProductController {
         return ResponseEntity.ok(dtoPage);
     }
 
+    /**
+     * Поиск с keyset-пагинацией по id (порядок по id, а не по релевантности)
+     */
+    @GetMapping("/search/cursor")
+    public ResponseEntity<CursorPage<ProductDto>> searchByCursor(
+            @RequestParam("q") String q,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false, defaultValue = "10") int size
+    ) {
+        logger.debug("🔎 Searching products by cursor: q='{}', size={}", q, size);
+        Long afterId;
+        try {
+            afterId = CursorCodec.decodeId(cursor);
+        } catch (IllegalArgumentException e) {
+            logger.warn("❌ Invalid product cursor: {}", cursor);
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(service.searchAfter(q, afterId, Math.min(size, 500)).map(mapper::toDto));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<ProductDto> findById(@PathVariable Long id) {
         logger.info("🔍 Fetching product by ID: {}", id);
@@ -244,4 +310,20 @@ public class ProductController {
             logger.info("✅ Product deleted successfully: id={}", id);
             return ResponseEntity.ok().build();
     }
+
+    /**
+     * Потоково сохранить загруженный файл в хранилище изображений (без чтения в byte[])
+     */
+    private String storeImage(MultipartFile image) {
+        try (InputStream in = image.getInputStream()) {
+            String hash = imageStorageService.store(in);
+            // Превью для списков готовим заранее, не задерживая ответ
+            imageVariantService.scheduleVariants(hash);
+            logger.debug("🖼️ Image stored: hash={}, size={} bytes", hash, image.getSize());
+            return hash;
+        } catch (IOException e) {
+            logger.error("❌ Failed to store image file", e);
+            throw new RuntimeException("Failed to process image", e);
+        }
+    }
 }
@@ -9,8 +9,10 @@ import org.springframework.data.domain.Sort;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import ru.dmitartur.dto.CursorPage;
 import ru.dmitartur.dto.ProductHistoryDto;
 import ru.dmitartur.service.ProductHistoryService;
+import ru.dmitartur.util.CursorCodec;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -43,6 +45,28 @@ public class ProductHistoryController {
         return ResponseEntity.ok(history);
     }
     
+    /**
+     * История изменений продукта с keyset-пагинацией: без OFFSET и общего количества.
+     * Следующая страница запрашивается с nextCursor из ответа
+     */
+    @GetMapping("/product/{productId}/cursor")
+    public ResponseEntity<CursorPage<ProductHistoryDto>> getProductHistoryByCursor(
+            @PathVariable Long productId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+
+        log.debug("📋 Getting product history by cursor: productId={}, size={}", productId, size);
+
+        CursorCodec.TimeIdCursor position;
+        try {
+            position = CursorCodec.decodeTimeId(cursor);
+        } catch (IllegalArgumentException e) {
+            log.warn("❌ Invalid history cursor: {}", cursor);
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(productHistoryService.findByProductIdAfter(productId, position, Math.min(size, 500)));
+    }
+
     /**
      * Получить историю изменений по ID продукта и полю
      */
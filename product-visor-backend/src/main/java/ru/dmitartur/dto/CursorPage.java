@@ -0,0 +1,34 @@
+package ru.dmitartur.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Страница keyset-пагинации: без общего количества, следующая страница запрашивается по nextCursor
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> content;
+    private String nextCursor; // null, если это последняя страница
+    private boolean hasNext;
+
+    /**
+     * Собрать страницу из выборки size + 1 строк: лишняя строка только сигнализирует о следующей странице
+     */
+    public static <T> CursorPage<T> of(List<T> fetched, int size, Function<T, String> cursorOf) {
+        boolean hasNext = fetched.size() > size;
+        List<T> content = hasNext ? List.copyOf(fetched.subList(0, size)) : fetched;
+        String nextCursor = hasNext && !content.isEmpty() ? cursorOf.apply(content.get(content.size() - 1)) : null;
+        return new CursorPage<>(content, nextCursor, hasNext);
+    }
+
+    public <R> CursorPage<R> map(Function<T, R> mapper) {
+        return new CursorPage<>(content.stream().map(mapper).toList(), nextCursor, hasNext);
+    }
+}
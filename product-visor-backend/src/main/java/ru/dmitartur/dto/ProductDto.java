@@ -13,7 +13,7 @@ public class ProductDto {
     private String name;
     private String article;
     private String imageUrl;
-    private byte[] image; // Add image field for database storage
+    private String imageHash; // SHA-256 изображения в хранилище, URL — imageUrl
     private String barcode;
     private Integer quantity = 0; // количество на складе
     private CategoryDto category;
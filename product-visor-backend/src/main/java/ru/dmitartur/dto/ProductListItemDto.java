@@ -0,0 +1,27 @@
+package ru.dmitartur.dto;
+
+import lombok.Data;
+
+import java.util.UUID;
+
+/**
+ * Строка списка товаров: скалярные поля и суммарные остатки без графа сущности
+ */
+@Data
+public class ProductListItemDto {
+    private Long id;
+    private String name;
+    private String article;
+    private String barcode;
+    private Double price;
+    private String imageHash;
+    private String imageUrl;
+    private Long categoryId;
+    private String categoryName;
+    private UUID ownerUserId;
+    private UUID companyId;
+    private Integer totalQuantity; // сумма по всем остаткам
+    private Integer fbsQuantity;
+    private Integer fboQuantity; // YANDEX_FBO + OZON_FBO
+    private Integer stockCount; // количество записей ProductStock
+}
@@ -21,11 +21,10 @@ public class Product {
     @Column(unique = true, nullable = false)
     private String article; // артикул товара
     
-    // Store image as byte array in database
-    @Lob
-    @Column(columnDefinition = "BYTEA")
-    @org.hibernate.annotations.JdbcTypeCode(java.sql.Types.BINARY)
-    private byte[] image;
+    // Ссылка на изображение в content-addressed хранилище (SHA-256 содержимого).
+    // Байты картинки в строке товара больше не хранятся: колонка image (BYTEA) только для миграции
+    @Column(name = "image_hash", length = 64)
+    private String imageHash;
     
     // Keep imageUrl for backward compatibility and external image URLs
     private String imageUrl;
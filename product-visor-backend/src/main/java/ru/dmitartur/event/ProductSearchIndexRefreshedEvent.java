@@ -0,0 +1,30 @@
+package ru.dmitartur.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+/**
+ * Событие после коммита пересборки строк visor.product_search_index.
+ * Публикуется ProductSearchIndexService: либо список пересобранных товаров,
+ * либо признак полной пересборки (productIds пуст)
+ */
+@Getter
+public class ProductSearchIndexRefreshedEvent extends ApplicationEvent {
+
+    private final List<Long> productIds;
+    private final boolean fullRebuild;
+
+    public ProductSearchIndexRefreshedEvent(Object source, List<Long> productIds) {
+        super(source);
+        this.productIds = productIds;
+        this.fullRebuild = false;
+    }
+
+    public ProductSearchIndexRefreshedEvent(Object source, boolean fullRebuild) {
+        super(source);
+        this.productIds = List.of();
+        this.fullRebuild = fullRebuild;
+    }
+}
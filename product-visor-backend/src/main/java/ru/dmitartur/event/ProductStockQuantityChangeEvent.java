@@ -10,12 +10,14 @@ import java.util.UUID;
 
 /**
  * Событие изменения количества товара в ProductStock
- * Используется для асинхронного отслеживания изменений
+ * Используется для асинхронного отслеживания изменений.
+ * Событие атомарного UPDATE несет только productStockId: сущность загружает слушатель
  */
 @Getter
 public class ProductStockQuantityChangeEvent extends ApplicationEvent {
     
     private final ProductStock productStock;
+    private final UUID productStockId;
     private final Integer oldQuantity;
     private final Integer newQuantity;
     private final String sourceSystem;
@@ -25,6 +27,7 @@ public class ProductStockQuantityChangeEvent extends ApplicationEvent {
                                          Integer oldQuantity, Integer newQuantity) {
         super(source);
         this.productStock = productStock;
+        this.productStockId = productStock.getId();
         this.oldQuantity = oldQuantity;
         this.newQuantity = newQuantity;
         this.sourceSystem = null;
@@ -36,6 +39,19 @@ public class ProductStockQuantityChangeEvent extends ApplicationEvent {
                                          String sourceSystem, String sourceId) {
         super(source);
         this.productStock = productStock;
+        this.productStockId = productStock.getId();
+        this.oldQuantity = oldQuantity;
+        this.newQuantity = newQuantity;
+        this.sourceSystem = sourceSystem;
+        this.sourceId = sourceId;
+    }
+
+    public ProductStockQuantityChangeEvent(Object source, UUID productStockId,
+                                         Integer oldQuantity, Integer newQuantity,
+                                         String sourceSystem, String sourceId) {
+        super(source);
+        this.productStock = null;
+        this.productStockId = productStockId;
         this.oldQuantity = oldQuantity;
         this.newQuantity = newQuantity;
         this.sourceSystem = sourceSystem;
@@ -0,0 +1,236 @@
+package ru.dmitartur.excel;
+
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Фоновая выгрузка больших подборок товаров в Excel.
+ *
+ * Задача пишет xlsx в excel.export.dir, клиент опрашивает статус и скачивает файл по ссылке.
+ * Состояние задач хранится в visor.excel_export_job, поэтому статус и скачивание обслуживает любой экземпляр;
+ * при нескольких экземплярах excel.export.dir должен быть общим томом (NFS/PVC с ReadWriteMany),
+ * иначе файл найдется только на экземпляре, который его записал. Задачи и файлы живут
+ * excel.export.ttl-minutes, затем удаляются; незавершенные задачи упавшего экземпляра по истечении
+ * того же срока помечаются FAILED. На экземпляре одновременно выполняется не больше excel.export.parallelism
+ * выгрузок, очередь ограничена — при переполнении submit отказывает.
+ */
+@Slf4j
+@Service
+public class ExcelExportJobService {
+
+    public enum Status { PENDING, RUNNING, DONE, FAILED }
+
+    @Getter
+    public static class Job {
+        private final String id;
+        private final UUID ownerUserId;
+        private final int productCount;
+        private final Status status;
+        private final Path file;
+        private final String error;
+        private final Instant createdAt;
+        private final Instant finishedAt;
+
+        Job(String id, UUID ownerUserId, int productCount, Status status, Path file, String error,
+            Instant createdAt, Instant finishedAt) {
+            this.id = id;
+            this.ownerUserId = ownerUserId;
+            this.productCount = productCount;
+            this.status = status;
+            this.file = file;
+            this.error = error;
+            this.createdAt = createdAt;
+            this.finishedAt = finishedAt;
+        }
+    }
+
+    private static final String SELECT_SQL = """
+            SELECT id, owner_user_id, product_count, status, file_name, error, created_at, finished_at
+            FROM visor.excel_export_job
+            """;
+
+    private final ExcelExportService excelExportService;
+    private final JdbcTemplate jdbcTemplate;
+    private final Path exportDir;
+    private final Duration ttl;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService cleaner;
+
+    public ExcelExportJobService(ExcelExportService excelExportService,
+                                 JdbcTemplate jdbcTemplate,
+                                 @Value("${excel.export.dir:${java.io.tmpdir}/product-visor-exports}") String exportDir,
+                                 @Value("${excel.export.ttl-minutes:60}") long ttlMinutes,
+                                 @Value("${excel.export.parallelism:2}") int parallelism,
+                                 @Value("${excel.export.queue-capacity:20}") int queueCapacity) {
+        this.excelExportService = excelExportService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.exportDir = Paths.get(exportDir);
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "excel-export-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "excel-export-cleaner");
+            t.setDaemon(true);
+            return t;
+        });
+        this.cleaner.scheduleWithFixedDelay(this::safeCleanup, 5, 5, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        workers.shutdownNow();
+        cleaner.shutdownNow();
+    }
+
+    /**
+     * Поставить выгрузку в очередь
+     *
+     * @throws java.util.concurrent.RejectedExecutionException если очередь выгрузок заполнена
+     */
+    public Job submit(UUID ownerUserId, List<Long> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            throw new IllegalArgumentException("productIds is empty");
+        }
+        List<Long> ids = List.copyOf(productIds);
+        String jobId = UUID.randomUUID().toString();
+        // Задача регистрируется до постановки в пул: быстрый воркер не должен обновлять несуществующую строку
+        jdbcTemplate.update("INSERT INTO visor.excel_export_job(id, owner_user_id, product_count, status) VALUES (?, ?, ?, ?)",
+                UUID.fromString(jobId), ownerUserId, ids.size(), Status.PENDING.name());
+        try {
+            workers.execute(() -> run(jobId, ids));
+        } catch (RejectedExecutionException e) {
+            jdbcTemplate.update("DELETE FROM visor.excel_export_job WHERE id = ?", UUID.fromString(jobId));
+            throw e;
+        }
+        log.info("📤 Excel export job queued: jobId={}, owner={}, products={}", jobId, ownerUserId, ids.size());
+        return find(jobId, ownerUserId).orElseThrow();
+    }
+
+    /**
+     * Задача владельца; чужие и просроченные задачи не видны
+     */
+    public Optional<Job> find(String jobId, UUID ownerUserId) {
+        UUID id;
+        try {
+            id = UUID.fromString(jobId);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        return jdbcTemplate.query(SELECT_SQL + " WHERE id = ? AND owner_user_id = ?",
+                        (rs, rowNum) -> readJob(rs), id, ownerUserId)
+                .stream().findFirst();
+    }
+
+    private void run(String jobId, List<Long> ids) {
+        UUID id = UUID.fromString(jobId);
+        jdbcTemplate.update("UPDATE visor.excel_export_job SET status = ?, updated_at = now() WHERE id = ?",
+                Status.RUNNING.name(), id);
+        String fileName = jobId + ".xlsx";
+        Path file = exportDir.resolve(fileName);
+        try {
+            Files.createDirectories(exportDir);
+            try (OutputStream out = Files.newOutputStream(file)) {
+                excelExportService.exportLensExcel(ids, out);
+            }
+            finish(id, Status.DONE, fileName, null);
+            log.info("✅ Excel export job done: jobId={}, sizeBytes={}", jobId, Files.size(file));
+        } catch (Exception e) {
+            deleteQuietly(file);
+            finish(id, Status.FAILED, null, e.getMessage());
+            log.error("❌ Excel export job failed: jobId={}, error={}", jobId, e.getMessage(), e);
+        }
+    }
+
+    private void finish(UUID id, Status status, String fileName, String error) {
+        jdbcTemplate.update("UPDATE visor.excel_export_job SET status = ?, file_name = ?, error = ?, " +
+                        "updated_at = now(), finished_at = now() WHERE id = ?",
+                status.name(), fileName, error, id);
+    }
+
+    private void safeCleanup() {
+        try {
+            cleanupExpired();
+        } catch (Exception e) {
+            log.error("❌ Excel export cleanup failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Удалить просроченные задачи и их файлы. DELETE ... RETURNING отдает каждую строку одному экземпляру,
+     * поэтому файл удаляет тот, кто удалил строку
+     */
+    private void cleanupExpired() {
+        long ttlSeconds = ttl.toSeconds();
+        int abandoned = jdbcTemplate.update("UPDATE visor.excel_export_job SET status = ?, error = ?, " +
+                        "updated_at = now(), finished_at = now() " +
+                        "WHERE finished_at IS NULL AND updated_at < now() - make_interval(secs => ?)",
+                Status.FAILED.name(), "Export was interrupted", ttlSeconds);
+        if (abandoned > 0) {
+            log.warn("⚠️ Excel export jobs marked as failed after instance loss: {}", abandoned);
+        }
+        List<String> files = jdbcTemplate.queryForList("DELETE FROM visor.excel_export_job " +
+                        "WHERE finished_at < now() - make_interval(secs => ?) RETURNING file_name",
+                String.class, ttlSeconds);
+        for (String fileName : files) {
+            if (fileName != null) {
+                deleteQuietly(exportDir.resolve(fileName));
+            }
+        }
+        if (!files.isEmpty()) {
+            log.debug("🧹 Excel export jobs expired: {}", files.size());
+        }
+    }
+
+    private Job readJob(ResultSet rs) throws SQLException {
+        String fileName = rs.getString("file_name");
+        Timestamp finishedAt = rs.getTimestamp("finished_at");
+        return new Job(
+                rs.getObject("id", UUID.class).toString(),
+                rs.getObject("owner_user_id", UUID.class),
+                rs.getInt("product_count"),
+                Status.valueOf(rs.getString("status")),
+                fileName != null ? exportDir.resolve(fileName) : null,
+                rs.getString("error"),
+                rs.getTimestamp("created_at").toInstant(),
+                finishedAt != null ? finishedAt.toInstant() : null);
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("⚠️ Failed to delete export file {}: {}", file, e.getMessage());
+        }
+    }
+}
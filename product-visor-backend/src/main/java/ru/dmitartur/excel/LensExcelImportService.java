@@ -0,0 +1,614 @@
+package ru.dmitartur.excel;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import ru.dmitartur.cache.ProductStockLookupCache;
+import ru.dmitartur.common.enums.ProductStockType;
+import ru.dmitartur.common.utils.JwtUtil;
+import ru.dmitartur.entity.Warehouse;
+import ru.dmitartur.repository.WarehouseRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Импорт товаров из формы линз Ozon (тот же формат, что отдает выгрузка).
+ *
+ * Файл читается потоково ({@link XlsxRowReader}), строки собираются в пачки по IMPORT_CHUNK_SIZE.
+ * Пачка проверяется параллельно, затем записывается в своей транзакции набором JDBC-запросов:
+ * обновление существующих товаров по артикулу, вставка новых одним INSERT ... SELECT FROM unnest,
+ * значения атрибутов и остатки на выбранном складе — пакетами. В памяти одновременно одна пачка.
+ *
+ * Ошибки возвращаются по строкам файла. Если запись пачки упала на ограничении БД
+ * (например, параллельно создан товар с тем же названием), пачка повторяется построчно,
+ * чтобы ошибка досталась только виноватой строке.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LensExcelImportService {
+
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    // Необязательная колонка с остатком на выбранном складе; в шаблоне Ozon ее нет
+    static final String QUANTITY_HEADER = "Остаток, шт";
+
+    // Атрибуты линз в колонках формы (совпадают с выгрузкой)
+    private static final String ATTR_COLOR = "color";
+    private static final String ATTR_DIOPTRIES = "dioptries";
+    private static final String ATTR_DIAMETER = "diameter";
+    private static final String ATTR_CURVATURE = "curvature";
+
+    private static final String FIND_EXISTING_SQL = """
+            SELECT id, article, name, barcode, owner_user_id FROM visor.product
+            WHERE article = ANY(?) OR name = ANY(?) OR barcode = ANY(?)
+            """;
+    private static final String UPDATE_PRODUCT_SQL = """
+            UPDATE visor.product
+            SET name = ?, price = ?, barcode = COALESCE(?, barcode),
+                width = ?, height = ?, length = ?, weight = ?, quantity_in_package = ?
+            WHERE id = ?
+            """;
+    private static final String INSERT_PRODUCTS_SQL = """
+            INSERT INTO visor.product (article, name, barcode, price, width, height, length, weight,
+                                       quantity_in_package, category_id, owner_user_id, company_id)
+            SELECT r.article, r.name, r.barcode, r.price, r.width, r.height, r.length, r.weight,
+                   r.quantity_in_package, ?, ?, ?
+            FROM unnest(?::text[], ?::text[], ?::text[], ?::float8[], ?::float8[], ?::float8[], ?::float8[],
+                        ?::float8[], ?::int4[])
+                     AS r(article, name, barcode, price, width, height, length, weight, quantity_in_package)
+            RETURNING id, article
+            """;
+    private static final String DELETE_ATTRIBUTE_VALUES_SQL =
+            "DELETE FROM visor.product_attribute_value WHERE product_id = ANY(?) AND attribute_id = ANY(?)";
+    private static final String INSERT_ATTRIBUTE_VALUE_SQL =
+            "INSERT INTO visor.product_attribute_value (value, attribute_id, product_id) VALUES (?, ?, ?)";
+    private static final String FIND_STOCKS_SQL = """
+            SELECT ps.product_id, ps.id, ps.quantity FROM visor.product_stocks ps
+            JOIN visor.product_stock_warehouses psw ON psw.product_stock_id = ps.id
+            WHERE psw.warehouse_id = ? AND ps.product_id = ANY(?)
+            """;
+    private static final String UPDATE_STOCK_SQL =
+            "UPDATE visor.product_stocks SET quantity = ?, updated_at = ?, version = version + 1 WHERE id = ?";
+    private static final String INSERT_STOCK_SQL = """
+            INSERT INTO visor.product_stocks (id, product_id, user_id, stock_type, quantity, sync_status,
+                                              created_at, updated_at, version)
+            VALUES (?, ?, ?, ?, ?, 'NEVER_SYNCED', ?, ?, 0)
+            """;
+    private static final String INSERT_STOCK_WAREHOUSE_SQL =
+            "INSERT INTO visor.product_stock_warehouses (product_stock_id, warehouse_id) VALUES (?, ?)";
+    private static final String INSERT_HISTORY_SQL = """
+            INSERT INTO visor.product_history (product_id, field_name, old_value, new_value, change_reason,
+                                               source_system, source_id, user_id, company_id, created_at)
+            VALUES (?, 'quantity', ?, ?, 'EXCEL_IMPORT', 'REST_API', ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final WarehouseRepository warehouseRepository;
+    private final ProductStockLookupCache productStockLookupCache;
+    private final LensFormTemplate lensFormTemplate;
+
+    /**
+     * Импортировать товары из xlsx
+     *
+     * @param categoryId  категория новых товаров и источник атрибутов линз
+     * @param warehouseId склад для колонки "Остаток, шт"; без него остатки не трогаем
+     */
+    public ImportResult importLenses(MultipartFile file, Long categoryId, UUID warehouseId) {
+        UUID ownerId = JwtUtil.getRequiredOwnerId();
+        UUID companyId = JwtUtil.resolveEffectiveCompanyId().map(UUID::fromString).orElse(null);
+        ImportContext ctx = new ImportContext(UUID.randomUUID().toString(), ownerId, companyId, categoryId,
+                loadAttributeIds(categoryId), resolveWarehouse(warehouseId, ownerId, companyId));
+
+        long startedAt = System.currentTimeMillis();
+        ImportResult result = new ImportResult();
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile("lens-import-", ".xlsx");
+            file.transferTo(tmp);
+            SheetImport sheetImport = new SheetImport(ctx, result);
+            XlsxRowReader.read(tmp, lensFormTemplate.getDataSheetName(), sheetImport::onRow);
+            sheetImport.finish();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to store uploaded file", e);
+        } finally {
+            deleteQuietly(tmp);
+        }
+
+        productStockLookupCache.invalidateCompany(companyId);
+        log.info("✅ Lens Excel import finished: importId={}, rows={}, created={}, updated={}, failed={}, tookMs={}",
+                ctx.importId(), result.getTotalRows(), result.getCreated(), result.getUpdated(), result.getFailed(),
+                System.currentTimeMillis() - startedAt);
+        return result;
+    }
+
+    private Map<String, Long> loadAttributeIds(Long categoryId) {
+        Integer categories = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM visor.category WHERE id = ?", Integer.class, categoryId);
+        if (categories == null || categories == 0) {
+            throw new IllegalArgumentException("Category not found: " + categoryId);
+        }
+        Map<String, Long> ids = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name FROM visor.attribute WHERE category_id = ?",
+                rs -> { ids.put(rs.getString("name"), rs.getLong("id")); }, categoryId);
+        ids.keySet().retainAll(Set.of(ATTR_COLOR, ATTR_DIOPTRIES, ATTR_DIAMETER, ATTR_CURVATURE));
+        return ids;
+    }
+
+    private Warehouse resolveWarehouse(UUID warehouseId, UUID ownerId, UUID companyId) {
+        if (warehouseId == null) {
+            return null;
+        }
+        Warehouse warehouse = warehouseRepository.findById(warehouseId)
+                .filter(w -> companyId != null ? companyId.equals(w.getCompanyId()) : ownerId.equals(w.getUserId()))
+                .orElseThrow(() -> new IllegalArgumentException("Warehouse not found: " + warehouseId));
+        // Остатки FBO приходят из синхронизации с маркетплейсом, из файла задаем только свой склад
+        if (warehouse.getWarehouseType() != Warehouse.WarehouseType.FBS) {
+            throw new IllegalArgumentException("Stock import is supported for FBS warehouses only: " + warehouseId);
+        }
+        return warehouse;
+    }
+
+    /**
+     * Разбор листа: поиск строки заголовков, нарезка строк данных на пачки
+     */
+    private class SheetImport {
+        private final ImportContext ctx;
+        private final ImportResult result;
+        private final Set<String> seenArticles = new HashSet<>();
+        private final Set<String> seenNames = new HashSet<>();
+        private final Set<String> seenBarcodes = new HashSet<>();
+        private List<RawRow> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+        private Columns columns;
+        private int firstDataRowIndex;
+
+        SheetImport(ImportContext ctx, ImportResult result) {
+            this.ctx = ctx;
+            this.result = result;
+        }
+
+        void onRow(int rowIndex, List<String> values) {
+            if (columns == null) {
+                detectHeader(rowIndex, values);
+                return;
+            }
+            if (rowIndex < firstDataRowIndex || isBlank(values)) {
+                return;
+            }
+            chunk.add(new RawRow(rowIndex + 1, values.toArray(new String[0])));
+            if (chunk.size() >= IMPORT_CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        void finish() {
+            if (columns == null) {
+                throw new IllegalArgumentException("Header row with column 'Артикул*' not found");
+            }
+            flush();
+        }
+
+        private void detectHeader(int rowIndex, List<String> values) {
+            Map<String, Integer> byHeader = new HashMap<>();
+            for (int c = 0; c < values.size(); c++) {
+                if (values.get(c) != null) byHeader.put(values.get(c).trim(), c);
+            }
+            LensFormTemplate.ColumnMap map = new LensFormTemplate.ColumnMap(byHeader);
+            if (map.colArticle < 0) {
+                return;
+            }
+            columns = new Columns(map, byHeader.getOrDefault(QUANTITY_HEADER, -1));
+            // В форме Ozon между заголовком и данными строки-подсказки; в своей таблице данные сразу после заголовка
+            firstDataRowIndex = rowIndex == lensFormTemplate.getHeaderRowIndex()
+                    ? lensFormTemplate.getFirstDataRowIndex()
+                    : rowIndex + 1;
+        }
+
+        private void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            List<RawRow> rows = chunk;
+            chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+            result.setTotalRows(result.getTotalRows() + rows.size());
+
+            // Разбор и проверка значений не зависят друг от друга — параллельно
+            List<Validated> validated = rows.parallelStream().map(row -> validate(row, columns)).toList();
+
+            List<ImportRow> valid = new ArrayList<>(validated.size());
+            for (Validated v : validated) {
+                if (!v.errors().isEmpty()) {
+                    result.fail(v.errors());
+                    continue;
+                }
+                String duplicate = duplicateInFile(v.row());
+                if (duplicate != null) {
+                    result.fail(List.of(new RowError(v.row().rowNumber(), duplicate, "Значение повторяется в файле")));
+                    continue;
+                }
+                valid.add(v.row());
+            }
+            writeChunk(ctx, valid, result);
+        }
+
+        private String duplicateInFile(ImportRow row) {
+            if (!seenArticles.add(row.article())) return "article";
+            if (!seenNames.add(row.name())) return "name";
+            if (row.barcode() != null && !seenBarcodes.add(row.barcode())) return "barcode";
+            return null;
+        }
+    }
+
+    private Validated validate(RawRow raw, Columns columns) {
+        List<RowError> errors = new ArrayList<>();
+        LensFormTemplate.ColumnMap cols = columns.map();
+        int rowNumber = raw.rowNumber();
+
+        String article = text(raw, cols.colArticle);
+        if (article == null) errors.add(new RowError(rowNumber, "article", "Артикул обязателен"));
+        String name = text(raw, cols.colName);
+        if (name == null) errors.add(new RowError(rowNumber, "name", "Название обязательно"));
+        Double price = number(raw, cols.colPrice, "price", errors);
+        if (price == null && errors.stream().noneMatch(e -> "price".equals(e.getField()))) {
+            errors.add(new RowError(rowNumber, "price", "Цена обязательна"));
+        } else if (price != null && price <= 0) {
+            errors.add(new RowError(rowNumber, "price", "Цена должна быть больше нуля"));
+        }
+
+        // В форме размеры в мм, в товаре — в см; вес в граммах в обоих местах
+        Double width = mmToCm(number(raw, cols.colPkgWidthMm, "width", errors));
+        Double height = mmToCm(number(raw, cols.colPkgHeightMm, "height", errors));
+        Double length = mmToCm(number(raw, cols.colPkgLengthMm, "length", errors));
+        Double weight = number(raw, cols.colPkgWeightG, "weight", errors);
+        Integer qtyInPack = integer(raw, cols.colQtyInPack, "quantityInPackage", errors);
+        Integer quantity = integer(raw, columns.quantityColumn(), "quantity", errors);
+        if (quantity != null && quantity < 0) {
+            errors.add(new RowError(rowNumber, "quantity", "Остаток не может быть отрицательным"));
+        }
+
+        Map<String, String> attributes = new LinkedHashMap<>();
+        putIfPresent(attributes, ATTR_COLOR, text(raw, cols.colColor));
+        putIfPresent(attributes, ATTR_DIOPTRIES, text(raw, cols.colDioptries));
+        putIfPresent(attributes, ATTR_DIAMETER, text(raw, cols.colDiameterMm));
+        putIfPresent(attributes, ATTR_CURVATURE, text(raw, cols.colCurvature));
+
+        ImportRow row = errors.isEmpty()
+                ? new ImportRow(rowNumber, article, name, text(raw, cols.colBarcode), price,
+                width, height, length, weight, qtyInPack, attributes, quantity)
+                : null;
+        return new Validated(row, errors);
+    }
+
+    /**
+     * Записать пачку. При ошибке БД пачка откатывается и повторяется по одной строке
+     */
+    private void writeChunk(ImportContext ctx, List<ImportRow> rows, ImportResult result) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            result.add(inTransaction(() -> write(ctx, rows)));
+        } catch (Exception e) {
+            log.warn("⚠️ Import chunk failed, retrying row by row: importId={}, rows={}, error={}",
+                    ctx.importId(), rows.size(), e.getMessage());
+            for (ImportRow row : rows) {
+                try {
+                    result.add(inTransaction(() -> write(ctx, List.of(row))));
+                } catch (Exception rowError) {
+                    result.fail(List.of(new RowError(row.rowNumber(), null, rootMessage(rowError))));
+                }
+            }
+        }
+    }
+
+    private WriteResult inTransaction(Supplier<WriteResult> action) {
+        return new TransactionTemplate(transactionManager).execute(status -> action.get());
+    }
+
+    private WriteResult write(ImportContext ctx, List<ImportRow> rows) {
+        WriteResult written = new WriteResult();
+        Map<String, Existing> byArticle = new HashMap<>();
+        Map<String, Existing> byName = new HashMap<>();
+        Map<String, Existing> byBarcode = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(FIND_EXISTING_SQL);
+            ps.setArray(1, con.createArrayOf("text", rows.stream().map(ImportRow::article).toArray()));
+            ps.setArray(2, con.createArrayOf("text", rows.stream().map(ImportRow::name).toArray()));
+            ps.setArray(3, con.createArrayOf("text", rows.stream().map(ImportRow::barcode).filter(b -> b != null).toArray()));
+            return ps;
+        }, rs -> {
+            Existing existing = new Existing(rs.getLong("id"), (UUID) rs.getObject("owner_user_id"));
+            byArticle.put(rs.getString("article"), existing);
+            byName.put(rs.getString("name"), existing);
+            if (rs.getString("barcode") != null) byBarcode.put(rs.getString("barcode"), existing);
+        });
+
+        List<ImportRow> inserts = new ArrayList<>();
+        List<ImportRow> updates = new ArrayList<>();
+        Map<String, Long> productIds = new HashMap<>();
+        for (ImportRow row : rows) {
+            Existing target = byArticle.get(row.article());
+            Existing sameName = byName.get(row.name());
+            Existing sameBarcode = row.barcode() != null ? byBarcode.get(row.barcode()) : null;
+            if (target != null && !ctx.ownerId().equals(target.ownerUserId())) {
+                written.errors.add(new RowError(row.rowNumber(), "article", "Артикул занят товаром другого владельца"));
+            } else if (sameName != null && (target == null || sameName.id() != target.id())) {
+                written.errors.add(new RowError(row.rowNumber(), "name", "Название занято товаром id=" + sameName.id()));
+            } else if (sameBarcode != null && (target == null || sameBarcode.id() != target.id())) {
+                written.errors.add(new RowError(row.rowNumber(), "barcode", "Штрихкод занят товаром id=" + sameBarcode.id()));
+            } else if (target != null) {
+                updates.add(row);
+                productIds.put(row.article(), target.id());
+            } else {
+                inserts.add(row);
+            }
+        }
+
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_PRODUCT_SQL, updates, updates.size(), (ps, row) -> {
+                ps.setString(1, row.name());
+                ps.setDouble(2, row.price());
+                ps.setString(3, row.barcode());
+                ps.setObject(4, row.width());
+                ps.setObject(5, row.height());
+                ps.setObject(6, row.length());
+                ps.setObject(7, row.weight());
+                ps.setObject(8, row.quantityInPackage());
+                ps.setLong(9, productIds.get(row.article()));
+            });
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.query(con -> insertProducts(con, ctx, inserts),
+                    rs -> { productIds.put(rs.getString("article"), rs.getLong("id")); });
+        }
+
+        List<ImportRow> saved = new ArrayList<>(updates.size() + inserts.size());
+        saved.addAll(updates);
+        saved.addAll(inserts);
+        writeAttributes(ctx, saved, productIds);
+        if (ctx.warehouse() != null) {
+            writeStocks(ctx, saved, productIds);
+        }
+
+        written.created = inserts.size();
+        written.updated = updates.size();
+        return written;
+    }
+
+    private PreparedStatement insertProducts(Connection con, ImportContext ctx, List<ImportRow> rows) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(INSERT_PRODUCTS_SQL);
+        ps.setObject(1, ctx.categoryId());
+        ps.setObject(2, ctx.ownerId());
+        ps.setObject(3, ctx.companyId());
+        ps.setArray(4, array(con, "text", rows.stream().map(ImportRow::article).toArray()));
+        ps.setArray(5, array(con, "text", rows.stream().map(ImportRow::name).toArray()));
+        ps.setArray(6, array(con, "text", rows.stream().map(ImportRow::barcode).toArray()));
+        ps.setArray(7, array(con, "float8", rows.stream().map(ImportRow::price).toArray()));
+        ps.setArray(8, array(con, "float8", rows.stream().map(ImportRow::width).toArray()));
+        ps.setArray(9, array(con, "float8", rows.stream().map(ImportRow::height).toArray()));
+        ps.setArray(10, array(con, "float8", rows.stream().map(ImportRow::length).toArray()));
+        ps.setArray(11, array(con, "float8", rows.stream().map(ImportRow::weight).toArray()));
+        ps.setArray(12, array(con, "int4", rows.stream().map(ImportRow::quantityInPackage).toArray()));
+        return ps;
+    }
+
+    private Array array(Connection con, String type, Object[] values) throws SQLException {
+        return con.createArrayOf(type, values);
+    }
+
+    /**
+     * Значения атрибутов из файла заменяют прежние значения тех же атрибутов; "a; b" — несколько значений
+     */
+    private void writeAttributes(ImportContext ctx, List<ImportRow> rows, Map<String, Long> productIds) {
+        if (ctx.attributeIds().isEmpty() || rows.isEmpty()) {
+            return;
+        }
+        Set<Long> touchedAttributes = new HashSet<>();
+        List<Object[]> values = new ArrayList<>();
+        for (ImportRow row : rows) {
+            Long productId = productIds.get(row.article());
+            row.attributes().forEach((name, value) -> {
+                Long attributeId = ctx.attributeIds().get(name);
+                if (attributeId == null) return;
+                touchedAttributes.add(attributeId);
+                for (String part : value.split(";")) {
+                    if (!part.isBlank()) values.add(new Object[]{part.trim(), attributeId, productId});
+                }
+            });
+        }
+        if (touchedAttributes.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(DELETE_ATTRIBUTE_VALUES_SQL);
+            ps.setArray(1, con.createArrayOf("bigint", rows.stream().map(r -> productIds.get(r.article())).toArray()));
+            ps.setArray(2, con.createArrayOf("bigint", touchedAttributes.toArray()));
+            return ps;
+        });
+        jdbcTemplate.batchUpdate(INSERT_ATTRIBUTE_VALUE_SQL, values);
+    }
+
+    /**
+     * Остатки на выбранном складе: изменение количества пишется в историю товара, как при ручном изменении
+     */
+    private void writeStocks(ImportContext ctx, List<ImportRow> rows, Map<String, Long> productIds) {
+        List<ImportRow> withQuantity = rows.stream().filter(r -> r.quantity() != null).toList();
+        if (withQuantity.isEmpty()) {
+            return;
+        }
+        Warehouse warehouse = ctx.warehouse();
+        Map<Long, ExistingStock> stocks = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(FIND_STOCKS_SQL);
+            ps.setObject(1, warehouse.getId());
+            ps.setArray(2, con.createArrayOf("bigint", withQuantity.stream().map(r -> productIds.get(r.article())).toArray()));
+            return ps;
+        }, rs -> {
+            stocks.putIfAbsent(rs.getLong("product_id"), new ExistingStock((UUID) rs.getObject("id"), rs.getInt("quantity")));
+        });
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> stockUpdates = new ArrayList<>();
+        List<Object[]> stockInserts = new ArrayList<>();
+        List<Object[]> links = new ArrayList<>();
+        List<Object[]> history = new ArrayList<>();
+        for (ImportRow row : withQuantity) {
+            Long productId = productIds.get(row.article());
+            ExistingStock stock = stocks.get(productId);
+            if (stock == null) {
+                UUID stockId = UUID.randomUUID();
+                stockInserts.add(new Object[]{stockId, productId, ctx.ownerId(), ProductStockType.FBS.name(),
+                        row.quantity(), now, now});
+                links.add(new Object[]{stockId, warehouse.getId()});
+                history.add(new Object[]{productId, null, String.valueOf(row.quantity()), ctx.importId(),
+                        ctx.ownerId(), ctx.companyId(), now});
+            } else if (stock.quantity() != row.quantity()) {
+                stockUpdates.add(new Object[]{row.quantity(), now, stock.id()});
+                history.add(new Object[]{productId, String.valueOf(stock.quantity()), String.valueOf(row.quantity()),
+                        ctx.importId(), ctx.ownerId(), ctx.companyId(), now});
+            }
+        }
+        if (!stockUpdates.isEmpty()) jdbcTemplate.batchUpdate(UPDATE_STOCK_SQL, stockUpdates);
+        if (!stockInserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_STOCK_SQL, stockInserts);
+            jdbcTemplate.batchUpdate(INSERT_STOCK_WAREHOUSE_SQL, links);
+        }
+        if (!history.isEmpty()) jdbcTemplate.batchUpdate(INSERT_HISTORY_SQL, history);
+    }
+
+    private String text(RawRow row, int col) {
+        if (col < 0 || col >= row.values().length) return null;
+        String value = row.values()[col];
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private Double number(RawRow row, int col, String field, List<RowError> errors) {
+        String value = text(row, col);
+        if (value == null) return null;
+        try {
+            return Double.parseDouble(value.replace(',', '.').replace(" ", ""));
+        } catch (NumberFormatException e) {
+            errors.add(new RowError(row.rowNumber(), field, "Не число: " + value));
+            return null;
+        }
+    }
+
+    private Integer integer(RawRow row, int col, String field, List<RowError> errors) {
+        Double value = number(row, col, field, errors);
+        if (value == null) return null;
+        if (value != Math.rint(value)) {
+            errors.add(new RowError(row.rowNumber(), field, "Ожидается целое число: " + value));
+            return null;
+        }
+        return value.intValue();
+    }
+
+    private Double mmToCm(Double mm) {
+        return mm == null ? null : mm / 10.0;
+    }
+
+    private void putIfPresent(Map<String, String> map, String key, String value) {
+        if (value != null) map.put(key, value);
+    }
+
+    private boolean isBlank(List<String> values) {
+        return values.stream().allMatch(v -> v == null || v.isBlank());
+    }
+
+    private String rootMessage(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null) root = root.getCause();
+        return root.getMessage();
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("⚠️ Failed to delete import file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private record ImportContext(String importId, UUID ownerId, UUID companyId, Long categoryId,
+                                 Map<String, Long> attributeIds, Warehouse warehouse) {}
+
+    private record Columns(LensFormTemplate.ColumnMap map, int quantityColumn) {}
+
+    private record RawRow(int rowNumber, String[] values) {}
+
+    private record ImportRow(int rowNumber, String article, String name, String barcode, Double price,
+                             Double width, Double height, Double length, Double weight, Integer quantityInPackage,
+                             Map<String, String> attributes, Integer quantity) {}
+
+    private record Validated(ImportRow row, List<RowError> errors) {}
+
+    private record Existing(long id, UUID ownerUserId) {}
+
+    private record ExistingStock(UUID id, int quantity) {}
+
+    private static class WriteResult {
+        int created;
+        int updated;
+        final List<RowError> errors = new ArrayList<>();
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class RowError {
+        private int row;       // номер строки в файле (1-based, как в Excel)
+        private String field;
+        private String message;
+    }
+
+    /**
+     * Итог импорта; ошибок в ответе не больше MAX_REPORTED_ERRORS, failed считает все
+     */
+    @Data
+    public static class ImportResult {
+        private int totalRows;
+        private int created;
+        private int updated;
+        private int failed;
+        private List<RowError> errors = new ArrayList<>();
+
+        void add(WriteResult written) {
+            created += written.created;
+            updated += written.updated;
+            fail(written.errors);
+        }
+
+        void fail(List<RowError> rowErrors) {
+            if (rowErrors.isEmpty()) return;
+            failed += (int) rowErrors.stream().mapToInt(RowError::getRow).distinct().count();
+            for (RowError error : rowErrors) {
+                if (errors.size() < MAX_REPORTED_ERRORS) errors.add(error);
+            }
+        }
+    }
+}
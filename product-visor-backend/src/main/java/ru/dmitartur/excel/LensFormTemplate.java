@@ -0,0 +1,254 @@
+package ru.dmitartur.excel;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Шаблон формы линз Ozon (form.xlsx), разобранный один раз при старте.
+ *
+ * Хранит строку заголовков и первую строку данных из листа configs, карту колонок по заголовкам,
+ * индексы стилей колонок первой строки данных, найденные плейсхолдеры и сам шаблон без заготовленных
+ * строк данных в виде байтов. Выгрузка открывает копию из этих байтов ({@link #open()}) и сразу пишет
+ * строки — classpath, конфиг и заголовки при каждом запросе больше не читаются.
+ */
+@Slf4j
+@Component
+public class LensFormTemplate {
+
+    private static final String RESOURCE = "form.xlsx";
+    private static final String DATA_SHEET = "Шаблон";
+
+    @Getter
+    private String dataSheetName;
+    @Getter
+    private int headerRowIndex;
+    @Getter
+    private int firstDataRowIndex;
+    @Getter
+    private ColumnMap columns;
+    @Getter
+    private List<ExcelTemplateScanner.CellInfo> cells;
+    @Getter
+    private List<ExcelTemplateScanner.PlaceholderInfo> placeholders;
+
+    private short[] dataStyleIndices;
+    private byte[] workbookBytes;
+
+    @PostConstruct
+    public void load() {
+        long startedAt = System.currentTimeMillis();
+        try (InputStream in = new ClassPathResource(RESOURCE).getInputStream();
+             XSSFWorkbook wb = new XSSFWorkbook(in)) {
+            scanCells(wb);
+
+            Sheet sheet = wb.getSheet(DATA_SHEET);
+            if (sheet == null) sheet = wb.getSheetAt(0);
+            dataSheetName = sheet.getSheetName();
+
+            readConfigIndices(wb);
+            columns = new ColumnMap(readHeaders(sheet.getRow(headerRowIndex)));
+            dataStyleIndices = captureStyleIndices(sheet.getRow(firstDataRowIndex));
+
+            // Заготовленные пустые строки данных не нужны: SXSSF дописывает строки после последней строки шаблона
+            for (int r = sheet.getLastRowNum(); r >= firstDataRowIndex; r--) {
+                Row row = sheet.getRow(r);
+                if (row != null) sheet.removeRow(row);
+            }
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            wb.write(bos);
+            workbookBytes = bos.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load " + RESOURCE, e);
+        }
+        log.info("✅ Excel template loaded: sheet={}, headerRow={}, firstDataRow={}, placeholders={}, sizeBytes={}, tookMs={}",
+                dataSheetName, headerRowIndex, firstDataRowIndex, placeholders.size(), workbookBytes.length,
+                System.currentTimeMillis() - startedAt);
+    }
+
+    /**
+     * Новая копия шаблона для одной выгрузки; закрывает вызывающий
+     */
+    public XSSFWorkbook open() {
+        try {
+            return new XSSFWorkbook(new ByteArrayInputStream(workbookBytes));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open " + RESOURCE + " copy", e);
+        }
+    }
+
+    /**
+     * Стили колонок первой строки данных в копии шаблона (индексы стилей у копий совпадают с исходником)
+     */
+    public CellStyle[] dataStyles(Workbook copy) {
+        CellStyle[] styles = new CellStyle[dataStyleIndices.length];
+        for (int c = 0; c < styles.length; c++) {
+            if (dataStyleIndices[c] >= 0) styles[c] = copy.getCellStyleAt(dataStyleIndices[c]);
+        }
+        return styles;
+    }
+
+    private void scanCells(Workbook wb) {
+        List<ExcelTemplateScanner.CellInfo> foundCells = new ArrayList<>();
+        List<ExcelTemplateScanner.PlaceholderInfo> foundPlaceholders = new ArrayList<>();
+        for (int si = 0; si < wb.getNumberOfSheets(); si++) {
+            Sheet sheet = wb.getSheetAt(si);
+            for (int r = sheet.getFirstRowNum(); r <= sheet.getLastRowNum(); r++) {
+                Row row = sheet.getRow(r);
+                if (row == null) continue;
+                for (int c = 0; c < row.getLastCellNum(); c++) {
+                    Cell cell = row.getCell(c);
+                    if (cell == null || cell.getCellType() != CellType.STRING) continue;
+                    String text = cell.getStringCellValue();
+                    if (text == null || text.isBlank()) continue;
+                    foundCells.add(new ExcelTemplateScanner.CellInfo(wb.getSheetName(si), r, c, text));
+                    if (text.contains("${")) {
+                        foundPlaceholders.add(new ExcelTemplateScanner.PlaceholderInfo(wb.getSheetName(si), r, c, text));
+                    }
+                }
+            }
+        }
+        cells = List.copyOf(foundCells);
+        placeholders = List.copyOf(foundPlaceholders);
+    }
+
+    private void readConfigIndices(Workbook wb) {
+        headerRowIndex = 1;      // default 0-based row index of headers
+        firstDataRowIndex = 4;   // default 0-based row index for first data row
+        Sheet cfgSheet = wb.getSheet("configs");
+        if (cfgSheet == null) return;
+        for (int r = cfgSheet.getFirstRowNum(); r <= cfgSheet.getLastRowNum(); r++) {
+            Row row = cfgSheet.getRow(r);
+            if (row == null) continue;
+            Cell keyCell = row.getCell(0);
+            Cell valCell = row.getCell(1);
+            if (keyCell == null || valCell == null || keyCell.getCellType() != CellType.STRING) continue;
+            String key = keyCell.getStringCellValue();
+            String val = valCell.getCellType() == CellType.NUMERIC
+                    ? String.valueOf((int) valCell.getNumericCellValue())
+                    : valCell.getStringCellValue();
+            if (key == null || val == null) continue;
+            key = key.trim();
+            val = val.trim();
+            try {
+                // значение в файле 1-based, переводим в 0-based
+                if ("PRODUCTS_TITLE_ROW_INDEX".equalsIgnoreCase(key)) {
+                    headerRowIndex = Integer.parseInt(val) - 1;
+                } else if ("PRODUCTS_FIRST_DATA_ROW_INDEX".equalsIgnoreCase(key)) {
+                    firstDataRowIndex = Integer.parseInt(val) - 1;
+                }
+            } catch (NumberFormatException ignored) { }
+        }
+    }
+
+    private Map<String, Integer> readHeaders(Row header) {
+        Map<String, Integer> byHeader = new HashMap<>();
+        if (header == null) return byHeader;
+        for (int c = 0; c < header.getLastCellNum(); c++) {
+            Cell cell = header.getCell(c);
+            if (cell == null || cell.getCellType() != CellType.STRING) continue;
+            String h = cell.getStringCellValue();
+            if (h == null) continue;
+            byHeader.put(h.trim(), c);
+        }
+        return byHeader;
+    }
+
+    private short[] captureStyleIndices(Row row) {
+        if (row == null || row.getLastCellNum() < 0) return new short[0];
+        short[] indices = new short[row.getLastCellNum()];
+        for (int c = 0; c < indices.length; c++) {
+            Cell cell = row.getCell(c);
+            indices[c] = cell != null ? cell.getCellStyle().getIndex() : -1;
+        }
+        return indices;
+    }
+
+    /**
+     * Номера колонок формы по заголовкам; -1 — колонки в шаблоне нет
+     */
+    public static final class ColumnMap {
+        final int colArticle;
+        final int colName;
+        final int colPrice;
+        final int colBarcode;
+        final int colPkgWeightG;
+        final int colPkgWidthMm;
+        final int colPkgHeightMm;
+        final int colPkgLengthMm;
+        final int colQtyInPack;
+        final int colColor;
+        final int colDioptries;
+        final int colCurvature;
+        final int colDiameterMm;
+        final int colNds;
+        final int colRasrochka;
+        final int colBonusForOtziv;
+        final int colType;
+        final int colHashtag;
+        final int colExpiredDateInDays;
+        final int colDaysForSwitch;
+        final int colSex;
+        final int colRezim;
+        final int colComplect;
+        final int colCountry;
+        final int colBrand;
+        final int colGuaruantie;
+        final int colVlaznost;
+        final int colAnnotation;
+        final int colSizeCm; // Размер упаковки (Длина х Ширина х Высота), см
+        final int colModelName; // Название модели (для объединения в одну карточку)
+
+        ColumnMap(Map<String, Integer> byHeader) {
+            colArticle = byHeader.getOrDefault("Артикул*", -1);
+            colName = byHeader.getOrDefault("Название товара", -1);
+            colPrice = byHeader.getOrDefault("Цена, руб.*", -1);
+            colBarcode = byHeader.getOrDefault("Штрихкод (Серийный номер / EAN)", -1);
+            colPkgWeightG = byHeader.getOrDefault("Вес в упаковке, г*", -1);
+            colPkgWidthMm = byHeader.getOrDefault("Ширина упаковки, мм*", -1);
+            colPkgHeightMm = byHeader.getOrDefault("Высота упаковки, мм*", -1);
+            colPkgLengthMm = byHeader.getOrDefault("Длина упаковки, мм*", -1);
+            colQtyInPack = byHeader.getOrDefault("Количество в упаковке, шт", -1);
+            colColor = byHeader.getOrDefault("Цвет товара", -1);
+            colDioptries = byHeader.getOrDefault("Оптическая сила", -1);
+            colCurvature = byHeader.getOrDefault("Радиус кривизны", -1);
+            colDiameterMm = byHeader.getOrDefault("Диаметр, мм", -1);
+            colSizeCm = byHeader.getOrDefault("Размер упаковки (Длина х Ширина х Высота), см", -1);
+            colNds = byHeader.getOrDefault("НДС, %*", -1);
+            colRasrochka = byHeader.getOrDefault("Рассрочка", -1);
+            colBonusForOtziv = byHeader.getOrDefault("Баллы за отзывы", -1);
+            colType = byHeader.getOrDefault("Тип*", -1);
+            colHashtag = byHeader.getOrDefault("#Хештеги", -1);
+            colExpiredDateInDays = byHeader.getOrDefault("Срок годности в днях", -1);
+            colDaysForSwitch = byHeader.getOrDefault("Дней до замены", -1);
+            colSex = byHeader.getOrDefault("Пол", -1);
+            colRezim = byHeader.getOrDefault("Режим ношения", -1);
+            colComplect = byHeader.getOrDefault("Комплектация", -1);
+            colCountry = byHeader.getOrDefault("Страна-изготовитель", -1);
+            colBrand = byHeader.getOrDefault("Бренд*", -1);
+            colGuaruantie = byHeader.getOrDefault("Гарантийный срок", -1);
+            colVlaznost = byHeader.getOrDefault("Влагосодержание, %", -1);
+            colAnnotation = byHeader.getOrDefault("Аннотация", -1);
+            colModelName = byHeader.getOrDefault("Название модели (для объединения в одну карточку)*", -1);
+        }
+    }
+}
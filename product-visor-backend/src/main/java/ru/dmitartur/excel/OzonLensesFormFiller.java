@@ -1,160 +1,83 @@
 package ru.dmitartur.excel;
 
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.springframework.core.io.ClassPathResource;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 public class OzonLensesFormFiller {
 
-    public byte[] fillFromTemplate(List<LensExcelDto> dtos) {
-        try (InputStream in = new ClassPathResource("form.xlsx").getInputStream();
-             Workbook wb = new XSSFWorkbook(in)) {
-            Sheet sheet = wb.getSheet("Шаблон");
-            if (sheet == null) sheet = wb.getSheetAt(0);
+    // Сколько строк SXSSF держит в памяти; остальные уже сброшены во временный файл
+    private static final int ROW_WINDOW = 200;
 
-            ConfigIndices cfg = readConfigIndices(wb);
-            ColumnMap cols = buildColumnMap(sheet, cfg.headerRowIndex);
+    private final LensFormTemplate template;
 
-            int rowIndex = cfg.firstDataRowIndex;
-            for (int i = 0; i < dtos.size(); i++) {
-                writeRow(sheet, rowIndex + i, cols, dtos.get(i));
-            }
+    public OzonLensesFormFiller(LensFormTemplate template) {
+        this.template = template;
+    }
 
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            wb.write(bos);
-            return bos.toByteArray();
+    /**
+     * Заполнить шаблон form.xlsx строками товаров и записать результат в out.
+     *
+     * Берется копия заранее разобранного шаблона (без заготовленных строк данных), строки пишутся через
+     * SXSSF: в памяти только окно из ROW_WINDOW строк, а строки читаются из rows по мере записи.
+     * Проверки данных и скрытые листы шаблона сохраняются, ячейкам назначаются стили первой строки данных.
+     */
+    public void writeStreaming(OutputStream out, Iterator<LensExcelDto> rows) {
+        XSSFWorkbook copy = template.open();
+        SXSSFWorkbook wb = null;
+        try {
+            CellStyle[] styles = template.dataStyles(copy);
+            LensFormTemplate.ColumnMap cols = template.getColumns();
+
+            wb = new SXSSFWorkbook(copy, ROW_WINDOW);
+            wb.setCompressTempFiles(true);
+            Sheet sheet = wb.getSheet(template.getDataSheetName());
+
+            int rowIndex = template.getFirstDataRowIndex();
+            while (rows.hasNext()) {
+                Row row = sheet.createRow(rowIndex++);
+                writeRow(row, cols, rows.next());
+                applyStyles(row, styles);
+            }
+            wb.write(out);
+            out.flush();
         } catch (IOException e) {
             throw new RuntimeException("Failed to fill template", e);
+        } finally {
+            closeQuietly(wb, copy);
         }
     }
 
-    private static class ConfigIndices {
-        int headerRowIndex = 1;      // default 0-based row index of headers
-        int firstDataRowIndex = 4;   // default 0-based row index for first data row
-    }
-
-    private ConfigIndices readConfigIndices(Workbook wb) {
-        ConfigIndices cfg = new ConfigIndices();
-        Sheet cfgSheet = wb.getSheet("configs");
-        if (cfgSheet == null) return cfg;
-        for (int r = cfgSheet.getFirstRowNum(); r <= cfgSheet.getLastRowNum(); r++) {
-            Row row = cfgSheet.getRow(r);
-            if (row == null) continue;
-            Cell keyCell = row.getCell(0);
-            Cell valCell = row.getCell(1);
-            if (keyCell == null || valCell == null || keyCell.getCellType() != org.apache.poi.ss.usermodel.CellType.STRING) continue;
-            String key = keyCell.getStringCellValue();
-            String val = valCell.getCellType() == org.apache.poi.ss.usermodel.CellType.NUMERIC
-                    ? String.valueOf((int) valCell.getNumericCellValue())
-                    : valCell.getStringCellValue();
-            if (key == null || val == null) continue;
-            key = key.trim();
-            val = val.trim();
-            try {
-                if ("PRODUCTS_TITLE_ROW_INDEX".equalsIgnoreCase(key)) {
-                    cfg.headerRowIndex = Integer.parseInt(val) - 1;
-                } else if ("PRODUCTS_FIRST_DATA_ROW_INDEX".equalsIgnoreCase(key)) {
-                    cfg.firstDataRowIndex = Integer.parseInt(val) - 1;
-                }
-            } catch (NumberFormatException ignored) { }
+    private void applyStyles(Row row, CellStyle[] styles) {
+        for (Cell cell : row) {
+            int c = cell.getColumnIndex();
+            if (c < styles.length && styles[c] != null) cell.setCellStyle(styles[c]);
         }
-        return cfg;
-    }
-
-    private static class ColumnMap {
-        int colArticle = -1;
-        int colName = -1;
-        int colPrice = -1;
-        int colBarcode = -1;
-        int colPkgWeightG = -1;
-        int colPkgWidthMm = -1;
-        int colPkgHeightMm = -1;
-        int colPkgLengthMm = -1;
-        int colQtyInPack = -1;
-        int colColor = -1;
-        int colDioptries = -1;
-        int colCurvature = -1;
-        int colDiameterMm = -1;
-        int colNds = -1;
-        int colRasrochka = -1;
-        int colBonusForOtziv = -1;
-        int colType = -1;
-        int colHashtag = -1;
-        int colExpiredDateInDays = -1;
-        int colDaysForSwitch = -1;
-        int colSex = -1;
-        int colRezim = -1;
-        int colComplect = -1;
-        int colCountry = -1;
-        int colBrand = -1;
-        int colGuaruantie = -1;
-        int colVlaznost = -1;
-        int colAnnotation = -1;
-        int colSizeCm = -1; // Размер упаковки (Длина х Ширина х Высота), см
-        int colModelName = -1; // Размер упаковки (Длина х Ширина х Высота), см
     }
 
-    private ColumnMap buildColumnMap(Sheet sheet, int headerRowIdx) {
-        ColumnMap map = new ColumnMap();
-        Row header = sheet.getRow(headerRowIdx);
-        if (header == null) return map;
-        for (int c = 0; c < header.getLastCellNum(); c++) {
-            Cell cell = header.getCell(c);
-            if (cell == null || cell.getCellType() != org.apache.poi.ss.usermodel.CellType.STRING) continue;
-            String h = cell.getStringCellValue();
-            if (h == null) continue;
-            h = h.trim();
-            switch (h) {
-                case "Артикул*" -> map.colArticle = c;
-                case "Название товара" -> map.colName = c;
-                case "Цена, руб.*" -> map.colPrice = c;
-                case "Штрихкод (Серийный номер / EAN)" -> map.colBarcode = c;
-                case "Вес в упаковке, г*" -> map.colPkgWeightG = c;
-                case "Ширина упаковки, мм*" -> map.colPkgWidthMm = c;
-                case "Высота упаковки, мм*" -> map.colPkgHeightMm = c;
-                case "Длина упаковки, мм*" -> map.colPkgLengthMm = c;
-                case "Количество в упаковке, шт" -> map.colQtyInPack = c;
-                case "Цвет товара" -> map.colColor = c;
-                case "Оптическая сила" -> map.colDioptries = c;
-                case "Радиус кривизны" -> map.colCurvature = c;
-                case "Диаметр, мм" -> map.colDiameterMm = c;
-                case "Размер упаковки (Длина х Ширина х Высота), см" -> map.colSizeCm = c;
-                case "НДС, %*" -> map.colNds = c;
-                case "Рассрочка" -> map.colRasrochka = c;
-                case "Баллы за отзывы" -> map.colBonusForOtziv = c;
-                case "Тип*" -> map.colType = c;
-                case "#Хештеги" -> map.colHashtag = c;
-                case "Срок годности в днях" -> map.colExpiredDateInDays = c;
-                case "Дней до замены" -> map.colDaysForSwitch = c;
-                case "Пол" -> map.colSex = c;
-                case "Режим ношения" -> map.colRezim = c;
-                case "Комплектация" -> map.colComplect = c;
-                case "Страна-изготовитель" -> map.colCountry = c;
-                case "Бренд*" -> map.colBrand = c;
-                case "Гарантийный срок" -> map.colGuaruantie = c;
-                case "Влагосодержание, %" -> map.colVlaznost = c;
-                case "Аннотация" -> map.colAnnotation = c;
-                case "Название модели (для объединения в одну карточку)*" -> map.colModelName = c;
-                default -> {}
+    private void closeQuietly(SXSSFWorkbook wb, XSSFWorkbook copy) {
+        try {
+            if (wb != null) {
+                wb.dispose(); // временные файлы окна строк
+                wb.close();   // закрывает и копию шаблона
+            } else {
+                copy.close();
             }
-        }
-        return map;
+        } catch (IOException ignored) { }
     }
 
-    private void writeRow(Sheet sheet, int rowIdx, ColumnMap cols, LensExcelDto dto) {
-        Row row = sheet.getRow(rowIdx);
-        if (row == null) row = sheet.createRow(rowIdx);
+    private void writeRow(Row row, LensFormTemplate.ColumnMap cols, LensExcelDto dto) {
         setStringCell(row, cols.colArticle, dto.getArticle());
         setStringCell(row, cols.colName, formatProductName(dto.getProductName(), formatDioptries(dto.getAttrDioptries())));
         setStringCell(row, cols.colPrice, dto.getPrice());
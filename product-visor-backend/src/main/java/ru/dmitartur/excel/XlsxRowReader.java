@@ -0,0 +1,114 @@
+package ru.dmitartur.excel;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Потоковое чтение листа xlsx через событийную модель POI (SAX).
+ *
+ * Книга в память целиком не загружается: строки листа разбираются по мере чтения XML
+ * и сразу отдаются в {@link RowConsumer}. Значения ячеек — отформатированные строки, как их видит пользователь.
+ */
+public final class XlsxRowReader {
+
+    /**
+     * Получатель строк листа
+     */
+    @FunctionalInterface
+    public interface RowConsumer {
+        /**
+         * @param rowIndex 0-based номер строки
+         * @param values   значения ячеек по номеру колонки; отсутствующие ячейки — null.
+         *                 Список переиспользуется для следующей строки — нужные значения копировать
+         */
+        void accept(int rowIndex, List<String> values);
+    }
+
+    private XlsxRowReader() {}
+
+    /**
+     * Прочитать лист sheetName (или первый лист, если такого нет)
+     */
+    public static void read(Path file, String sheetName, RowConsumer consumer) {
+        try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream sheet = sheets.next()) {
+                    if (sheets.getSheetName().equals(sheetName)) {
+                        parse(sheet, styles, strings, consumer);
+                        return;
+                    }
+                }
+            }
+            sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                throw new IllegalArgumentException("Workbook has no sheets");
+            }
+            try (InputStream sheet = sheets.next()) {
+                parse(sheet, styles, strings, consumer);
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to read xlsx: " + e.getMessage(), e);
+        }
+    }
+
+    private static void parse(InputStream sheet, StylesTable styles, ReadOnlySharedStringsTable strings,
+                              RowConsumer consumer) throws Exception {
+        XMLReader parser = XMLHelper.newXMLReader();
+        parser.setContentHandler(new XSSFSheetXMLHandler(styles, strings, new RowCollector(consumer), new DataFormatter(), false));
+        parser.parse(new InputSource(sheet));
+    }
+
+    private static final class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final RowConsumer consumer;
+        private final List<String> values = new ArrayList<>();
+        private int nextColumn;
+
+        RowCollector(RowConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            values.clear();
+            nextColumn = 0;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            consumer.accept(rowNum, values);
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            // Ссылка может отсутствовать у ячеек, записанных сторонними генераторами
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : nextColumn;
+            while (values.size() <= column) {
+                values.add(null);
+            }
+            values.set(column, formattedValue);
+            nextColumn = column + 1;
+        }
+    }
+}
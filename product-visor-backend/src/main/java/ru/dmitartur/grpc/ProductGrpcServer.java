@@ -1,78 +1,252 @@
 package ru.dmitartur.grpc;
 
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.server.service.GrpcService;
 import ru.dmitartur.common.grpc.FindByArticleRequest;
 import ru.dmitartur.common.grpc.FindByArticleResponse;
+import ru.dmitartur.common.grpc.FindByArticlesRequest;
+import ru.dmitartur.common.grpc.FindByArticlesResponse;
+import ru.dmitartur.common.grpc.GetStockSummaryRequest;
+import ru.dmitartur.common.grpc.GetStockSummaryResponse;
 import ru.dmitartur.common.grpc.ProductInfoDto;
 import ru.dmitartur.common.grpc.ProductServiceGrpc;
-import ru.dmitartur.entity.Product;
+import ru.dmitartur.common.grpc.StockSummaryDto;
+import ru.dmitartur.common.grpc.StreamProductsRequest;
+import ru.dmitartur.dto.ProductListItemDto;
 import ru.dmitartur.service.ProductService;
 
-import java.util.Optional;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
- * gRPC сервер для работы с продуктами
+ * gRPC сервер для работы с продуктами.
+ *
+ * Все методы читают строки списка товаров (ProductService.findListByArticles / findListBatchAfter):
+ * скалярные поля и агрегаты остатков одним запросом, без загрузки графа сущности.
  */
 @Slf4j
 @GrpcService
 @RequiredArgsConstructor
 public class ProductGrpcServer extends ProductServiceGrpc.ProductServiceImplBase {
 
+    private static final int MAX_ARTICLES_PER_CALL = 10_000;
+    private static final int DEFAULT_STREAM_BATCH = 500;
+    private static final int MAX_STREAM_BATCH = 5_000;
+
     private final ProductService productService;
 
     @Override
     public void findByArticle(FindByArticleRequest request, StreamObserver<FindByArticleResponse> responseObserver) {
         try {
             String article = request.getArticle();
-            log.info("🔍 gRPC: Searching product by article: {}", article);
+            log.debug("🔍 gRPC: Searching product by article: {}", article);
+
+            List<ProductListItemDto> found = productService.findListByArticles(List.of(article), null);
 
-            Optional<Product> productOpt = productService.findByArticle(article);
-            
             FindByArticleResponse.Builder responseBuilder = FindByArticleResponse.newBuilder();
-            
-            if (productOpt.isPresent()) {
-                Product product = productOpt.get();
-                ProductInfoDto productDto = convertToProductInfoDto(product);
-                
+            if (!found.isEmpty()) {
                 responseBuilder.setFound(true)
-                             .setProduct(productDto);
-                
-                log.info("✅ gRPC: Product found by article: {} -> id={}, name={}", 
-                        article, product.getId(), product.getName());
+                             .setProduct(convertToProductInfoDto(found.get(0)));
+                log.debug("✅ gRPC: Product found by article: {} -> id={}", article, found.get(0).getId());
             } else {
                 responseBuilder.setFound(false);
-                log.info("❌ gRPC: Product not found by article: {}", article);
+                log.debug("❌ gRPC: Product not found by article: {}", article);
             }
-            
+
             responseObserver.onNext(responseBuilder.build());
             responseObserver.onCompleted();
-            
+
         } catch (Exception e) {
             log.error("❌ gRPC: Error searching product by article: {}", e.getMessage(), e);
-            
+
             FindByArticleResponse errorResponse = FindByArticleResponse.newBuilder()
                     .setFound(false)
                     .setErrorMessage("Error searching product: " + e.getMessage())
                     .build();
-            
+
             responseObserver.onNext(errorResponse);
             responseObserver.onCompleted();
         }
     }
 
+    @Override
+    public void findByArticles(FindByArticlesRequest request, StreamObserver<FindByArticlesResponse> responseObserver) {
+        FindByArticlesResponse.Builder response = FindByArticlesResponse.newBuilder();
+        try {
+            if (request.getArticlesCount() > MAX_ARTICLES_PER_CALL) {
+                response.setErrorMessage("Too many articles: " + request.getArticlesCount() + " > " + MAX_ARTICLES_PER_CALL);
+            } else {
+                List<ProductListItemDto> found = productService.findListByArticles(
+                        request.getArticlesList(), parseCompanyId(request.getCompanyId()));
+                Set<String> foundArticles = new HashSet<>();
+                for (ProductListItemDto product : found) {
+                    response.addProducts(convertToProductInfoDto(product));
+                    foundArticles.add(product.getArticle());
+                }
+                addMissing(request.getArticlesList(), foundArticles, response::addMissingArticles);
+                log.debug("✅ gRPC: FindByArticles requested={}, found={}", request.getArticlesCount(), found.size());
+            }
+        } catch (Exception e) {
+            log.error("❌ gRPC: Error searching products by articles: {}", e.getMessage(), e);
+            response.clear().setErrorMessage("Error searching products: " + e.getMessage());
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void getStockSummary(GetStockSummaryRequest request, StreamObserver<GetStockSummaryResponse> responseObserver) {
+        GetStockSummaryResponse.Builder response = GetStockSummaryResponse.newBuilder();
+        try {
+            if (request.getArticlesCount() > MAX_ARTICLES_PER_CALL) {
+                response.setErrorMessage("Too many articles: " + request.getArticlesCount() + " > " + MAX_ARTICLES_PER_CALL);
+            } else {
+                List<ProductListItemDto> found = productService.findListByArticles(
+                        request.getArticlesList(), parseCompanyId(request.getCompanyId()));
+                Set<String> foundArticles = new HashSet<>();
+                for (ProductListItemDto product : found) {
+                    response.addItems(StockSummaryDto.newBuilder()
+                            .setProductId(product.getId())
+                            .setArticle(product.getArticle())
+                            .setTotalQuantity(orZero(product.getTotalQuantity()))
+                            .setFbsQuantity(orZero(product.getFbsQuantity()))
+                            .setFboQuantity(orZero(product.getFboQuantity()))
+                            .build());
+                    foundArticles.add(product.getArticle());
+                }
+                addMissing(request.getArticlesList(), foundArticles, response::addMissingArticles);
+                log.debug("✅ gRPC: GetStockSummary requested={}, found={}", request.getArticlesCount(), found.size());
+            }
+        } catch (Exception e) {
+            log.error("❌ gRPC: Error building stock summary: {}", e.getMessage(), e);
+            response.clear().setErrorMessage("Error building stock summary: " + e.getMessage());
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    /**
+     * Поток продуктов с учетом готовности клиента: следующая порция читается из БД,
+     * только когда предыдущая ушла в транспорт (onReady), поэтому медленный клиент не копит буфер на сервере
+     */
+    @Override
+    public void streamProducts(StreamProductsRequest request, StreamObserver<ProductInfoDto> responseObserver) {
+        UUID companyId;
+        try {
+            companyId = parseCompanyId(request.getCompanyId());
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
+        int batchSize = request.getBatchSize() > 0 ? Math.min(request.getBatchSize(), MAX_STREAM_BATCH) : DEFAULT_STREAM_BATCH;
+        ServerCallStreamObserver<ProductInfoDto> call = (ServerCallStreamObserver<ProductInfoDto>) responseObserver;
+        ProductStreamer streamer = new ProductStreamer(call, companyId, request.getAfterId(), batchSize);
+        call.setOnCancelHandler(() -> log.debug("🛑 gRPC: StreamProducts cancelled by client: sent={}", streamer.sent));
+        call.setOnReadyHandler(streamer);
+    }
+
+    /**
+     * Отправка потока; вызовы onReady у одного вызова gRPC выполняет последовательно
+     */
+    private final class ProductStreamer implements Runnable {
+        private final ServerCallStreamObserver<ProductInfoDto> call;
+        private final UUID companyId;
+        private final int batchSize;
+        private final Deque<ProductInfoDto> buffer = new ArrayDeque<>();
+        private long afterId;
+        private boolean exhausted;
+        private boolean completed;
+        private long sent;
+
+        ProductStreamer(ServerCallStreamObserver<ProductInfoDto> call, UUID companyId, long afterId, int batchSize) {
+            this.call = call;
+            this.companyId = companyId;
+            this.afterId = afterId;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void run() {
+            if (completed) {
+                return;
+            }
+            try {
+                while (call.isReady() && !call.isCancelled()) {
+                    if (buffer.isEmpty()) {
+                        if (exhausted) {
+                            completed = true;
+                            call.onCompleted();
+                            log.debug("✅ gRPC: StreamProducts completed: companyId={}, sent={}", companyId, sent);
+                            return;
+                        }
+                        loadNextBatch();
+                        continue;
+                    }
+                    call.onNext(buffer.poll());
+                    sent++;
+                }
+            } catch (Exception e) {
+                completed = true;
+                log.error("❌ gRPC: StreamProducts failed after {} products: {}", sent, e.getMessage(), e);
+                call.onError(Status.INTERNAL.withDescription("Error streaming products: " + e.getMessage()).asRuntimeException());
+            }
+        }
+
+        private void loadNextBatch() {
+            List<ProductListItemDto> batch = productService.findListBatchAfter(companyId, afterId, batchSize);
+            for (ProductListItemDto product : batch) {
+                buffer.add(convertToProductInfoDto(product));
+            }
+            if (!batch.isEmpty()) {
+                afterId = batch.get(batch.size() - 1).getId();
+            }
+            exhausted = batch.size() < batchSize;
+        }
+    }
+
+    private UUID parseCompanyId(String companyId) {
+        if (companyId == null || companyId.isBlank()) {
+            return null;
+        }
+        try {
+            return UUID.fromString(companyId);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid company_id: " + companyId);
+        }
+    }
+
+    private void addMissing(List<String> requested, Set<String> found, Consumer<String> sink) {
+        Set<String> reported = new HashSet<>();
+        for (String article : requested) {
+            if (!found.contains(article) && reported.add(article)) {
+                sink.accept(article);
+            }
+        }
+    }
+
+    private int orZero(Integer value) {
+        return value != null ? value : 0;
+    }
+
     /**
-     * Конвертировать Product в ProductInfoDto
+     * Конвертировать строку списка товаров в ProductInfoDto
      */
-    private ProductInfoDto convertToProductInfoDto(Product product) {
+    private ProductInfoDto convertToProductInfoDto(ProductListItemDto product) {
         return ProductInfoDto.newBuilder()
                 .setId(product.getId())
                 .setName(product.getName() != null ? product.getName() : "")
                 .setArticle(product.getArticle() != null ? product.getArticle() : "")
                 .setSku("") // SKU не используется в Product entity
-                .setStock(0) // TODO: рассчитать суммарный остаток по ProductStock
+                .setStock(orZero(product.getTotalQuantity()))
                 .setBarcode(product.getBarcode() != null ? product.getBarcode() : "")
                 .setDescription("") // Description не используется в Product entity
                 .setPrice(product.getPrice() != null ? product.getPrice().toString() : "0")
@@ -12,7 +12,6 @@ import org.springframework.stereotype.Component;
 import ru.dmitartur.common.dto.OrderDto;
 import ru.dmitartur.common.dto.OrderItemDto;
 import ru.dmitartur.context.ChangeContextHolder;
-import ru.dmitartur.entity.ProductStock;
 import ru.dmitartur.service.ProductStockService;
 import ru.dmitartur.listener.ProductStockEventPublisher;
 
@@ -107,25 +106,18 @@ public class OrderEventConsumer {
         }
 
         try {
-            // Находим ProductStock для указанного артикула, склада и компании
-            Optional<ProductStock> stockOpt = productStockService.findProductStockByArticleAndWarehouse(
-                    article, warehouseId, companyId);
+            // id остатка берется из кэша горячих артикулов, количество меняется атомарно по PK
+            Optional<Integer> newQuantity = productStockService.applyQuantityDelta(
+                    article, warehouseId, companyId, quantityChange);
 
-            if (stockOpt.isEmpty()) {
+            if (newQuantity.isEmpty()) {
                 log.warn("⚠️ ProductStock not found: article={}, warehouseId={}, companyId={}, event={}, postingNumber={}",
                         article, warehouseId, companyId, eventType, postingNumber);
                 return;
             }
 
-            ProductStock stock = stockOpt.get();
-
-            // Обновляем количество
-            stock.setQuantity(stock.getQuantity() + quantityChange);
-
-            productStockService.updateProductStock(stock);
-
-            log.info("✅ Updated ProductStock quantity: article={}, warehouseId={}, companyId={}, change={}, event={}, postingNumber={}",
-                    article, warehouseId, companyId, quantityChange, eventType, postingNumber);
+            log.info("✅ Updated ProductStock quantity: article={}, warehouseId={}, companyId={}, change={}, quantity={}, event={}, postingNumber={}",
+                    article, warehouseId, companyId, quantityChange, newQuantity.get(), eventType, postingNumber);
         } catch (Exception e) {
             log.error("❌ Error updating product quantity: article={}, event={}, postingNumber={}, error={}", article, eventType, postingNumber, e.getMessage());
         }
@@ -0,0 +1,50 @@
+package ru.dmitartur.kafka;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+import ru.dmitartur.common.dto.marketplace.StockSyncResponse;
+import ru.dmitartur.service.StockSyncStatusService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static ru.dmitartur.common.kafka.KafkaTopics.STOCK_SYNC_RESPONSE_TOPIC;
+
+/**
+ * Consumer ответов маркетплейсов на синхронизацию остатков.
+ * Читает пачками (jsonBatchKafkaListenerContainerFactory) и обновляет sync_status одним UPDATE на статус.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "kafka.enabled", havingValue = "true", matchIfMissing = false)
+public class StockSyncResponseConsumer {
+
+    private final StockSyncStatusService stockSyncStatusService;
+
+    @KafkaListener(topics = STOCK_SYNC_RESPONSE_TOPIC,
+            groupId = "${kafka.consumer.group-id:product-visor-group}",
+            containerFactory = "jsonBatchKafkaListenerContainerFactory")
+    public void handleResponses(List<ConsumerRecord<String, Object>> records) {
+        List<StockSyncResponse> responses = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, Object> record : records) {
+            if (record.value() instanceof StockSyncResponse response) {
+                responses.add(response);
+            } else {
+                log.warn("⚠️ Unexpected stock sync response payload: partition={}, offset={}, type={}",
+                        record.partition(), record.offset(),
+                        record.value() != null ? record.value().getClass().getName() : "null");
+            }
+        }
+        if (responses.isEmpty()) {
+            return;
+        }
+
+        int updated = stockSyncStatusService.applyResponses(responses);
+        log.info("✅ Processed stock sync responses: received={}, updatedStocks={}", responses.size(), updated);
+    }
+}
@@ -7,6 +7,8 @@ import org.springframework.stereotype.Service;
 import ru.dmitartur.entity.ProductStock;
 import ru.dmitartur.event.ProductStockQuantityChangeEvent;
 
+import java.util.UUID;
+
 /**
  * Сервис для публикации событий, связанных с ProductStock
  */
@@ -54,4 +56,21 @@ public class ProductStockEventPublisher {
                     productStock.getId(), e.getMessage(), e);
         }
     }
+
+    /**
+     * Публикует событие изменения количества по id остатка (атомарный UPDATE без загрузки сущности)
+     */
+    public void publishQuantityChangeEventWithContext(UUID productStockId, Integer oldQuantity,
+                                                    Integer newQuantity, String sourceSystem, String sourceId) {
+        try {
+            eventPublisher.publishEvent(new ProductStockQuantityChangeEvent(
+                this, productStockId, oldQuantity, newQuantity, sourceSystem, sourceId));
+
+            log.debug("📢 Published ProductStock quantity change event with context: productStockId={}, oldQuantity={}, newQuantity={}, sourceSystem={}, sourceId={}",
+                    productStockId, oldQuantity, newQuantity, sourceSystem, sourceId);
+        } catch (Exception e) {
+            log.error("❌ Error publishing ProductStock quantity change event with context: productStockId={}, error={}",
+                    productStockId, e.getMessage(), e);
+        }
+    }
 }
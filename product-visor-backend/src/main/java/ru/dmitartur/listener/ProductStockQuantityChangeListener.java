@@ -5,8 +5,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
+import ru.dmitartur.entity.ProductStock;
 import ru.dmitartur.event.ProductStockQuantityChangeEvent;
 import ru.dmitartur.interceptor.ProductHistoryInterceptor;
+import ru.dmitartur.repository.ProductStockRepository;
 
 /**
  * Слушатель событий изменения количества товара в ProductStock
@@ -18,6 +20,7 @@ import ru.dmitartur.interceptor.ProductHistoryInterceptor;
 public class ProductStockQuantityChangeListener {
 
     private final ProductHistoryInterceptor productHistoryInterceptor;
+    private final ProductStockRepository productStockRepository;
 
     /**
      * Обрабатывает событие изменения количества товара
@@ -26,18 +29,27 @@ public class ProductStockQuantityChangeListener {
     @EventListener
     public void handleProductStockQuantityChange(ProductStockQuantityChangeEvent event) {
         try {
+            // Событие атомарного UPDATE несет только id: сущность с товаром загружаем здесь, вне пути записи
+            ProductStock stock = event.getProductStock() != null
+                    ? event.getProductStock()
+                    : productStockRepository.findWithProductById(event.getProductStockId()).orElse(null);
+            if (stock == null) {
+                log.warn("⚠️ ProductStock {} not found, quantity change history skipped", event.getProductStockId());
+                return;
+            }
+
             log.info("📝 Processing ProductStock quantity change event: productStockId={}, productArticle={}, oldQuantity={}, newQuantity={}",
-                    event.getProductStock().getId(), event.getProductStock().getProduct().getArticle(), event.getOldQuantity(),
+                    stock.getId(), stock.getProduct().getArticle(), event.getOldQuantity(),
                     event.getNewQuantity());
 
             // Определяем контекст из события или используем значения по умолчанию
             String sourceSystem = event.getSourceSystem() != null ? event.getSourceSystem() : "STOCK_SERVICE";
-            String sourceId = event.getSourceId() != null ? event.getSourceId() : event.getProductStock().getId().toString();
+            String sourceId = event.getSourceId() != null ? event.getSourceId() : stock.getId().toString();
             String changeReason = "STOCK_UPDATE"; // По умолчанию для событий из ProductStockService
 
             // Вызываем interceptor с данными из события, включая склады и контекст
             productHistoryInterceptor.trackProductStockQuantityChange(
-                    event.getProductStock(),
+                    stock,
                     event.getOldQuantity(),
                     event.getNewQuantity(),
                     changeReason,
@@ -45,11 +57,11 @@ public class ProductStockQuantityChangeListener {
                     sourceId);
 
             log.info("✅ Successfully processed ProductStock quantity change event: productStockId={}",
-                    event.getProductStock().getId());
+                    stock.getId());
 
         } catch (Exception e) {
             log.error("❌ Error processing ProductStock quantity change event: productStockId={}, error={}",
-                    event.getProductStock().getId(), e.getMessage(), e);
+                    event.getProductStockId(), e.getMessage(), e);
         }
     }
 
@@ -16,7 +16,6 @@ public interface ProductMapper {
     Product toEntity(ProductDto dto);
 
     @BeanMapping(nullValuePropertyMappingStrategy = NullValuePropertyMappingStrategy.IGNORE)
-    @Mapping(target = "image", ignore = true)
     void updateEntityFromDto(ProductDto dto, @MappingTarget Product product);
 
     @AfterMapping
@@ -21,6 +21,23 @@ public interface ProductHistoryRepository extends JpaRepository<ProductHistory,
      * Найти историю изменений по ID продукта
      */
     Page<ProductHistory> findByProductIdOrderByCreatedAtDesc(Long productId, Pageable pageable);
+
+    /**
+     * Первая страница истории продукта для keyset-пагинации (без count-запроса)
+     */
+    List<ProductHistory> findByProductIdOrderByCreatedAtDescIdDesc(Long productId, Pageable pageable);
+
+    /**
+     * Следующая страница истории продукта: записи строго после курсора (created_at, id) в порядке убывания
+     */
+    @Query(value = "SELECT * FROM visor.product_history ph " +
+            "WHERE ph.product_id = :productId AND (ph.created_at, ph.id) < (:createdAt, :id) " +
+            "ORDER BY ph.created_at DESC, ph.id DESC LIMIT :pageLimit",
+           nativeQuery = true)
+    List<ProductHistory> findByProductIdBefore(@Param("productId") Long productId,
+                                               @Param("createdAt") LocalDateTime createdAt,
+                                               @Param("id") long id,
+                                               @Param("pageLimit") int pageLimit);
     
     /**
      * Найти историю изменений по ID продукта и полю
@@ -9,47 +9,32 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
-    @EntityGraph(attributePaths = {
-        "productStocks",
-        "productStocks.warehouses",
-        "productAttributeValues",
-        "productAttributeValues.attribute",
-        "productMarkets",
-        "productMarkets.market",
-        "category"
-    })
+    // Коллекции не join-им: семь путей в одном запросе давали декартово произведение строк.
+    // Остатки, атрибуты и маркеты догружаются отдельными batch-запросами (hibernate.default_batch_fetch_size)
+    @EntityGraph(attributePaths = {"category"})
     Optional<Product> findById(Long id);
     
-    @EntityGraph(attributePaths = {
-        "productStocks",
-        "productStocks.warehouses",
-        "productAttributeValues",
-        "productAttributeValues.attribute",
-        "productMarkets",
-        "productMarkets.market",
-        "category"
-    })
+    @EntityGraph(attributePaths = {"category"})
     Optional<Product> findByBarcode(String barcode);
     
-    @EntityGraph(attributePaths = {
-        "productStocks",
-        "productStocks.warehouses",
-        "productAttributeValues",
-        "productAttributeValues.attribute",
-        "productMarkets",
-        "productMarkets.market",
-        "category"
-    })
+    @EntityGraph(attributePaths = {"category"})
     Optional<Product> findByArticle(String article);
     
     Page<Product> findByOwnerUserId(UUID ownerUserId, Pageable pageable);
     Page<Product> findByCompanyIdAndOwnerUserId(UUID companyId, UUID ownerUserId, Pageable pageable);
 
+    // Keyset-варианты: List вместо Page, поэтому Spring Data не выполняет COUNT
+    List<Product> findByOwnerUserIdAndIdGreaterThanOrderByIdAsc(UUID ownerUserId, Long afterId, Pageable pageable);
+    List<Product> findByCompanyIdAndOwnerUserIdAndIdGreaterThanOrderByIdAsc(UUID companyId, UUID ownerUserId,
+                                                                            Long afterId, Pageable pageable);
+
     @Query(value = "SELECT p.* FROM visor.product p " +
             "JOIN visor.search_products(:q, :limit) sp ON sp.product_id = p.id " +
             "WHERE p.owner_user_id = :ownerUserId " +
@@ -79,4 +64,147 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
                                          @Param("companyId") UUID companyId,
                                          @Param("limit") int limit,
                                          Pageable pageable);
+
+    /**
+     * Поиск с keyset-пагинацией по id (без count-запроса) по всему множеству совпадений.
+     * Условие совпадения то же, что в visor.search_products (ILIKE по searchable_text, stock_info,
+     * warehouse_names), но без его LIMIT по релевантности: иначе страницы за лимитом были бы пустыми.
+     * Отбор идет по trgm-индексам полей product_search_index, порядок — по id.
+     */
+    @Query(value = "SELECT p.* FROM visor.product p " +
+            "JOIN visor.product_search_index psi ON psi.product_id = p.id " +
+            "WHERE p.owner_user_id = :ownerUserId AND p.id > :afterId AND " + SEARCH_MATCH +
+            "ORDER BY p.id LIMIT :pageLimit",
+           nativeQuery = true)
+    List<Product> searchFullTextAfter(@Param("q") String query,
+                                      @Param("ownerUserId") UUID ownerUserId,
+                                      @Param("afterId") long afterId,
+                                      @Param("pageLimit") int pageLimit);
+
+    @Query(value = "SELECT p.* FROM visor.product p " +
+            "JOIN visor.product_search_index psi ON psi.product_id = p.id " +
+            "WHERE p.owner_user_id = :ownerUserId AND p.company_id = :companyId AND p.id > :afterId AND " + SEARCH_MATCH +
+            "ORDER BY p.id LIMIT :pageLimit",
+           nativeQuery = true)
+    List<Product> searchFullTextByCompanyAfter(@Param("q") String query,
+                                               @Param("ownerUserId") UUID ownerUserId,
+                                               @Param("companyId") UUID companyId,
+                                               @Param("afterId") long afterId,
+                                               @Param("pageLimit") int pageLimit);
+
+    /**
+     * Условие совпадения visor.search_products для строки psi.
+     * :q передается экранированным (ProductService.escapeLike): % и _ пользователя ищутся буквально
+     */
+    String SEARCH_MATCH = "(psi.searchable_text ILIKE '%' || :q || '%' ESCAPE '\\' " +
+            "OR COALESCE(psi.stock_info, '') ILIKE '%' || :q || '%' ESCAPE '\\' " +
+            "OR COALESCE(psi.warehouse_names, '') ILIKE '%' || :q || '%' ESCAPE '\\') ";
+
+    /**
+     * Страница списка товаров владельца одним запросом: скалярные поля и агрегаты остатков
+     */
+    @Query(value = LIST_SELECT + "WHERE p.owner_user_id = :ownerUserId ORDER BY p.id",
+           countQuery = "SELECT COUNT(*) FROM visor.product p WHERE p.owner_user_id = :ownerUserId",
+           nativeQuery = true)
+    Page<ProductListRow> findListByOwner(@Param("ownerUserId") UUID ownerUserId, Pageable pageable);
+
+    /**
+     * Страница списка товаров компании и владельца одним запросом
+     */
+    @Query(value = LIST_SELECT + "WHERE p.owner_user_id = :ownerUserId AND p.company_id = :companyId ORDER BY p.id",
+           countQuery = "SELECT COUNT(*) FROM visor.product p " +
+                   "WHERE p.owner_user_id = :ownerUserId AND p.company_id = :companyId",
+           nativeQuery = true)
+    Page<ProductListRow> findListByCompanyAndOwner(@Param("companyId") UUID companyId,
+                                                  @Param("ownerUserId") UUID ownerUserId,
+                                                  Pageable pageable);
+
+    /**
+     * Список товаров с keyset-пагинацией по id
+     */
+    @Query(value = LIST_SELECT + "WHERE p.owner_user_id = :ownerUserId AND p.id > :afterId ORDER BY p.id LIMIT :pageLimit",
+           nativeQuery = true)
+    List<ProductListRow> findListByOwnerAfter(@Param("ownerUserId") UUID ownerUserId,
+                                              @Param("afterId") long afterId,
+                                              @Param("pageLimit") int pageLimit);
+
+    @Query(value = LIST_SELECT + "WHERE p.owner_user_id = :ownerUserId AND p.company_id = :companyId " +
+            "AND p.id > :afterId ORDER BY p.id LIMIT :pageLimit",
+           nativeQuery = true)
+    List<ProductListRow> findListByCompanyAndOwnerAfter(@Param("companyId") UUID companyId,
+                                                        @Param("ownerUserId") UUID ownerUserId,
+                                                        @Param("afterId") long afterId,
+                                                        @Param("pageLimit") int pageLimit);
+
+    /**
+     * Строки списка по артикулам (для gRPC): скалярные поля и агрегаты остатков без графа сущности
+     */
+    @Query(value = LIST_SELECT + "WHERE p.article IN (:articles)", nativeQuery = true)
+    List<ProductListRow> findListByArticles(@Param("articles") Collection<String> articles);
+
+    @Query(value = LIST_SELECT + "WHERE p.company_id = :companyId AND p.article IN (:articles)", nativeQuery = true)
+    List<ProductListRow> findListByCompanyAndArticles(@Param("companyId") UUID companyId,
+                                                      @Param("articles") Collection<String> articles);
+
+    /**
+     * Все товары порциями по id, без фильтра по владельцу (для межсервисных синхронизаций)
+     */
+    @Query(value = LIST_SELECT + "WHERE p.id > :afterId ORDER BY p.id LIMIT :pageLimit", nativeQuery = true)
+    List<ProductListRow> findListAfter(@Param("afterId") long afterId, @Param("pageLimit") int pageLimit);
+
+    @Query(value = LIST_SELECT + "WHERE p.company_id = :companyId AND p.id > :afterId ORDER BY p.id LIMIT :pageLimit",
+           nativeQuery = true)
+    List<ProductListRow> findListByCompanyAfter(@Param("companyId") UUID companyId,
+                                                @Param("afterId") long afterId,
+                                                @Param("pageLimit") int pageLimit);
+
+    String LIST_SELECT = "SELECT p.id AS id, p.name AS name, p.article AS article, p.barcode AS barcode, " +
+            "p.price AS price, p.image_hash AS imageHash, p.image_url AS imageUrl, " +
+            "c.id AS categoryId, c.name AS categoryName, p.owner_user_id AS ownerUserId, p.company_id AS companyId, " +
+            "COALESCE(s.total_quantity, 0) AS totalQuantity, COALESCE(s.fbs_quantity, 0) AS fbsQuantity, " +
+            "COALESCE(s.fbo_quantity, 0) AS fboQuantity, COALESCE(s.stock_count, 0) AS stockCount " +
+            "FROM visor.product p " +
+            "LEFT JOIN visor.category c ON c.id = p.category_id " +
+            "LEFT JOIN LATERAL (SELECT CAST(SUM(ps.quantity) AS INTEGER) AS total_quantity, " +
+            "CAST(SUM(ps.quantity) FILTER (WHERE ps.stock_type = 'FBS') AS INTEGER) AS fbs_quantity, " +
+            "CAST(SUM(ps.quantity) FILTER (WHERE ps.stock_type IN ('YANDEX_FBO', 'OZON_FBO')) AS INTEGER) AS fbo_quantity, " +
+            "CAST(COUNT(*) AS INTEGER) AS stock_count " +
+            "FROM visor.product_stocks ps WHERE ps.product_id = p.id) s ON TRUE ";
+
+    /**
+     * Строка списка товаров
+     */
+    interface ProductListRow {
+        Long getId();
+        String getName();
+        String getArticle();
+        String getBarcode();
+        Double getPrice();
+        String getImageHash();
+        String getImageUrl();
+        Long getCategoryId();
+        String getCategoryName();
+        UUID getOwnerUserId();
+        UUID getCompanyId();
+        Integer getTotalQuantity();
+        Integer getFbsQuantity();
+        Integer getFboQuantity();
+        Integer getStockCount();
+    }
+
+    /**
+     * Товары для выгрузки в Excel одним запросом: категория и атрибуты подтягиваются join fetch
+     */
+    @Query("SELECT DISTINCT p FROM Product p " +
+            "LEFT JOIN FETCH p.category " +
+            "LEFT JOIN FETCH p.productAttributeValues av " +
+            "LEFT JOIN FETCH av.attribute " +
+            "WHERE p.id IN :ids")
+    List<Product> findForExport(@Param("ids") List<Long> ids);
+
+    /**
+     * Компания товара без загрузки графа сущности
+     */
+    @Query("SELECT p.companyId FROM Product p WHERE p.id = :id")
+    Optional<UUID> findCompanyIdById(@Param("id") Long id);
 }
@@ -1,15 +1,22 @@
 package ru.dmitartur.repository;
 
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.dmitartur.entity.ProductStock;
 import ru.dmitartur.common.enums.ProductStockType;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface ProductStockRepository extends JpaRepository<ProductStock, UUID> {
@@ -114,4 +121,108 @@ public interface ProductStockRepository extends JpaRepository<ProductStock, UUID
     Optional<ProductStock> findByArticleAndWarehouseIdAndCompanyId(@Param("article") String article, 
                                                                    @Param("warehouseId") String warehouseId,
                                                                    @Param("companyId") UUID companyId);
+
+    /**
+     * Найти только id ProductStock по артикулу, складу и компании (для кэша горячих артикулов)
+     */
+    @Query("SELECT ps.id FROM ProductStock ps " +
+           "JOIN ps.warehouses w " +
+           "WHERE ps.product.article = :article AND w.externalWarehouseId = :warehouseId AND w.companyId = :companyId")
+    Optional<UUID> findIdByArticleAndWarehouseIdAndCompanyId(@Param("article") String article,
+                                                             @Param("warehouseId") String warehouseId,
+                                                             @Param("companyId") UUID companyId);
+
+    /**
+     * Атомарно изменить количество на delta по первичному ключу и вернуть новое количество.
+     * id берется из кэша, поэтому UPDATE дополнительно проверяет естественный ключ (артикул, склад, компания)
+     * по PK/уникальным индексам: устаревший id другого остатка не будет изменен.
+     * Версия увеличивается, чтобы конкурентные обновления через entity получили OptimisticLock.
+     * UPDATE идет мимо persistence context.
+     *
+     * @return новое количество или пустой Optional, если по id нет остатка с этим ключом
+     */
+    @Transactional
+    @Query(value = "UPDATE visor.product_stocks ps " +
+                   "SET quantity = ps.quantity + :delta, version = ps.version + 1, updated_at = CURRENT_TIMESTAMP " +
+                   "WHERE ps.id = :id " +
+                   "AND EXISTS (SELECT 1 FROM visor.product p WHERE p.id = ps.product_id AND p.article = :article) " +
+                   "AND EXISTS (SELECT 1 FROM visor.product_stock_warehouses psw " +
+                   "JOIN visor.warehouses w ON w.id = psw.warehouse_id " +
+                   "WHERE psw.product_stock_id = ps.id AND w.external_warehouse_id = :warehouseId AND w.company_id = :companyId) " +
+                   "RETURNING ps.quantity",
+           nativeQuery = true)
+    Optional<Integer> addQuantity(@Param("id") UUID id,
+                                  @Param("article") String article,
+                                  @Param("warehouseId") String warehouseId,
+                                  @Param("companyId") UUID companyId,
+                                  @Param("delta") int delta);
+
+    /**
+     * Остаток с товаром для асинхронной записи истории (склады грузятся EAGER)
+     */
+    @Query("SELECT ps FROM ProductStock ps JOIN FETCH ps.product WHERE ps.id = :id")
+    Optional<ProductStock> findWithProductById(@Param("id") UUID id);
+
+    /**
+     * Потоково прочитать остатки для синхронизации: одна строка на пару (остаток, склад), сортировка по остатку.
+     * Читается серверным курсором порциями по fetch size, сущности в persistence context не попадают.
+     * Вызывать внутри транзакции и закрывать Stream.
+     * Список товаров передается одним параметром-массивом (= ANY), а не IN (...): число bind-параметров
+     * драйвера ограничено 32767, а выборка идет по всему запрошенному каталогу.
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = "SELECT ps.id AS stockId, p.id AS productId, p.article AS article, ps.quantity AS quantity, " +
+                   "w.id AS warehouseId, w.company_id AS companyId, w.marketplace AS marketplace, " +
+                   "w.warehouse_type AS warehouseType " +
+                   "FROM visor.product_stocks ps " +
+                   "JOIN visor.product p ON p.id = ps.product_id " +
+                   "LEFT JOIN visor.product_stock_warehouses psw ON psw.product_stock_id = ps.id " +
+                   "LEFT JOIN visor.warehouses w ON w.id = psw.warehouse_id " +
+                   "WHERE ps.product_id = ANY(:productIds) AND ps.stock_type = :stockType AND ps.user_id = :userId " +
+                   "ORDER BY ps.id",
+           nativeQuery = true)
+    Stream<StockSyncRow> streamForSync(@Param("productIds") Long[] productIds,
+                                       @Param("stockType") String stockType,
+                                       @Param("userId") UUID userId);
+
+    /**
+     * Одним UPDATE проставить статус синхронизации набору остатков
+     */
+    @Modifying
+    @Query("UPDATE ProductStock ps SET ps.syncStatus = :status, ps.lastSyncAt = :syncAt WHERE ps.id IN :ids")
+    int updateSyncStatus(@Param("ids") Collection<UUID> ids,
+                         @Param("status") String status,
+                         @Param("syncAt") LocalDateTime syncAt);
+
+    /**
+     * Применить ответ маркетплейса на запрос синхронизации от requestedAt.
+     * last_sync_at хранит момент последнего запроса: ответ на более старый запрос не применяется.
+     * Ответы на тот же запрос (FBS уходит и в Ozon, и в Yandex) статус не понижают: FAILED > PARTIAL > SYNCED.
+     */
+    @Modifying
+    @Query(value = "UPDATE visor.product_stocks SET sync_status = :status, last_sync_at = :requestedAt " +
+                   "WHERE id IN (:ids) AND (last_sync_at IS NULL OR last_sync_at < :requestedAt " +
+                   "OR (last_sync_at = :requestedAt AND " + SYNC_STATUS_RANK + " <= " +
+                   "CASE CAST(:status AS varchar) WHEN 'FAILED' THEN 3 WHEN 'PARTIAL' THEN 2 WHEN 'SYNCED' THEN 1 ELSE 0 END))",
+           nativeQuery = true)
+    int applySyncResponse(@Param("ids") Collection<UUID> ids,
+                          @Param("status") String status,
+                          @Param("requestedAt") LocalDateTime requestedAt);
+
+    String SYNC_STATUS_RANK =
+            "CASE sync_status WHEN 'FAILED' THEN 3 WHEN 'PARTIAL' THEN 2 WHEN 'SYNCED' THEN 1 ELSE 0 END";
+
+    /**
+     * Строка потоковой выборки для синхронизации остатков
+     */
+    interface StockSyncRow {
+        UUID getStockId();
+        Long getProductId();
+        String getArticle();
+        Integer getQuantity();
+        UUID getWarehouseId();
+        UUID getCompanyId();
+        String getMarketplace();
+        String getWarehouseType();
+    }
 }
@@ -0,0 +1,347 @@
+package ru.dmitartur.search;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.dmitartur.event.ProductSearchIndexRefreshedEvent;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Необязательный in-memory поиск товаров для typeahead (search.in-memory.enabled).
+ *
+ * Для каждой компании, по которой ищут, в памяти держится {@link ProductTrigramIndex},
+ * построенный из visor.product_search_index по тем же полям, что и SQL search_products
+ * (searchable_text, stock_info, warehouse_names). Индекс компании загружается в фоне при первом запросе,
+ * до готовности и для поиска без компании вызывающий код идет в Postgres.
+ *
+ * Актуальность:
+ * <ul>
+ *     <li>на экземпляре, который пересобрал пачку, — сразу по {@link ProductSearchIndexRefreshedEvent};</li>
+ *     <li>на остальных экземплярах — опросом product_search_index.updated_at раз в refresh-interval-ms
+ *     (с перекрытием refresh-overlap-ms на транзакции, закоммиченные позже своего updated_at);</li>
+ *     <li>удаленные товары и все, что могли пропустить предыдущие пути, — полной перезагрузкой
+ *     индекса компании по истечении ttl-minutes.</li>
+ * </ul>
+ *
+ * Загрузка, опрос и применение изменений выполняются в одном потоке, поэтому снимок компании не может
+ * быть перезаписан более старыми данными. Число компаний в памяти ограничено (LRU).
+ */
+@Slf4j
+@Component
+public class InMemoryProductSearch {
+
+    static final String LOAD_SQL = """
+            SELECT p.id, p.company_id, p.owner_user_id, p.name, p.article, p.barcode,
+                   psi.searchable_text, psi.stock_info, psi.warehouse_names
+            FROM visor.product p
+                     LEFT JOIN visor.product_search_index psi ON psi.product_id = p.id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int maxCompanies;
+    private final long refreshIntervalMs;
+    private final long refreshOverlapMs;
+    private final long ttlMillis;
+
+    private final Map<UUID, ProductTrigramIndex> indexes = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> lastAccess = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> loadedAt = new ConcurrentHashMap<>();
+    private final Set<UUID> loading = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService loader;
+    // Время БД, до которого изменения product_search_index уже применены; пишется только в потоке loader
+    private Timestamp appliedUntil;
+
+    private final Timer searchTimer;
+    private final Counter memoryRequests;
+    private final Counter fallbackRequests;
+    private final Counter polledChanges;
+
+    public InMemoryProductSearch(JdbcTemplate jdbcTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${search.in-memory.enabled:false}") boolean enabled,
+                                 @Value("${search.in-memory.max-companies:200}") int maxCompanies,
+                                 @Value("${search.in-memory.refresh-interval-ms:5000}") long refreshIntervalMs,
+                                 @Value("${search.in-memory.refresh-overlap-ms:10000}") long refreshOverlapMs,
+                                 @Value("${search.in-memory.ttl-minutes:30}") long ttlMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.maxCompanies = maxCompanies;
+        this.refreshIntervalMs = refreshIntervalMs;
+        this.refreshOverlapMs = refreshOverlapMs;
+        this.ttlMillis = ttlMinutes * 60_000L;
+        this.loader = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "product-search-memory");
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.searchTimer = Timer.builder("product_search_memory_latency")
+                .description("In-memory product search latency")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.memoryRequests = Counter.builder("product_search_requests_total")
+                .description("Product search requests by engine")
+                .tag("engine", "memory")
+                .register(meterRegistry);
+        this.fallbackRequests = Counter.builder("product_search_requests_total")
+                .description("Product search requests by engine")
+                .tag("engine", "sql")
+                .register(meterRegistry);
+        this.polledChanges = Counter.builder("product_search_memory_polled_changes_total")
+                .description("Search index rows picked up by the updated_at poll")
+                .register(meterRegistry);
+        Gauge.builder("product_search_memory_companies", indexes, Map::size)
+                .description("Companies with an in-memory search index")
+                .register(meterRegistry);
+        Gauge.builder("product_search_memory_documents", indexes,
+                        m -> m.values().stream().mapToInt(ProductTrigramIndex::size).sum())
+                .description("Products held by in-memory search indexes")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        loader.scheduleWithFixedDelay(this::safePoll, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        loader.shutdownNow();
+    }
+
+    /**
+     * Найти товары компании в памяти
+     *
+     * @return пусто, если in-memory поиск выключен или индекс компании еще не загружен — тогда ищем в Postgres
+     */
+    public Optional<ProductTrigramIndex.Result> search(UUID companyId, UUID ownerUserId, String query, int limit) {
+        return readyIndex(companyId).map(index -> {
+            long startedAt = System.nanoTime();
+            ProductTrigramIndex.Result result = index.search(query, ownerUserId, limit);
+            searchTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            return result;
+        });
+    }
+
+    /**
+     * Keyset-страница совпадений компании в памяти: id больше afterId по возрастанию
+     *
+     * @return пусто, если in-memory поиск выключен или индекс компании еще не загружен — тогда ищем в Postgres
+     */
+    public Optional<List<Long>> searchAfter(UUID companyId, UUID ownerUserId, String query, long afterId, int limit) {
+        return readyIndex(companyId).map(index -> {
+            long startedAt = System.nanoTime();
+            List<Long> ids = index.searchAfter(query, ownerUserId, afterId, limit);
+            searchTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            return ids;
+        });
+    }
+
+    private Optional<ProductTrigramIndex> readyIndex(UUID companyId) {
+        if (!enabled || companyId == null) {
+            fallbackRequests.increment();
+            return Optional.empty();
+        }
+        ProductTrigramIndex index = indexes.get(companyId);
+        if (index == null) {
+            scheduleLoad(companyId);
+            fallbackRequests.increment();
+            return Optional.empty();
+        }
+        long now = System.currentTimeMillis();
+        if (now - loadedAt.getOrDefault(companyId, 0L) > ttlMillis) {
+            // Снимок устарел по TTL: отвечаем из него, пока в фоне грузится новый
+            scheduleLoad(companyId);
+        }
+        lastAccess.put(companyId, now);
+        memoryRequests.increment();
+        return Optional.of(index);
+    }
+
+    private void scheduleLoad(UUID companyId) {
+        if (!loading.add(companyId)) {
+            return;
+        }
+        loader.execute(() -> {
+            try {
+                long startedAt = System.currentTimeMillis();
+                if (appliedUntil == null) {
+                    // Все, что изменится после этого момента, подхватит опрос
+                    appliedUntil = databaseNow();
+                }
+                List<ProductTrigramIndex.Doc> docs = jdbcTemplate.query(
+                        LOAD_SQL + " WHERE p.company_id = ?", (rs, rowNum) -> readDoc(rs), companyId);
+                indexes.put(companyId, ProductTrigramIndex.build(docs));
+                lastAccess.put(companyId, System.currentTimeMillis());
+                loadedAt.put(companyId, System.currentTimeMillis());
+                evictIfNeeded();
+                log.info("✅ In-memory search index loaded: companyId={}, products={}, tookMs={}",
+                        companyId, docs.size(), System.currentTimeMillis() - startedAt);
+            } catch (Exception e) {
+                log.error("❌ Failed to load in-memory search index: companyId={}, error={}", companyId, e.getMessage());
+            } finally {
+                loading.remove(companyId);
+            }
+        });
+    }
+
+    /**
+     * Применить пересборку строк product_search_index к загруженным компаниям
+     */
+    @EventListener
+    public void onSearchIndexRefreshed(ProductSearchIndexRefreshedEvent event) {
+        if (!enabled || indexes.isEmpty()) {
+            return;
+        }
+        if (event.isFullRebuild()) {
+            // Перечитываем лениво при следующих запросах
+            loader.execute(this::dropAll);
+            return;
+        }
+        List<Long> ids = List.copyOf(event.getProductIds());
+        loader.execute(() -> {
+            try {
+                List<ProductRow> rows = jdbcTemplate.query(LOAD_SQL + " WHERE p.id = ANY(?)", ps -> {
+                    Array array = ps.getConnection().createArrayOf("bigint", ids.toArray());
+                    ps.setArray(1, array);
+                }, (rs, rowNum) -> readRow(rs));
+                applyChanges(ids, rows);
+            } catch (Exception e) {
+                // Без изменений снимок устарел: сбрасываем его, чтобы перечитать целиком
+                log.error("❌ Failed to apply search index changes, dropping in-memory indexes: {}", e.getMessage());
+                dropAll();
+            }
+        });
+    }
+
+    private void safePoll() {
+        try {
+            pollChanges();
+        } catch (Exception e) {
+            log.error("❌ In-memory search index poll failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Подхватить строки product_search_index, пересобранные другими экземплярами сервиса.
+     * Окно перекрывается на refresh-overlap-ms: updated_at ставится до коммита пачки, и пачка, закоммиченная
+     * позже предыдущего опроса, иначе была бы пропущена. Повторно пришедшие строки без изменений
+     * не пересобирают индекс компании.
+     */
+    private void pollChanges() {
+        if (indexes.isEmpty()) {
+            // Нечего обновлять: окно начнется заново с загрузки следующей компании
+            appliedUntil = null;
+            return;
+        }
+        if (appliedUntil == null) {
+            return;
+        }
+        Timestamp pollStartedAt = databaseNow();
+        Timestamp from = new Timestamp(appliedUntil.getTime() - refreshOverlapMs);
+        List<ProductRow> rows = jdbcTemplate.query(LOAD_SQL + " WHERE psi.updated_at > ?",
+                (rs, rowNum) -> readRow(rs), from);
+        appliedUntil = pollStartedAt;
+        if (rows.isEmpty()) {
+            return;
+        }
+        polledChanges.increment(rows.size());
+        applyChanges(rows.stream().map(row -> row.doc().productId()).toList(), rows);
+    }
+
+    private void applyChanges(List<Long> ids, List<ProductRow> rows) {
+        Map<UUID, List<ProductTrigramIndex.Doc>> upsertsByCompany = new HashMap<>();
+        for (ProductRow row : rows) {
+            if (row.companyId() != null && indexes.containsKey(row.companyId())) {
+                upsertsByCompany.computeIfAbsent(row.companyId(), k -> new ArrayList<>()).add(row.doc());
+            }
+        }
+
+        // Товар мог быть удален или перенесен в другую компанию: убираем его везде, где он больше не числится
+        for (Map.Entry<UUID, ProductTrigramIndex> entry : indexes.entrySet()) {
+            ProductTrigramIndex index = entry.getValue();
+            List<ProductTrigramIndex.Doc> upserts = upsertsByCompany.getOrDefault(entry.getKey(), List.of()).stream()
+                    .filter(doc -> !Objects.equals(index.doc(doc.productId()), doc))
+                    .toList();
+            Set<Long> kept = new HashSet<>();
+            upsertsByCompany.getOrDefault(entry.getKey(), List.of()).forEach(doc -> kept.add(doc.productId()));
+            List<Long> removed = ids.stream()
+                    .filter(id -> !kept.contains(id) && index.contains(id))
+                    .toList();
+            if (!upserts.isEmpty() || !removed.isEmpty()) {
+                entry.setValue(index.with(upserts, removed));
+            }
+        }
+    }
+
+    private void dropAll() {
+        indexes.clear();
+        lastAccess.clear();
+        loadedAt.clear();
+    }
+
+    private void evictIfNeeded() {
+        while (indexes.size() > maxCompanies) {
+            lastAccess.entrySet().stream()
+                    .min(Map.Entry.comparingByValue())
+                    .map(Map.Entry::getKey)
+                    .ifPresentOrElse(companyId -> {
+                        indexes.remove(companyId);
+                        lastAccess.remove(companyId);
+                        loadedAt.remove(companyId);
+                        log.debug("🧹 In-memory search index evicted: companyId={}", companyId);
+                    }, indexes::clear);
+        }
+    }
+
+    private Timestamp databaseNow() {
+        return jdbcTemplate.queryForObject("SELECT clock_timestamp()", Timestamp.class);
+    }
+
+    private static ProductRow readRow(ResultSet rs) throws SQLException {
+        return new ProductRow((UUID) rs.getObject("company_id"), readDoc(rs));
+    }
+
+    static ProductTrigramIndex.Doc readDoc(ResultSet rs) throws SQLException {
+        return new ProductTrigramIndex.Doc(
+                rs.getLong("id"),
+                (UUID) rs.getObject("owner_user_id"),
+                rs.getString("name"),
+                rs.getString("article"),
+                rs.getString("barcode"),
+                rs.getString("searchable_text"),
+                rs.getString("stock_info"),
+                rs.getString("warehouse_names"));
+    }
+
+    private record ProductRow(UUID companyId, ProductTrigramIndex.Doc doc) {}
+}
@@ -0,0 +1,297 @@
+package ru.dmitartur.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Неизменяемый триграммный индекс товаров одной компании.
+ *
+ * Текст товара (name, article, barcode и поля visor.product_search_index: searchable_text, stock_info,
+ * warehouse_names) нормализуется и режется на триграммы; для каждой триграммы хранится отсортированный
+ * массив порядковых номеров документов. Поиск повторяет семантику SQL-пути search_products (подстрока,
+ * ILIKE '%q%' по каждому из трех полей): пересечение списков дает кандидатов, которые затем проверяются
+ * на вхождение подстроки. Поля склеиваются через '\n', которого нет в нормализованном запросе, поэтому
+ * совпадение не может пересечь границу полей. Отличие от SQL — только нормализация (регистр, ё, пробелы).
+ * Изменения применяются сборкой нового экземпляра ({@link #with}), поэтому читать индекс можно без блокировок.
+ */
+public final class ProductTrigramIndex {
+
+    /**
+     * Исходные данные товара для индексации
+     */
+    public record Doc(long productId, UUID ownerUserId, String name, String article, String barcode,
+                      String searchText, String stockInfo, String warehouseNames) {}
+
+    private static final char FIELD_SEPARATOR = '\n';
+
+    /**
+     * Результат поиска: id в порядке релевантности (не больше запрошенного лимита) и общее число совпадений
+     */
+    public record Result(List<Long> productIds, int total) {}
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Doc[] docs;
+    private final String[] texts;
+    private final String[] names;
+    private final String[] articles;
+    private final String[] barcodes;
+    private final Map<Long, Integer> ordinalById;
+    private final Map<Long, int[]> postings;
+
+    private ProductTrigramIndex(List<Doc> source) {
+        int n = source.size();
+        this.docs = source.toArray(new Doc[0]);
+        this.texts = new String[n];
+        this.names = new String[n];
+        this.articles = new String[n];
+        this.barcodes = new String[n];
+        this.ordinalById = new HashMap<>(n * 2);
+
+        Map<Long, IntList> lists = new HashMap<>();
+        Set<Long> docGrams = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            Doc doc = docs[i];
+            names[i] = normalize(doc.name());
+            articles[i] = normalize(doc.article());
+            barcodes[i] = normalize(doc.barcode());
+            // Карта из product_search_index уже включает name/article/barcode; без нее индексируем сами поля
+            String searchText = doc.searchText() != null && !doc.searchText().isBlank()
+                    ? normalize(doc.searchText())
+                    : normalize(String.join(" ", nullToEmpty(doc.name()), nullToEmpty(doc.article()), nullToEmpty(doc.barcode())));
+            texts[i] = searchText + FIELD_SEPARATOR + normalize(doc.stockInfo()) + FIELD_SEPARATOR + normalize(doc.warehouseNames());
+            ordinalById.put(doc.productId(), i);
+
+            docGrams.clear();
+            addTrigrams(texts[i], docGrams);
+            for (Long gram : docGrams) {
+                lists.computeIfAbsent(gram, k -> new IntList()).add(i);
+            }
+        }
+
+        this.postings = new HashMap<>(lists.size() * 2);
+        lists.forEach((gram, list) -> postings.put(gram, list.toArray()));
+    }
+
+    public static ProductTrigramIndex build(Collection<Doc> docs) {
+        return new ProductTrigramIndex(new ArrayList<>(docs));
+    }
+
+    /**
+     * Новый индекс с замененными/добавленными документами и без удаленных id
+     */
+    public ProductTrigramIndex with(Collection<Doc> upserts, Collection<Long> removedIds) {
+        Map<Long, Doc> merged = new LinkedHashMap<>(docs.length * 2);
+        for (Doc doc : docs) {
+            merged.put(doc.productId(), doc);
+        }
+        removedIds.forEach(merged::remove);
+        for (Doc doc : upserts) {
+            merged.put(doc.productId(), doc);
+        }
+        return new ProductTrigramIndex(new ArrayList<>(merged.values()));
+    }
+
+    public int size() {
+        return docs.length;
+    }
+
+    public boolean contains(long productId) {
+        return ordinalById.containsKey(productId);
+    }
+
+    /**
+     * Проиндексированный документ товара или null
+     */
+    public Doc doc(long productId) {
+        Integer ordinal = ordinalById.get(productId);
+        return ordinal != null ? docs[ordinal] : null;
+    }
+
+    /**
+     * Найти товары владельца, текст которых содержит query
+     *
+     * @param limit сколько id вернуть; total считается по всем совпадениям
+     */
+    public Result search(String query, UUID ownerUserId, int limit) {
+        String q = normalize(query);
+        if (q.isEmpty()) {
+            return new Result(List.of(), 0);
+        }
+
+        int[] candidates = q.length() < 3 ? null : candidates(q);
+        List<int[]> scored = new ArrayList<>();
+        if (candidates == null) {
+            // Короткий запрос не дает триграмм — просматриваем все документы компании
+            for (int i = 0; i < docs.length; i++) {
+                collect(i, q, ownerUserId, scored);
+            }
+        } else {
+            for (int i : candidates) {
+                collect(i, q, ownerUserId, scored);
+            }
+        }
+
+        scored.sort(Comparator.<int[]>comparingInt(s -> -s[1])
+                .thenComparingLong(s -> docs[s[0]].productId()));
+        int size = Math.min(limit, scored.size());
+        List<Long> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(docs[scored.get(i)[0]].productId());
+        }
+        return new Result(ids, scored.size());
+    }
+
+    /**
+     * Keyset-страница по всему множеству совпадений: id больше afterId в порядке возрастания, без ранжирования
+     */
+    public List<Long> searchAfter(String query, UUID ownerUserId, long afterId, int limit) {
+        String q = normalize(query);
+        if (q.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        int[] candidates = q.length() < 3 ? null : candidates(q);
+        List<Long> ids = new ArrayList<>();
+        int count = candidates == null ? docs.length : candidates.length;
+        for (int k = 0; k < count; k++) {
+            int i = candidates == null ? k : candidates[k];
+            if (docs[i].productId() > afterId && matches(i, q, ownerUserId)) {
+                ids.add(docs[i].productId());
+            }
+        }
+        ids.sort(null);
+        return ids.size() > limit ? new ArrayList<>(ids.subList(0, limit)) : ids;
+    }
+
+    private void collect(int ordinal, String q, UUID ownerUserId, List<int[]> scored) {
+        if (matches(ordinal, q, ownerUserId)) {
+            scored.add(new int[]{ordinal, score(ordinal, q)});
+        }
+    }
+
+    private boolean matches(int ordinal, String q, UUID ownerUserId) {
+        if (ownerUserId != null && !ownerUserId.equals(docs[ordinal].ownerUserId())) {
+            return false;
+        }
+        return texts[ordinal].contains(q);
+    }
+
+    /**
+     * Точное совпадение артикула/штрихкода выше начала названия, начало названия выше вхождения;
+     * при равенстве выигрывает более короткий текст (запрос покрывает большую его часть)
+     */
+    private int score(int ordinal, String q) {
+        int score = 0;
+        if (q.equals(articles[ordinal]) || q.equals(barcodes[ordinal])) {
+            score += 4000;
+        }
+        if (names[ordinal].startsWith(q) || articles[ordinal].startsWith(q)) {
+            score += 2000;
+        } else if (names[ordinal].contains(q)) {
+            score += 1000;
+        }
+        return score + (q.length() * 1000) / Math.max(texts[ordinal].length(), 1);
+    }
+
+    private int[] candidates(String q) {
+        Set<Long> grams = new HashSet<>();
+        addTrigrams(q, grams);
+        List<int[]> lists = new ArrayList<>(grams.size());
+        for (Long gram : grams) {
+            int[] list = postings.getOrDefault(gram, EMPTY);
+            if (list.length == 0) {
+                return EMPTY;
+            }
+            lists.add(list);
+        }
+        // Пересекаем начиная с самого короткого списка
+        lists.sort(Comparator.comparingInt(l -> l.length));
+        int[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] small, int[] large) {
+        int[] out = new int[small.length];
+        int count = 0;
+        int from = 0;
+        for (int value : small) {
+            int pos = Arrays.binarySearch(large, from, large.length, value);
+            if (pos >= 0) {
+                out[count++] = value;
+                from = pos + 1;
+            } else {
+                from = -pos - 1;
+            }
+            if (from >= large.length) {
+                break;
+            }
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    static void addTrigrams(String text, Set<Long> target) {
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            target.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+        }
+    }
+
+    static String normalize(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        boolean space = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = Character.toLowerCase(value.charAt(i));
+            if (c == 'ё') {
+                c = 'е';
+            }
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space) {
+                sb.append(' ');
+                space = false;
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    /**
+     * Растущий массив int без упаковки: список документов одной триграммы при сборке
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -2,17 +2,28 @@ package ru.dmitartur.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.dmitartur.common.dto.marketplace.StockItemReqest;
 import ru.dmitartur.common.enums.ProductStockType;
-import ru.dmitartur.entity.Product;
 import ru.dmitartur.entity.ProductStock;
 import ru.dmitartur.repository.ProductStockRepository;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -21,46 +32,100 @@ public class BulkStockSyncService {
 
     private final ProductStockRepository productStockRepository;
     private final StockSyncService stockSyncService;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${stock-sync.chunk-size:500}")
+    private int chunkSize;
 
     /**
-     * Синхронизировать остатки для выбранных продуктов
+     * Синхронизировать остатки для выбранных продуктов.
+     * Остатки читаются курсором и обрабатываются порциями по chunkSize: на порцию приходится
+     * отправка в STOCK_SYNC_TOPIC и один UPDATE sync_status/last_sync_at, память не зависит от размера каталога.
      */
+    @Transactional(readOnly = true)
     public void syncStocksForProducts(List<Long> productIds, ProductStockType stockType, UUID userId) {
-        log.info("🚀 Starting bulk stock sync: productIds={}, stockType={}, userId={}", productIds, stockType, userId);
+        log.info("🚀 Starting bulk stock sync: productIds={}, stockType={}, userId={}, chunkSize={}",
+                productIds.size(), stockType, userId, chunkSize);
+        String marketplace = getMarketplaceFromStockType(stockType);
+
+        int totalStocks = 0;
+        int chunks = 0;
+        List<StockItemReqest> chunk = new ArrayList<>(chunkSize);
+        List<UUID> chunkIds = new ArrayList<>(chunkSize);
+
+        try (Stream<ProductStockRepository.StockSyncRow> rows =
+                     productStockRepository.streamForSync(productIds.toArray(Long[]::new), stockType.name(), userId)) {
+            UUID currentStockId = null;
+            StockItemReqest current = null;
+
+            for (Iterator<ProductStockRepository.StockSyncRow> it = rows.iterator(); it.hasNext(); ) {
+                ProductStockRepository.StockSyncRow row = it.next();
+
+                // Строки одного остатка идут подряд (ORDER BY ps.id): собираем склады в один запрос
+                if (!row.getStockId().equals(currentStockId)) {
+                    if (current != null && chunk.size() >= chunkSize) {
+                        flushChunk(chunk, chunkIds, marketplace);
+                        chunks++;
+                    }
+                    currentStockId = row.getStockId();
+                    current = StockItemReqest.builder()
+                            .offerId(row.getArticle()) // используем article как offerId
+                            .quantity(row.getQuantity())
+                            .productId(row.getProductId().toString())
+                            .warehouses(new ArrayList<>())
+                            .correlationId(currentStockId.toString())
+                            .build();
+                    chunk.add(current);
+                    chunkIds.add(currentStockId);
+                    totalStocks++;
+                }
+
+                if (row.getWarehouseId() != null) {
+                    current.getWarehouses().add(StockItemReqest.WarehouseSyncInfo.builder()
+                            .warehouseId(row.getWarehouseId().toString())
+                            .companyId(row.getCompanyId())
+                            .marketplace(row.getMarketplace())
+                            .warehouseType(row.getWarehouseType())
+                            .build());
+                }
+            }
+        }
 
-        // 1) Берем сразу ProductStock по списку продуктов и типу
-        List<ProductStock> stocks = productStockRepository.findByProductIdInAndStockTypeAndUserId(
-                productIds, stockType, userId);
+        if (!chunk.isEmpty()) {
+            flushChunk(chunk, chunkIds, marketplace);
+            chunks++;
+        }
 
-        if (stocks.isEmpty()) {
+        if (totalStocks == 0) {
             log.warn("❌ No ProductStock found for given products and type: productIds={}, stockType={}", productIds, stockType);
             throw new RuntimeException("Не найдено остатков для синхронизации по заданным продуктам и типу");
         }
 
-        stockSyncService.syncStocksToMarketplace(stocks);
-
-        // 3) Для каждого продукта формируем уникальный Set складов из остатков и синхронизируем
-        int syncedProducts = 0;
-        for (ProductStock stock : stocks) {
-            Product product = stock.getProduct();
-
-            if (stock.getWarehouses().isEmpty()) {
-                log.warn("⚠️ Product {} has no warehouses in stocks", product.getId());
-            }
+        log.info("✅ Bulk sync completed: requested={}, stocks={}, chunks={}, type={}",
+                productIds.size(), totalStocks, chunks, stockType);
+    }
 
-            String marketplace = getMarketplaceFromStockType(stockType);
-            log.info("➡️ Syncing product id={}, article={}, companyId={} to marketplace={} for warehouses={}",
-                    product.getId(), product.getArticle(), product.getCompanyId(), marketplace, stock.getWarehouseIds());
+    /**
+     * Одним UPDATE перевести остатки порции в SYNCING и отправить порцию в Kafka.
+     * SYNCING пишется до отправки с last_sync_at = requestedAt запроса: быстрый ответ маркетплейса
+     * не перезаписывается, а ответы на прежние запросы отбрасываются (StockSyncStatusService).
+     * UPDATE выполняется в отдельной транзакции: статус виден сразу, а курсор остается открытым.
+     */
+    private void flushChunk(List<StockItemReqest> chunk, List<UUID> chunkIds, String marketplace) {
+        // Точность timestamp в Postgres — микросекунды: ответ сравнивается с last_sync_at на равенство
+        Instant requestedAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        chunk.forEach(item -> item.setRequestedAt(requestedAt));
 
-            // Обновляем статус синхронизации по всем stock записям продукта
-            stock.setLastSyncAt(LocalDateTime.now());
-            stock.setSyncStatus("SYNCING");
-            productStockRepository.save(stock);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Integer updated = tx.execute(status -> productStockRepository.updateSyncStatus(
+                chunkIds, "SYNCING", LocalDateTime.ofInstant(requestedAt, ZoneId.systemDefault())));
 
-            syncedProducts++;
-        }
+        stockSyncService.sendStockItems(chunk);
 
-        log.info("✅ Bulk sync completed: requested={}, withStocks={}, type={}", productIds.size(), syncedProducts, stockType);
+        log.info("➡️ Stock sync chunk sent: stocks={}, statusUpdated={}, marketplace={}", chunk.size(), updated, marketplace);
+        chunk.clear();
+        chunkIds.clear();
     }
 
     /**
@@ -0,0 +1,159 @@
+package ru.dmitartur.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed хранилище изображений товаров в file.upload-dir/images.
+ * Имя файла — SHA-256 содержимого, поэтому одинаковые картинки хранятся один раз,
+ * а файл по имени никогда не меняется (строгий ETag, бессрочный кэш у клиента).
+ *
+ * Раскладка: images/ab/abcdef...  (первые два символа хэша — подкаталог)
+ */
+@Service
+public class ImageStorageService {
+    private static final Logger logger = LoggerFactory.getLogger(ImageStorageService.class);
+
+    public static final String PUBLIC_URL_PREFIX = "/api/public/images/";
+    private static final Pattern HASH_PATTERN = Pattern.compile("^[0-9a-f]{64}$");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path imagesRoot;
+    private final Path tmpDir;
+
+    public ImageStorageService(@Value("${file.upload-dir}") String uploadDir) throws IOException {
+        this.imagesRoot = Paths.get(uploadDir).toAbsolutePath().normalize().resolve("images");
+        this.tmpDir = imagesRoot.resolve("tmp");
+        Files.createDirectories(tmpDir);
+        logger.info("📁 Image storage location initialized: {}", imagesRoot);
+    }
+
+    /**
+     * Сохранить изображение потоково: данные пишутся во временный файл с одновременным подсчетом SHA-256,
+     * затем файл атомарно переносится на место по хэшу. Если такой файл уже есть — временный удаляется.
+     *
+     * @return SHA-256 содержимого в hex
+     */
+    public String store(InputStream content) throws IOException {
+        MessageDigest digest = sha256();
+        Path tmp = Files.createTempFile(tmpDir, "upload-", ".part");
+        long size;
+        try {
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tmp), digest)) {
+                size = content.transferTo(out);
+            }
+
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = resolve(hash);
+            if (Files.exists(target)) {
+                logger.debug("♻️ Image already stored, deduplicated: hash={}, size={}", hash, size);
+                return hash;
+            }
+
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target);
+            } catch (FileAlreadyExistsException e) {
+                // Тот же файл параллельно загрузил другой запрос
+                logger.debug("♻️ Image stored concurrently: hash={}", hash);
+            }
+            logger.info("✅ Image stored: hash={}, size={} bytes", hash, size);
+            return hash;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Сохранить изображение из массива байт (миграция BYTEA)
+     */
+    public String store(byte[] content) throws IOException {
+        return store(new ByteArrayInputStream(content));
+    }
+
+    /**
+     * Путь к файлу изображения, если он существует
+     */
+    public Optional<Path> find(String hash) {
+        if (!isValidHash(hash)) {
+            return Optional.empty();
+        }
+        Path path = resolve(hash);
+        return Files.isRegularFile(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    /**
+     * Публичный URL изображения для Product.imageUrl
+     */
+    public static String publicUrl(String hash) {
+        return PUBLIC_URL_PREFIX + hash;
+    }
+
+    /**
+     * Тип содержимого по сигнатуре файла; хранилище не держит метаданные рядом с файлом
+     */
+    public String detectContentType(Path path) {
+        byte[] head = new byte[12];
+        int read;
+        try (InputStream in = Files.newInputStream(path)) {
+            read = in.readNBytes(head, 0, head.length);
+        } catch (IOException e) {
+            return "application/octet-stream";
+        }
+        if (read >= 3 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xD8 && (head[2] & 0xFF) == 0xFF) {
+            return "image/jpeg";
+        }
+        if (read >= 8 && (head[0] & 0xFF) == 0x89 && head[1] == 'P' && head[2] == 'N' && head[3] == 'G') {
+            return "image/png";
+        }
+        if (read >= 6 && head[0] == 'G' && head[1] == 'I' && head[2] == 'F') {
+            return "image/gif";
+        }
+        if (read >= 12 && head[0] == 'R' && head[1] == 'I' && head[2] == 'F' && head[3] == 'F'
+                && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') {
+            return "image/webp";
+        }
+        return "application/octet-stream";
+    }
+
+    public static boolean isValidHash(String hash) {
+        return hash != null && HASH_PATTERN.matcher(hash).matches();
+    }
+
+    Path resolve(String hash) {
+        return imagesRoot.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    Path root() {
+        return imagesRoot;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package ru.dmitartur.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Уменьшенные копии изображений (thumb/medium) рядом с оригиналами: images/ab/{hash}.{variant}.jpg.
+ *
+ * Вариант создается при первом запросе или заранее после загрузки — в ограниченном пуле потоков,
+ * одновременная генерация одного варианта выполняется один раз. Объем вариантов на диске ограничен
+ * бюджетом: при превышении удаляются давно не запрашивавшиеся варианты (оригиналы не трогаются).
+ */
+@Service
+public class ImageVariantService {
+    private static final Logger logger = LoggerFactory.getLogger(ImageVariantService.class);
+    // Больше не декодируем: защита от изображений-бомб с огромными размерами при малом файле
+    private static final long MAX_DECODE_PIXELS = 40_000_000L;
+
+    /**
+     * Размер варианта — максимальная сторона в пикселях
+     */
+    public enum Variant {
+        THUMB(240),
+        MEDIUM(640);
+
+        private final int maxSide;
+
+        Variant(int maxSide) {
+            this.maxSide = maxSide;
+        }
+
+        public String code() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        public static Optional<Variant> from(String code) {
+            if (code == null) return Optional.empty();
+            for (Variant v : values()) {
+                if (v.code().equalsIgnoreCase(code.trim())) {
+                    return Optional.of(v);
+                }
+            }
+            return Optional.empty();
+        }
+    }
+
+    private final ImageStorageService imageStorageService;
+    private final MeterRegistry meterRegistry;
+    private final long diskBudgetBytes;
+    private final ThreadPoolExecutor workers;
+
+    // Последнее обращение к варианту (LRU) и размеры файлов; восстанавливаются сканированием при старте
+    private final Map<Path, Long> lastAccess = new ConcurrentHashMap<>();
+    private final Map<Path, Long> sizes = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final Map<Path, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    private final Timer generationTimer;
+
+    public ImageVariantService(ImageStorageService imageStorageService,
+                               MeterRegistry meterRegistry,
+                               @Value("${images.variants.disk-budget-mb:512}") long diskBudgetMb,
+                               @Value("${images.variants.workers:2}") int workerCount,
+                               @Value("${images.variants.queue-size:200}") int queueSize) {
+        this.imageStorageService = imageStorageService;
+        this.meterRegistry = meterRegistry;
+        this.diskBudgetBytes = diskBudgetMb * 1024 * 1024;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    Thread t = new Thread(r, "image-variant-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.generationTimer = Timer.builder("image_variant_generation")
+                .description("Image variant generation time")
+                .register(meterRegistry);
+        Gauge.builder("image_variant_cache_bytes", totalBytes, AtomicLong::get)
+                .description("Disk space used by image variants")
+                .register(meterRegistry);
+        Gauge.builder("image_variant_queue_size", workers, w -> w.getQueue().size())
+                .description("Image variant generation queue")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void scanExisting() {
+        try (Stream<Path> files = Files.walk(imageStorageService.root(), 2)) {
+            files.filter(ImageVariantService::isVariantFile)
+                    .forEach(p -> {
+                        try {
+                            long size = Files.size(p);
+                            sizes.put(p, size);
+                            lastAccess.put(p, Files.getLastModifiedTime(p).toMillis());
+                            totalBytes.addAndGet(size);
+                        } catch (IOException ignored) {
+                            // файл удален во время сканирования
+                        }
+                    });
+            logger.info("🖼️ Image variants on disk: {} files, {} KB", sizes.size(), totalBytes.get() / 1024);
+        } catch (IOException e) {
+            logger.warn("⚠️ Could not scan image variants: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Получить вариант изображения: с диска или сгенерировать (ожидая не дольше timeout).
+     * Пустой Optional — вариант получить нельзя (формат не читается ImageIO, изображение слишком большое, пул перегружен),
+     * вызывающий код отдает оригинал.
+     */
+    public Optional<Path> getVariant(String hash, Variant variant) {
+        Optional<Path> original = imageStorageService.find(hash);
+        if (original.isEmpty()) {
+            return Optional.empty();
+        }
+        Path target = variantPath(original.get(), hash, variant);
+
+        if (Files.isRegularFile(target)) {
+            lastAccess.put(target, System.currentTimeMillis());
+            count(variant, "hit");
+            return Optional.of(target);
+        }
+
+        count(variant, "miss");
+        try {
+            Path generated = generateAsync(original.get(), target, variant).get(10, TimeUnit.SECONDS);
+            return Optional.ofNullable(generated);
+        } catch (RejectedExecutionException e) {
+            count(variant, "rejected");
+            return Optional.empty();
+        } catch (TimeoutException | ExecutionException e) {
+            logger.warn("⚠️ Image variant not ready: hash={}, variant={}, error={}", hash, variant, e.getMessage());
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Заранее поставить генерацию всех вариантов в очередь (после загрузки). Не блокирует вызывающего.
+     */
+    public void scheduleVariants(String hash) {
+        imageStorageService.find(hash).ifPresent(original -> {
+            for (Variant variant : Variant.values()) {
+                Path target = variantPath(original, hash, variant);
+                if (Files.isRegularFile(target)) {
+                    continue;
+                }
+                try {
+                    generateAsync(original, target, variant);
+                } catch (RejectedExecutionException e) {
+                    // Очередь заполнена: вариант создастся при первом запросе
+                    count(variant, "rejected");
+                }
+            }
+        });
+    }
+
+    private CompletableFuture<Path> generateAsync(Path original, Path target, Variant variant) {
+        CompletableFuture<Path> created = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(target, created);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    created.complete(generationTimer.recordCallable(() -> generate(original, target, variant)));
+                } catch (Throwable e) {
+                    created.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(target);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(target);
+            created.completeExceptionally(e);
+            throw e;
+        }
+        return created;
+    }
+
+    /**
+     * Уменьшить изображение до maxSide по большей стороне и записать JPEG.
+     * Прозрачность заливается белым; картинки меньше варианта только перекодируются.
+     *
+     * @return путь к варианту или null, если формат не поддерживается ImageIO (например, WebP)
+     * или изображение больше MAX_DECODE_PIXELS
+     */
+    private Path generate(Path original, Path target, Variant variant) throws IOException {
+        if (Files.isRegularFile(target)) {
+            return target;
+        }
+        BufferedImage source = decode(original, variant);
+        if (source == null) {
+            return null;
+        }
+
+        double scale = Math.min(1.0, (double) variant.maxSide / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+
+        Path tmp = Files.createTempFile(target.getParent(), variant.code() + "-", ".part");
+        try {
+            writeJpeg(scaled, tmp, 0.82f);
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        long size = Files.size(target);
+        Long previous = sizes.put(target, size);
+        totalBytes.addAndGet(size - (previous != null ? previous : 0));
+        lastAccess.put(target, System.currentTimeMillis());
+        logger.debug("🖼️ Image variant generated: {} {}x{} {} bytes", target.getFileName(), width, height, size);
+
+        enforceBudget();
+        return target;
+    }
+
+    /**
+     * Декодировать оригинал, предварительно проверив размеры по заголовку
+     */
+    private BufferedImage decode(Path original, Variant variant) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                count(variant, "unsupported");
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > MAX_DECODE_PIXELS) {
+                    logger.warn("⚠️ Image too large for variant: {} {}x{}", original.getFileName(), width, height);
+                    count(variant, "too_large");
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private void writeJpeg(BufferedImage image, Path target, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Удалить давно не запрашивавшиеся варианты, пока объем не станет ниже 90% бюджета
+     */
+    private synchronized void enforceBudget() {
+        if (totalBytes.get() <= diskBudgetBytes) {
+            return;
+        }
+        long goal = diskBudgetBytes * 9 / 10;
+        List<Map.Entry<Path, Long>> byAge = new ArrayList<>(lastAccess.entrySet());
+        byAge.sort(Map.Entry.comparingByValue(Comparator.naturalOrder()));
+
+        int evicted = 0;
+        for (Map.Entry<Path, Long> entry : byAge) {
+            if (totalBytes.get() <= goal) {
+                break;
+            }
+            Path path = entry.getKey();
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.warn("⚠️ Could not evict image variant {}: {}", path, e.getMessage());
+                continue;
+            }
+            lastAccess.remove(path);
+            Long size = sizes.remove(path);
+            if (size != null) {
+                totalBytes.addAndGet(-size);
+            }
+            evicted++;
+        }
+        Counter.builder("image_variant_evictions_total")
+                .description("Image variants removed to stay within the disk budget")
+                .register(meterRegistry)
+                .increment(evicted);
+        logger.info("🧹 Image variants evicted: {}, cache size now {} KB", evicted, totalBytes.get() / 1024);
+    }
+
+    private void count(Variant variant, String result) {
+        Counter.builder("image_variant_requests_total")
+                .description("Image variant requests by cache result")
+                .tag("variant", variant.code())
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static Path variantPath(Path original, String hash, Variant variant) {
+        return original.resolveSibling(hash + "." + variant.code() + ".jpg");
+    }
+
+    private static boolean isVariantFile(Path path) {
+        String name = path.getFileName().toString();
+        for (Variant variant : Variant.values()) {
+            if (name.endsWith("." + variant.code() + ".jpg")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -3,13 +3,16 @@ package ru.dmitartur.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ru.dmitartur.dto.CursorPage;
 import ru.dmitartur.dto.ProductHistoryDto;
 import ru.dmitartur.entity.ProductHistory;
 import ru.dmitartur.mapper.ProductHistoryMapper;
 import ru.dmitartur.repository.ProductHistoryRepository;
+import ru.dmitartur.util.CursorCodec;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -103,6 +106,20 @@ public class ProductHistoryService {
         return page.map(mapper::toDto);
     }
     
+    /**
+     * История продукта с keyset-пагинацией по (created_at, id), от новых к старым, без count-запроса
+     *
+     * @param cursor позиция последней записи предыдущей страницы, null для первой
+     */
+    public CursorPage<ProductHistoryDto> findByProductIdAfter(Long productId, CursorCodec.TimeIdCursor cursor, int size) {
+        log.debug("🔍 Finding product history page by cursor: productId={}, cursor={}", productId, cursor);
+        List<ProductHistory> rows = cursor == null
+                ? repository.findByProductIdOrderByCreatedAtDescIdDesc(productId, PageRequest.of(0, size + 1))
+                : repository.findByProductIdBefore(productId, cursor.createdAt(), cursor.id(), size + 1);
+        return CursorPage.of(rows, size, h -> CursorCodec.encodeTimeId(h.getCreatedAt(), h.getId()))
+                .map(mapper::toDto);
+    }
+
     /**
      * Найти историю изменений по ID продукта и полю
      */
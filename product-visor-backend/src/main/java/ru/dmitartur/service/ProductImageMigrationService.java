@@ -0,0 +1,110 @@
+package ru.dmitartur.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Фоновый перенос изображений из visor.product.image (BYTEA) в {@link ImageStorageService}.
+ * Идет пачками по id после старта приложения; для каждой строки проставляет image_hash/image_url
+ * и обнуляет BYTEA. Повторный запуск безопасен: обрабатываются только строки с image IS NOT NULL.
+ * Когда строк не останется, колонку image можно удалить отдельной миграцией.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProductImageMigrationService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ImageStorageService imageStorageService;
+
+    @Value("${images.migration.enabled:true}")
+    private boolean enabled;
+
+    @Value("${images.migration.batch-size:50}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startMigration() {
+        if (!enabled) {
+            return;
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "product-image-migration");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.submit(this::migrateAll);
+        executor.shutdown();
+    }
+
+    /**
+     * Перенести все оставшиеся изображения
+     *
+     * @return количество перенесенных изображений
+     */
+    public int migrateAll() {
+        long lastId = 0;
+        int migrated = 0;
+        int failed = 0;
+
+        while (true) {
+            List<Long> ids = jdbcTemplate.queryForList(
+                    "SELECT id FROM visor.product WHERE image IS NOT NULL AND image_hash IS NULL AND id > ? ORDER BY id LIMIT ?",
+                    Long.class, lastId, batchSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+            for (Long id : ids) {
+                lastId = id;
+                try {
+                    if (migrateOne(id)) {
+                        migrated++;
+                    }
+                } catch (Exception e) {
+                    failed++;
+                    log.error("❌ Failed to migrate product image: productId={}, error={}", id, e.getMessage());
+                }
+            }
+        }
+
+        if (migrated > 0 || failed > 0) {
+            log.info("✅ Product image migration finished: migrated={}, failed={}", migrated, failed);
+        }
+        return migrated;
+    }
+
+    private boolean migrateOne(Long productId) {
+        String hash = jdbcTemplate.query("SELECT image FROM visor.product WHERE id = ?", rs -> {
+            if (!rs.next()) {
+                return null;
+            }
+            try (InputStream in = rs.getBinaryStream(1)) {
+                return in != null ? imageStorageService.store(in) : null;
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not store image of product " + productId, e);
+            }
+        }, productId);
+
+        if (hash == null) {
+            return false;
+        }
+
+        // Картинка из BYTEA имела приоритет над image_url на фронтенде, поэтому ссылку перезаписываем
+        jdbcTemplate.update(
+                "UPDATE visor.product SET image_hash = ?, image_url = ?, image = NULL WHERE id = ? AND image_hash IS NULL",
+                hash, ImageStorageService.publicUrl(hash), productId);
+        log.debug("🖼️ Product image migrated: productId={}, hash={}", productId, hash);
+        return true;
+    }
+}
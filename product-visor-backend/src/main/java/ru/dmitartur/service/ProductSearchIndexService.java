@@ -0,0 +1,319 @@
+package ru.dmitartur.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.dmitartur.event.ProductSearchIndexRefreshedEvent;
+
+import java.sql.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Поддержание visor.product_search_index в актуальном состоянии.
+ *
+ * Триггеры (миграция V16) ставят измененные товары в visor.product_search_dirty. Фоновый проход
+ * забирает товары, правки которых затихли на search-index.debounce-ms, и пересобирает их карты
+ * пачками через visor.refresh_product_search_index. Товар, который правится чаще debounce (остатки,
+ * sync_status), все равно забирается, как только первая неучтенная правка старше search-index.max-delay-ms.
+ * Забор идет через FOR UPDATE SKIP LOCKED, поэтому несколько экземпляров сервиса не обрабатывают один
+ * товар дважды; при ошибке транзакция откатывается и товары остаются в очереди.
+ *
+ * Полная пересборка ({@link #rebuildAll()}) идет параллельно пачками по id и запускается при старте,
+ * если индекс пуст, либо по флагу search-index.rebuild-on-startup.
+ *
+ * После коммита каждой пачки публикуется {@link ProductSearchIndexRefreshedEvent} для подписчиков
+ * (например, in-memory поиска), которые держат копию индекса.
+ */
+@Slf4j
+@Service
+public class ProductSearchIndexService {
+
+    private static final String CLAIM_SQL = """
+            DELETE FROM visor.product_search_dirty d
+            USING (SELECT product_id FROM visor.product_search_dirty
+                   WHERE last_marked_at <= clock_timestamp() - make_interval(secs => ?)
+                      OR first_marked_at <= clock_timestamp() - make_interval(secs => ?)
+                   ORDER BY first_marked_at
+                   LIMIT ?
+                   FOR UPDATE SKIP LOCKED) c
+            WHERE d.product_id = c.product_id
+            RETURNING d.product_id
+            """;
+
+    // Товар мог быть удален после отметки: его строка индекса уйдет каскадом, пересобирать нечего
+    private static final String REFRESH_SQL = """
+            SELECT COUNT(*) FROM (
+                SELECT visor.refresh_product_search_index(p.id)
+                FROM visor.product p
+                WHERE p.id = ANY(?)
+            ) r
+            """;
+
+    private static final String LAG_SQL = """
+            SELECT COUNT(*), COALESCE(EXTRACT(EPOCH FROM clock_timestamp() - MIN(first_marked_at)), 0)
+            FROM visor.product_search_dirty
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final boolean enabled;
+    private final long pollIntervalMs;
+    private final double debounceSeconds;
+    private final double maxDelaySeconds;
+    private final int batchSize;
+    private final int maxBatchesPerPass;
+    private final boolean rebuildOnStartup;
+    private final int rebuildParallelism;
+    private final int rebuildBatchSize;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final AtomicBoolean rebuildRunning = new AtomicBoolean();
+    private final Counter incrementalRefreshed;
+    private final Counter rebuildRefreshed;
+    private final Timer passTimer;
+
+    private ScheduledExecutorService scheduler;
+
+    public ProductSearchIndexService(JdbcTemplate jdbcTemplate,
+                                     PlatformTransactionManager transactionManager,
+                                     ApplicationEventPublisher eventPublisher,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${search-index.enabled:true}") boolean enabled,
+                                     @Value("${search-index.poll-interval-ms:1000}") long pollIntervalMs,
+                                     @Value("${search-index.debounce-ms:2000}") long debounceMs,
+                                     @Value("${search-index.max-delay-ms:30000}") long maxDelayMs,
+                                     @Value("${search-index.batch-size:500}") int batchSize,
+                                     @Value("${search-index.max-batches-per-pass:20}") int maxBatchesPerPass,
+                                     @Value("${search-index.rebuild-on-startup:false}") boolean rebuildOnStartup,
+                                     @Value("${search-index.rebuild.parallelism:4}") int rebuildParallelism,
+                                     @Value("${search-index.rebuild.batch-size:1000}") int rebuildBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.pollIntervalMs = pollIntervalMs;
+        this.debounceSeconds = debounceMs / 1000.0;
+        this.maxDelaySeconds = Math.max(debounceMs, maxDelayMs) / 1000.0;
+        this.batchSize = batchSize;
+        this.maxBatchesPerPass = maxBatchesPerPass;
+        this.rebuildOnStartup = rebuildOnStartup;
+        this.rebuildParallelism = Math.max(1, rebuildParallelism);
+        this.rebuildBatchSize = rebuildBatchSize;
+
+        this.incrementalRefreshed = Counter.builder("product_search_index_refreshed_total")
+                .description("Products whose search text was recomposed")
+                .tag("mode", "incremental")
+                .register(meterRegistry);
+        this.rebuildRefreshed = Counter.builder("product_search_index_refreshed_total")
+                .description("Products whose search text was recomposed")
+                .tag("mode", "rebuild")
+                .register(meterRegistry);
+        this.passTimer = Timer.builder("product_search_index_pass")
+                .description("Incremental search index pass duration")
+                .register(meterRegistry);
+        Gauge.builder("product_search_index_lag_seconds", lagMillis, v -> v.get() / 1000.0)
+                .description("Age of the oldest pending search index change")
+                .register(meterRegistry);
+        Gauge.builder("product_search_index_pending", pending, AtomicLong::get)
+                .description("Products waiting for search index refresh")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        Boolean functionExists = jdbcTemplate.queryForObject(
+                "SELECT to_regprocedure('visor.refresh_product_search_index(bigint)') IS NOT NULL", Boolean.class);
+        if (!Boolean.TRUE.equals(functionExists)) {
+            log.warn("⚠️ visor.refresh_product_search_index not found, apply product_search_setup_v2.sql; search indexer disabled");
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "product-search-indexer");
+            t.setDaemon(true);
+            return t;
+        });
+
+        if (rebuildOnStartup || isIndexEmpty()) {
+            scheduler.execute(this::rebuildAll);
+        }
+        scheduler.scheduleWithFixedDelay(this::safePass, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("✅ Product search indexer started: pollIntervalMs={}, debounceMs={}, maxDelayMs={}, batchSize={}",
+                pollIntervalMs, (long) (debounceSeconds * 1000), (long) (maxDelaySeconds * 1000), batchSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void safePass() {
+        try {
+            runPass();
+        } catch (Exception e) {
+            log.error("❌ Product search index pass failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Один инкрементальный проход: пересобрать затихшие товары из очереди, но не более
+     * max-batches-per-pass пачек, чтобы поток не застревал при непрерывном потоке правок
+     *
+     * @return количество пересобранных товаров
+     */
+    public int runPass() {
+        if (rebuildRunning.get()) {
+            // Полная пересборка и так перепишет все карты; очередь разберем после нее
+            updateLag();
+            return 0;
+        }
+        Timer.Sample sample = Timer.start();
+        int refreshed = 0;
+        try {
+            for (int i = 0; i < maxBatchesPerPass; i++) {
+                List<Long> claimed = transactionTemplate.execute(status -> refreshClaimedBatch());
+                if (claimed == null || claimed.isEmpty()) {
+                    break;
+                }
+                refreshed += claimed.size();
+                eventPublisher.publishEvent(new ProductSearchIndexRefreshedEvent(this, claimed));
+                if (claimed.size() < batchSize) {
+                    break;
+                }
+            }
+        } finally {
+            sample.stop(passTimer);
+        }
+        updateLag();
+        if (refreshed > 0) {
+            log.debug("🔎 Search index refreshed: products={}", refreshed);
+        }
+        return refreshed;
+    }
+
+    private List<Long> refreshClaimedBatch() {
+        List<Long> ids = jdbcTemplate.queryForList(CLAIM_SQL, Long.class, debounceSeconds, maxDelaySeconds, batchSize);
+        if (ids.isEmpty()) {
+            return ids;
+        }
+        refresh(ids);
+        incrementalRefreshed.increment(ids.size());
+        return ids;
+    }
+
+    /**
+     * Полная пересборка индекса: id товаров читаются keyset-пачками, пачки пересобираются
+     * в search-index.rebuild.parallelism потоков (каждая пачка — отдельный statement).
+     *
+     * @return количество пересобранных товаров
+     */
+    public long rebuildAll() {
+        if (!rebuildRunning.compareAndSet(false, true)) {
+            log.warn("⚠️ Search index rebuild is already running");
+            return 0;
+        }
+        long startedAt = System.currentTimeMillis();
+        AtomicLong refreshed = new AtomicLong();
+        AtomicInteger failedBatches = new AtomicInteger();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(rebuildParallelism, r -> {
+            Thread t = new Thread(r, "product-search-rebuild-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        // Не держим в памяти больше пачек, чем успевают обработать потоки
+        Semaphore inFlight = new Semaphore(rebuildParallelism * 2);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            log.info("🔄 Search index rebuild started: parallelism={}, batchSize={}", rebuildParallelism, rebuildBatchSize);
+            long lastId = 0;
+            while (true) {
+                List<Long> ids = jdbcTemplate.queryForList(
+                        "SELECT id FROM visor.product WHERE id > ? ORDER BY id LIMIT ?",
+                        Long.class, lastId, rebuildBatchSize);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                lastId = ids.get(ids.size() - 1);
+                inFlight.acquire();
+                futures.add(pool.submit(() -> {
+                    try {
+                        refreshed.addAndGet(refresh(ids));
+                        rebuildRefreshed.increment(ids.size());
+                    } catch (Exception e) {
+                        failedBatches.incrementAndGet();
+                        log.error("❌ Search index rebuild batch failed: fromId={}, error={}", ids.get(0), e.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("⚠️ Search index rebuild interrupted");
+        } catch (Exception e) {
+            log.error("❌ Search index rebuild failed: {}", e.getMessage(), e);
+        } finally {
+            pool.shutdownNow();
+            rebuildRunning.set(false);
+        }
+        log.info("✅ Search index rebuild finished: products={}, failedBatches={}, tookMs={}",
+                refreshed.get(), failedBatches.get(), System.currentTimeMillis() - startedAt);
+        eventPublisher.publishEvent(new ProductSearchIndexRefreshedEvent(this, true));
+        return refreshed.get();
+    }
+
+    private long refresh(List<Long> ids) {
+        Long count = jdbcTemplate.query(REFRESH_SQL, ps -> {
+            Array array = ps.getConnection().createArrayOf("bigint", ids.toArray());
+            ps.setArray(1, array);
+        }, rs -> rs.next() ? rs.getLong(1) : 0L);
+        return count != null ? count : 0;
+    }
+
+    private void updateLag() {
+        jdbcTemplate.query(LAG_SQL, rs -> {
+            pending.set(rs.getLong(1));
+            lagMillis.set(Math.round(rs.getDouble(2) * 1000));
+        });
+    }
+
+    private boolean isIndexEmpty() {
+        Boolean empty = jdbcTemplate.queryForObject(
+                "SELECT NOT EXISTS (SELECT 1 FROM visor.product_search_index) AND EXISTS (SELECT 1 FROM visor.product)",
+                Boolean.class);
+        return Boolean.TRUE.equals(empty);
+    }
+}
@@ -3,17 +3,30 @@ package ru.dmitartur.service;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
+import ru.dmitartur.cache.ProductStockLookupCache;
+import ru.dmitartur.dto.CursorPage;
+import ru.dmitartur.dto.ProductListItemDto;
 import ru.dmitartur.entity.Product;
 import ru.dmitartur.repository.ProductRepository;
+import ru.dmitartur.search.InMemoryProductSearch;
+import ru.dmitartur.search.ProductTrigramIndex;
+import ru.dmitartur.util.CursorCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.dmitartur.common.utils.JwtUtil;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -22,8 +35,12 @@ import java.util.UUID;
 @Transactional
 public class ProductService {
     private static final Logger logger = LoggerFactory.getLogger(ProductService.class);
+    // Сколько артикулов уходит в один IN (...) при поиске по списку
+    private static final int ARTICLES_QUERY_CHUNK = 1000;
     
     private final ProductRepository productRepository;
+    private final ProductStockLookupCache productStockLookupCache;
+    private final InMemoryProductSearch inMemoryProductSearch;
     // private final ProductHistoryInterceptor productHistoryInterceptor; // Quantity tracking moved to ProductStock level
 
     /**
@@ -60,6 +77,7 @@ public class ProductService {
             });
         } else {
             logger.info("💾 Updating product: id={}, name={}", entity.getId(), entity.getName());
+            productStockLookupCache.invalidateCompany(entity.getCompanyId());
         }
         
         Product savedProduct = productRepository.save(entity);
@@ -73,6 +91,8 @@ public class ProductService {
         
         try {
             Product savedProduct = productRepository.save(entity);
+            // Артикул мог измениться: сбрасываем кэш остатков компании
+            productStockLookupCache.invalidateCompany(savedProduct.getCompanyId());
             logger.info("✅ Product updated successfully: id={}, name={}", 
                 savedProduct.getId(), savedProduct.getName());
             return savedProduct;
@@ -106,6 +126,152 @@ public class ProductService {
         return productRepository.findByCompanyIdAndOwnerUserId(companyId, ownerId, pageable);
     }
 
+    /**
+     * Облегченный список товаров текущего владельца (и компании, если выбрана): один запрос на страницу
+     */
+    @Transactional(readOnly = true)
+    public Page<ProductListItemDto> findListPage(Pageable pageable) {
+        UUID ownerId = JwtUtil.getRequiredOwnerId();
+        Optional<UUID> companyId = currentCompanyId();
+        if (companyId.isPresent()) {
+            return productRepository.findListByCompanyAndOwner(companyId.get(), ownerId, pageable).map(this::toListItem);
+        }
+        return productRepository.findListByOwner(ownerId, pageable).map(this::toListItem);
+    }
+
+    /**
+     * Облегченный список с keyset-пагинацией по id: без OFFSET и COUNT
+     *
+     * @param afterId id последнего товара предыдущей страницы, null для первой
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<ProductListItemDto> findListAfter(Long afterId, int size) {
+        UUID ownerId = JwtUtil.getRequiredOwnerId();
+        long after = afterId != null ? afterId : 0L;
+        Optional<UUID> companyId = currentCompanyId();
+        List<ProductRepository.ProductListRow> rows = companyId.isPresent()
+                ? productRepository.findListByCompanyAndOwnerAfter(companyId.get(), ownerId, after, size + 1)
+                : productRepository.findListByOwnerAfter(ownerId, after, size + 1);
+        return CursorPage.of(rows, size, row -> CursorCodec.encodeId(row.getId())).map(this::toListItem);
+    }
+
+    /**
+     * Каталог текущего владельца (и компании, если выбрана) с keyset-пагинацией по id
+     *
+     * @param afterId id последнего товара предыдущей страницы, null для первой
+     */
+    public CursorPage<Product> findAfter(Long afterId, int size) {
+        UUID ownerId = JwtUtil.getRequiredOwnerId();
+        long after = afterId != null ? afterId : 0L;
+        Pageable limit = PageRequest.of(0, size + 1);
+        Optional<UUID> companyId = currentCompanyId();
+        List<Product> products = companyId.isPresent()
+                ? productRepository.findByCompanyIdAndOwnerUserIdAndIdGreaterThanOrderByIdAsc(companyId.get(), ownerId, after, limit)
+                : productRepository.findByOwnerUserIdAndIdGreaterThanOrderByIdAsc(ownerId, after, limit);
+        return CursorPage.of(products, size, p -> CursorCodec.encodeId(p.getId()));
+    }
+
+    /**
+     * Поиск с keyset-пагинацией по id по всему множеству совпадений (без лимита релевантности {@link #search}),
+     * поэтому курсор доходит до последнего совпадения. Порядок — по id, одинаковый для SQL и in-memory поиска
+     *
+     * @param afterId id последнего товара предыдущей страницы, null для первой
+     */
+    public CursorPage<Product> searchAfter(String query, Long afterId, int size) {
+        UUID ownerUserId = JwtUtil.getRequiredOwnerId();
+        long after = afterId != null ? afterId : 0L;
+        Optional<UUID> companyId = currentCompanyId();
+
+        List<Product> products;
+        if (companyId.isPresent()) {
+            Optional<List<Long>> inMemory =
+                    inMemoryProductSearch.searchAfter(companyId.get(), ownerUserId, query, after, size + 1);
+            if (inMemory.isPresent()) {
+                products = productRepository.findAllById(inMemory.get()).stream()
+                        .sorted(Comparator.comparingLong(Product::getId))
+                        .toList();
+            } else {
+                products = productRepository.searchFullTextByCompanyAfter(escapeLike(query), ownerUserId,
+                        companyId.get(), after, size + 1);
+            }
+        } else {
+            products = productRepository.searchFullTextAfter(escapeLike(query), ownerUserId, after, size + 1);
+        }
+        return CursorPage.of(products, size, p -> CursorCodec.encodeId(p.getId()));
+    }
+
+    /**
+     * Экранировать спецсимволы LIKE (ESCAPE '\'), чтобы запрос пользователя искался как подстрока
+     */
+    private static String escapeLike(String query) {
+        return query.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private Optional<UUID> currentCompanyId() {
+        var companyIdOpt = JwtUtil.resolveEffectiveCompanyId();
+        if (companyIdOpt.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(UUID.fromString(companyIdOpt.get()));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid company ID format: {}, falling back to user-only products", companyIdOpt.get());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Строки списка по артикулам, запросами по ARTICLES_QUERY_CHUNK артикулов
+     *
+     * @param companyId null — без фильтра по компании
+     */
+    @Transactional(readOnly = true)
+    public List<ProductListItemDto> findListByArticles(Collection<String> articles, UUID companyId) {
+        List<String> distinct = articles.stream().filter(a -> a != null && !a.isBlank()).distinct().toList();
+        List<ProductListItemDto> result = new ArrayList<>(distinct.size());
+        for (int from = 0; from < distinct.size(); from += ARTICLES_QUERY_CHUNK) {
+            List<String> chunk = distinct.subList(from, Math.min(from + ARTICLES_QUERY_CHUNK, distinct.size()));
+            List<ProductRepository.ProductListRow> rows = companyId != null
+                    ? productRepository.findListByCompanyAndArticles(companyId, chunk)
+                    : productRepository.findListByArticles(chunk);
+            rows.forEach(row -> result.add(toListItem(row)));
+        }
+        return result;
+    }
+
+    /**
+     * Порция строк списка после afterId без фильтра по владельцу (межсервисные синхронизации)
+     *
+     * @param companyId null — все компании
+     */
+    @Transactional(readOnly = true)
+    public List<ProductListItemDto> findListBatchAfter(UUID companyId, long afterId, int limit) {
+        List<ProductRepository.ProductListRow> rows = companyId != null
+                ? productRepository.findListByCompanyAfter(companyId, afterId, limit)
+                : productRepository.findListAfter(afterId, limit);
+        return rows.stream().map(this::toListItem).toList();
+    }
+
+    private ProductListItemDto toListItem(ProductRepository.ProductListRow row) {
+        ProductListItemDto dto = new ProductListItemDto();
+        dto.setId(row.getId());
+        dto.setName(row.getName());
+        dto.setArticle(row.getArticle());
+        dto.setBarcode(row.getBarcode());
+        dto.setPrice(row.getPrice());
+        dto.setImageHash(row.getImageHash());
+        dto.setImageUrl(row.getImageUrl());
+        dto.setCategoryId(row.getCategoryId());
+        dto.setCategoryName(row.getCategoryName());
+        dto.setOwnerUserId(row.getOwnerUserId());
+        dto.setCompanyId(row.getCompanyId());
+        dto.setTotalQuantity(row.getTotalQuantity());
+        dto.setFbsQuantity(row.getFbsQuantity());
+        dto.setFboQuantity(row.getFboQuantity());
+        dto.setStockCount(row.getStockCount());
+        return dto;
+    }
+
     public Optional<Product> findByBarcode(String barcode) {
         logger.debug("🔍 Searching product by barcode: {}", barcode);
         Optional<Product> product = productRepository.findByBarcode(barcode);
@@ -154,6 +320,7 @@ public class ProductService {
             throw new EntityNotFoundException("Product not found with id: " + id);
         }
         
+        productRepository.findCompanyIdById(id).ifPresent(productStockLookupCache::invalidateCompany);
         productRepository.deleteById(id);
         logger.info("✅ Product deleted successfully: id={}", id);
     }
@@ -174,6 +341,11 @@ public class ProductService {
             try {
                 UUID companyId = UUID.fromString(companyIdOpt.get());
                 logger.debug("🔎 Searching products for company: {} and user: {}", companyId, ownerUserId);
+                Optional<ProductTrigramIndex.Result> inMemory =
+                        inMemoryProductSearch.search(companyId, ownerUserId, query, searchLimit);
+                if (inMemory.isPresent()) {
+                    return toPage(inMemory.get(), searchLimit, pageable);
+                }
                 return productRepository.searchFullTextByCompany(query, ownerUserId, companyId, searchLimit, pageable);
             } catch (IllegalArgumentException e) {
                 logger.warn("Invalid company ID format: {}, falling back to user-only search", companyIdOpt.get());
@@ -185,6 +357,29 @@ public class ProductService {
         return productRepository.searchFullText(query, ownerUserId, searchLimit, pageable);
     }
 
+    /**
+     * Страница результатов in-memory поиска: id уже отсортированы по релевантности,
+     * сущности грузятся только для текущей страницы. Как и в SQL-пути, total ограничен searchLimit
+     */
+    private Page<Product> toPage(ProductTrigramIndex.Result result, int searchLimit, Pageable pageable) {
+        List<Long> ranked = result.productIds();
+        int from = (int) Math.min(pageable.getOffset(), ranked.size());
+        int to = Math.min(from + pageable.getPageSize(), ranked.size());
+        List<Long> pageIds = ranked.subList(from, to);
+        if (pageIds.isEmpty()) {
+            return new PageImpl<>(List.of(), pageable, Math.min(result.total(), searchLimit));
+        }
+
+        Map<Long, Integer> position = new HashMap<>();
+        for (int i = 0; i < pageIds.size(); i++) {
+            position.put(pageIds.get(i), i);
+        }
+        List<Product> products = productRepository.findAllById(pageIds).stream()
+                .sorted(Comparator.comparingInt(p -> position.get(p.getId())))
+                .toList();
+        return new PageImpl<>(products, pageable, Math.min(result.total(), searchLimit));
+    }
+
     /**
      * Получить товары по списку ID
      */
@@ -4,15 +4,19 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ru.dmitartur.cache.ProductStockLookupCache;
 import ru.dmitartur.entity.ProductStock;
+import ru.dmitartur.entity.Warehouse;
 import ru.dmitartur.listener.ProductStockEventPublisher;
 import ru.dmitartur.repository.ProductStockRepository;
 import ru.dmitartur.common.utils.JwtUtil;
 import ru.dmitartur.dto.ProductStockDto;
 import ru.dmitartur.mapper.ProductStockMapper;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 @Slf4j
@@ -25,6 +29,7 @@ public class ProductStockService {
     private final WarehouseService warehouseService;
     private final ProductService productService;
     private final ProductStockEventPublisher eventPublisher;
+    private final ProductStockLookupCache lookupCache;
     
     /**
      * Получить остатки товара по всем складам пользователя
@@ -98,6 +103,7 @@ public class ProductStockService {
     @Transactional
     public ProductStock createProductStock(ProductStock productStock) {
         ProductStock saved = productStockRepository.save(productStock);
+        evictLookup(lookupKeys(saved));
         
         // Публикуем событие создания
         if (saved.getQuantity() != null && saved.getQuantity() > 0) {
@@ -118,6 +124,7 @@ public class ProductStockService {
         
         // Сохраняем старое количество для отслеживания изменений
         Integer oldQuantity = existingStock.getQuantity();
+        Set<LookupKey> oldKeys = lookupKeys(existingStock);
         
         // Обновляем Entity через маппер
         productStockMapper.updateProductStock(existingStock, productStock);
@@ -125,6 +132,13 @@ public class ProductStockService {
         // Сохраняем обновленный Entity
         ProductStock saved = productStockRepository.save(existingStock);
         
+        // Кэш зависит только от артикула и складов: сбрасываем ключи, если связи изменились
+        Set<LookupKey> newKeys = lookupKeys(saved);
+        if (!oldKeys.equals(newKeys)) {
+            oldKeys.addAll(newKeys);
+            evictLookup(oldKeys);
+        }
+        
         // Публикуем событие изменения количества, если оно изменилось
         if (saved.getQuantity() != null && !saved.getQuantity().equals(oldQuantity)) {
             eventPublisher.publishQuantityChangeEventWithContext(saved, oldQuantity, saved.getQuantity(), "STOCK_SERVICE", "UPDATED");
@@ -144,6 +158,7 @@ public class ProductStockService {
         
         // Сохраняем старое количество для отслеживания изменений
         Integer oldQuantity = existingStock.getQuantity();
+        Set<LookupKey> oldKeys = lookupKeys(existingStock);
         
         // Обновляем Entity через маппер
         productStockMapper.updateProductStock(existingStock, productStock);
@@ -151,6 +166,13 @@ public class ProductStockService {
         // Сохраняем обновленный Entity
         ProductStock saved = productStockRepository.save(existingStock);
         
+        // Кэш зависит только от артикула и складов: сбрасываем ключи, если связи изменились
+        Set<LookupKey> newKeys = lookupKeys(saved);
+        if (!oldKeys.equals(newKeys)) {
+            oldKeys.addAll(newKeys);
+            evictLookup(oldKeys);
+        }
+        
         // Публикуем событие изменения количества, если оно изменилось
         if (saved.getQuantity() != null && !saved.getQuantity().equals(oldQuantity)) {
             // Передаем контекст в событие
@@ -174,6 +196,7 @@ public class ProductStockService {
         }
         
         productStockRepository.delete(stock);
+        evictLookup(lookupKeys(stock));
     }
     
     /**
@@ -183,4 +206,64 @@ public class ProductStockService {
     public Optional<ProductStock> findProductStockByArticleAndWarehouse(String article, String warehouseId, UUID companyId) {
         return productStockRepository.findByArticleAndWarehouseIdAndCompanyId(article, warehouseId, companyId);
     }
+    
+    /**
+     * Применить изменение количества по артикулу, складу и компании (события заказов из Kafka).
+     * id остатка берется из кэша горячих артикулов, количество меняется атомарным UPDATE по PK,
+     * поэтому конкурентные события по одному остатку не теряют изменения.
+     *
+     * @return новое количество или пустой Optional, если остаток не найден
+     */
+    @Transactional
+    public Optional<Integer> applyQuantityDelta(String article, String warehouseId, UUID companyId, int delta) {
+        Optional<UUID> stockId = lookupCache.get(companyId, article, warehouseId,
+                () -> productStockRepository.findIdByArticleAndWarehouseIdAndCompanyId(article, warehouseId, companyId));
+        if (stockId.isEmpty()) {
+            return Optional.empty();
+        }
+        
+        Optional<Integer> newQuantity = productStockRepository.addQuantity(stockId.get(), article, warehouseId, companyId, delta);
+        if (newQuantity.isEmpty()) {
+            // Остаток удален или ключ переехал на другой остаток (в т.ч. на другом инстансе): ищем заново
+            lookupCache.evict(companyId, article, warehouseId);
+            stockId = productStockRepository.findIdByArticleAndWarehouseIdAndCompanyId(article, warehouseId, companyId);
+            if (stockId.isEmpty()) {
+                return Optional.empty();
+            }
+            newQuantity = productStockRepository.addQuantity(stockId.get(), article, warehouseId, companyId, delta);
+            if (newQuantity.isEmpty()) {
+                return Optional.empty();
+            }
+        }
+        
+        // Сущность для истории читает асинхронный слушатель по id, здесь строка повторно не читается
+        if (delta != 0) {
+            eventPublisher.publishQuantityChangeEventWithContext(stockId.get(), newQuantity.get() - delta, newQuantity.get(),
+                    "STOCK_SERVICE", "UPDATED");
+        }
+        return newQuantity;
+    }
+    
+    /**
+     * Ключи кэша поиска остатка: компания склада, артикул товара, внешний id склада
+     */
+    private Set<LookupKey> lookupKeys(ProductStock stock) {
+        Set<LookupKey> keys = new HashSet<>();
+        String article = stock.getProduct() != null ? stock.getProduct().getArticle() : null;
+        if (article == null || stock.getWarehouses() == null) {
+            return keys;
+        }
+        for (Warehouse warehouse : stock.getWarehouses()) {
+            keys.add(new LookupKey(warehouse.getCompanyId(), article, warehouse.getExternalWarehouseId()));
+        }
+        return keys;
+    }
+    
+    private void evictLookup(Set<LookupKey> keys) {
+        for (LookupKey key : keys) {
+            lookupCache.evictStock(key.companyId(), key.article(), key.externalWarehouseId());
+        }
+    }
+    
+    private record LookupKey(UUID companyId, String article, String externalWarehouseId) {}
 }
@@ -9,6 +9,8 @@ import ru.dmitartur.common.kafka.KafkaTopics;
 import ru.dmitartur.entity.ProductStock;
 import ru.dmitartur.common.dto.marketplace.StockItemReqest;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 
 @Slf4j
@@ -29,7 +31,13 @@ public class StockSyncService {
                 .map(this::convertProductToStockItem)
                 .toList();
 
+        sendStockItems(items);
+    }
 
+    /**
+     * Отправить готовые запросы синхронизации в STOCK_SYNC_TOPIC
+     */
+    public void sendStockItems(List<StockItemReqest> items) {
         items.forEach(item -> {
             kafkaTemplate.send(KafkaTopics.STOCK_SYNC_TOPIC, item)
                     .whenComplete((result, throwable) -> {
@@ -52,6 +60,8 @@ public class StockSyncService {
                 .quantity(stock.getQuantity())
                 .productId(stock.getProduct().getId().toString())
                 .warehouses(convertWarehouseToSyncInfo(stock))
+                .correlationId(stock.getId().toString())
+                .requestedAt(Instant.now().truncatedTo(ChronoUnit.MICROS))
                 .build();
     }
     
@@ -0,0 +1,118 @@
+package ru.dmitartur.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.dmitartur.common.dto.marketplace.StockSyncResponse;
+import ru.dmitartur.repository.ProductStockRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Замыкает цикл синхронизации остатков: применяет ответы маркетплейсов из stock-sync-response
+ * к ProductStock.syncStatus и считает end-to-end задержку от запроса до подтверждения маркетплейса.
+ *
+ * Ответ применяется только к своему или более новому запросу (по requestedAt и last_sync_at),
+ * а ответы разных маркетплейсов на один запрос статус не понижают (ProductStockRepository.applySyncResponse).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StockSyncStatusService {
+
+    private final ProductStockRepository productStockRepository;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Применить пакет ответов: один UPDATE на каждую пару (статус, запрос)
+     */
+    @Transactional
+    public int applyResponses(List<StockSyncResponse> responses) {
+        Instant receivedAt = Instant.now();
+        Map<SyncResult, Set<UUID>> idsByResult = new HashMap<>();
+
+        for (StockSyncResponse response : responses) {
+            String marketplace = response.getMarketplace() != null ? response.getMarketplace() : "UNKNOWN";
+            String responseStatus = response.getStatus() != null ? response.getStatus() : "UNKNOWN";
+
+            Counter.builder("stock_sync_responses_total")
+                    .description("Stock sync responses from marketplaces")
+                    .tag("marketplace", marketplace)
+                    .tag("status", responseStatus)
+                    .register(meterRegistry)
+                    .increment();
+
+            if (response.getRequestedAt() != null) {
+                Timer.builder("stock_sync_e2e_latency")
+                        .description("Time from stock sync request to marketplace acknowledgement")
+                        .tag("marketplace", marketplace)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(10))
+                        .maximumExpectedValue(Duration.ofMinutes(10))
+                        .register(meterRegistry)
+                        .record(Duration.between(response.getRequestedAt(), receivedAt));
+            }
+
+            UUID stockId = parseStockId(response.getCorrelationId());
+            String syncStatus = toSyncStatus(responseStatus);
+            if (stockId == null || syncStatus == null) {
+                continue;
+            }
+            if (response.getRequestedAt() == null) {
+                // Без момента запроса ответ нельзя упорядочить с более новыми запросами
+                log.warn("⚠️ Stock sync response for {} has no requestedAt, status not applied", stockId);
+                continue;
+            }
+            LocalDateTime requestedAt = LocalDateTime.ofInstant(response.getRequestedAt(), ZoneId.systemDefault());
+            idsByResult.computeIfAbsent(new SyncResult(syncStatus, requestedAt), r -> new HashSet<>()).add(stockId);
+        }
+
+        int updated = 0;
+        for (Map.Entry<SyncResult, Set<UUID>> entry : idsByResult.entrySet()) {
+            updated += productStockRepository.applySyncResponse(
+                    entry.getValue(), entry.getKey().status(), entry.getKey().requestedAt());
+        }
+
+        log.debug("📥 Applied {} stock sync responses, updated {} stocks", responses.size(), updated);
+        return updated;
+    }
+
+    /**
+     * Статус ответа маркетплейса -> ProductStock.syncStatus; null означает "не менять"
+     */
+    private String toSyncStatus(String responseStatus) {
+        return switch (responseStatus) {
+            case "SUCCESS" -> "SYNCED";
+            case "PARTIAL_SUCCESS" -> "PARTIAL";
+            case "FAILED" -> "FAILED";
+            default -> null; // SKIPPED: склада этого маркетплейса у остатка нет
+        };
+    }
+
+    private record SyncResult(String status, LocalDateTime requestedAt) {}
+
+    private UUID parseStockId(String correlationId) {
+        if (correlationId == null || correlationId.isBlank()) {
+            return null;
+        }
+        try {
+            return UUID.fromString(correlationId);
+        } catch (IllegalArgumentException e) {
+            log.warn("⚠️ Invalid stock sync correlationId: {}", correlationId);
+            return null;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package ru.dmitartur.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import ru.dmitartur.cache.ProductStockLookupCache;
 import ru.dmitartur.entity.Warehouse;
 import ru.dmitartur.repository.WarehouseRepository;
 import ru.dmitartur.common.utils.JwtUtil;
@@ -18,6 +19,7 @@ import java.util.UUID;
 public class WarehouseService {
     
     private final WarehouseRepository warehouseRepository;
+    private final ProductStockLookupCache productStockLookupCache;
     
     /**
      * Получить все склады компании пользователя
@@ -114,7 +116,10 @@ public class WarehouseService {
         existing.setActive(warehouse.isActive());
         existing.setMarketplace(warehouse.getMarketplace());
         
-        return warehouseRepository.save(existing);
+        Warehouse saved = warehouseRepository.save(existing);
+        // externalWarehouseId мог измениться: ключи кэша остатков компании больше не актуальны
+        productStockLookupCache.invalidateCompany(saved.getCompanyId());
+        return saved;
     }
     
     /**
@@ -132,6 +137,7 @@ public class WarehouseService {
         
         warehouse.setActive(false);
         warehouseRepository.save(warehouse);
+        productStockLookupCache.invalidateCompany(warehouse.getCompanyId());
     }
     
     /**
@@ -0,0 +1,68 @@
+package ru.dmitartur.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Кодирование курсоров keyset-пагинации в непрозрачную строку (base64url).
+ * Товары листаются по id, история — по паре (created_at, id)
+ */
+public final class CursorCodec {
+
+    /**
+     * Позиция в истории: последняя выданная запись
+     */
+    public record TimeIdCursor(LocalDateTime createdAt, long id) {}
+
+    private CursorCodec() {}
+
+    public static String encodeId(long id) {
+        return encode(Long.toString(id));
+    }
+
+    /**
+     * @return null для первой страницы
+     * @throws IllegalArgumentException если курсор поврежден
+     */
+    public static Long decodeId(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(decode(cursor));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    public static String encodeTimeId(LocalDateTime createdAt, long id) {
+        return encode(createdAt + "|" + id);
+    }
+
+    /**
+     * @return null для первой страницы
+     * @throws IllegalArgumentException если курсор поврежден
+     */
+    public static TimeIdCursor decodeTimeId(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String value = decode(cursor);
+            int separator = value.lastIndexOf('|');
+            return new TimeIdCursor(LocalDateTime.parse(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String cursor) {
+        return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    }
+}
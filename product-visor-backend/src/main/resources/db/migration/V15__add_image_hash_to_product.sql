@@ -0,0 +1,13 @@
+-- Изображения товаров переезжают из BYTEA в content-addressed хранилище (file.upload-dir/images)
+-- Товар хранит только SHA-256 содержимого; файлы отдаются через /api/public/images/{hash}
+
+ALTER TABLE visor.product
+ADD COLUMN IF NOT EXISTS image_hash VARCHAR(64);
+
+COMMENT ON COLUMN visor.product.image_hash IS 'SHA-256 изображения в файловом хранилище';
+COMMENT ON COLUMN visor.product.image IS 'Устарело: переносится в файловое хранилище ProductImageMigrationService, после переноса NULL';
+
+-- Очередь миграции: строки, у которых еще остались байты в BYTEA
+CREATE INDEX IF NOT EXISTS idx_product_image_pending
+    ON visor.product(id)
+    WHERE image IS NOT NULL AND image_hash IS NULL;
@@ -0,0 +1,111 @@
+-- Инкрементальное обновление visor.product_search_index.
+-- Раньше триггеры из product_search_setup_v2.sql пересобирали "карту" товара синхронно на каждую строку,
+-- теперь они только ставят товар в очередь, а ProductSearchIndexService пересобирает пачками.
+
+CREATE TABLE IF NOT EXISTS visor.product_search_dirty (
+    product_id BIGINT PRIMARY KEY,
+    -- Момент первой неучтенной правки: по нему считается отставание индекса
+    first_marked_at TIMESTAMPTZ NOT NULL DEFAULT clock_timestamp(),
+    -- Момент последней правки: товар пересобирается, когда правки затихли (debounce)
+    last_marked_at TIMESTAMPTZ NOT NULL DEFAULT clock_timestamp()
+);
+
+CREATE INDEX IF NOT EXISTS idx_product_search_dirty_last_marked
+    ON visor.product_search_dirty(last_marked_at);
+
+COMMENT ON TABLE visor.product_search_dirty IS 'Очередь товаров, чья поисковая карта устарела';
+
+-- Поставить товар в очередь; повторная отметка только сдвигает last_marked_at
+CREATE OR REPLACE FUNCTION visor.mark_product_search_dirty(p_id BIGINT)
+    RETURNS VOID AS $$
+BEGIN
+    IF p_id IS NULL THEN
+        RETURN;
+    END IF;
+    INSERT INTO visor.product_search_dirty(product_id)
+    VALUES (p_id)
+    ON CONFLICT (product_id) DO UPDATE SET last_marked_at = EXCLUDED.last_marked_at;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION visor.trg_product_search_dirty() RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM visor.mark_product_search_dirty(NEW.id);
+    RETURN NEW;
+END; $$ LANGUAGE plpgsql;
+
+-- Для product_attribute_value и product_stocks: строка содержит product_id
+CREATE OR REPLACE FUNCTION visor.trg_product_child_search_dirty() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM visor.mark_product_search_dirty(OLD.product_id);
+        RETURN OLD;
+    END IF;
+    PERFORM visor.mark_product_search_dirty(NEW.product_id);
+    IF TG_OP = 'UPDATE' AND OLD.product_id IS DISTINCT FROM NEW.product_id THEN
+        PERFORM visor.mark_product_search_dirty(OLD.product_id);
+    END IF;
+    RETURN NEW;
+END; $$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION visor.trg_product_stock_warehouse_search_dirty() RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM visor.mark_product_search_dirty(ps.product_id)
+    FROM visor.product_stocks ps
+    WHERE ps.id = COALESCE(NEW.product_stock_id, OLD.product_stock_id);
+    IF TG_OP = 'DELETE' THEN
+        RETURN OLD;
+    END IF;
+    RETURN NEW;
+END; $$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION visor.trg_warehouse_search_dirty() RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO visor.product_search_dirty(product_id)
+    SELECT DISTINCT ps.product_id
+    FROM visor.product_stocks ps
+             JOIN visor.product_stock_warehouses psw ON psw.product_stock_id = ps.id
+    WHERE psw.warehouse_id = NEW.id
+    ON CONFLICT (product_id) DO UPDATE SET last_marked_at = EXCLUDED.last_marked_at;
+    RETURN NEW;
+END; $$ LANGUAGE plpgsql;
+
+-- Синхронные триггеры из product_search_setup_v2.sql больше не нужны
+DROP TRIGGER IF EXISTS product_refresh_search ON visor.product;
+DROP TRIGGER IF EXISTS product_attr_refresh_search ON visor.product_attribute_value;
+DROP TRIGGER IF EXISTS product_stock_refresh_search ON visor.product_stocks;
+DROP TRIGGER IF EXISTS warehouse_refresh_search ON visor.warehouses;
+DROP TRIGGER IF EXISTS product_stock_warehouse_refresh_search ON visor.product_stock_warehouses;
+
+DROP TRIGGER IF EXISTS product_search_dirty_ins ON visor.product;
+CREATE TRIGGER product_search_dirty_ins
+    AFTER INSERT ON visor.product
+    FOR EACH ROW EXECUTE FUNCTION visor.trg_product_search_dirty();
+
+-- Обновления, не меняющие строку (например, повторное сохранение формы), в очередь не попадают
+DROP TRIGGER IF EXISTS product_search_dirty_upd ON visor.product;
+CREATE TRIGGER product_search_dirty_upd
+    AFTER UPDATE ON visor.product
+    FOR EACH ROW WHEN (OLD.* IS DISTINCT FROM NEW.*)
+    EXECUTE FUNCTION visor.trg_product_search_dirty();
+
+DROP TRIGGER IF EXISTS product_attr_search_dirty ON visor.product_attribute_value;
+CREATE TRIGGER product_attr_search_dirty
+    AFTER INSERT OR UPDATE OR DELETE ON visor.product_attribute_value
+    FOR EACH ROW EXECUTE FUNCTION visor.trg_product_child_search_dirty();
+
+DROP TRIGGER IF EXISTS product_stock_search_dirty ON visor.product_stocks;
+CREATE TRIGGER product_stock_search_dirty
+    AFTER INSERT OR UPDATE OR DELETE ON visor.product_stocks
+    FOR EACH ROW EXECUTE FUNCTION visor.trg_product_child_search_dirty();
+
+DROP TRIGGER IF EXISTS product_stock_warehouse_search_dirty ON visor.product_stock_warehouses;
+CREATE TRIGGER product_stock_warehouse_search_dirty
+    AFTER INSERT OR DELETE ON visor.product_stock_warehouses
+    FOR EACH ROW EXECUTE FUNCTION visor.trg_product_stock_warehouse_search_dirty();
+
+DROP TRIGGER IF EXISTS warehouse_search_dirty ON visor.warehouses;
+CREATE TRIGGER warehouse_search_dirty
+    AFTER UPDATE ON visor.warehouses
+    FOR EACH ROW WHEN (OLD.name IS DISTINCT FROM NEW.name OR OLD.is_active IS DISTINCT FROM NEW.is_active)
+    EXECUTE FUNCTION visor.trg_warehouse_search_dirty();
@@ -0,0 +1,19 @@
+-- Индексы под keyset-пагинацию: страница читается как диапазон индекса от курсора,
+-- без OFFSET и без COUNT(*), поэтому глубокие страницы стоят столько же, сколько первая.
+-- Индексы создаются и удаляются CONCURRENTLY, без блокировки записи в product и product_history;
+-- такие команды не выполняются в транзакции, поэтому миграция нетранзакционная (V17__...sql.conf)
+
+-- Каталог владельца: WHERE owner_user_id = ? AND id > ? ORDER BY id
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_product_owner_id
+    ON visor.product(owner_user_id, id);
+
+-- Каталог компании: WHERE company_id = ? AND owner_user_id = ? AND id > ? ORDER BY id
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_product_company_owner_id
+    ON visor.product(company_id, owner_user_id, id);
+
+-- История товара: WHERE product_id = ? AND (created_at, id) < (?, ?) ORDER BY created_at DESC, id DESC
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_product_history_product_created_id
+    ON visor.product_history(product_id, created_at DESC, id DESC);
+
+-- Покрывается новым составным индексом по префиксу product_id
+DROP INDEX CONCURRENTLY IF EXISTS visor.idx_product_history_product_id;
@@ -0,0 +1,4 @@
+-- Забор очереди поискового индекса идет по last_marked_at (debounce) ИЛИ first_marked_at (max-delay),
+-- сортировка тоже по first_marked_at: без индекса часто правящиеся товары ищутся полным просмотром очереди
+CREATE INDEX IF NOT EXISTS idx_product_search_dirty_first_marked
+    ON visor.product_search_dirty(first_marked_at);
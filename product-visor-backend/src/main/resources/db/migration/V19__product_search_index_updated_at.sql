@@ -0,0 +1,33 @@
+-- Момент пересборки строки поискового индекса: по нему экземпляры сервиса с in-memory поиском
+-- подхватывают изменения, пересобранные другими экземплярами (InMemoryProductSearch).
+-- Таблица создается скриптом product_search_setup_v2.sql; если его еще не применяли, колонку добавит он.
+DO $$
+BEGIN
+    IF to_regclass('visor.product_search_index') IS NULL THEN
+        RETURN;
+    END IF;
+
+    ALTER TABLE visor.product_search_index
+        ADD COLUMN IF NOT EXISTS updated_at TIMESTAMPTZ NOT NULL DEFAULT clock_timestamp();
+
+    CREATE INDEX IF NOT EXISTS idx_product_search_index_updated_at
+        ON visor.product_search_index(updated_at);
+END $$;
+
+CREATE OR REPLACE FUNCTION visor.trg_product_search_index_touch() RETURNS TRIGGER AS $$
+BEGIN
+    NEW.updated_at := clock_timestamp();
+    RETURN NEW;
+END; $$ LANGUAGE plpgsql;
+
+DO $$
+BEGIN
+    IF to_regclass('visor.product_search_index') IS NULL THEN
+        RETURN;
+    END IF;
+
+    DROP TRIGGER IF EXISTS product_search_index_touch ON visor.product_search_index;
+    CREATE TRIGGER product_search_index_touch
+        BEFORE INSERT OR UPDATE ON visor.product_search_index
+        FOR EACH ROW EXECUTE FUNCTION visor.trg_product_search_index_touch();
+END $$;
@@ -0,0 +1,25 @@
+-- Состояние фоновых выгрузок Excel (ExcelExportJobService).
+-- Хранится в БД, а не в памяти экземпляра: статус и скачивание обслуживает любой экземпляр сервиса,
+-- сами файлы лежат в общем каталоге excel.export.dir.
+
+CREATE TABLE IF NOT EXISTS visor.excel_export_job (
+    id UUID PRIMARY KEY,
+    owner_user_id UUID NOT NULL,
+    product_count INT NOT NULL,
+    status VARCHAR(16) NOT NULL,
+    -- Имя файла в excel.export.dir, заполняется при DONE
+    file_name VARCHAR(255),
+    error TEXT,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    -- Последняя смена статуса: по ней находятся задачи, брошенные упавшим экземпляром
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    finished_at TIMESTAMPTZ
+);
+
+CREATE INDEX IF NOT EXISTS idx_excel_export_job_finished_at
+    ON visor.excel_export_job(finished_at) WHERE finished_at IS NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx_excel_export_job_active_updated_at
+    ON visor.excel_export_job(updated_at) WHERE finished_at IS NULL;
+
+COMMENT ON TABLE visor.excel_export_job IS 'Фоновые выгрузки товаров в Excel';
@@ -0,0 +1,49 @@
+-- Остатки ставят товар в очередь поискового индекса только при смене полей, попадающих в карту.
+-- Раньше триггер V16 срабатывал на любой UPDATE product_stocks, и каждое списание количества
+-- или смена sync_status порождали пересборку индекса. Количество и статус синхронизации из карты
+-- убраны: по ним не ищут, а в индексе они все равно отставали.
+CREATE OR REPLACE FUNCTION visor.compose_stock_info(p_id BIGINT)
+    RETURNS TEXT AS $$
+DECLARE
+    v_stock_info TEXT;
+    v_warehouse_names TEXT;
+BEGIN
+    SELECT COALESCE(STRING_AGG(DISTINCT 'stock:' || ps.stock_type, ' '), '')
+    INTO v_stock_info
+    FROM visor.product_stocks ps
+    WHERE ps.product_id = p_id;
+
+    SELECT COALESCE(STRING_AGG(DISTINCT w.name, ' '), '')
+    INTO v_warehouse_names
+    FROM visor.product_stocks ps
+             JOIN visor.product_stock_warehouses psw ON psw.product_stock_id = ps.id
+             JOIN visor.warehouses w ON w.id = psw.warehouse_id
+    WHERE ps.product_id = p_id AND w.is_active = true;
+
+    RETURN COALESCE(v_stock_info,'') || ' ' || COALESCE(v_warehouse_names,'');
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS product_stock_search_dirty ON visor.product_stocks;
+CREATE TRIGGER product_stock_search_dirty
+    AFTER INSERT OR DELETE ON visor.product_stocks
+    FOR EACH ROW EXECUTE FUNCTION visor.trg_product_child_search_dirty();
+
+DROP TRIGGER IF EXISTS product_stock_search_dirty_upd ON visor.product_stocks;
+CREATE TRIGGER product_stock_search_dirty_upd
+    AFTER UPDATE OF product_id, stock_type ON visor.product_stocks
+    FOR EACH ROW WHEN (OLD.product_id IS DISTINCT FROM NEW.product_id OR OLD.stock_type IS DISTINCT FROM NEW.stock_type)
+    EXECUTE FUNCTION visor.trg_product_child_search_dirty();
+
+-- Карты с остатками пересобираются без количества и статуса
+DO $$
+BEGIN
+    IF to_regclass('visor.product_search_index') IS NULL THEN
+        RETURN;
+    END IF;
+
+    INSERT INTO visor.product_search_dirty(product_id)
+    SELECT DISTINCT ps.product_id
+    FROM visor.product_stocks ps
+    ON CONFLICT (product_id) DO NOTHING;
+END $$;
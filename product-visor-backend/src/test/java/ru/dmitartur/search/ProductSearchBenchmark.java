@@ -0,0 +1,154 @@
+package ru.dmitartur.search;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Сравнение задержек поиска товаров: SQL-путь эндпоинта /api/v1/product/search
+ * (search_products + выборка страницы + count) против {@link ProductTrigramIndex} в памяти.
+ *
+ * Лежит в test-исходниках и в сборку сервиса не попадает. Запуск против базы сервиса:
+ * <pre>
+ * mvn -pl product-visor-backend test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=ru.dmitartur.search.ProductSearchBenchmark \
+ *     -Dexec.args="jdbc:postgresql://localhost:5433/product_visor postgres postgres &lt;companyId&gt; &lt;ownerUserId&gt; 2000"
+ * </pre>
+ * Аргументы: jdbc url, пользователь, пароль, компания, владелец, количество запросов.
+ * Запросы — префиксы и фрагменты названий/артикулов товаров компании длиной 2..8 символов, как при наборе.
+ */
+public final class ProductSearchBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductSearchBenchmark.class);
+
+    private static final int PAGE_SIZE = 10;
+    private static final int SEARCH_LIMIT = 100;
+
+    private static final String SQL_PAGE = """
+            SELECT p.* FROM visor.product p
+            JOIN visor.search_products(?, ?) sp ON sp.product_id = p.id
+            WHERE p.owner_user_id = ? AND p.company_id = ?
+            ORDER BY p.id LIMIT ?
+            """;
+    private static final String SQL_COUNT = """
+            SELECT COUNT(*) FROM visor.product p
+            JOIN visor.search_products(?, ?) sp ON sp.product_id = p.id
+            WHERE p.owner_user_id = ? AND p.company_id = ?
+            """;
+
+    private ProductSearchBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        String url = args[0];
+        String user = args[1];
+        String password = args[2];
+        UUID companyId = UUID.fromString(args[3]);
+        UUID ownerUserId = UUID.fromString(args[4]);
+        int iterations = args.length > 5 ? Integer.parseInt(args[5]) : 1000;
+
+        try (Connection connection = DriverManager.getConnection(url, user, password)) {
+            long loadStarted = System.nanoTime();
+            List<ProductTrigramIndex.Doc> docs = new ArrayList<>();
+            try (PreparedStatement ps = connection.prepareStatement(InMemoryProductSearch.LOAD_SQL + " WHERE p.company_id = ?")) {
+                ps.setObject(1, companyId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        docs.add(InMemoryProductSearch.readDoc(rs));
+                    }
+                }
+            }
+            ProductTrigramIndex index = ProductTrigramIndex.build(docs);
+            log.info("📊 loaded {} products in {} ms", docs.size(),
+                    String.format("%.1f", (System.nanoTime() - loadStarted) / 1_000_000.0));
+            if (docs.isEmpty()) {
+                return;
+            }
+
+            List<String> queries = sampleQueries(docs, iterations);
+
+            // Прогрев JIT и кэшей Postgres, в замер не входит
+            for (int i = 0; i < Math.min(200, queries.size()); i++) {
+                index.search(queries.get(i), ownerUserId, SEARCH_LIMIT);
+                runSql(connection, queries.get(i), ownerUserId, companyId);
+            }
+
+            long[] memory = new long[queries.size()];
+            long[] sql = new long[queries.size()];
+            for (int i = 0; i < queries.size(); i++) {
+                String q = queries.get(i);
+                long started = System.nanoTime();
+                index.search(q, ownerUserId, SEARCH_LIMIT);
+                memory[i] = System.nanoTime() - started;
+
+                started = System.nanoTime();
+                runSql(connection, q, ownerUserId, companyId);
+                sql[i] = System.nanoTime() - started;
+            }
+
+            print("memory", memory);
+            print("sql", sql);
+        }
+    }
+
+    private static void runSql(Connection connection, String q, UUID ownerUserId, UUID companyId) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(SQL_PAGE)) {
+            ps.setString(1, q);
+            ps.setInt(2, SEARCH_LIMIT);
+            ps.setObject(3, ownerUserId);
+            ps.setObject(4, companyId);
+            ps.setInt(5, PAGE_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rs.getLong("id");
+                }
+            }
+        }
+        try (PreparedStatement ps = connection.prepareStatement(SQL_COUNT)) {
+            ps.setString(1, q);
+            ps.setInt(2, SEARCH_LIMIT);
+            ps.setObject(3, ownerUserId);
+            ps.setObject(4, companyId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+            }
+        }
+    }
+
+    private static List<String> sampleQueries(List<ProductTrigramIndex.Doc> docs, int count) {
+        Random random = new Random(42);
+        List<String> queries = new ArrayList<>(count);
+        while (queries.size() < count) {
+            ProductTrigramIndex.Doc doc = docs.get(random.nextInt(docs.size()));
+            String source = random.nextBoolean() || doc.article() == null ? doc.name() : doc.article();
+            if (source == null || source.length() < 2) {
+                continue;
+            }
+            int length = Math.min(source.length(), 2 + random.nextInt(7));
+            // Половина запросов — префиксы (набор с начала), половина — фрагменты из середины
+            int from = random.nextBoolean() ? 0 : random.nextInt(source.length() - length + 1);
+            queries.add(source.substring(from, from + length));
+        }
+        return queries;
+    }
+
+    private static void print(String engine, long[] nanos) {
+        Arrays.sort(nanos);
+        log.info("📊 {}", String.format("%-6s queries=%d p50=%.3f ms p99=%.3f ms max=%.3f ms", engine, nanos.length,
+                percentileMillis(nanos, 0.50), percentileMillis(nanos, 0.99), nanos[nanos.length - 1] / 1_000_000.0));
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(index, sortedNanos.length - 1))] / 1_000_000.0;
+    }
+}
@@ -1,6 +1,7 @@
 import React, { useState, useEffect } from 'react';
 import { useAuth } from '../contexts/AuthContext.jsx';
 import { companyService } from '../services/companyService.js';
+import CompanyAvatar from './ui/company-avatar.jsx';
 
 export default function CompanyManagement() {
   const { user, setCompany } = useAuth();
@@ -120,10 +121,11 @@ export default function CompanyManagement() {
       link: company.link || ''
     });
     // Устанавливаем превью аватара если есть
-    if (company.avatar) {
-      setAvatarPreview(companyService.createAvatarUrl(company.avatar));
-    } else {
-      setAvatarPreview(null);
+    setAvatarPreview(null);
+    if (company.avatarHash) {
+      companyService.getAvatarUrl(company, 'original')
+        .then(setAvatarPreview)
+        .catch(() => setAvatarPreview(null));
     }
   };
 
@@ -250,13 +252,10 @@ export default function CompanyManagement() {
             <div className="mb-6 p-4 bg-indigo-900 border border-indigo-700 rounded-lg">
               <h2 className="text-lg font-semibold text-white mb-2">Текущая компания</h2>
               <div className="flex items-center space-x-3 text-indigo-200">
-                {currentCompany.avatar && (
-                  <img 
-                    src={companyService.createAvatarUrl(currentCompany.avatar)} 
-                    alt={`Аватар ${currentCompany.name}`}
-                    className="w-12 h-12 rounded-full object-cover"
-                  />
-                )}
+                <CompanyAvatar
+                  company={currentCompany}
+                  className="w-12 h-12 rounded-full object-cover"
+                />
                 <div>
                   <p className="font-medium">{currentCompany.name}</p>
                   {currentCompany.note && <p className="text-sm">{currentCompany.note}</p>}
@@ -295,13 +294,10 @@ export default function CompanyManagement() {
                     <div className="flex items-center justify-between">
                       <div className="flex-1">
                         <div className="flex items-center space-x-3">
-                          {company.avatar && (
-                            <img 
-                              src={companyService.createAvatarUrl(company.avatar)} 
-                              alt={`Аватар ${company.name}`}
-                              className="w-10 h-10 rounded-full object-cover"
-                            />
-                          )}
+                          <CompanyAvatar
+                            company={company}
+                            className="w-10 h-10 rounded-full object-cover"
+                          />
                           <div>
                             <h3 className="text-lg font-medium text-white">{company.name}</h3>
                             {currentCompany?.id === company.id && (
@@ -1,6 +1,7 @@
 import React, { useState, useEffect } from 'react';
 import { useAuth } from '../contexts/AuthContext.jsx';
 import { companyService } from '../services/companyService.js';
+import CompanyAvatar from './ui/company-avatar.jsx';
 
 export default function CompanySelectionRequired() {
   const { user, setCompany, completeCompanySelection } = useAuth();
@@ -161,13 +162,10 @@ export default function CompanySelectionRequired() {
                 >
                   <div className="flex items-center justify-between">
                     <div className="flex items-center space-x-3">
-                      {company.avatar && (
-                        <img 
-                          src={companyService.createAvatarUrl(company.avatar)} 
-                          alt={`Аватар ${company.name}`}
-                          className="w-12 h-12 rounded-full object-cover"
-                        />
-                      )}
+                      <CompanyAvatar
+                        company={company}
+                        className="w-12 h-12 rounded-full object-cover"
+                      />
                       <div>
                         <h3 className="text-lg font-medium text-white">{company.name}</h3>
                         {company.note && <p className="text-gray-300 mt-1">{company.note}</p>}
@@ -2,6 +2,7 @@ import React, { useState, useEffect, useRef } from 'react';
 import { Link } from 'react-router-dom';
 import { useAuth } from '../contexts/AuthContext.jsx';
 import { companyService } from '../services/companyService.js';
+import CompanyAvatar from './ui/company-avatar.jsx';
 import { getCompanyId } from '../utils/http-client.js';
 
 export default function CurrentCompanyDisplay() {
@@ -90,17 +91,15 @@ export default function CurrentCompanyDisplay() {
       >
         <div className="relative">
           <div className="w-8 h-8 rounded-full overflow-hidden bg-gray-700 border border-gray-600 flex items-center justify-center">
-            {currentCompany.avatar ? (
-              <img 
-                src={companyService.createAvatarUrl(currentCompany.avatar)} 
-                alt={`Аватар ${currentCompany.name}`}
-                className="w-full h-full object-cover"
-              />
-            ) : (
-              <span className="text-sm font-medium text-gray-300">
-                {currentCompany.name.charAt(0).toUpperCase()}
-              </span>
-            )}
+            <CompanyAvatar
+              company={currentCompany}
+              className="w-full h-full object-cover"
+              fallback={
+                <span className="text-sm font-medium text-gray-300">
+                  {currentCompany.name.charAt(0).toUpperCase()}
+                </span>
+              }
+            />
           </div>
           {/* Active indicator */}
           <div className="absolute bottom-0 right-0 w-3 h-3 bg-green-500 border-2 border-gray-800 rounded-full"></div>
@@ -124,17 +123,15 @@ export default function CurrentCompanyDisplay() {
             <div className="px-4 py-3 border-b border-gray-700">
               <div className="flex items-center space-x-3">
                 <div className="w-10 h-10 rounded-full overflow-hidden bg-gray-700 border border-gray-600 flex items-center justify-center">
-                  {currentCompany.avatar ? (
-                    <img 
-                      src={companyService.createAvatarUrl(currentCompany.avatar)} 
-                      alt={`Аватар ${currentCompany.name}`}
-                      className="w-full h-full object-cover"
-                    />
-                  ) : (
-                    <span className="text-sm font-medium text-gray-300">
-                      {currentCompany.name.charAt(0).toUpperCase()}
-                    </span>
-                  )}
+                  <CompanyAvatar
+                    company={currentCompany}
+                    className="w-full h-full object-cover"
+                    fallback={
+                      <span className="text-sm font-medium text-gray-300">
+                        {currentCompany.name.charAt(0).toUpperCase()}
+                      </span>
+                    }
+                  />
                 </div>
                 <div>
                   <p className="text-sm font-medium text-white">{currentCompany.name}</p>
@@ -10,9 +10,11 @@ import { useCategories } from '../hooks/use-categories.js';
 import useBarcodeScanner from '../hooks/use-barcode-scanner.js';
 import Notification from './ui/notification.jsx';
 import { findProductByBarcode, searchProductsPage } from '../services/productService.js';
+import { API_URLS } from '../config/api-config.js';
 
 // Вспомогательная функция для получения src изображения продукта
 const getImageSrc = (product) => {
+  if (product?.imageHash) return API_URLS.IMAGES.BY_HASH(product.imageHash, 'thumb');
   const img = product?.image;
   if (!img && product?.imageUrl) return product.imageUrl;
   if (typeof img === 'string') {
@@ -7,7 +7,7 @@ import React, { useState, useEffect, useRef, useCallback, useReducer } from 'rea
 import axios from 'axios';
 import ProductFormNew from './ProductFormNew.jsx';
 import { API_URLS } from '../config/api-config.js';
-import { getProductsPage } from '../services/productService.js';
+import { getProductById, getProductsListPage } from '../services/productService.js';
 import { getCategories } from '../services/categoryService.js';
 import { useNavigate } from 'react-router-dom';
 import { exportLensesExcel } from '../services/excelService.js';
@@ -63,7 +63,7 @@ const ProductAll = () => {
     const fetchPage = async (pageNum = 0, pageSize = 50) => {
         try {
             setLoading(true);
-            const pageData = await getProductsPage(pageNum, pageSize);
+            const pageData = await getProductsListPage(pageNum, pageSize);
             setProducts(pageData.content || []);
             setTotalPages(pageData.totalPages || 0);
             setTotalElements(pageData.totalElements || 0);
@@ -97,9 +97,16 @@ const ProductAll = () => {
         }
     };
 
-    const handleCopyProduct = (product) => {
-        setCopyProduct(product);
-        setShowCopyForm(true);
+    const handleCopyProduct = async (product) => {
+        // В списке только краткие поля: для копии нужна полная карточка с атрибутами и маркетами
+        try {
+            const fullProduct = await getProductById(product.id);
+            setCopyProduct(fullProduct);
+            setShowCopyForm(true);
+        } catch (error) {
+            console.error('Error loading product for copy:', error);
+            alert('Ошибка при загрузке товара для копирования.');
+        }
     };
 
     const handleProductCreated = () => {
@@ -111,7 +118,8 @@ const ProductAll = () => {
     };
 
     const handleCardDoubleClick = (product) => {
-        navigate(`/product/${product.id}`, { state: { product } });
+        // Карточка загрузит полный товар сама: строка списка не содержит остатков и атрибутов
+        navigate(`/product/${product.id}`);
     };
 
     // Checkbox selection
@@ -422,10 +430,12 @@ const ProductAll = () => {
                                 </div>
                             </div>
 
-                            {product.image && (
+                            {(product.imageHash || product.image) && (
                                 <div className="mb-4">
                                     <img
                                         src={(() => {
+                                            // Список грузит превью, а не оригинал
+                                            if (product.imageHash) return API_URLS.IMAGES.BY_HASH(product.imageHash, 'thumb');
                                             const img = product.image;
                                             if (typeof img === 'string') {
                                                 if (img.startsWith('data:')) return img;
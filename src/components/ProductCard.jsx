@@ -60,6 +60,10 @@ const ProductCard = ({
    * Get image URL from product data
    */
   const getImageUrl = () => {
+    // Image from the content-addressed store: cards use the medium variant instead of the original
+    if (product.imageHash) {
+      return API_URLS.IMAGES.BY_HASH(product.imageHash, 'medium');
+    }
     // If product has image as base64 string, create data URL
     if (product.image && typeof product.image === 'string' && product.image.startsWith('/')) {
       return `data:image/jpeg;base64,${product.image}`;
@@ -6,6 +6,7 @@
 import React, { useState, useEffect } from 'react';
 import { useNavigate, useParams, useLocation } from 'react-router-dom';
 import { deleteProduct, getProductById } from '../services/productService.js';
+import { API_URLS } from '../config/api-config.js';
 import LoadingSpinner from './ui/loading-spinner.jsx';
 import ErrorMessage from './ui/error-message.jsx';
 import ProductCard from './ProductCard.jsx';
@@ -134,6 +135,7 @@ const ProductDetail = () => {
   };
 
   const getImageSrc = (product) => {
+    if (product?.imageHash) return API_URLS.IMAGES.BY_HASH(product.imageHash);
     const img = product?.image;
     if (!img && product?.imageUrl) return product.imageUrl;
     if (typeof img === 'string') {
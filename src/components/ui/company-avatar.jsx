@@ -0,0 +1,41 @@
+/**
+ * Company Avatar Component
+ * Loads the company avatar through companyService (auth + browser cache by avatar version)
+ */
+
+import React, { useEffect, useState } from 'react';
+import { companyService } from '../../services/companyService.js';
+
+/**
+ * Company avatar image
+ * @param {Object} props - Component props
+ * @param {Object} props.company - Company with id, name and avatarHash
+ * @param {string} props.variant - 'thumb' for lists, 'original' for full size
+ * @param {string} props.className - Image classes
+ * @param {JSX.Element} props.fallback - Rendered while there is no avatar
+ * @returns {JSX.Element|null} Avatar image or fallback
+ */
+const CompanyAvatar = ({ company, variant = 'thumb', className = '', fallback = null }) => {
+  const [url, setUrl] = useState(null);
+
+  useEffect(() => {
+    let active = true;
+    setUrl(null);
+    companyService.getAvatarUrl(company, variant)
+      .then((avatarUrl) => { if (active) setUrl(avatarUrl); })
+      .catch(() => { if (active) setUrl(null); });
+    return () => { active = false; };
+  }, [company?.id, company?.avatarHash, variant]);
+
+  if (!url) return fallback;
+
+  return (
+    <img
+      src={url}
+      alt={`Аватар ${company.name}`}
+      className={className}
+    />
+  );
+};
+
+export default CompanyAvatar;
@@ -72,6 +72,7 @@ export const ENDPOINTS = {
   PRODUCTS: {
     BASE: '/product',
     BY_ID: (id) => `/product/${id}`,
+    LIST: '/product/list',
     SEARCH: '/product/search',
     BARCODE: '/product/barcode'
   },
@@ -131,7 +132,10 @@ export const API_URLS = {
   },
   IMAGES: {
     BASE: buildApiUrl(ENDPOINTS.IMAGES.BASE),
-    BY_FILENAME: (filename) => buildApiUrl(ENDPOINTS.IMAGES.BY_FILENAME(filename))
+    BY_FILENAME: (filename) => buildApiUrl(ENDPOINTS.IMAGES.BY_FILENAME(filename)),
+    // Content-addressed хранилище изображений товаров (публичный путь, кэшируется браузером)
+    // variant: 'thumb' (240px) | 'medium' (640px) | undefined — оригинал
+    BY_HASH: (hash, variant) => `${MICROSERVICES.PRODUCT_VISOR_BACKEND.BASE_URL}/api/public/images/${hash}${variant ? `?variant=${variant}` : ''}`
   },
   ORDERS: {
     BASE: () => buildApiUrl(ENDPOINTS.ORDERS.BASE, 'ORDER_SERVICE'),
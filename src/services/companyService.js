@@ -1,6 +1,30 @@
 import { API_URLS } from '../config/api-config.js';
 import { getAuthToken, setCompanyId } from '../utils/http-client.js';
 
+// Object URL аватаров по ключу companyId:variant:avatarHash
+const avatarUrlCache = new Map();
+
+async function fetchAvatarUrl(company, variant) {
+  const token = getAuthToken();
+  if (!token) {
+    throw new Error('Токен авторизации не найден');
+  }
+
+  const url = `${API_URLS.COMPANIES.AVATAR(company.id)}?variant=${variant}&v=${company.avatarHash}`;
+  const response = await fetch(url, {
+    method: 'GET',
+    headers: {
+      'Authorization': `Bearer ${token}`,
+    },
+  });
+
+  if (!response.ok) {
+    throw new Error('Ошибка при получении аватара');
+  }
+
+  return URL.createObjectURL(await response.blob());
+}
+
 /**
  * Сервис для работы с компаниями
  */
@@ -211,11 +235,22 @@ export const companyService = {
   },
 
   /**
-   * Создать URL для отображения аватара компании из base64
+   * Получить URL аватара компании для <img> (object URL).
+   * В запрос добавляется версия avatarHash: ответ кэшируется браузером надолго,
+   * а после смены аватара меняется и URL. Один и тот же аватар запрашивается один раз за сессию.
+   * @param {object} company - компания с id и avatarHash
+   * @param {'thumb'|'original'} variant - thumb для списков, original для просмотра
    */
-  createAvatarUrl(avatarBase64) {
-    if (!avatarBase64) return null;
-    return `data:image/png;base64,${avatarBase64}`;
+  async getAvatarUrl(company, variant = 'thumb') {
+    if (!company?.avatarHash) return null;
+    const key = `${company.id}:${variant}:${company.avatarHash}`;
+    if (!avatarUrlCache.has(key)) {
+      avatarUrlCache.set(key, fetchAvatarUrl(company, variant).catch((error) => {
+        avatarUrlCache.delete(key);
+        throw error;
+      }));
+    }
+    return avatarUrlCache.get(key);
   },
 
   /**
@@ -1,12 +1,53 @@
 import httpClient from '../utils/http-client.js';
 import { API_URLS } from '../config/api-config.js';
 
+// Начиная с этого размера подборки выгрузка идет фоновой задачей, а не одним долгим запросом
+const EXPORT_JOB_THRESHOLD = 2000;
+const EXPORT_JOB_POLL_MS = 2000;
+
+const excelBaseUrl = () => `${API_URLS.PRODUCTS.BASE.replace('/product','')}/excel`;
+
+const sleep = (ms) => new Promise(resolve => setTimeout(resolve, ms));
+
+const exportLensesExcelJob = async (productIds) => {
+  const { data: started } = await httpClient.post(`${excelBaseUrl()}/lenses/export/jobs`, { productIds });
+  let job = started;
+  while (job.status === 'PENDING' || job.status === 'RUNNING') {
+    await sleep(EXPORT_JOB_POLL_MS);
+    ({ data: job } = await httpClient.get(`${excelBaseUrl()}/export/jobs/${started.jobId}`));
+  }
+  if (job.status !== 'DONE') {
+    throw new Error(job.error || 'Excel export failed');
+  }
+  const response = await httpClient.get(`${excelBaseUrl()}/export/jobs/${job.jobId}/download`, {
+    responseType: 'blob'
+  });
+  return response.data;
+};
+
 export const exportLensesExcel = async (productIds) => {
-  const url = `${API_URLS.PRODUCTS.BASE.replace('/product','')}/excel/lenses/export`;
-  const response = await httpClient.post(url, { productIds }, {
+  if (productIds.length > EXPORT_JOB_THRESHOLD) {
+    return exportLensesExcelJob(productIds);
+  }
+  const response = await httpClient.post(`${excelBaseUrl()}/lenses/export`, { productIds }, {
     responseType: 'blob'
   });
   return response.data;
 };
 
-export default { exportLensesExcel }; 
\ No newline at end of file
+/**
+ * Импорт товаров из формы линз; ответ — счетчики и ошибки по строкам файла
+ */
+export const importLensesExcel = async (file, categoryId, warehouseId) => {
+  const formData = new FormData();
+  formData.append('file', file);
+  const params = { categoryId };
+  if (warehouseId) params.warehouseId = warehouseId;
+  const response = await httpClient.post(`${excelBaseUrl()}/lenses/import`, formData, {
+    params,
+    headers: { 'Content-Type': 'multipart/form-data' }
+  });
+  return response.data;
+};
+
+export default { exportLensesExcel, importLensesExcel };
@@ -32,6 +32,18 @@ export const getProductsPage = async (page = 0, size = 10) => {
   }
 };
 
+export const getProductsListPage = async (page = 0, size = 50) => {
+  try {
+    const response = await httpClient.get(ENDPOINTS.PRODUCTS.LIST, {
+      params: { page, size }
+    });
+    return response.data; // Spring Page<ProductListItemDto>: без остатков по складам и атрибутов
+  } catch (error) {
+    console.error('Error fetching products list page:', error);
+    throw error;
+  }
+};
+
 export const searchProductsPage = async (q, page = 0, size = 10) => {
   try {
     const response = await httpClient.get(ENDPOINTS.PRODUCTS.SEARCH, {
@@ -2,6 +2,7 @@ package ru.dmitartur.yandex.kafka;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.KafkaHeaders;
@@ -19,7 +20,9 @@ import ru.dmitartur.yandex.service.YandexStockSyncService;
 public class StockSyncConsumer {
     
     private final YandexStockSyncService yandexStockSyncService;
-    private final KafkaTemplate<String, StockSyncResponse> kafkaTemplate;
+    // JSON-шаблон common-core: ответ уходит с __TypeId__ и читается product-visor-backend как StockSyncResponse
+    @Qualifier("jsonKafkaTemplate")
+    private final KafkaTemplate<String, Object> jsonKafkaTemplate;
     
     @KafkaListener(
         topics = KafkaTopics.STOCK_SYNC_TOPIC,
@@ -51,9 +54,11 @@ public class StockSyncConsumer {
             
             // Выполняем синхронизацию остатков
             StockSyncResponse response = yandexStockSyncService.syncStock(request);
+            response.setCorrelationId(request.getCorrelationId());
+            response.setRequestedAt(request.getRequestedAt());
             
             // Отправляем ответ обратно
-            kafkaTemplate.send(KafkaTopics.STOCK_SYNC_RESPONSE_TOPIC, "YANDEX", response)
+            jsonKafkaTemplate.send(KafkaTopics.STOCK_SYNC_RESPONSE_TOPIC, "YANDEX", response)
                     .whenComplete((result, throwable) -> {
                         if (throwable != null) {
                             log.error("❌ Failed to send stock sync response: {}", throwable.getMessage());
@@ -75,9 +80,11 @@ public class StockSyncConsumer {
                     .successCount(0)
                     .failedCount(1)
                     .errorMessage(e.getMessage())
+                    .correlationId(request.getCorrelationId())
+                    .requestedAt(request.getRequestedAt())
                     .build();
             
-            kafkaTemplate.send(KafkaTopics.STOCK_SYNC_RESPONSE_TOPIC, "YANDEX", errorResponse);
+            jsonKafkaTemplate.send(KafkaTopics.STOCK_SYNC_RESPONSE_TOPIC, "YANDEX", errorResponse);
         }
     }
 }
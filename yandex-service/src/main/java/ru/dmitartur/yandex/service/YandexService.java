@@ -126,9 +126,9 @@ public class YandexService implements BaseMarketplaceService {
                             .setCompanyId(CompanyContextHolder.getCompanyId() != null ? 
                                     CompanyContextHolder.getCompanyId() : "");
                     
-                    UpsertOrdersResponse responseGrpc = orderStub.upsertOrders(requestBuilder.build());
+                    UpsertOrdersResponse responseGrpc = orderStub.upsertOrdersDto(requestBuilder.build());
                     
-                    int upserted = responseGrpc.getUpsertedCount();
+                    int upserted = responseGrpc.getProcessedCount();
                     totalUpserted += upserted;
                     
                     log.info("📦 Processed {} orders, upserted: {}", orders.size(), upserted);